@@ -61,6 +61,34 @@ public class JSONSuccessResponse implements SuccessResponse {
         pragma = pragmaValue;
     }
 
+    /**
+     * Get the JSON content.
+     * 
+     * @return JSON content.
+     */
+    @Nonnull
+    public JSONObject getContent() {
+        return content;
+    }
+
+    /**
+     * Get the cache control value.
+     * 
+     * @return cache control value.
+     */
+    public String getCacheControl() {
+        return cacheControl;
+    }
+
+    /**
+     * Get the pragma value.
+     * 
+     * @return pragma value.
+     */
+    public String getPragma() {
+        return pragma;
+    }
+
     @Override
     public boolean indicatesSuccess() {
         return true;
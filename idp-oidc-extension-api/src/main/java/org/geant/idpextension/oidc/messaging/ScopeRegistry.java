@@ -0,0 +1,522 @@
+/*
+ * Copyright (c) 2017 - 2020, GÉANT
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an “AS IS” BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.geant.idpextension.oidc.messaging;
+
+import java.util.BitSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.shibboleth.utilities.java.support.annotation.constraint.Positive;
+import net.shibboleth.utilities.java.support.annotation.constraint.ThreadSafeAfterInit;
+import net.shibboleth.utilities.java.support.component.AbstractInitializableComponent;
+import net.shibboleth.utilities.java.support.component.ComponentSupport;
+import net.shibboleth.utilities.java.support.logic.Constraint;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.nimbusds.oauth2.sdk.Scope;
+import com.nimbusds.openid.connect.sdk.ClaimsRequest;
+
+/**
+ * Registry of canonical, immutable scope and claims request instances.
+ *
+ * <p>
+ * Scopes with the same values in the same order are interned to a single shared {@link UnmodifiableScope}. The values
+ * of the scopes registered for the relying parties are given a bit index, and each interned scope carries the bit set
+ * of its registered values. Checking the requested scope against the registered scope of the relying party and
+ * reducing the validated scope to the scope of a token request are then bit set operations, and their results are
+ * kept with the interned scope so that a repeated combination is a single lookup.
+ * </p>
+ *
+ * <p>
+ * The registered scopes are looked up by the identity of the scope instance of the client metadata, which are
+ * expected not to change once the client information has been resolved. Values of requested scopes are never given a
+ * bit index, so the number of indices is bounded by the client metadata. All the maps are bounded, and cleared when
+ * full. Scope values beyond the maximum number of indices are handled by plain set operations.
+ * </p>
+ */
+@ThreadSafeAfterInit
+public class ScopeRegistry extends AbstractInitializableComponent {
+
+    /** Maximum number of results kept for each interned scope. */
+    private static final int MAX_RESULTS_PER_SCOPE = 16;
+
+    /** The bit indices of the registered scope values. */
+    @Nonnull
+    private final ConcurrentMap<String, Integer> valueIndices;
+
+    /** The interned scopes, keyed by the space separated values. */
+    @Nonnull
+    private final ConcurrentMap<String, InternedScope> scopes;
+
+    /** The interned claims requests, keyed by the JSON representation. */
+    @Nonnull
+    private final ConcurrentMap<String, ClaimsRequest> claimsRequests;
+
+    /** The interned registered scopes, keyed by the identity of the scope of the client metadata. */
+    @Nonnull
+    private final Cache<Scope, InternedScope> registeredScopes;
+
+    /** Number of bit indices given, the next free index. */
+    private volatile int indexCount;
+
+    /** Maximum number of scope values given a bit index. Default value: 1024. */
+    @Positive
+    private int maxScopeValues;
+
+    /** Maximum number of interned scopes. Default value: 10000. */
+    @Positive
+    private int maxScopes;
+
+    /** Maximum number of interned claims requests. Default value: 1000. */
+    @Positive
+    private int maxClaimsRequests;
+
+    /**
+     * Constructor.
+     */
+    public ScopeRegistry() {
+        valueIndices = new ConcurrentHashMap<>();
+        scopes = new ConcurrentHashMap<>();
+        claimsRequests = new ConcurrentHashMap<>();
+        registeredScopes = CacheBuilder.newBuilder().weakKeys().build();
+        maxScopeValues = 1024;
+        maxScopes = 10000;
+        maxClaimsRequests = 1000;
+    }
+
+    /**
+     * Set the maximum number of scope values given a bit index.
+     * 
+     * @param size maximum number of scope values given a bit index
+     */
+    public void setMaxScopeValues(@Positive final int size) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        maxScopeValues = (int) Constraint.isGreaterThan(0, size, "Maximum number of scope values must be > 0");
+    }
+
+    /**
+     * Set the maximum number of interned scopes.
+     * 
+     * @param size maximum number of interned scopes
+     */
+    public void setMaxScopes(@Positive final int size) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        maxScopes = (int) Constraint.isGreaterThan(0, size, "Maximum number of scopes must be > 0");
+    }
+
+    /**
+     * Set the maximum number of interned claims requests.
+     * 
+     * @param size maximum number of interned claims requests
+     */
+    public void setMaxClaimsRequests(@Positive final int size) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        maxClaimsRequests = (int) Constraint.isGreaterThan(0, size, "Maximum number of claims requests must be > 0");
+    }
+
+    /**
+     * Get the canonical instance of the scope.
+     * 
+     * @param scope the scope
+     * @return the shared, unmodifiable instance with the same values in the same order, null if scope is null
+     */
+    @Nullable
+    public Scope intern(@Nullable final Scope scope) {
+        ComponentSupport.ifNotInitializedThrowUninitializedComponentException(this);
+
+        if (scope == null) {
+            return null;
+        }
+        return doIntern(scope);
+    }
+
+    /**
+     * Get the canonical instance of the claims request. The returned instance is shared. It must not be modified, and
+     * neither must the given instance, which may become the shared one.
+     * 
+     * @param request the claims request
+     * @return the shared instance with the same JSON representation, null if request is null
+     */
+    @Nullable
+    public ClaimsRequest intern(@Nullable final ClaimsRequest request) {
+        ComponentSupport.ifNotInitializedThrowUninitializedComponentException(this);
+
+        if (request == null) {
+            return null;
+        }
+        final String key = request.toJSONObject().toJSONString();
+        final ClaimsRequest interned = claimsRequests.get(key);
+        if (interned != null) {
+            return interned;
+        }
+        if (claimsRequests.size() >= maxClaimsRequests) {
+            claimsRequests.clear();
+        }
+        final ClaimsRequest previous = claimsRequests.putIfAbsent(key, request);
+        return previous != null ? previous : request;
+    }
+
+    /**
+     * Get the values of the scope that are also values of the other scope, in the order of the scope. The scope itself
+     * is returned if all of its values are values of the other scope.
+     * 
+     * @param scope the scope to reduce
+     * @param allowed the allowed scope values, typically the scope registered for the relying party
+     * @param registered whether the allowed scope is the scope of the client metadata, which is then looked up by
+     *            identity and its values given bit indices
+     * @return the shared, unmodifiable reduced scope
+     */
+    @Nonnull
+    public Scope retain(@Nonnull final Scope scope, @Nonnull final Scope allowed, final boolean registered) {
+        ComponentSupport.ifNotInitializedThrowUninitializedComponentException(this);
+        Constraint.isNotNull(scope, "Scope cannot be null");
+        Constraint.isNotNull(allowed, "Allowed scope cannot be null");
+
+        final InternedScope interned = doIntern(scope);
+        final InternedScope internedAllowed = registered ? getRegistered(allowed) : doIntern(allowed);
+        final InternedScope cached = interned.getResult(internedAllowed);
+        if (cached != null) {
+            return cached;
+        }
+        final InternedScope result;
+        final IndexedValues allowedValues = getIndexedValues(internedAllowed);
+        final IndexedValues values = getIndexedValues(interned);
+        if (isCovered(allowedValues, values) || isCovered(values, allowedValues)) {
+            // Values of one scope without a bit index cannot be values of the other.
+            final BitSet bits = (BitSet) values.getBits().clone();
+            bits.and(allowedValues.getBits());
+            if (bits.equals(values.getBits()) && values.isComplete()) {
+                result = interned;
+            } else {
+                result = doIntern(retainIndexed(interned, bits));
+            }
+        } else {
+            final Scope retained = retainContained(interned, internedAllowed);
+            result = retained.size() == interned.size() ? interned : doIntern(retained);
+        }
+        interned.setResult(internedAllowed, result);
+        return result;
+    }
+
+    /**
+     * Get the scope without the value.
+     * 
+     * @param scope the scope
+     * @param value the value to remove
+     * @return the shared, unmodifiable scope without the value
+     */
+    @Nonnull
+    public Scope remove(@Nonnull final Scope scope, @Nonnull final Scope.Value value) {
+        ComponentSupport.ifNotInitializedThrowUninitializedComponentException(this);
+        Constraint.isNotNull(scope, "Scope cannot be null");
+
+        if (!scope.contains(value)) {
+            return doIntern(scope);
+        }
+        final Scope reduced = new Scope();
+        for (final Scope.Value scopeValue : scope) {
+            if (!scopeValue.equals(value)) {
+                reduced.add(scopeValue);
+            }
+        }
+        return doIntern(reduced);
+    }
+
+    /**
+     * Get the interned instance of the scope of the client metadata, giving bit indices to its values.
+     * 
+     * @param registered the scope of the client metadata
+     * @return the interned registered scope
+     */
+    @Nonnull
+    private InternedScope getRegistered(@Nonnull final Scope registered) {
+        InternedScope interned = registeredScopes.getIfPresent(registered);
+        if (interned == null) {
+            for (final Scope.Value value : registered) {
+                index(value.getValue());
+            }
+            interned = doIntern(registered);
+            registeredScopes.put(registered, interned);
+        }
+        return interned;
+    }
+
+    /**
+     * Give a bit index to the scope value, unless it already has one or the maximum number of indices is reached.
+     * 
+     * @param value the scope value
+     */
+    private void index(@Nonnull final String value) {
+        if (valueIndices.containsKey(value)) {
+            return;
+        }
+        synchronized (valueIndices) {
+            if (!valueIndices.containsKey(value) && indexCount < maxScopeValues) {
+                valueIndices.put(value, indexCount);
+                // Publishes the new index to the readers of the count.
+                indexCount = indexCount + 1;
+            }
+        }
+    }
+
+    /**
+     * Get the interned instance of the scope.
+     * 
+     * @param scope the scope
+     * @return the interned scope
+     */
+    @Nonnull
+    private InternedScope doIntern(@Nonnull final Scope scope) {
+        if (scope instanceof InternedScope && ((InternedScope) scope).getRegistry() == this) {
+            return (InternedScope) scope;
+        }
+        final String key = scope.toString();
+        final InternedScope interned = scopes.get(key);
+        if (interned != null) {
+            return interned;
+        }
+        if (scopes.size() >= maxScopes) {
+            scopes.clear();
+        }
+        final InternedScope created = new InternedScope(this, scope);
+        final InternedScope previous = scopes.putIfAbsent(key, created);
+        return previous != null ? previous : created;
+    }
+
+    /**
+     * Get the bit set of the values of the interned scope, computing it again if there are values without a bit index
+     * and indices have been given since it was computed.
+     * 
+     * @param scope the interned scope
+     * @return the bit set of the values
+     */
+    @Nonnull
+    private IndexedValues getIndexedValues(@Nonnull final InternedScope scope) {
+        final int count = indexCount;
+        IndexedValues values = scope.getIndexedValues();
+        if (values == null || (!values.isComplete() && values.getIndexCount() != count)) {
+            final BitSet bits = new BitSet(count);
+            boolean complete = true;
+            for (final Scope.Value value : scope) {
+                final Integer index = valueIndices.get(value.getValue());
+                if (index == null) {
+                    complete = false;
+                } else {
+                    bits.set(index);
+                }
+            }
+            values = new IndexedValues(bits, complete, count);
+            scope.setIndexedValues(values);
+        }
+        return values;
+    }
+
+    /**
+     * Get whether all the values of a scope have a bit index, and the bit set of the other scope has been computed
+     * with those indices.
+     * 
+     * @param values the bit set of the scope
+     * @param other the bit set of the other scope
+     * @return whether the values of the scope are all covered by the bit set of the other scope
+     */
+    private boolean isCovered(@Nonnull final IndexedValues values, @Nonnull final IndexedValues other) {
+        return values.isComplete() && other.getIndexCount() >= values.getBits().length();
+    }
+
+    /**
+     * Get the values of the scope that have their bit index set.
+     * 
+     * @param scope the scope
+     * @param bits the bit indices of the values to retain
+     * @return the retained values
+     */
+    @Nonnull
+    private Scope retainIndexed(@Nonnull final Scope scope, @Nonnull final BitSet bits) {
+        final Scope retained = new Scope();
+        for (final Scope.Value value : scope) {
+            final Integer index = valueIndices.get(value.getValue());
+            if (index != null && bits.get(index)) {
+                retained.add(value);
+            }
+        }
+        return retained;
+    }
+
+    /**
+     * Get the values of the scope that are also values of the other scope.
+     * 
+     * @param scope the scope
+     * @param allowed the allowed values
+     * @return the retained values
+     */
+    @Nonnull
+    private Scope retainContained(@Nonnull final Scope scope, @Nonnull final Scope allowed) {
+        final Scope retained = new Scope();
+        for (final Scope.Value value : scope) {
+            if (allowed.contains(value)) {
+                retained.add(value);
+            }
+        }
+        return retained;
+    }
+
+    /** The bit set of the values of an interned scope. */
+    private static final class IndexedValues {
+
+        /** The bit indices of the values. */
+        @Nonnull
+        private final BitSet bits;
+
+        /** Whether all the values have a bit index. */
+        private final boolean complete;
+
+        /** Number of bit indices given when the bit set was computed. */
+        private final int indexCount;
+
+        /**
+         * Constructor.
+         * 
+         * @param valueBits the bit indices of the values, not modified after construction
+         * @param allIndexed whether all the values have a bit index
+         * @param count number of bit indices given when the bit set was computed
+         */
+        private IndexedValues(@Nonnull final BitSet valueBits, final boolean allIndexed, final int count) {
+            bits = valueBits;
+            complete = allIndexed;
+            indexCount = count;
+        }
+
+        /**
+         * Get the bit indices of the values.
+         * 
+         * @return the bit indices of the values
+         */
+        @Nonnull
+        private BitSet getBits() {
+            return bits;
+        }
+
+        /**
+         * Get whether all the values have a bit index.
+         * 
+         * @return whether all the values have a bit index
+         */
+        private boolean isComplete() {
+            return complete;
+        }
+
+        /**
+         * Get the number of bit indices given when the bit set was computed.
+         * 
+         * @return number of bit indices given when the bit set was computed
+         */
+        private int getIndexCount() {
+            return indexCount;
+        }
+    }
+
+    /** Interned scope, carrying its bit set and the results of the operations on it. */
+    private static final class InternedScope extends UnmodifiableScope {
+
+        /** Serial version UID. */
+        private static final long serialVersionUID = 6342874981653274011L;
+
+        /** The registry the scope is interned in. */
+        @Nonnull
+        private final transient ScopeRegistry registry;
+
+        /** The results of reducing the scope, keyed by the allowed scope. */
+        @Nonnull
+        private final transient ConcurrentMap<InternedScope, InternedScope> results;
+
+        /** The bit set of the values. */
+        @Nullable
+        private transient volatile IndexedValues indexedValues;
+
+        /**
+         * Constructor.
+         * 
+         * @param owner the registry the scope is interned in
+         * @param scope the scope values
+         */
+        private InternedScope(@Nonnull final ScopeRegistry owner, @Nonnull final Scope scope) {
+            super(scope);
+            registry = owner;
+            results = new ConcurrentHashMap<>();
+        }
+
+        /**
+         * Get the registry the scope is interned in.
+         * 
+         * @return the registry the scope is interned in
+         */
+        @Nonnull
+        private ScopeRegistry getRegistry() {
+            return registry;
+        }
+
+        /**
+         * Get the bit set of the values.
+         * 
+         * @return the bit set of the values, null if not computed yet
+         */
+        @Nullable
+        private IndexedValues getIndexedValues() {
+            return indexedValues;
+        }
+
+        /**
+         * Set the bit set of the values.
+         * 
+         * @param values the bit set of the values
+         */
+        private void setIndexedValues(@Nonnull final IndexedValues values) {
+            indexedValues = values;
+        }
+
+        /**
+         * Get the result of reducing the scope to the allowed scope.
+         * 
+         * @param allowed the allowed scope
+         * @return the reduced scope, null if not known
+         */
+        @Nullable
+        private InternedScope getResult(@Nonnull final InternedScope allowed) {
+            return results.get(allowed);
+        }
+
+        /**
+         * Set the result of reducing the scope to the allowed scope.
+         * 
+         * @param allowed the allowed scope
+         * @param result the reduced scope
+         */
+        private void setResult(@Nonnull final InternedScope allowed, @Nonnull final InternedScope result) {
+            if (results.size() >= MAX_RESULTS_PER_SCOPE) {
+                results.clear();
+            }
+            results.put(allowed, result);
+        }
+    }
+}
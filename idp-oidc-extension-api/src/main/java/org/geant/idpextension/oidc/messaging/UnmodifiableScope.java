@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2017 - 2020, GÉANT
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an “AS IS” BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.geant.idpextension.oidc.messaging;
+
+import java.util.Collection;
+import java.util.Iterator;
+
+import javax.annotation.Nullable;
+
+import com.nimbusds.oauth2.sdk.Scope;
+
+/**
+ * Scope that cannot be modified after construction. Instances may be shared between requests and threads.
+ */
+public class UnmodifiableScope extends Scope {
+
+    /** Serial version UID. */
+    private static final long serialVersionUID = -1394315768542658213L;
+
+    /** Hash code of the values, computed once. */
+    private final int hashCode;
+
+    /**
+     * Constructor.
+     * 
+     * @param scope the scope values, may be null
+     */
+    public UnmodifiableScope(@Nullable final Scope scope) {
+        if (scope != null) {
+            for (final Scope.Value value : scope) {
+                super.add(value);
+            }
+        }
+        hashCode = super.hashCode();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean add(final Scope.Value value) {
+        throw new UnsupportedOperationException("Scope cannot be modified");
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean add(final String value) {
+        throw new UnsupportedOperationException("Scope cannot be modified");
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean addAll(final Collection<? extends Scope.Value> values) {
+        throw new UnsupportedOperationException("Scope cannot be modified");
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean remove(final Object value) {
+        throw new UnsupportedOperationException("Scope cannot be modified");
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean removeAll(final Collection<?> values) {
+        throw new UnsupportedOperationException("Scope cannot be modified");
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean retainAll(final Collection<?> values) {
+        throw new UnsupportedOperationException("Scope cannot be modified");
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void clear() {
+        throw new UnsupportedOperationException("Scope cannot be modified");
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Iterator<Scope.Value> iterator() {
+        final Iterator<Scope.Value> iterator = super.iterator();
+        return new Iterator<Scope.Value>() {
+
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            public Scope.Value next() {
+                return iterator.next();
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException("Scope cannot be modified");
+            }
+        };
+    }
+}
@@ -18,7 +18,9 @@ package org.geant.idpextension.oidc.messaging.context;
 
 import java.net.URI;
 import java.util.Date;
+import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import org.geant.idpextension.oidc.token.support.AccessTokenClaimsSet;
 import org.geant.idpextension.oidc.token.support.TokenClaimsSet;
 import org.opensaml.messaging.context.BaseContext;
 import com.nimbusds.jwt.JWT;
@@ -90,6 +92,10 @@ public class OIDCAuthenticationResponseContext extends BaseContext {
     @Nullable
     private AccessToken accessToken;
 
+    /** Claims of the issued access token. */
+    @Nullable
+    private AccessTokenClaimsSet accessTokenClaims;
+
     /** Refresh token. */
     @Nullable
     private RefreshToken refreshToken;
@@ -102,6 +108,10 @@ public class OIDCAuthenticationResponseContext extends BaseContext {
     @Nullable
     private ClaimsRequest requestedClaims;
 
+    /** Index of the requested claims and validated scope, built on first use. */
+    @Nullable
+    private RequestedClaimsIndex requestedClaimsIndex;
+
     /**
      * Get requested claims.
      * 
@@ -119,6 +129,21 @@ public class OIDCAuthenticationResponseContext extends BaseContext {
      */
     public void setRequestedClaims(@Nullable ClaimsRequest claims) {
         requestedClaims = claims;
+        requestedClaimsIndex = null;
+    }
+
+    /**
+     * Get the index of the requested claims and validated scope values. The index is built on first use and rebuilt
+     * after either of them is set.
+     * 
+     * @return index of the requested claims and validated scope values
+     */
+    @Nonnull
+    public RequestedClaimsIndex getRequestedClaimsIndex() {
+        if (requestedClaimsIndex == null) {
+            requestedClaimsIndex = new RequestedClaimsIndex(requestedClaims, requestedScope);
+        }
+        return requestedClaimsIndex;
     }
 
     /**
@@ -179,6 +204,25 @@ public class OIDCAuthenticationResponseContext extends BaseContext {
         accessToken = token == null ? null : new BearerAccessToken(token, lifeTime, null);
     }
 
+    /**
+     * Get claims of the issued access token.
+     * 
+     * @return claims of the issued access token
+     */
+    @Nullable
+    public AccessTokenClaimsSet getAccessTokenClaimsSet() {
+        return accessTokenClaims;
+    }
+
+    /**
+     * Set claims of the issued access token.
+     * 
+     * @param claims claims of the issued access token
+     */
+    public void setAccessTokenClaimsSet(@Nullable AccessTokenClaimsSet claims) {
+        accessTokenClaims = claims;
+    }
+
     /**
      * Get refresh token.
      * 
@@ -272,6 +316,7 @@ public class OIDCAuthenticationResponseContext extends BaseContext {
      */
     public void setScope(@Nullable Scope scope) {
         requestedScope = scope;
+        requestedClaimsIndex = null;
     }
 
     /**
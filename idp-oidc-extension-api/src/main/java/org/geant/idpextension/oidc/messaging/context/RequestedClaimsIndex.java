@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2017 - 2020, GÉANT
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an “AS IS” BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.geant.idpextension.oidc.messaging.context;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import com.nimbusds.oauth2.sdk.Scope;
+import com.nimbusds.openid.connect.sdk.ClaimsRequest;
+import com.nimbusds.openid.connect.sdk.ClaimsRequest.Entry;
+import com.nimbusds.openid.connect.sdk.claims.ClaimRequirement;
+
+/**
+ * Index of the requested claims and the validated scope of a request, built once per request by
+ * {@link OIDCAuthenticationResponseContext#getRequestedClaimsIndex()} for the attribute filter matchers and policy
+ * rules evaluated for every attribute. The index also carries the claim names resolved for the attributes of the
+ * request, keyed by the attribute id.
+ */
+@NotThreadSafe
+public class RequestedClaimsIndex {
+
+    /** Whether the request contains requested claims. */
+    private final boolean claimsRequested;
+
+    /** Requested id token claim names mapped to whether any of their entries is essential. */
+    @Nonnull
+    private final Map<String, Boolean> idTokenClaims;
+
+    /** Requested userinfo claim names mapped to whether any of their entries is essential. */
+    @Nonnull
+    private final Map<String, Boolean> userInfoClaims;
+
+    /** Validated scope values. */
+    @Nonnull
+    private final Set<String> scopes;
+
+    /** Claim names of the attributes keyed by the attribute id. */
+    @Nonnull
+    private final Map<String, Set<String>> attributeClaimNames;
+
+    /**
+     * Constructor.
+     * 
+     * @param request requested claims, may be null
+     * @param scope validated scope values, may be null
+     */
+    public RequestedClaimsIndex(@Nullable final ClaimsRequest request, @Nullable final Scope scope) {
+        claimsRequested =
+                request != null && (request.getIDTokenClaims() != null || request.getUserInfoClaims() != null);
+        idTokenClaims = indexClaims(request == null ? null : request.getIDTokenClaims());
+        userInfoClaims = indexClaims(request == null ? null : request.getUserInfoClaims());
+        scopes = scope == null || scope.isEmpty() ? Collections.<String> emptySet()
+                : Collections.unmodifiableSet(new HashSet<>(scope.toStringList()));
+        attributeClaimNames = new HashMap<>();
+    }
+
+    /**
+     * Index the claim names of the claims request entries.
+     * 
+     * @param entries claims request entries, may be null
+     * @return claim names mapped to whether any of their entries is essential
+     */
+    @Nonnull
+    private static Map<String, Boolean> indexClaims(@Nullable final Collection<Entry> entries) {
+        if (entries == null || entries.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        final Map<String, Boolean> claims = new HashMap<>(entries.size() * 2);
+        for (final Entry entry : entries) {
+            final boolean essential = ClaimRequirement.ESSENTIAL.equals(entry.getClaimRequirement());
+            if (essential || !claims.containsKey(entry.getClaimName())) {
+                claims.put(entry.getClaimName(), essential);
+            }
+        }
+        return Collections.unmodifiableMap(claims);
+    }
+
+    /**
+     * Whether the request contains requested claims.
+     * 
+     * @return whether the request contains requested claims
+     */
+    public boolean isClaimsRequested() {
+        return claimsRequested;
+    }
+
+    /**
+     * Get the requested id token claim names mapped to whether any of their entries is essential.
+     * 
+     * @return requested id token claim names mapped to their essentiality
+     */
+    @Nonnull
+    public Map<String, Boolean> getIDTokenClaims() {
+        return idTokenClaims;
+    }
+
+    /**
+     * Get the requested userinfo claim names mapped to whether any of their entries is essential.
+     * 
+     * @return requested userinfo claim names mapped to their essentiality
+     */
+    @Nonnull
+    public Map<String, Boolean> getUserInfoClaims() {
+        return userInfoClaims;
+    }
+
+    /**
+     * Get the validated scope values.
+     * 
+     * @return validated scope values
+     */
+    @Nonnull
+    public Set<String> getScopes() {
+        return scopes;
+    }
+
+    /**
+     * Get the claim names resolved for the attribute.
+     * 
+     * @param attributeId id of the attribute
+     * @return claim names of the attribute, null if not resolved yet
+     */
+    @Nullable
+    public Set<String> getAttributeClaimNames(@Nonnull final String attributeId) {
+        return attributeClaimNames.get(attributeId);
+    }
+
+    /**
+     * Set the claim names resolved for the attribute.
+     * 
+     * @param attributeId id of the attribute
+     * @param claimNames claim names of the attribute
+     */
+    public void setAttributeClaimNames(@Nonnull final String attributeId, @Nonnull final Set<String> claimNames) {
+        attributeClaimNames.put(attributeId, claimNames);
+    }
+}
@@ -16,14 +16,35 @@
 
 package org.geant.idpextension.oidc.metadata.resolver;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 import org.apache.http.client.HttpClient;
 import org.geant.idpextension.oidc.metadata.support.RemoteJwkUtils;
+import org.geant.idpextension.oidc.storage.InvalidationBus;
+import org.geant.idpextension.oidc.storage.InvalidationListener;
+import org.geant.idpextension.oidc.storage.InvalidationTopics;
 import org.opensaml.security.httpclient.HttpClientSecurityParameters;
 import org.opensaml.storage.StorageCapabilities;
 import org.opensaml.storage.StorageCapabilitiesEx;
@@ -34,21 +55,36 @@ import org.slf4j.LoggerFactory;
 
 import com.nimbusds.jose.jwk.JWKSet;
 
+import net.shibboleth.utilities.java.support.annotation.Duration;
+import net.shibboleth.utilities.java.support.annotation.constraint.NonNegative;
 import net.shibboleth.utilities.java.support.annotation.constraint.NonnullAfterInit;
 import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
 import net.shibboleth.utilities.java.support.component.AbstractIdentifiableInitializableComponent;
 import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
+import net.shibboleth.utilities.java.support.collection.Pair;
 import net.shibboleth.utilities.java.support.component.ComponentSupport;
 import net.shibboleth.utilities.java.support.logic.Constraint;
+import net.shibboleth.utilities.java.support.primitive.StringSupport;
 
 /**
  * Stores fetched remote key set values for a desired period of time.
+ * 
+ * <p>If a snapshot file is set, the cached key sets are written to it on shutdown and optionally at a regular
+ * interval, and the unexpired ones are restored to the storage on startup. This keeps the cache warm over restarts
+ * when the storage itself is not persistent. The snapshot is a versioned binary file protected by a checksum, and it
+ * is ignored as a whole if it cannot be validated.</p>
  */
 public class RemoteJwkSetCache extends AbstractIdentifiableInitializableComponent {
 
     /** The context name in the {@link StorageService}. */
     public static final String CONTEXT_NAME = "oidcRemoteJwkSetContents";
 
+    /** Magic number starting the snapshot file. */
+    private static final int SNAPSHOT_MAGIC = 0x4f4a4b53;
+
+    /** Version of the snapshot file format. */
+    private static final int SNAPSHOT_VERSION = 1;
+
     /** Logger. */
     private final Logger log = LoggerFactory.getLogger(RemoteJwkSetCache.class);
 
@@ -61,6 +97,39 @@ public class RemoteJwkSetCache extends AbstractIdentifiableInitializableComponen
     /** HTTP client security parameters. */
     @Nullable private HttpClientSecurityParameters httpClientSecurityParameters;
 
+    /** The file the cached key sets are written to and restored from, null if not used. */
+    @Nullable private File snapshotFile;
+
+    /** Interval for writing the snapshot, in addition to the shutdown. Default value: 0, only on shutdown. */
+    @Duration @NonNegative private long snapshotInterval;
+
+    /** Timer used for writing the snapshot at the interval. */
+    @Nullable private Timer snapshotTimer;
+
+    /** The context and key pairs of the cached key sets, tracked for writing the snapshot. */
+    @Nonnull private final Set<Pair<String, String>> snapshotKeys;
+
+    /** The bus notifying about the invalidated key sets, null if not used. */
+    @Nullable private InvalidationBus invalidationBus;
+
+    /** The listener removing the key sets invalidated through the bus. */
+    @Nonnull private final InvalidationListener invalidationListener;
+
+    /** Constructor. */
+    public RemoteJwkSetCache() {
+        snapshotKeys = Collections.newSetFromMap(new ConcurrentHashMap<Pair<String, String>, Boolean>());
+        invalidationListener = new InvalidationListener() {
+            public void invalidate(final String topic, final String key) {
+                final int separator = key != null ? key.indexOf('!') : -1;
+                if (separator > 0) {
+                    remove(key.substring(0, separator), key.substring(separator + 1));
+                } else {
+                    log.debug("Ignoring the invalidation of all the remote JWK sets, they expire by themselves");
+                }
+            }
+        };
+    }
+
     /**
      * Get the backing store for the remote JWK set contents.
      * 
@@ -110,6 +179,41 @@ public class RemoteJwkSetCache extends AbstractIdentifiableInitializableComponen
         httpClientSecurityParameters = params;
     }
 
+    /**
+     * Set the path of the file the cached key sets are written to and restored from.
+     * 
+     * @param path path of the snapshot file, null or empty not to use a snapshot
+     */
+    public void setSnapshotPath(@Nullable final String path) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        final String trimmed = StringSupport.trimOrNull(path);
+        snapshotFile = trimmed != null ? new File(trimmed) : null;
+    }
+
+    /**
+     * Set the interval for writing the snapshot, in addition to writing it on shutdown. 0 writes it only on shutdown.
+     * 
+     * @param interval interval for writing the snapshot in milliseconds
+     */
+    @Duration public void setSnapshotInterval(@Duration @NonNegative final long interval) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        snapshotInterval = Constraint.isGreaterThanOrEqual(0, interval,
+                "Snapshot interval must be greater than or equal to 0");
+    }
+
+    /**
+     * Set the bus notifying about the invalidated key sets.
+     * 
+     * @param bus the invalidation bus, null if not used
+     */
+    public void setInvalidationBus(@Nullable final InvalidationBus bus) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        invalidationBus = bus;
+    }
+
     /** {@inheritDoc} */
     @Override
     public void doInitialize() throws ComponentInitializationException {
@@ -119,6 +223,203 @@ public class RemoteJwkSetCache extends AbstractIdentifiableInitializableComponen
         if (httpClient == null) {
             throw new ComponentInitializationException("HttpClient cannot be null");
         }
+        if (invalidationBus != null) {
+            invalidationBus.subscribe(InvalidationTopics.REMOTE_JWK_SET, invalidationListener);
+        }
+        if (snapshotFile != null) {
+            readSnapshot();
+            if (snapshotInterval > 0) {
+                snapshotTimer = new Timer("RemoteJwkSetCacheSnapshot", true);
+                snapshotTimer.schedule(new TimerTask() {
+                    public void run() {
+                        writeSnapshot();
+                    }
+                }, snapshotInterval, snapshotInterval);
+            }
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void doDestroy() {
+        if (invalidationBus != null) {
+            invalidationBus.unsubscribe(InvalidationTopics.REMOTE_JWK_SET, invalidationListener);
+        }
+        if (snapshotTimer != null) {
+            snapshotTimer.cancel();
+            snapshotTimer = null;
+        }
+        writeSnapshot();
+        snapshotKeys.clear();
+        super.doDestroy();
+    }
+
+    /**
+     * Writes the unexpired cached key sets to the snapshot file, if one is set. The file is replaced atomically
+     * where supported.
+     */
+    public synchronized void writeSnapshot() {
+        if (snapshotFile == null) {
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        try {
+            final ByteArrayOutputStream entryBytes = new ByteArrayOutputStream();
+            final DataOutputStream entries = new DataOutputStream(entryBytes);
+            int count = 0;
+            final Iterator<Pair<String, String>> iterator = snapshotKeys.iterator();
+            while (iterator.hasNext()) {
+                final Pair<String, String> contextKey = iterator.next();
+                final StorageRecord<?> entry = storage.read(contextKey.getFirst(), contextKey.getSecond());
+                if (entry == null || entry.getExpiration() == null || entry.getExpiration() <= now) {
+                    iterator.remove();
+                    continue;
+                }
+                writeString(entries, contextKey.getFirst());
+                writeString(entries, contextKey.getSecond());
+                entries.writeLong(entry.getExpiration());
+                writeString(entries, entry.getValue());
+                count++;
+            }
+            final ByteArrayOutputStream payload = new ByteArrayOutputStream(entryBytes.size() + 4);
+            new DataOutputStream(payload).writeInt(count);
+            entryBytes.writeTo(payload);
+            final CRC32 checksum = new CRC32();
+            checksum.update(payload.toByteArray());
+
+            final ByteArrayOutputStream fileBytes = new ByteArrayOutputStream(payload.size() + 20);
+            final DataOutputStream out = new DataOutputStream(fileBytes);
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeInt(payload.size());
+            payload.writeTo(out);
+            out.writeLong(checksum.getValue());
+            out.flush();
+
+            final File tempFile = new File(snapshotFile.getAbsolutePath() + ".tmp");
+            Files.write(tempFile.toPath(), fileBytes.toByteArray());
+            try {
+                Files.move(tempFile.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (final AtomicMoveNotSupportedException e) {
+                Files.move(tempFile.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            log.debug("Wrote {} remote JWK sets to the snapshot {}", count, snapshotFile);
+        } catch (final IOException e) {
+            log.error("Could not write the remote JWK set snapshot {}", snapshotFile, e);
+        }
+    }
+
+    /**
+     * Restores the unexpired key sets from the snapshot file to the storage. The key sets already in the storage are
+     * kept. The snapshot is ignored if its format, version or checksum does not match.
+     */
+    protected void readSnapshot() {
+        if (!snapshotFile.exists()) {
+            log.debug("No remote JWK set snapshot {} to restore", snapshotFile);
+            return;
+        }
+        try (final DataInputStream in =
+                new DataInputStream(new BufferedInputStream(new FileInputStream(snapshotFile)))) {
+            if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION) {
+                log.warn("Remote JWK set snapshot {} has an unsupported format, ignoring it", snapshotFile);
+                return;
+            }
+            final int length = in.readInt();
+            if (length < 4 || length > snapshotFile.length()) {
+                log.warn("Remote JWK set snapshot {} is truncated, ignoring it", snapshotFile);
+                return;
+            }
+            final byte[] payload = new byte[length];
+            in.readFully(payload);
+            final CRC32 checksum = new CRC32();
+            checksum.update(payload);
+            if (in.readLong() != checksum.getValue()) {
+                log.warn("Remote JWK set snapshot {} does not match its checksum, ignoring it", snapshotFile);
+                return;
+            }
+            final DataInputStream entries = new DataInputStream(new ByteArrayInputStream(payload));
+            final int count = entries.readInt();
+            final long now = System.currentTimeMillis();
+            int restored = 0;
+            for (int i = 0; i < count; i++) {
+                final String context = readString(entries);
+                final String key = readString(entries);
+                final long expiration = entries.readLong();
+                final String value = readString(entries);
+                if (expiration > now) {
+                    if (storage.create(context, key, value, expiration)) {
+                        restored++;
+                    }
+                    snapshotKeys.add(new Pair<>(context, key));
+                }
+            }
+            log.info("Restored {} remote JWK sets from the snapshot {}", restored, snapshotFile);
+        } catch (final IOException e) {
+            log.warn("Could not read the remote JWK set snapshot {}, ignoring it", snapshotFile, e);
+        }
+    }
+
+    /**
+     * Writes a string of any length as UTF-8, prefixed with its length in bytes.
+     * 
+     * @param out the output to write to
+     * @param value the string to write
+     * @throws IOException if the string cannot be written
+     */
+    private static void writeString(@Nonnull final DataOutputStream out, @Nonnull final String value)
+            throws IOException {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads a string written by {@link #writeString(DataOutputStream, String)}.
+     * 
+     * @param in the input to read from
+     * @return the string read
+     * @throws IOException if the string cannot be read
+     */
+    @Nonnull private static String readString(@Nonnull final DataInputStream in) throws IOException {
+        final int length = in.readInt();
+        if (length < 0 || length > in.available()) {
+            throw new IOException("Invalid string length " + length);
+        }
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Removes the cached key set, so that it is fetched again when next needed. The other instances and nodes are
+     * notified through the invalidation bus, if set.
+     * 
+     * @param context a context label to subdivide the cache
+     * @param uri the key set URI
+     */
+    public void invalidate(@Nonnull @NotEmpty final String context, @Nonnull final URI uri) {
+        ComponentSupport.ifNotInitializedThrowUninitializedComponentException(this);
+
+        remove(context, uri.toString());
+        if (invalidationBus != null) {
+            invalidationBus.publish(InvalidationTopics.REMOTE_JWK_SET, context + '!' + uri);
+        }
+    }
+
+    /**
+     * Removes the cached key set from the storage.
+     * 
+     * @param context a context label to subdivide the cache
+     * @param key the key set URI
+     */
+    private void remove(@Nonnull final String context, @Nonnull final String key) {
+        snapshotKeys.remove(new Pair<>(context, key));
+        try {
+            storage.delete(context, key);
+        } catch (final IOException e) {
+            log.error("Could not remove the remote JWK set {} from the storage", key, e);
+        }
     }
 
     /**
@@ -159,12 +460,18 @@ public class RemoteJwkSetCache extends AbstractIdentifiableInitializableComponen
                         httpClientSecurityParameters);
                 if (remoteJwkSet != null && remoteJwkSet.getKeys() != null && !remoteJwkSet.getKeys().isEmpty()) {
                     storage.create(context, key, remoteJwkSet.toString(), expires);
+                    if (snapshotFile != null) {
+                        snapshotKeys.add(new Pair<>(context, key));
+                    }
                     return remoteJwkSet;
                 } else {
                     log.warn("Could not find any remote keys from {}", key);
                 }
             } else {
                 final JWKSet cachedSet = JWKSet.parse(entry.getValue());
+                if (snapshotFile != null) {
+                    snapshotKeys.add(new Pair<>(context, key));
+                }
                 log.debug("Cached value found and will be returned, expires at {}", entry.getExpiration());
                 return cachedSet;
             }
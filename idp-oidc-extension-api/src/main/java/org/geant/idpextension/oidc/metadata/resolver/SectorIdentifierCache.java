@@ -0,0 +1,501 @@
+/*
+ * Copyright (c) 2017 - 2020, GÉANT
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an “AS IS” BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.geant.idpextension.oidc.metadata.resolver;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.ParseException;
+import org.apache.http.StatusLine;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.methods.RequestBuilder;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.util.EntityUtils;
+import org.geant.idpextension.oidc.storage.InvalidationBus;
+import org.geant.idpextension.oidc.storage.InvalidationListener;
+import org.geant.idpextension.oidc.storage.InvalidationTopics;
+import org.opensaml.security.httpclient.HttpClientSecurityParameters;
+import org.opensaml.security.httpclient.HttpClientSecuritySupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.minidev.json.JSONArray;
+import net.minidev.json.parser.JSONParser;
+import net.shibboleth.utilities.java.support.annotation.Duration;
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullAfterInit;
+import net.shibboleth.utilities.java.support.annotation.constraint.Positive;
+import net.shibboleth.utilities.java.support.annotation.constraint.ThreadSafeAfterInit;
+import net.shibboleth.utilities.java.support.component.AbstractIdentifiableInitializableComponent;
+import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
+import net.shibboleth.utilities.java.support.component.ComponentSupport;
+import net.shibboleth.utilities.java.support.logic.Constraint;
+
+/**
+ * Caches the redirect URIs listed in the documents behind sector_identifier_uri values.
+ *
+ * <p>
+ * The entries are kept in memory for a configurable period of time and shared between all the registration requests
+ * and pairwise subject lookups using the same sector_identifier_uri. Concurrent requests for the same URI are
+ * collapsed into a single fetch. Expired entries carrying an ETag are revalidated with a conditional request, and
+ * only re-parsed if the document has changed. The entries invalidated on this node are published to an
+ * {@link InvalidationBus}, if set, so that the other nodes fetch the document again too.
+ * </p>
+ */
+@ThreadSafeAfterInit
+public class SectorIdentifierCache extends AbstractIdentifiableInitializableComponent {
+
+    /** Logger. */
+    private final Logger log = LoggerFactory.getLogger(SectorIdentifierCache.class);
+
+    /** The cached entries, keyed by the sector identifier URI. */
+    @Nonnull private final ConcurrentMap<String, CachedSectorIdentifier> entries;
+
+    /** The fetches currently in progress, keyed by the sector identifier URI. */
+    @Nonnull private final ConcurrentMap<String, FutureTask<CachedSectorIdentifier>> inflight;
+
+    /** The {@link HttpClient} to use. */
+    @NonnullAfterInit private HttpClient httpClient;
+
+    /** HTTP client security parameters. */
+    @Nullable private HttpClientSecurityParameters httpClientSecurityParameters;
+
+    /** Lifetime of a cache entry. Default value: 1 hour. */
+    @Positive @Duration private long entryExpiration;
+
+    /** Maximum number of entries kept in the cache. Default value: 10000. */
+    @Positive private int maxCacheSize;
+
+    /** The bus notifying about the invalidated entries, null if not used. */
+    @Nullable private InvalidationBus invalidationBus;
+
+    /** The listener removing the entries invalidated through the bus. */
+    @Nonnull private final InvalidationListener invalidationListener;
+
+    /**
+     * Constructor.
+     */
+    public SectorIdentifierCache() {
+        entries = new ConcurrentHashMap<>();
+        inflight = new ConcurrentHashMap<>();
+        entryExpiration = 60 * 60 * 1000;
+        maxCacheSize = 10000;
+        invalidationListener = new InvalidationListener() {
+            public void invalidate(final String topic, final String key) {
+                if (key != null) {
+                    entries.remove(key);
+                } else {
+                    entries.clear();
+                }
+            }
+        };
+    }
+
+    /**
+     * Set the {@link HttpClient} to use.
+     *
+     * @param client client to use
+     */
+    public void setHttpClient(@Nonnull final HttpClient client) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        ComponentSupport.ifDestroyedThrowDestroyedComponentException(this);
+
+        httpClient = Constraint.isNotNull(client, "HttpClient cannot be null");
+    }
+
+    /**
+     * Set the optional client security parameters.
+     *
+     * @param params the new client security parameters
+     */
+    public void setHttpClientSecurityParameters(@Nullable final HttpClientSecurityParameters params) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        ComponentSupport.ifDestroyedThrowDestroyedComponentException(this);
+
+        httpClientSecurityParameters = params;
+    }
+
+    /**
+     * Set the lifetime of a cache entry.
+     *
+     * @param expiration lifetime of a cache entry in milliseconds
+     */
+    @Duration
+    public void setEntryExpiration(@Positive @Duration final long expiration) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        entryExpiration = Constraint.isGreaterThan(0, expiration,
+                "sector identifier cache entry expiration must be greater than 0");
+    }
+
+    /**
+     * Set the maximum number of entries kept in the cache.
+     *
+     * @param size maximum number of entries
+     */
+    public void setMaxCacheSize(@Positive final int size) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        maxCacheSize = (int) Constraint.isGreaterThan(0, size, "sector identifier cache size must be greater than 0");
+    }
+
+    /**
+     * Set the bus notifying about the invalidated entries.
+     *
+     * @param bus the invalidation bus, null if not used
+     */
+    public void setInvalidationBus(@Nullable final InvalidationBus bus) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        invalidationBus = bus;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void doInitialize() throws ComponentInitializationException {
+        if (httpClient == null) {
+            throw new ComponentInitializationException("HttpClient cannot be null");
+        }
+        if (invalidationBus != null) {
+            invalidationBus.subscribe(InvalidationTopics.SECTOR_IDENTIFIER, invalidationListener);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void doDestroy() {
+        if (invalidationBus != null) {
+            invalidationBus.unsubscribe(InvalidationTopics.SECTOR_IDENTIFIER, invalidationListener);
+        }
+        entries.clear();
+        super.doDestroy();
+    }
+
+    /**
+     * Returns the redirect URIs listed behind the given sector identifier URI. A valid cached entry is returned if
+     * one exists, otherwise the document is (re)fetched.
+     *
+     * @param sectorIdUri the sector identifier URI
+     *
+     * @return the cached entry, null if the contents could not be fetched or parsed.
+     */
+    @Nullable public CachedSectorIdentifier fetch(@Nonnull final URI sectorIdUri) {
+        final String key = sectorIdUri.toString();
+        final CachedSectorIdentifier cached = entries.get(key);
+        if (cached != null && !cached.isExpired()) {
+            log.debug("Cached value found for '{}' and will be returned, expires at {}", key, cached.getExpiration());
+            return cached;
+        }
+
+        final FutureTask<CachedSectorIdentifier> task =
+                new FutureTask<>(new Callable<CachedSectorIdentifier>() {
+                    public CachedSectorIdentifier call() {
+                        return load(sectorIdUri, cached);
+                    }
+                });
+        final FutureTask<CachedSectorIdentifier> running = inflight.putIfAbsent(key, task);
+        if (running == null) {
+            try {
+                task.run();
+            } finally {
+                inflight.remove(key, task);
+            }
+            return getResult(key, task);
+        }
+        log.debug("Fetch for '{}' is already in progress, waiting for its result", key);
+        return getResult(key, running);
+    }
+
+    /**
+     * Returns the cached entry for the given sector identifier URI without fetching it.
+     *
+     * @param sectorIdUri the sector identifier URI
+     *
+     * @return the cached entry, null if there is no valid entry in the cache.
+     */
+    @Nullable public CachedSectorIdentifier peek(@Nonnull final URI sectorIdUri) {
+        final CachedSectorIdentifier cached = entries.get(sectorIdUri.toString());
+        return cached == null || cached.isExpired() ? null : cached;
+    }
+
+    /**
+     * Removes the entry for the given sector identifier URI from the cache, so that the document is fetched again when
+     * next needed. The other nodes are notified through the invalidation bus, if set.
+     *
+     * @param sectorIdUri the sector identifier URI
+     */
+    public void invalidate(@Nonnull final URI sectorIdUri) {
+        entries.remove(sectorIdUri.toString());
+        if (invalidationBus != null) {
+            invalidationBus.publish(InvalidationTopics.SECTOR_IDENTIFIER, sectorIdUri.toString());
+        }
+    }
+
+    /**
+     * Waits for the given fetch task to finish and returns its result.
+     *
+     * @param key the cache key
+     * @param task the fetch task
+     *
+     * @return the result of the task, null if it failed.
+     */
+    @Nullable private CachedSectorIdentifier getResult(@Nonnull final String key,
+            @Nonnull final FutureTask<CachedSectorIdentifier> task) {
+        try {
+            return task.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("Interrupted while waiting for the sector_identifier_uri contents from {}", key);
+        } catch (final ExecutionException e) {
+            log.error("Could not get the sector_identifier_uri contents from {}", key, e.getCause());
+        }
+        return null;
+    }
+
+    /**
+     * Fetches and parses the contents behind the sector identifier URI, and stores the result to the cache.
+     *
+     * @param sectorIdUri the sector identifier URI
+     * @param previous the previous (expired) entry, used for revalidation if it has an ETag
+     *
+     * @return the new entry, null if the contents could not be fetched or parsed.
+     */
+    @Nullable protected CachedSectorIdentifier load(@Nonnull final URI sectorIdUri,
+            @Nullable final CachedSectorIdentifier previous) {
+        final String key = sectorIdUri.toString();
+        final HttpResponse response;
+        try {
+            final RequestBuilder builder = RequestBuilder.get().setUri(sectorIdUri);
+            if (previous != null && previous.getETag() != null) {
+                builder.setHeader(HttpHeaders.IF_NONE_MATCH, previous.getETag());
+            }
+            final HttpUriRequest get = builder.build();
+            final HttpClientContext clientContext = HttpClientContext.create();
+            HttpClientSecuritySupport.marshalSecurityParameters(clientContext, httpClientSecurityParameters, true);
+            HttpClientSecuritySupport.addDefaultTLSTrustEngineCriteria(clientContext, get);
+            response = httpClient.execute(get, clientContext);
+            HttpClientSecuritySupport.checkTLSCredentialEvaluated(clientContext, get.getURI().getScheme());
+        } catch (final Exception e) {
+            log.error("Could not get the sector_identifier_uri contents from {}", key, e);
+            return null;
+        }
+        if (response == null) {
+            log.error("Could not get the sector_identifier_uri contents from {}", key);
+            return null;
+        }
+        final StatusLine status = response.getStatusLine();
+        final String output;
+        try {
+            if (status != null && status.getStatusCode() == HttpStatus.SC_NOT_MODIFIED && previous != null) {
+                log.debug("Contents of '{}' not modified, extending the cached entry", key);
+                return store(key, new CachedSectorIdentifier(previous.getRedirectURIs(), previous.getHosts(),
+                        previous.getETag(), System.currentTimeMillis() + entryExpiration));
+            }
+            if (status != null && status.getStatusCode() != HttpStatus.SC_OK) {
+                log.error("Unexpected status code {} when fetching sector_identifier_uri contents from {}",
+                        status.getStatusCode(), key);
+                return null;
+            }
+            if (response.getEntity() == null) {
+                log.error("No contents found from the sector_identifier_uri {}", key);
+                return null;
+            }
+            output = EntityUtils.toString(response.getEntity(), "UTF-8");
+        } catch (final ParseException | IOException e) {
+            log.error("Could not parse the sector_identifier_uri contents from {}", key);
+            return null;
+        } finally {
+            if (response.getEntity() != null) {
+                EntityUtils.consumeQuietly(response.getEntity());
+            }
+        }
+        log.trace("Fetched the following response body: {}", output);
+        final Set<URI> redirectURIs = parseRedirectURIs(key, output);
+        if (redirectURIs == null) {
+            return null;
+        }
+        final Set<String> hosts = new HashSet<>();
+        for (final URI redirectURI : redirectURIs) {
+            if (redirectURI.getHost() != null) {
+                hosts.add(redirectURI.getHost().toLowerCase(Locale.ROOT));
+            }
+        }
+        final Header etag = response.getFirstHeader(HttpHeaders.ETAG);
+        return store(key, new CachedSectorIdentifier(redirectURIs, hosts, etag != null ? etag.getValue() : null,
+                System.currentTimeMillis() + entryExpiration));
+    }
+
+    /**
+     * Parses the JSON array of redirect URIs.
+     *
+     * @param key the sector identifier URI, for logging
+     * @param output the fetched contents
+     *
+     * @return the parsed redirect URIs, null if the contents could not be parsed.
+     */
+    @Nullable private Set<URI> parseRedirectURIs(@Nonnull final String key, @Nullable final String output) {
+        final Object parsed;
+        try {
+            parsed = new JSONParser(JSONParser.MODE_PERMISSIVE).parse(output);
+        } catch (final net.minidev.json.parser.ParseException e) {
+            log.error("Could not parse the sector_identifier_uri contents from {}", key);
+            return null;
+        }
+        if (!(parsed instanceof JSONArray)) {
+            log.error("sector_identifier_uri contents from {} is not a JSON array of URLs", key);
+            return null;
+        }
+        final Set<URI> redirectURIs = new LinkedHashSet<>();
+        for (final Object item : (JSONArray) parsed) {
+            if (!(item instanceof String)) {
+                log.error("sector_identifier_uri contents from {} contains a non-string value", key);
+                return null;
+            }
+            try {
+                redirectURIs.add(new URI((String) item));
+            } catch (final java.net.URISyntaxException e) {
+                log.error("sector_identifier_uri contents from {} contains an invalid URL {}", key, item);
+                return null;
+            }
+        }
+        return redirectURIs;
+    }
+
+    /**
+     * Stores the entry to the cache, purging the expired entries if the cache is full.
+     *
+     * @param key the cache key
+     * @param entry the entry to store
+     *
+     * @return the entry
+     */
+    @Nonnull private CachedSectorIdentifier store(@Nonnull final String key,
+            @Nonnull final CachedSectorIdentifier entry) {
+        if (entries.size() >= maxCacheSize && !entries.containsKey(key)) {
+            final Iterator<Map.Entry<String, CachedSectorIdentifier>> iterator = entries.entrySet().iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().getValue().isExpired()) {
+                    iterator.remove();
+                }
+            }
+            if (entries.size() >= maxCacheSize) {
+                log.warn("Sector identifier cache is full ({} entries), not caching {}", maxCacheSize, key);
+                return entry;
+            }
+        }
+        entries.put(key, entry);
+        return entry;
+    }
+
+    /**
+     * The parsed contents of a sector identifier URI.
+     */
+    public static final class CachedSectorIdentifier {
+
+        /** The redirect URIs listed in the document. */
+        @Nonnull private final Set<URI> redirectURIs;
+
+        /** The lower-cased hosts of the redirect URIs. */
+        @Nonnull private final Set<String> hosts;
+
+        /** The ETag of the document, if any. */
+        @Nullable private final String etag;
+
+        /** The expiration time of the entry, in milliseconds since the beginning of the epoch. */
+        private final long expiration;
+
+        /**
+         * Constructor.
+         *
+         * @param uris the redirect URIs listed in the document
+         * @param hostSet the lower-cased hosts of the redirect URIs
+         * @param tag the ETag of the document
+         * @param expires the expiration time of the entry
+         */
+        public CachedSectorIdentifier(@Nonnull final Set<URI> uris, @Nonnull final Set<String> hostSet,
+                @Nullable final String tag, final long expires) {
+            redirectURIs = Collections.unmodifiableSet(uris);
+            hosts = Collections.unmodifiableSet(hostSet);
+            etag = tag;
+            expiration = expires;
+        }
+
+        /**
+         * Get the redirect URIs listed in the document.
+         *
+         * @return the redirect URIs
+         */
+        @Nonnull public Set<URI> getRedirectURIs() {
+            return redirectURIs;
+        }
+
+        /**
+         * Get the lower-cased hosts of the redirect URIs listed in the document.
+         *
+         * @return the hosts
+         */
+        @Nonnull public Set<String> getHosts() {
+            return hosts;
+        }
+
+        /**
+         * Get the ETag of the document.
+         *
+         * @return the ETag, null if none was returned
+         */
+        @Nullable public String getETag() {
+            return etag;
+        }
+
+        /**
+         * Get the expiration time of the entry.
+         *
+         * @return the expiration time, in milliseconds since the beginning of the epoch
+         */
+        public long getExpiration() {
+            return expiration;
+        }
+
+        /**
+         * Whether the entry has expired.
+         *
+         * @return true if the entry has expired, false otherwise
+         */
+        public boolean isExpired() {
+            return System.currentTimeMillis() >= expiration;
+        }
+    }
+}
@@ -81,6 +81,22 @@ public final class OidcEventIds {
      */
     @Nonnull @NotEmpty public static final String INVALID_REQUEST_URI = "InvalidRequestUri";
 
+    /**
+     * The registered redirect_uris are not all listed in the contents of the registered sector_identifier_uri, or the
+     * contents could not be fetched.
+     */
+    @Nonnull @NotEmpty public static final String INVALID_SECTOR_IDENTIFIER_URI = "InvalidSectorIdentifierURI";
+
+    /**
+     * The userinfo response is built from the claims snapshot carried in the access token.
+     */
+    @Nonnull @NotEmpty public static final String USE_CLAIMS_SNAPSHOT = "UseClaimsSnapshot";
+
+    /**
+     * The resolved attributes are served from the attribute resolution cache.
+     */
+    @Nonnull @NotEmpty public static final String USE_CACHED_ATTRIBUTES = "UseCachedAttributes";
+
     /**
      * Constructor.
      */
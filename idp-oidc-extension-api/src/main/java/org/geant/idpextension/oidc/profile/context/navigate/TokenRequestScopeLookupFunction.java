@@ -17,6 +17,9 @@
 package org.geant.idpextension.oidc.profile.context.navigate;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.geant.idpextension.oidc.messaging.ScopeRegistry;
 import org.geant.idpextension.oidc.token.support.TokenClaimsSet;
 
 import com.nimbusds.oauth2.sdk.Scope;
@@ -25,14 +28,28 @@ import com.nimbusds.oauth2.sdk.Scope;
  * For Token and UserInfo end points.
  * 
  * A function that returns copy of requested scope via a lookup function. This lookup locates scope from token for token
- * request handling. If token claims are not available, null is returned.
+ * request handling. If token claims are not available, null is returned. If a {@link ScopeRegistry} is set, the
+ * shared canonical instance of the scope is returned.
  */
 public class TokenRequestScopeLookupFunction extends AbstractTokenClaimsLookupFunction<Scope> {
 
+    /** The registry of canonical scopes, if any. */
+    @Nullable
+    private ScopeRegistry scopeRegistry;
+
+    /**
+     * Set the registry of canonical scopes.
+     * 
+     * @param registry the registry of canonical scopes
+     */
+    public void setScopeRegistry(@Nullable final ScopeRegistry registry) {
+        scopeRegistry = registry;
+    }
+
     /** {@inheritDoc} */
     @Override
     Scope doLookup(@Nonnull TokenClaimsSet tokenClaims) {
-        return tokenClaims.getScope();
+        return scopeRegistry != null ? scopeRegistry.intern(tokenClaims.getScope()) : tokenClaims.getScope();
     }
 
 }
\ No newline at end of file
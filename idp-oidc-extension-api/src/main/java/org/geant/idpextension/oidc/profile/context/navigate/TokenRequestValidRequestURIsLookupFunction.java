@@ -17,7 +17,7 @@
 package org.geant.idpextension.oidc.profile.context.navigate;
 
 import java.net.URI;
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.Set;
 import javax.annotation.Nonnull;
 import org.geant.idpextension.oidc.token.support.TokenClaimsSet;
@@ -33,8 +33,6 @@ public class TokenRequestValidRequestURIsLookupFunction extends AbstractTokenCla
     /** {@inheritDoc} */
     @Override
     protected Set<URI> doLookup(@Nonnull TokenClaimsSet tokenClaims) {
-        Set<URI> uris = new HashSet<URI>();
-        uris.add(tokenClaims.getRedirectURI());
-        return uris;
+        return Collections.singleton(tokenClaims.getRedirectURI());
     }
 }
\ No newline at end of file
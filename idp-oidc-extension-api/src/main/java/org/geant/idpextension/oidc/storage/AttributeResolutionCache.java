@@ -0,0 +1,572 @@
+/*
+ * Copyright (c) 2017 - 2020, GÉANT
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an “AS IS” BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.geant.idpextension.oidc.storage;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.minidev.json.JSONArray;
+import net.minidev.json.JSONObject;
+import net.minidev.json.JSONValue;
+import net.shibboleth.idp.attribute.ByteAttributeValue;
+import net.shibboleth.idp.attribute.EmptyAttributeValue;
+import net.shibboleth.idp.attribute.IdPAttribute;
+import net.shibboleth.idp.attribute.IdPAttributeValue;
+import net.shibboleth.idp.attribute.ScopedStringAttributeValue;
+import net.shibboleth.idp.attribute.StringAttributeValue;
+import net.shibboleth.utilities.java.support.annotation.Duration;
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullAfterInit;
+import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
+import net.shibboleth.utilities.java.support.annotation.constraint.Positive;
+import net.shibboleth.utilities.java.support.annotation.constraint.ThreadSafeAfterInit;
+import net.shibboleth.utilities.java.support.codec.Base64Support;
+import net.shibboleth.utilities.java.support.component.AbstractIdentifiableInitializableComponent;
+import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
+import net.shibboleth.utilities.java.support.component.ComponentSupport;
+import net.shibboleth.utilities.java.support.logic.Constraint;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.opensaml.core.metrics.MetricsSupport;
+import org.opensaml.storage.StorageCapabilities;
+import org.opensaml.storage.StorageRecord;
+import org.opensaml.storage.StorageService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Caches the results of attribute resolution across the flows, keyed by the principal, the relying party and the
+ * sector identifier (attribute recipient group) the attributes were resolved for.
+ *
+ * <p>
+ * The results are kept in a local near cache and written to the backing {@link StorageService} so that the other
+ * nodes may use them. The entries of a principal and a relying party share a single storage context and are evicted
+ * together, for instance when the consent is revoked or the tokens of the relying party are revoked. The evictions
+ * are published to an {@link InvalidationBus}, if set, so that the other nodes drop their near cache entries too.
+ * </p>
+ *
+ * <p>
+ * Only string, scoped string, byte and empty values are written to the storage, results containing other values are
+ * kept in the near cache only. Attributes read from the storage carry no encoders, display names or descriptions, the
+ * caller is expected to restore them from the attribute definitions.
+ * </p>
+ */
+@ThreadSafeAfterInit
+public class AttributeResolutionCache extends AbstractIdentifiableInitializableComponent {
+
+    /** Prefix of the storage context of each principal and relying party. */
+    @Nonnull
+    @NotEmpty
+    public static final String CONTEXT_PREFIX = "oidc_attrs!";
+
+    /** Storage key used when there is no sector identifier. */
+    @Nonnull
+    @NotEmpty
+    public static final String NO_SECTOR = "!none";
+
+    /** Value type of string values in the storage record. */
+    private static final String TYPE_STRING = "s";
+
+    /** Value type of scoped string values in the storage record. */
+    private static final String TYPE_SCOPED = "sc";
+
+    /** Value type of byte values in the storage record. */
+    private static final String TYPE_BYTE = "b";
+
+    /** Value type of empty values in the storage record. */
+    private static final String TYPE_EMPTY = "e";
+
+    /** Logger. */
+    @Nonnull
+    private final Logger log = LoggerFactory.getLogger(AttributeResolutionCache.class);
+
+    /** The near cache of resolution results. */
+    @Nonnull
+    private final ConcurrentMap<String, CachedResult> nearCache;
+
+    /** Backing storage for the cache. */
+    @NonnullAfterInit
+    private StorageService storage;
+
+    /** Lifetime of a cache entry. Default value: 10 minutes. */
+    @Positive
+    @Duration
+    private long entryExpiration;
+
+    /** Maximum number of results kept in the near cache. Default value: 10000. */
+    @Positive
+    private int maxNearCacheSize;
+
+    /** The registry for publishing the metrics. */
+    @Nullable
+    private MetricRegistry metricRegistry;
+
+    /** Results served from the near cache. */
+    @Nullable
+    private Meter localHits;
+
+    /** Results served from the storage. */
+    @Nullable
+    private Meter storageHits;
+
+    /** Results not found from the cache. */
+    @Nullable
+    private Meter misses;
+
+    /** Evicted principal and relying party pairs. */
+    @Nullable
+    private Meter evictions;
+
+    /** The bus notifying about the evicted principal and relying party pairs, null if not used. */
+    @Nullable
+    private InvalidationBus invalidationBus;
+
+    /** The listener removing the near cache entries evicted through the bus. */
+    @Nonnull
+    private final InvalidationListener invalidationListener;
+
+    /**
+     * Constructor.
+     */
+    public AttributeResolutionCache() {
+        nearCache = new ConcurrentHashMap<>();
+        entryExpiration = 10 * 60 * 1000;
+        maxNearCacheSize = 10000;
+        invalidationListener = new InvalidationListener() {
+            public void invalidate(final String topic, final String key) {
+                if (key != null) {
+                    evictNearCache(key);
+                } else {
+                    nearCache.clear();
+                }
+            }
+        };
+    }
+
+    /**
+     * Set the backing store for the cache.
+     * 
+     * @param storageService backing store to use
+     */
+    public void setStorage(@Nonnull final StorageService storageService) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        storage = Constraint.isNotNull(storageService, "StorageService cannot be null");
+    }
+
+    /**
+     * Get the lifetime of a cache entry.
+     * 
+     * @return lifetime of a cache entry in milliseconds
+     */
+    @Positive
+    @Duration
+    public long getEntryExpiration() {
+        return entryExpiration;
+    }
+
+    /**
+     * Set the lifetime of a cache entry.
+     * 
+     * @param expiration lifetime of a cache entry in milliseconds
+     */
+    @Duration
+    public void setEntryExpiration(@Positive @Duration final long expiration) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        entryExpiration =
+                Constraint.isGreaterThan(0, expiration, "attribute cache entry expiration must be greater than 0");
+    }
+
+    /**
+     * Set the maximum number of results kept in the near cache.
+     *
+     * @param size maximum number of results
+     */
+    public void setMaxNearCacheSize(@Positive final int size) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        maxNearCacheSize = (int) Constraint.isGreaterThan(0, size, "near cache size must be greater than 0");
+    }
+
+    /**
+     * Set the registry for publishing the metrics. Defaults to the registry from {@link MetricsSupport}.
+     *
+     * @param registry the metric registry
+     */
+    public void setMetricRegistry(@Nullable final MetricRegistry registry) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        metricRegistry = registry;
+    }
+
+    /**
+     * Set the bus notifying about the evicted principal and relying party pairs.
+     *
+     * @param bus the invalidation bus, null if not used
+     */
+    public void setInvalidationBus(@Nullable final InvalidationBus bus) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        invalidationBus = bus;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void doInitialize() throws ComponentInitializationException {
+        super.doInitialize();
+        if (storage == null) {
+            throw new ComponentInitializationException("StorageService cannot be null");
+        }
+        if (invalidationBus != null) {
+            invalidationBus.subscribe(InvalidationTopics.ATTRIBUTE_RESOLUTION, invalidationListener);
+        }
+        if (metricRegistry == null) {
+            metricRegistry = MetricsSupport.getMetricRegistry();
+        }
+        if (metricRegistry != null) {
+            localHits = metricRegistry.meter(MetricRegistry.name(AttributeResolutionCache.class, "localHits"));
+            storageHits = metricRegistry.meter(MetricRegistry.name(AttributeResolutionCache.class, "storageHits"));
+            misses = metricRegistry.meter(MetricRegistry.name(AttributeResolutionCache.class, "misses"));
+            evictions = metricRegistry.meter(MetricRegistry.name(AttributeResolutionCache.class, "evictions"));
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void doDestroy() {
+        if (invalidationBus != null) {
+            invalidationBus.unsubscribe(InvalidationTopics.ATTRIBUTE_RESOLUTION, invalidationListener);
+        }
+        nearCache.clear();
+        super.doDestroy();
+    }
+
+    /**
+     * Get the cached resolution result. The returned attributes are copies and may be modified by the caller.
+     * 
+     * @param principal the principal the attributes were resolved for
+     * @param relyingParty the relying party the attributes were resolved for
+     * @param sector the sector identifier the attributes were resolved for, may be null
+     * @return the cached attributes, null if there is no valid entry
+     */
+    @Nullable
+    public List<IdPAttribute> get(@Nonnull @NotEmpty final String principal,
+            @Nonnull @NotEmpty final String relyingParty, @Nullable final String sector) {
+        ComponentSupport.ifNotInitializedThrowUninitializedComponentException(this);
+
+        final String context = getContext(principal, relyingParty);
+        final String key = getKey(sector);
+        final long now = System.currentTimeMillis();
+        final CachedResult cached = nearCache.get(context + '!' + key);
+        if (cached != null && cached.expires > now) {
+            log.debug("Attributes of '{}' for '{}' found from the near cache", principal, relyingParty);
+            mark(localHits);
+            return copy(cached.attributes);
+        }
+        try {
+            final StorageRecord record = storage.read(context, key);
+            if (record != null && record.getExpiration() != null && record.getExpiration() > now) {
+                final List<IdPAttribute> attributes = decode(record.getValue());
+                if (attributes != null) {
+                    log.debug("Attributes of '{}' for '{}' found from the storage", principal, relyingParty);
+                    remember(context + '!' + key, new CachedResult(attributes, record.getExpiration()), now);
+                    mark(storageHits);
+                    return copy(attributes);
+                }
+            }
+        } catch (final IOException e) {
+            log.error("Exception reading from storage service, treating as a cache miss", e);
+        }
+        mark(misses);
+        return null;
+    }
+
+    /**
+     * Store the resolution result to the cache.
+     * 
+     * @param principal the principal the attributes were resolved for
+     * @param relyingParty the relying party the attributes were resolved for
+     * @param sector the sector identifier the attributes were resolved for, may be null
+     * @param attributes the resolved attributes
+     */
+    public void put(@Nonnull @NotEmpty final String principal, @Nonnull @NotEmpty final String relyingParty,
+            @Nullable final String sector, @Nonnull final Collection<IdPAttribute> attributes) {
+        ComponentSupport.ifNotInitializedThrowUninitializedComponentException(this);
+
+        final String context = getContext(principal, relyingParty);
+        final String key = getKey(sector);
+        final long now = System.currentTimeMillis();
+        final long expires = now + entryExpiration;
+        final List<IdPAttribute> stored = copy(attributes);
+        remember(context + '!' + key, new CachedResult(stored, expires), now);
+        final String value = encode(stored);
+        if (value == null) {
+            log.debug("Attributes of '{}' for '{}' contain values not supported by the storage, cached locally",
+                    principal, relyingParty);
+            return;
+        }
+        try {
+            if (!storage.create(context, key, value, expires)) {
+                storage.update(context, key, value, expires);
+            }
+        } catch (final IOException e) {
+            log.error("Exception writing to storage service, attributes cached locally", e);
+        }
+    }
+
+    /**
+     * Evict all the cached resolution results of the principal and the relying party. The other nodes are notified
+     * through the invalidation bus, if set.
+     * 
+     * @param principal the principal
+     * @param relyingParty the relying party
+     */
+    public void evict(@Nonnull @NotEmpty final String principal, @Nonnull @NotEmpty final String relyingParty) {
+        ComponentSupport.ifNotInitializedThrowUninitializedComponentException(this);
+
+        final String context = getContext(principal, relyingParty);
+        evictNearCache(context);
+        try {
+            storage.deleteContext(context);
+        } catch (final IOException e) {
+            log.error("Exception deleting the cached attributes of '{}' for '{}' from storage service", principal,
+                    relyingParty, e);
+        }
+        if (invalidationBus != null) {
+            invalidationBus.publish(InvalidationTopics.ATTRIBUTE_RESOLUTION, context);
+        }
+        log.debug("Evicted the cached attributes of '{}' for '{}'", principal, relyingParty);
+        mark(evictions);
+    }
+
+    /**
+     * Removes the near cache entries of the storage context.
+     * 
+     * @param context the storage context of the principal and the relying party
+     */
+    private void evictNearCache(@Nonnull final String context) {
+        final String prefix = context + '!';
+        final Iterator<String> iterator = nearCache.keySet().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().startsWith(prefix)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Get the storage context of the principal and the relying party.
+     * 
+     * @param principal the principal
+     * @param relyingParty the relying party
+     * @return the storage context
+     */
+    @Nonnull
+    private String getContext(@Nonnull final String principal, @Nonnull final String relyingParty) {
+        return CONTEXT_PREFIX + DigestUtils.sha1Hex(principal + '!' + relyingParty);
+    }
+
+    /**
+     * Get the storage key of the sector identifier.
+     * 
+     * @param sector the sector identifier, may be null
+     * @return the storage key
+     */
+    @Nonnull
+    private String getKey(@Nullable final String sector) {
+        if (sector == null) {
+            return NO_SECTOR;
+        }
+        final StorageCapabilities caps = storage.getCapabilities();
+        return sector.length() > caps.getKeySize() ? DigestUtils.sha1Hex(sector) : sector;
+    }
+
+    /**
+     * Adds the result to the near cache, making room for it if the cache is full.
+     *
+     * @param nearKey the near cache key
+     * @param result the result to add
+     * @param now the current time
+     */
+    private void remember(@Nonnull final String nearKey, @Nonnull final CachedResult result, final long now) {
+        if (nearCache.size() >= maxNearCacheSize) {
+            final Iterator<Map.Entry<String, CachedResult>> iterator = nearCache.entrySet().iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().getValue().expires <= now) {
+                    iterator.remove();
+                }
+            }
+            if (nearCache.size() >= maxNearCacheSize) {
+                log.debug("Near cache is full ({} results) after purging expired results, clearing it",
+                        maxNearCacheSize);
+                nearCache.clear();
+            }
+        }
+        nearCache.put(nearKey, result);
+    }
+
+    /**
+     * Copies the attributes, keeping the cached instances isolated from the modifications made by the flows.
+     * 
+     * @param attributes the attributes to copy
+     * @return the copies
+     */
+    @Nonnull
+    private List<IdPAttribute> copy(@Nonnull final Collection<IdPAttribute> attributes) {
+        final List<IdPAttribute> copies = new ArrayList<>(attributes.size());
+        for (final IdPAttribute attribute : attributes) {
+            try {
+                copies.add(attribute.clone());
+            } catch (final CloneNotSupportedException e) {
+                log.warn("Unable to copy attribute {}, using the cached instance", attribute.getId());
+                copies.add(attribute);
+            }
+        }
+        return copies;
+    }
+
+    /**
+     * Encodes the attributes for the storage.
+     * 
+     * @param attributes the attributes to encode
+     * @return the encoded attributes, null if the attributes contain values not supported by the storage
+     */
+    @Nullable
+    private String encode(@Nonnull final Collection<IdPAttribute> attributes) {
+        final JSONObject json = new JSONObject();
+        for (final IdPAttribute attribute : attributes) {
+            final JSONArray values = new JSONArray();
+            for (final IdPAttributeValue<?> value : attribute.getValues()) {
+                final JSONObject encoded = new JSONObject();
+                if (value instanceof ScopedStringAttributeValue) {
+                    encoded.put("t", TYPE_SCOPED);
+                    encoded.put("v", ((ScopedStringAttributeValue) value).getValue());
+                    encoded.put("s", ((ScopedStringAttributeValue) value).getScope());
+                } else if (value instanceof StringAttributeValue) {
+                    encoded.put("t", TYPE_STRING);
+                    encoded.put("v", ((StringAttributeValue) value).getValue());
+                } else if (value instanceof ByteAttributeValue) {
+                    encoded.put("t", TYPE_BYTE);
+                    encoded.put("v", Base64Support.encode(((ByteAttributeValue) value).getValue(),
+                            Base64Support.UNCHUNKED));
+                } else if (value instanceof EmptyAttributeValue) {
+                    encoded.put("t", TYPE_EMPTY);
+                    encoded.put("v", ((EmptyAttributeValue) value).getValue().name());
+                } else {
+                    return null;
+                }
+                values.add(encoded);
+            }
+            json.put(attribute.getId(), values);
+        }
+        return json.toJSONString();
+    }
+
+    /**
+     * Decodes the attributes from the storage.
+     * 
+     * @param value the encoded attributes
+     * @return the decoded attributes, null if the value cannot be decoded
+     */
+    @Nullable
+    private List<IdPAttribute> decode(@Nonnull final String value) {
+        final Object parsed = JSONValue.parse(value);
+        if (!(parsed instanceof JSONObject)) {
+            log.warn("Unable to parse the cached attributes, ignoring them");
+            return null;
+        }
+        final List<IdPAttribute> attributes = new ArrayList<>();
+        try {
+            for (final Map.Entry<String, Object> entry : ((JSONObject) parsed).entrySet()) {
+                final List<IdPAttributeValue<?>> values = new ArrayList<>();
+                for (final Object item : (JSONArray) entry.getValue()) {
+                    final JSONObject encoded = (JSONObject) item;
+                    final String type = (String) encoded.get("t");
+                    final String encodedValue = (String) encoded.get("v");
+                    if (TYPE_SCOPED.equals(type)) {
+                        values.add(new ScopedStringAttributeValue(encodedValue, (String) encoded.get("s")));
+                    } else if (TYPE_STRING.equals(type)) {
+                        values.add(new StringAttributeValue(encodedValue));
+                    } else if (TYPE_BYTE.equals(type)) {
+                        values.add(new ByteAttributeValue(Base64Support.decode(encodedValue)));
+                    } else if (TYPE_EMPTY.equals(type)) {
+                        values.add(new EmptyAttributeValue(EmptyAttributeValue.EmptyType.valueOf(encodedValue)));
+                    } else {
+                        log.warn("Unknown value type {} in the cached attributes, ignoring them", type);
+                        return null;
+                    }
+                }
+                final IdPAttribute attribute = new IdPAttribute(entry.getKey());
+                attribute.setValues(values);
+                attributes.add(attribute);
+            }
+        } catch (final ClassCastException | IllegalArgumentException e) {
+            log.warn("Unable to decode the cached attributes, ignoring them", e);
+            return null;
+        }
+        return Collections.unmodifiableList(attributes);
+    }
+
+    /**
+     * Marks the meter if metrics are published.
+     * 
+     * @param meter the meter, may be null
+     */
+    private void mark(@Nullable final Meter meter) {
+        if (meter != null) {
+            meter.mark();
+        }
+    }
+
+    /**
+     * A resolution result in the near cache.
+     */
+    private static final class CachedResult {
+
+        /** The resolved attributes. */
+        @Nonnull
+        private final List<IdPAttribute> attributes;
+
+        /** The expiration time of the result. */
+        private final long expires;
+
+        /**
+         * Constructor.
+         * 
+         * @param resolved the resolved attributes
+         * @param expiration the expiration time of the result
+         */
+        private CachedResult(@Nonnull final List<IdPAttribute> resolved, final long expiration) {
+            attributes = resolved;
+            expires = expiration;
+        }
+    }
+}
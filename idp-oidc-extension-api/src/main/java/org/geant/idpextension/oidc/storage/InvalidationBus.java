@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2017 - 2020, GÉANT
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an “AS IS” BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.geant.idpextension.oidc.storage;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
+
+/**
+ * A bus delivering cache invalidation events to the subscribed caches, within the JVM and, depending on the
+ * implementation, to the other nodes of a cluster.
+ * 
+ * <p>
+ * The events are delivered on a best effort basis. The caches subscribing to the bus must still bound the lifetime of
+ * their entries.
+ * </p>
+ */
+public interface InvalidationBus {
+
+    /**
+     * Publishes an invalidation event to the subscribers of the topic.
+     * 
+     * @param topic the topic of the event, see {@link InvalidationTopics}
+     * @param key the key of the invalidated entry, null to invalidate all the entries of the topic
+     */
+    void publish(@Nonnull @NotEmpty String topic, @Nullable String key);
+
+    /**
+     * Subscribes the listener to the invalidation events of the topic.
+     * 
+     * @param topic the topic of the events
+     * @param listener the listener to subscribe
+     */
+    void subscribe(@Nonnull @NotEmpty String topic, @Nonnull InvalidationListener listener);
+
+    /**
+     * Unsubscribes the listener from the invalidation events of the topic.
+     * 
+     * @param topic the topic of the events
+     * @param listener the listener to unsubscribe
+     */
+    void unsubscribe(@Nonnull @NotEmpty String topic, @Nonnull InvalidationListener listener);
+
+}
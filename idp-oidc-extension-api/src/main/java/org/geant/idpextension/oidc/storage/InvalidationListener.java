@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) 2017 - 2020, GÉANT
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an “AS IS” BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.geant.idpextension.oidc.storage;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
+
+/**
+ * A listener for the events of an {@link InvalidationBus}.
+ */
+public interface InvalidationListener {
+
+    /**
+     * Invalidates the entry of the given key, or all the entries if the key is null.
+     * 
+     * @param topic the topic of the event
+     * @param key the key of the invalidated entry, null if all the entries of the topic are invalidated
+     */
+    void invalidate(@Nonnull @NotEmpty String topic, @Nullable String key);
+
+}
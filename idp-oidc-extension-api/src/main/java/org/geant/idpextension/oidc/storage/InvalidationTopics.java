@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2017 - 2020, GÉANT
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an “AS IS” BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.geant.idpextension.oidc.storage;
+
+import javax.annotation.Nonnull;
+
+import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
+
+/** Invalidation bus topics shared across the caches. */
+public class InvalidationTopics {
+
+    /**
+     * Topic for the client information, keyed by the client ID.
+     */
+    @Nonnull
+    @NotEmpty
+    public static final String CLIENT_INFORMATION = "oidcClientInformation";
+
+    /**
+     * Topic for the revocation entries, keyed by the revocation cache context and the key separated with '!'.
+     */
+    @Nonnull
+    @NotEmpty
+    public static final String REVOCATION = "oidcRevocation";
+
+    /**
+     * Topic for the remote JWK sets, keyed by the cache context and the URI separated with '!'.
+     */
+    @Nonnull
+    @NotEmpty
+    public static final String REMOTE_JWK_SET = "oidcRemoteJwkSet";
+
+    /**
+     * Topic for the revocation epochs, keyed by the epoch context and the user principal or the client ID separated
+     * with '!'.
+     */
+    @Nonnull
+    @NotEmpty
+    public static final String REVOCATION_EPOCH = "oidcRevocationEpoch";
+
+    /**
+     * Topic for the sector identifier contents, keyed by the sector identifier URI.
+     */
+    @Nonnull
+    @NotEmpty
+    public static final String SECTOR_IDENTIFIER = "oidcSectorIdentifier";
+
+    /**
+     * Topic for the attribute resolution results, keyed by the storage context of the principal and the relying party.
+     */
+    @Nonnull
+    @NotEmpty
+    public static final String ATTRIBUTE_RESOLUTION = "oidcAttributeResolution";
+
+}
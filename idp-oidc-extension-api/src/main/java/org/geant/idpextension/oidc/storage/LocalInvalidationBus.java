@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2017 - 2020, GÉANT
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an “AS IS” BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.geant.idpextension.oidc.storage;
+
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
+import net.shibboleth.utilities.java.support.annotation.constraint.ThreadSafeAfterInit;
+import net.shibboleth.utilities.java.support.component.AbstractIdentifiableInitializableComponent;
+import net.shibboleth.utilities.java.support.component.ComponentSupport;
+import net.shibboleth.utilities.java.support.logic.Constraint;
+import net.shibboleth.utilities.java.support.primitive.StringSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An {@link InvalidationBus} delivering the events to the subscribers within the JVM. The events are delivered
+ * synchronously in the publishing thread.
+ * 
+ * <p>
+ * Subclasses transmit the published events to the other nodes of a cluster by overriding
+ * {@link #transmit(String, String)}, and deliver the events received from them with {@link #deliver(String, String)}.
+ * </p>
+ */
+@ThreadSafeAfterInit
+public class LocalInvalidationBus extends AbstractIdentifiableInitializableComponent implements InvalidationBus {
+
+    /** Logger. */
+    private final Logger log = LoggerFactory.getLogger(LocalInvalidationBus.class);
+
+    /** The subscribed listeners, keyed by the topic. */
+    @Nonnull private final ConcurrentMap<String, List<InvalidationListener>> listeners;
+
+    /** The identifier of this node, for ignoring the own events received from the cluster. */
+    @Nonnull @NotEmpty private String nodeId;
+
+    /**
+     * Constructor.
+     */
+    public LocalInvalidationBus() {
+        listeners = new ConcurrentHashMap<>();
+        nodeId = UUID.randomUUID().toString();
+    }
+
+    /**
+     * Get the identifier of this node.
+     * 
+     * @return the identifier of this node
+     */
+    @Nonnull @NotEmpty public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * Set the identifier of this node. Defaults to a random identifier.
+     * 
+     * @param id the identifier of this node
+     */
+    public void setNodeId(@Nonnull @NotEmpty final String id) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        nodeId = Constraint.isNotNull(StringSupport.trimOrNull(id), "Node identifier cannot be null or empty");
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void publish(@Nonnull @NotEmpty final String topic, @Nullable final String key) {
+        ComponentSupport.ifNotInitializedThrowUninitializedComponentException(this);
+
+        deliver(topic, key);
+        transmit(topic, key);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void subscribe(@Nonnull @NotEmpty final String topic, @Nonnull final InvalidationListener listener) {
+        Constraint.isNotNull(listener, "Listener cannot be null");
+        List<InvalidationListener> topicListeners = listeners.get(topic);
+        if (topicListeners == null) {
+            final List<InvalidationListener> newListeners = new CopyOnWriteArrayList<>();
+            topicListeners = listeners.putIfAbsent(topic, newListeners);
+            if (topicListeners == null) {
+                topicListeners = newListeners;
+            }
+        }
+        topicListeners.add(listener);
+        log.debug("Invalidation bus {} subscribed a listener to the topic {}", getId(), topic);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void unsubscribe(@Nonnull @NotEmpty final String topic, @Nonnull final InvalidationListener listener) {
+        final List<InvalidationListener> topicListeners = listeners.get(topic);
+        if (topicListeners != null) {
+            topicListeners.remove(listener);
+        }
+    }
+
+    /**
+     * Get the topics having subscribers.
+     * 
+     * @return the topics having subscribers
+     */
+    @Nonnull protected Set<String> getTopics() {
+        return listeners.keySet();
+    }
+
+    /**
+     * Delivers the event to the listeners subscribed to the topic within the JVM. A failing listener does not prevent
+     * the delivery to the other ones.
+     * 
+     * @param topic the topic of the event
+     * @param key the key of the invalidated entry, null if all the entries are invalidated
+     */
+    protected void deliver(@Nonnull @NotEmpty final String topic, @Nullable final String key) {
+        final List<InvalidationListener> topicListeners = listeners.get(topic);
+        if (topicListeners == null) {
+            return;
+        }
+        for (final InvalidationListener listener : topicListeners) {
+            try {
+                listener.invalidate(topic, key);
+            } catch (final RuntimeException e) {
+                log.error("Invalidation bus {} could not deliver the event for {} of topic {}", getId(), key, topic,
+                        e);
+            }
+        }
+    }
+
+    /**
+     * Transmits the published event to the other nodes of the cluster. Does nothing by default.
+     * 
+     * @param topic the topic of the event
+     * @param key the key of the invalidated entry, null if all the entries are invalidated
+     */
+    protected void transmit(@Nonnull @NotEmpty final String topic, @Nullable final String key) {
+        // no other nodes within the JVM
+    }
+
+}
@@ -0,0 +1,269 @@
+/*
+ * Copyright (c) 2017 - 2020, GÉANT
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an “AS IS” BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.geant.idpextension.oidc.storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+import java.net.NetworkInterface;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullAfterInit;
+import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
+import net.shibboleth.utilities.java.support.annotation.constraint.Positive;
+import net.shibboleth.utilities.java.support.annotation.constraint.ThreadSafeAfterInit;
+import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
+import net.shibboleth.utilities.java.support.component.ComponentSupport;
+import net.shibboleth.utilities.java.support.logic.Constraint;
+import net.shibboleth.utilities.java.support.primitive.StringSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An {@link InvalidationBus} sharing the events between the nodes with UDP multicast datagrams.
+ * 
+ * <p>
+ * Each event is sent as a single datagram to the multicast group, and the datagrams received from the group are
+ * delivered by a background thread. Lost datagrams are not resent: the caches still expire their entries.
+ * </p>
+ */
+@ThreadSafeAfterInit
+public class MulticastInvalidationBus extends LocalInvalidationBus {
+
+    /** Magic number starting the datagrams. */
+    private static final int MAGIC = 0x4f494e56;
+
+    /** Version of the datagram format. */
+    private static final int VERSION = 1;
+
+    /** Maximum size of a datagram. */
+    private static final int MAX_DATAGRAM_SIZE = 8192;
+
+    /** Logger. */
+    private final Logger log = LoggerFactory.getLogger(MulticastInvalidationBus.class);
+
+    /** The multicast group address. Default value: 239.255.79.68. */
+    @Nonnull @NotEmpty private String groupAddress;
+
+    /** The multicast port. Default value: 47968. */
+    @Positive private int port;
+
+    /** The time to live of the datagrams. Default value: 1, the local network. */
+    private int timeToLive;
+
+    /** The name of the network interface used, null for the default one. */
+    @Nullable private String networkInterface;
+
+    /** The socket joined to the multicast group. */
+    @NonnullAfterInit private MulticastSocket socket;
+
+    /** The group address and port. */
+    @NonnullAfterInit private InetSocketAddress group;
+
+    /** The thread receiving the datagrams. */
+    @NonnullAfterInit private Thread receiver;
+
+    /**
+     * Constructor.
+     */
+    public MulticastInvalidationBus() {
+        groupAddress = "239.255.79.68";
+        port = 47968;
+        timeToLive = 1;
+    }
+
+    /**
+     * Set the multicast group address.
+     * 
+     * @param address the multicast group address
+     */
+    public void setGroupAddress(@Nonnull @NotEmpty final String address) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        groupAddress =
+                Constraint.isNotNull(StringSupport.trimOrNull(address), "Group address cannot be null or empty");
+    }
+
+    /**
+     * Set the multicast port.
+     * 
+     * @param groupPort the multicast port
+     */
+    public void setPort(@Positive final int groupPort) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        port = (int) Constraint.isGreaterThan(0, groupPort, "Port must be greater than 0");
+    }
+
+    /**
+     * Set the time to live of the datagrams.
+     * 
+     * @param ttl the time to live, from 0 to 255
+     */
+    public void setTimeToLive(final int ttl) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        timeToLive = (int) Constraint.isGreaterThanOrEqual(0, ttl, "Time to live must be greater than or equal to 0");
+    }
+
+    /**
+     * Set the name of the network interface used for the multicast.
+     * 
+     * @param name the network interface name, null or empty for the default one
+     */
+    public void setNetworkInterface(@Nullable final String name) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        networkInterface = StringSupport.trimOrNull(name);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void doInitialize() throws ComponentInitializationException {
+        super.doInitialize();
+        try {
+            final InetAddress address = InetAddress.getByName(groupAddress);
+            if (!address.isMulticastAddress()) {
+                throw new ComponentInitializationException(groupAddress + " is not a multicast address");
+            }
+            group = new InetSocketAddress(address, port);
+            socket = new MulticastSocket(port);
+            socket.setTimeToLive(timeToLive);
+            if (networkInterface != null) {
+                final NetworkInterface nif = NetworkInterface.getByName(networkInterface);
+                if (nif == null) {
+                    socket.close();
+                    throw new ComponentInitializationException("Unknown network interface " + networkInterface);
+                }
+                socket.setNetworkInterface(nif);
+                socket.joinGroup(group, nif);
+            } else {
+                socket.joinGroup(address);
+            }
+        } catch (final IOException e) {
+            if (socket != null) {
+                socket.close();
+            }
+            throw new ComponentInitializationException("Could not join the multicast group " + groupAddress, e);
+        }
+        receiver = new Thread(new Runnable() {
+            public void run() {
+                receive();
+            }
+        }, "MulticastInvalidationBus-" + getId());
+        receiver.setDaemon(true);
+        receiver.start();
+        log.info("Invalidation bus {} joined the multicast group {}:{}", getId(), groupAddress, port);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void doDestroy() {
+        if (socket != null) {
+            socket.close();
+        }
+        if (receiver != null) {
+            try {
+                receiver.join(1000);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        super.doDestroy();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void transmit(@Nonnull @NotEmpty final String topic, @Nullable final String key) {
+        try {
+            byte[] datagram = encode(topic, key);
+            if (datagram.length > MAX_DATAGRAM_SIZE) {
+                log.debug("Invalidation event for {} too large for a datagram, invalidating all of {}", key, topic);
+                datagram = encode(topic, null);
+            }
+            socket.send(new DatagramPacket(datagram, datagram.length, group));
+        } catch (final IOException e) {
+            log.error("Could not send the invalidation event for {} of topic {}", key, topic, e);
+        }
+    }
+
+    /**
+     * Receives the datagrams until the socket is closed, and delivers the events of the other nodes.
+     */
+    protected void receive() {
+        final byte[] buffer = new byte[MAX_DATAGRAM_SIZE];
+        while (!socket.isClosed()) {
+            final DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+            try {
+                socket.receive(packet);
+            } catch (final IOException e) {
+                if (!socket.isClosed()) {
+                    log.error("Could not receive the invalidation events", e);
+                }
+                continue;
+            }
+            try (final DataInputStream in = new DataInputStream(
+                    new ByteArrayInputStream(packet.getData(), packet.getOffset(), packet.getLength()))) {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                    log.debug("Ignoring an unknown datagram from {}", packet.getAddress());
+                    continue;
+                }
+                final String node = in.readUTF();
+                final String topic = in.readUTF();
+                final String key = in.readBoolean() ? in.readUTF() : null;
+                if (!getNodeId().equals(node)) {
+                    deliver(topic, key);
+                }
+            } catch (final IOException e) {
+                log.debug("Ignoring a malformed datagram from {}", packet.getAddress());
+            }
+        }
+    }
+
+    /**
+     * Encodes the event as a datagram.
+     * 
+     * @param topic the topic of the event
+     * @param key the key of the invalidated entry, null if all the entries are invalidated
+     * @return the datagram
+     * @throws IOException if the event cannot be encoded
+     */
+    @Nonnull private byte[] encode(@Nonnull final String topic, @Nullable final String key) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeUTF(getNodeId());
+        out.writeUTF(topic);
+        out.writeBoolean(key != null);
+        if (key != null) {
+            out.writeUTF(key);
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+}
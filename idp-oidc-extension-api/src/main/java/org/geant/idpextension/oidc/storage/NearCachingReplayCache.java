@@ -0,0 +1,263 @@
+/*
+ * Copyright (c) 2017 - 2020, GÉANT
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an “AS IS” BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.geant.idpextension.oidc.storage;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
+import net.shibboleth.utilities.java.support.annotation.constraint.Positive;
+import net.shibboleth.utilities.java.support.annotation.constraint.ThreadSafeAfterInit;
+import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
+import net.shibboleth.utilities.java.support.component.ComponentSupport;
+import net.shibboleth.utilities.java.support.logic.Constraint;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.opensaml.core.metrics.MetricsSupport;
+import org.opensaml.storage.ReplayCache;
+import org.opensaml.storage.StorageCapabilities;
+import org.opensaml.storage.StorageService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+/**
+ * A {@link ReplayCache} keeping a local near cache of the recently seen values in front of the shared
+ * {@link StorageService}.
+ *
+ * <p>
+ * A value found from the near cache is a replay and is rejected without a round trip to the backing store. Other
+ * values are checked with a single atomic create operation: the create fails if the value already exists in the store.
+ * Either way the value is added to the near cache until its expiration. The backing store remains authoritative, the
+ * near cache may be cleared at any time.
+ * </p>
+ *
+ * <p>
+ * If a metric registry is available, the local hits, backend checks, detected replays and the backend latency are
+ * published per context.
+ * </p>
+ */
+@ThreadSafeAfterInit
+public class NearCachingReplayCache extends ReplayCache {
+
+    /** Logger. */
+    private final Logger log = LoggerFactory.getLogger(NearCachingReplayCache.class);
+
+    /** The near cache of recently seen values and their expiration times. */
+    @Nonnull private final ConcurrentMap<String, Long> nearCache;
+
+    /** The metrics of each context. */
+    @Nonnull private final ConcurrentMap<String, ContextMetrics> contextMetrics;
+
+    /** Maximum number of values kept in the near cache. Default value: 100000. */
+    @Positive private int maxNearCacheSize;
+
+    /** The registry for publishing the metrics. */
+    @Nullable private MetricRegistry metricRegistry;
+
+    /**
+     * Constructor.
+     */
+    public NearCachingReplayCache() {
+        nearCache = new ConcurrentHashMap<>();
+        contextMetrics = new ConcurrentHashMap<>();
+        maxNearCacheSize = 100000;
+    }
+
+    /**
+     * Set the maximum number of values kept in the near cache.
+     *
+     * @param size maximum number of values
+     */
+    public void setMaxNearCacheSize(@Positive final int size) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        maxNearCacheSize = (int) Constraint.isGreaterThan(0, size, "near cache size must be greater than 0");
+    }
+
+    /**
+     * Set the registry for publishing the metrics. Defaults to the registry from {@link MetricsSupport}.
+     *
+     * @param registry the metric registry
+     */
+    public void setMetricRegistry(@Nullable final MetricRegistry registry) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        metricRegistry = registry;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void doInitialize() throws ComponentInitializationException {
+        super.doInitialize();
+        if (metricRegistry == null) {
+            metricRegistry = MetricsSupport.getMetricRegistry();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean check(@Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String s,
+            final long expires) {
+        final StorageService storage = getStorage();
+        final StorageCapabilities caps = storage.getCapabilities();
+        if (context.length() > caps.getContextSize()) {
+            log.error("Context {} too long for StorageService (limit {})", context, caps.getContextSize());
+            return false;
+        }
+        final String key = s.length() > caps.getKeySize() ? DigestUtils.sha1Hex(s) : s;
+        final String nearKey = context + '!' + key;
+        final ContextMetrics metrics = getContextMetrics(context);
+
+        final long now = System.currentTimeMillis();
+        final Long seen = nearCache.get(nearKey);
+        if (seen != null && seen > now) {
+            log.debug("Replay of value '{}' in context '{}' detected from the near cache", key, context);
+            mark(metrics, true, true);
+            return false;
+        }
+
+        final Timer.Context timer = metrics != null ? metrics.backendLatency.time() : null;
+        try {
+            final boolean created = storage.create(context, key, "x", expires);
+            remember(nearKey, expires, now);
+            if (created) {
+                log.debug("Value '{}' was not in the cache, added it with expiration {}", key, expires);
+            } else {
+                log.debug("Replay of value '{}' in context '{}' detected from the storage", key, context);
+            }
+            mark(metrics, false, !created);
+            return created;
+        } catch (final IOException e) {
+            log.error("Exception reading/writing to storage service, returning {}",
+                    isStrict() ? "failure" : "success", e);
+            return !isStrict();
+        } finally {
+            if (timer != null) {
+                timer.stop();
+            }
+        }
+    }
+
+    /**
+     * Adds the value to the near cache, making room for it if the cache is full.
+     *
+     * @param nearKey the near cache key
+     * @param expires the expiration of the value
+     * @param now the current time
+     */
+    private void remember(@Nonnull final String nearKey, final long expires, final long now) {
+        if (nearCache.size() >= maxNearCacheSize) {
+            final Iterator<Map.Entry<String, Long>> iterator = nearCache.entrySet().iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().getValue() <= now) {
+                    iterator.remove();
+                }
+            }
+            if (nearCache.size() >= maxNearCacheSize) {
+                log.debug("Near cache is full ({} values) after purging expired values, clearing it",
+                        maxNearCacheSize);
+                nearCache.clear();
+            }
+        }
+        nearCache.put(nearKey, expires);
+    }
+
+    /**
+     * Updates the metrics of a check.
+     *
+     * @param metrics the context metrics, may be null
+     * @param local whether the check was answered from the near cache
+     * @param replay whether a replay was detected
+     */
+    private void mark(@Nullable final ContextMetrics metrics, final boolean local, final boolean replay) {
+        if (metrics == null) {
+            return;
+        }
+        if (local) {
+            metrics.localHits.mark();
+        } else {
+            metrics.backendChecks.mark();
+        }
+        if (replay) {
+            metrics.replays.mark();
+        }
+    }
+
+    /**
+     * Get the metrics of the given context.
+     *
+     * @param context the context
+     * @return the metrics, null if no metric registry is available
+     */
+    @Nullable private ContextMetrics getContextMetrics(@Nonnull final String context) {
+        if (metricRegistry == null) {
+            return null;
+        }
+        ContextMetrics metrics = contextMetrics.get(context);
+        if (metrics == null) {
+            final ContextMetrics created = new ContextMetrics(metricRegistry, context);
+            metrics = contextMetrics.putIfAbsent(context, created);
+            if (metrics == null) {
+                metrics = created;
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * The metrics of a single context.
+     */
+    private static final class ContextMetrics {
+
+        /** Checks answered from the near cache. */
+        @Nonnull private final Meter localHits;
+
+        /** Checks answered by the backing store. */
+        @Nonnull private final Meter backendChecks;
+
+        /** Detected replays. */
+        @Nonnull private final Meter replays;
+
+        /** Latency of the backing store. */
+        @Nonnull private final Timer backendLatency;
+
+        /**
+         * Constructor.
+         *
+         * @param registry the metric registry
+         * @param context the context
+         */
+        private ContextMetrics(@Nonnull final MetricRegistry registry, @Nonnull final String context) {
+            localHits = registry.meter(MetricRegistry.name(NearCachingReplayCache.class, context, "localHits"));
+            backendChecks =
+                    registry.meter(MetricRegistry.name(NearCachingReplayCache.class, context, "backendChecks"));
+            replays = registry.meter(MetricRegistry.name(NearCachingReplayCache.class, context, "replays"));
+            backendLatency =
+                    registry.timer(MetricRegistry.name(NearCachingReplayCache.class, context, "backendLatency"));
+        }
+    }
+}
@@ -0,0 +1,448 @@
+/*
+ * Copyright (c) 2017 - 2020, GÉANT
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an “AS IS” BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.geant.idpextension.oidc.storage;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.shibboleth.utilities.java.support.annotation.Duration;
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullAfterInit;
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
+import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
+import net.shibboleth.utilities.java.support.annotation.constraint.Positive;
+import net.shibboleth.utilities.java.support.annotation.constraint.ThreadSafeAfterInit;
+import net.shibboleth.utilities.java.support.codec.Base64Support;
+import net.shibboleth.utilities.java.support.component.AbstractIdentifiableInitializableComponent;
+import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
+import net.shibboleth.utilities.java.support.component.ComponentSupport;
+import net.shibboleth.utilities.java.support.logic.Constraint;
+import net.shibboleth.utilities.java.support.primitive.StringSupport;
+
+import org.apache.commons.codec.binary.Base32;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.opensaml.core.metrics.MetricsSupport;
+import org.opensaml.storage.StorageRecord;
+import org.opensaml.storage.StorageService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Computes and caches the pairwise subject identifiers, keyed by the principal's source identifier and the sector
+ * identifier.
+ *
+ * <p>
+ * The identifiers are computed with the same salted hash as the ComputedId data connector, using the sector identifier
+ * as the relying party, so the same salt, algorithm and encoding produce the same values. Computed identifiers are
+ * kept in a local least recently used cache and written to the backing {@link StorageService}, one storage context
+ * per sector identifier, so that the other nodes and later requests look them up instead of recomputing them. The
+ * storage contexts are named after a fingerprint of the salt, algorithm and encoding, so the identifiers computed
+ * with earlier settings are never served and simply expire.
+ * </p>
+ *
+ * <p>
+ * The identifiers of a sector may also be computed in a batch beforehand with {@link #precompute(Collection, String)},
+ * for instance before a client moves an existing user population to a new sector identifier.
+ * </p>
+ */
+@ThreadSafeAfterInit
+public class PairwiseSubjectCache extends AbstractIdentifiableInitializableComponent {
+
+    /** Prefix of the storage context of each sector identifier. */
+    @Nonnull
+    @NotEmpty
+    public static final String CONTEXT_PREFIX = "oidc_pairwise!";
+
+    /** Encoding of the identifiers as base32. */
+    @Nonnull
+    @NotEmpty
+    public static final String ENCODING_BASE32 = "BASE32";
+
+    /** Encoding of the identifiers as base64. */
+    @Nonnull
+    @NotEmpty
+    public static final String ENCODING_BASE64 = "BASE64";
+
+    /** Logger. */
+    @Nonnull
+    private final Logger log = LoggerFactory.getLogger(PairwiseSubjectCache.class);
+
+    /** The local cache of identifiers, keyed by the sector identifier and the source identifier. */
+    @NonnullAfterInit
+    private Map<String, String> nearCache;
+
+    /** Backing storage for the cache. */
+    @NonnullAfterInit
+    private StorageService storage;
+
+    /** Salt used when computing the identifiers. */
+    @NonnullAfterInit
+    private byte[] salt;
+
+    /** Digest algorithm used when computing the identifiers. Default value: SHA. */
+    @Nonnull
+    @NotEmpty
+    private String algorithm;
+
+    /** Encoding of the computed identifiers. Default value: BASE32. */
+    @Nonnull
+    @NotEmpty
+    private String encoding;
+
+    /** Lifetime of a stored identifier. Default value: 30 days. */
+    @Positive
+    @Duration
+    private long entryExpiration;
+
+    /** Maximum number of identifiers kept in the local cache. Default value: 100000. */
+    @Positive
+    private int maxNearCacheSize;
+
+    /** Prefix of the storage contexts, including the fingerprint of the salt, algorithm and encoding. */
+    @NonnullAfterInit
+    private String contextPrefix;
+
+    /** The registry for publishing the metrics. */
+    @Nullable
+    private MetricRegistry metricRegistry;
+
+    /** Identifiers served from the local cache. */
+    @Nullable
+    private Meter localHits;
+
+    /** Identifiers served from the storage. */
+    @Nullable
+    private Meter storageHits;
+
+    /** Identifiers computed. */
+    @Nullable
+    private Meter computations;
+
+    /**
+     * Constructor.
+     */
+    public PairwiseSubjectCache() {
+        algorithm = "SHA";
+        encoding = ENCODING_BASE32;
+        entryExpiration = 30L * 24 * 60 * 60 * 1000;
+        maxNearCacheSize = 100000;
+    }
+
+    /**
+     * Set the backing store for the cache.
+     * 
+     * @param storageService backing store to use
+     */
+    public void setStorage(@Nonnull final StorageService storageService) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        storage = Constraint.isNotNull(storageService, "StorageService cannot be null");
+    }
+
+    /**
+     * Set the salt used when computing the identifiers.
+     * 
+     * @param newSalt the salt
+     */
+    public void setSalt(@Nonnull @NotEmpty final String newSalt) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        salt = Constraint.isNotNull(StringSupport.trimOrNull(newSalt), "Salt cannot be null or empty")
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Set the digest algorithm used when computing the identifiers.
+     * 
+     * @param alg the digest algorithm
+     */
+    public void setAlgorithm(@Nonnull @NotEmpty final String alg) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        algorithm = Constraint.isNotNull(StringSupport.trimOrNull(alg), "Digest algorithm cannot be null or empty");
+    }
+
+    /**
+     * Set the encoding of the computed identifiers, {@link #ENCODING_BASE32} or {@link #ENCODING_BASE64}.
+     * 
+     * @param newEncoding the encoding
+     */
+    public void setEncoding(@Nonnull @NotEmpty final String newEncoding) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        encoding = Constraint.isNotNull(StringSupport.trimOrNull(newEncoding), "Encoding cannot be null or empty");
+    }
+
+    /**
+     * Set the lifetime of a stored identifier.
+     * 
+     * @param expiration lifetime of a stored identifier in milliseconds
+     */
+    @Duration
+    public void setEntryExpiration(@Positive @Duration final long expiration) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        entryExpiration =
+                Constraint.isGreaterThan(0, expiration, "pairwise subject expiration must be greater than 0");
+    }
+
+    /**
+     * Set the maximum number of identifiers kept in the local cache.
+     *
+     * @param size maximum number of identifiers
+     */
+    public void setMaxNearCacheSize(@Positive final int size) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        maxNearCacheSize = (int) Constraint.isGreaterThan(0, size, "near cache size must be greater than 0");
+    }
+
+    /**
+     * Set the registry for publishing the metrics. Defaults to the registry from {@link MetricsSupport}.
+     *
+     * @param registry the metric registry
+     */
+    public void setMetricRegistry(@Nullable final MetricRegistry registry) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        metricRegistry = registry;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void doInitialize() throws ComponentInitializationException {
+        super.doInitialize();
+        if (storage == null) {
+            throw new ComponentInitializationException("StorageService cannot be null");
+        }
+        if (salt == null) {
+            throw new ComponentInitializationException("Salt cannot be null");
+        }
+        if (!ENCODING_BASE32.equals(encoding) && !ENCODING_BASE64.equals(encoding)) {
+            throw new ComponentInitializationException("Unsupported encoding " + encoding);
+        }
+        try {
+            MessageDigest.getInstance(algorithm);
+        } catch (final NoSuchAlgorithmException e) {
+            throw new ComponentInitializationException("Unsupported digest algorithm " + algorithm, e);
+        }
+        final MessageDigest md = DigestUtils.getSha1Digest();
+        md.update((algorithm + '!' + encoding + '!').getBytes(StandardCharsets.UTF_8));
+        contextPrefix = CONTEXT_PREFIX + Hex.encodeHexString(md.digest(salt)).substring(0, 8) + '!';
+        nearCache = new LeastRecentlyUsedMap(maxNearCacheSize);
+        if (metricRegistry == null) {
+            metricRegistry = MetricsSupport.getMetricRegistry();
+        }
+        if (metricRegistry != null) {
+            localHits = metricRegistry.meter(MetricRegistry.name(PairwiseSubjectCache.class, "localHits"));
+            storageHits = metricRegistry.meter(MetricRegistry.name(PairwiseSubjectCache.class, "storageHits"));
+            computations = metricRegistry.meter(MetricRegistry.name(PairwiseSubjectCache.class, "computations"));
+        }
+    }
+
+    /**
+     * Get the pairwise subject identifier of the principal for the sector. The identifier is computed and stored if
+     * it is not found from the cache.
+     * 
+     * @param sourceValue the source identifier of the principal
+     * @param sector the sector identifier
+     * @return the pairwise subject identifier
+     */
+    @Nonnull
+    public String getSubject(@Nonnull @NotEmpty final String sourceValue, @Nonnull @NotEmpty final String sector) {
+        ComponentSupport.ifNotInitializedThrowUninitializedComponentException(this);
+
+        final String nearKey = sector + '!' + sourceValue;
+        String subject;
+        synchronized (nearCache) {
+            subject = nearCache.get(nearKey);
+        }
+        if (subject != null) {
+            mark(localHits);
+            return subject;
+        }
+        final String context = getContext(sector);
+        final String key = getKey(sourceValue);
+        try {
+            final StorageRecord record = storage.read(context, key);
+            if (record != null) {
+                log.debug("Pairwise subject of '{}' for sector '{}' found from the storage", sourceValue, sector);
+                remember(nearKey, record.getValue());
+                mark(storageHits);
+                return record.getValue();
+            }
+        } catch (final IOException e) {
+            log.error("Exception reading from storage service, computing the pairwise subject", e);
+        }
+        subject = compute(sourceValue, sector);
+        remember(nearKey, subject);
+        store(context, key, subject);
+        return subject;
+    }
+
+    /**
+     * Compute and store the pairwise subject identifiers of the principals for the sector, skipping the ones already
+     * stored.
+     * 
+     * @param sourceValues the source identifiers of the principals
+     * @param sector the sector identifier
+     * @return the number of identifiers stored
+     */
+    public int precompute(@Nonnull @NonnullElements final Collection<String> sourceValues,
+            @Nonnull @NotEmpty final String sector) {
+        ComponentSupport.ifNotInitializedThrowUninitializedComponentException(this);
+
+        final String context = getContext(sector);
+        int stored = 0;
+        for (final String sourceValue : sourceValues) {
+            if (store(context, getKey(sourceValue), compute(sourceValue, sector))) {
+                stored++;
+            }
+        }
+        log.info("Precomputed {} new pairwise subjects of {} principals for sector '{}'", stored,
+                sourceValues.size(), sector);
+        return stored;
+    }
+
+    /**
+     * Compute the pairwise subject identifier.
+     * 
+     * @param sourceValue the source identifier of the principal
+     * @param sector the sector identifier
+     * @return the pairwise subject identifier
+     */
+    @Nonnull
+    protected String compute(@Nonnull final String sourceValue, @Nonnull final String sector) {
+        final MessageDigest md;
+        try {
+            md = MessageDigest.getInstance(algorithm);
+        } catch (final NoSuchAlgorithmException e) {
+            // verified at initialization
+            throw new IllegalStateException(e);
+        }
+        md.update(sector.getBytes(StandardCharsets.UTF_8));
+        md.update((byte) '!');
+        md.update(sourceValue.getBytes(StandardCharsets.UTF_8));
+        md.update((byte) '!');
+        final byte[] hash = md.digest(salt);
+        mark(computations);
+        return ENCODING_BASE32.equals(encoding) ? new Base32().encodeAsString(hash)
+                : Base64Support.encode(hash, Base64Support.UNCHUNKED);
+    }
+
+    /**
+     * Get the storage context of the sector identifier.
+     * 
+     * @param sector the sector identifier
+     * @return the storage context
+     */
+    @Nonnull
+    protected String getContext(@Nonnull final String sector) {
+        final String context = contextPrefix + sector;
+        return context.length() > storage.getCapabilities().getContextSize()
+                ? contextPrefix + DigestUtils.sha1Hex(sector) : context;
+    }
+
+    /**
+     * Write the identifier to the storage, unless it is already stored.
+     * 
+     * @param context the storage context
+     * @param key the storage key
+     * @param subject the identifier
+     * @return true if the identifier was written
+     */
+    private boolean store(@Nonnull final String context, @Nonnull final String key, @Nonnull final String subject) {
+        try {
+            return storage.create(context, key, subject, System.currentTimeMillis() + entryExpiration);
+        } catch (final IOException e) {
+            log.error("Exception writing to storage service, pairwise subject cached locally", e);
+            return false;
+        }
+    }
+
+    /**
+     * Get the storage key of the source identifier.
+     * 
+     * @param sourceValue the source identifier
+     * @return the storage key
+     */
+    @Nonnull
+    private String getKey(@Nonnull final String sourceValue) {
+        return sourceValue.length() > storage.getCapabilities().getKeySize() ? DigestUtils.sha1Hex(sourceValue)
+                : sourceValue;
+    }
+
+    /**
+     * Adds the identifier to the local cache.
+     *
+     * @param nearKey the local cache key
+     * @param subject the identifier
+     */
+    private void remember(@Nonnull final String nearKey, @Nonnull final String subject) {
+        synchronized (nearCache) {
+            nearCache.put(nearKey, subject);
+        }
+    }
+
+    /**
+     * Marks the meter if it is available.
+     * 
+     * @param meter the meter
+     */
+    private void mark(@Nullable final Meter meter) {
+        if (meter != null) {
+            meter.mark();
+        }
+    }
+
+    /** Access ordered map that drops the least recently used entry when full. */
+    private static final class LeastRecentlyUsedMap extends LinkedHashMap<String, String> {
+
+        /** Serial version UID. */
+        private static final long serialVersionUID = -6123449018236374582L;
+
+        /** Maximum number of entries. */
+        private final int maxSize;
+
+        /**
+         * Constructor.
+         *
+         * @param size maximum number of entries
+         */
+        private LeastRecentlyUsedMap(final int size) {
+            super(16, 0.75f, true);
+            maxSize = size;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, String> eldest) {
+            return size() > maxSize;
+        }
+    }
+}
@@ -0,0 +1,423 @@
+/*
+ * Copyright (c) 2017 - 2020, GÉANT
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an “AS IS” BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.geant.idpextension.oidc.storage;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.shibboleth.utilities.java.support.annotation.Duration;
+import net.shibboleth.utilities.java.support.annotation.constraint.NonNegative;
+import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
+import net.shibboleth.utilities.java.support.annotation.constraint.Positive;
+import net.shibboleth.utilities.java.support.annotation.constraint.ThreadSafeAfterInit;
+import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
+import net.shibboleth.utilities.java.support.component.ComponentSupport;
+import net.shibboleth.utilities.java.support.logic.Constraint;
+import net.shibboleth.utilities.java.support.security.DataSealer;
+import net.shibboleth.utilities.java.support.security.DataSealerException;
+import net.shibboleth.utilities.java.support.security.SecureRandomIdentifierGenerationStrategy;
+
+import org.opensaml.core.metrics.MetricsSupport;
+import org.opensaml.storage.StorageRecord;
+import org.opensaml.storage.StorageService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer.Context;
+
+/**
+ * A {@link DataSealer} for the authorization codes, access tokens and refresh tokens that may keep the token claims
+ * server-side.
+ *
+ * <p>
+ * In reference token mode the claims are stored to a {@link StorageService} context until the token expires, and a
+ * short random handle is handed out as the token. Handles are resolved through a local read-through cache, expired
+ * entries are purged from it in batches by a background task. Sealed tokens, for instance the ones issued before
+ * reference token mode was enabled, are still unwrapped as usual. Without reference token mode the class behaves as a
+ * plain {@link DataSealer}.
+ * </p>
+ *
+ * <p>
+ * If a metric registry is available, the token size and the latencies of issuing and validating tokens are published
+ * separately for the reference and the sealed tokens.
+ * </p>
+ */
+@ThreadSafeAfterInit
+public class ReferenceTokenDataSealer extends DataSealer {
+
+    /** Storage context for the token claims. */
+    @Nonnull @NotEmpty public static final String CONTEXT_NAME = "oidcReferenceTokens";
+
+    /** Prefix of the handles. The character is never part of a sealed token. */
+    @Nonnull @NotEmpty public static final String HANDLE_PREFIX = "~";
+
+    /** Metric name component for reference tokens. */
+    @Nonnull @NotEmpty private static final String MODE_REFERENCE = "reference";
+
+    /** Metric name component for sealed tokens. */
+    @Nonnull @NotEmpty private static final String MODE_SEALED = "sealed";
+
+    /** Logger. */
+    @Nonnull private final Logger log = LoggerFactory.getLogger(ReferenceTokenDataSealer.class);
+
+    /** Generator for the random handles. */
+    @Nonnull private final SecureRandomIdentifierGenerationStrategy handleGenerator;
+
+    /** Local cache of the resolved handles. */
+    @Nonnull private final ConcurrentMap<String, StorageRecord<?>> cache;
+
+    /** Whether the tokens are issued as handles. Default value: true. */
+    private boolean referenceTokens;
+
+    /** Backing storage for the token claims. */
+    @Nullable private StorageService storage;
+
+    /** Maximum number of handles kept in the local cache. Default value: 10000. */
+    @Positive private int maxCacheSize;
+
+    /** Interval of the local cache cleanup in milliseconds. Default value: 5 minutes. */
+    @NonNegative @Duration private long cleanupInterval;
+
+    /** Timer used to schedule the local cache cleanup. */
+    @Nullable private Timer cleanupTaskTimer;
+
+    /** Timer created by this component, if any. */
+    @Nullable private Timer internalTaskTimer;
+
+    /** Task that purges the expired entries from the local cache. */
+    @Nullable private TimerTask cleanupTask;
+
+    /** The registry for publishing the metrics. */
+    @Nullable private MetricRegistry metricRegistry;
+
+    /** Constructor. */
+    public ReferenceTokenDataSealer() {
+        handleGenerator = new SecureRandomIdentifierGenerationStrategy(16);
+        cache = new ConcurrentHashMap<>();
+        referenceTokens = true;
+        maxCacheSize = 10000;
+        cleanupInterval = 5 * 60 * 1000;
+    }
+
+    /**
+     * Set whether the tokens are issued as handles to claims kept in the storage.
+     *
+     * @param flag whether the tokens are issued as handles
+     */
+    public void setReferenceTokens(final boolean flag) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        referenceTokens = flag;
+    }
+
+    /**
+     * Get whether the tokens are issued as handles to claims kept in the storage.
+     *
+     * @return whether the tokens are issued as handles
+     */
+    public boolean isReferenceTokens() {
+        return referenceTokens;
+    }
+
+    /**
+     * Set the backing storage for the token claims.
+     *
+     * @param storageService backing storage
+     */
+    public void setStorage(@Nullable final StorageService storageService) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        storage = storageService;
+    }
+
+    /**
+     * Set the maximum number of handles kept in the local cache.
+     *
+     * @param size maximum number of handles
+     */
+    public void setMaxCacheSize(@Positive final int size) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        maxCacheSize = (int) Constraint.isGreaterThan(0, size, "Cache size must be greater than 0");
+    }
+
+    /**
+     * Set the interval of the local cache cleanup. A value of 0 disables the cleanup task.
+     *
+     * @param interval interval in milliseconds
+     */
+    @Duration
+    public void setCleanupInterval(@Duration @NonNegative final long interval) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        cleanupInterval = Constraint.isGreaterThanOrEqual(0, interval, "Cleanup interval must be non-negative");
+    }
+
+    /**
+     * Set the timer used to schedule the local cache cleanup. A daemon timer is created if not set.
+     *
+     * @param timer timer used to schedule the cleanup
+     */
+    public void setCleanupTaskTimer(@Nullable final Timer timer) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        cleanupTaskTimer = timer;
+    }
+
+    /**
+     * Set the registry for publishing the metrics. Defaults to the registry from {@link MetricsSupport}.
+     *
+     * @param registry the metric registry
+     */
+    public void setMetricRegistry(@Nullable final MetricRegistry registry) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        metricRegistry = registry;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void doInitialize() throws ComponentInitializationException {
+        super.doInitialize();
+        if (metricRegistry == null) {
+            metricRegistry = MetricsSupport.getMetricRegistry();
+        }
+        if (!referenceTokens) {
+            return;
+        }
+        if (storage == null) {
+            throw new ComponentInitializationException("StorageService cannot be null in reference token mode");
+        }
+        if (cleanupInterval > 0) {
+            if (cleanupTaskTimer == null) {
+                internalTaskTimer = new Timer("ReferenceTokenCacheCleanup", true);
+                cleanupTaskTimer = internalTaskTimer;
+            }
+            cleanupTask = new TimerTask() {
+                public void run() {
+                    purgeExpired(System.currentTimeMillis());
+                }
+            };
+            cleanupTaskTimer.schedule(cleanupTask, cleanupInterval, cleanupInterval);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void doDestroy() {
+        if (cleanupTask != null) {
+            cleanupTask.cancel();
+            cleanupTask = null;
+        }
+        if (internalTaskTimer != null) {
+            internalTaskTimer.cancel();
+            internalTaskTimer = null;
+        }
+        cache.clear();
+        super.doDestroy();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    @Nonnull
+    public String wrap(@Nonnull @NotEmpty final String data, final long exp) throws DataSealerException {
+        final Context timer = startTimer(referenceTokens ? MODE_REFERENCE : MODE_SEALED, "issuanceLatency");
+        try {
+            final String token = referenceTokens ? store(data, exp) : super.wrap(data, exp);
+            updateHistogram(referenceTokens ? MODE_REFERENCE : MODE_SEALED, "tokenSize", token.length());
+            return token;
+        } finally {
+            if (timer != null) {
+                timer.stop();
+            }
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    @Nonnull
+    public String unwrap(@Nonnull @NotEmpty final String wrapped) throws DataSealerException {
+        final boolean reference = wrapped.startsWith(HANDLE_PREFIX);
+        final Context timer = startTimer(reference ? MODE_REFERENCE : MODE_SEALED, "validationLatency");
+        try {
+            return reference ? resolve(wrapped) : super.unwrap(wrapped);
+        } finally {
+            if (timer != null) {
+                timer.stop();
+            }
+        }
+    }
+
+    /**
+     * Stores the data and returns a handle to it regardless of the reference token mode, for instance to reference the
+     * token claims from a JWT access token. The handle is resolved by {@link #unwrap(String)}.
+     *
+     * @param data the data to store
+     * @param exp the expiration time of the data
+     * @return the handle
+     * @throws DataSealerException if there is no storage or the data cannot be stored
+     */
+    @Nonnull
+    public String reference(@Nonnull @NotEmpty final String data, final long exp) throws DataSealerException {
+        ComponentSupport.ifNotInitializedThrowUninitializedComponentException(this);
+
+        if (storage == null) {
+            throw new DataSealerException("No StorageService is configured for the token references");
+        }
+        final Context timer = startTimer(MODE_REFERENCE, "issuanceLatency");
+        try {
+            return store(data, exp);
+        } finally {
+            if (timer != null) {
+                timer.stop();
+            }
+        }
+    }
+
+    /**
+     * Stores the data and returns a handle to it.
+     *
+     * @param data the data to store
+     * @param exp the expiration time of the data
+     * @return the handle
+     * @throws DataSealerException if the data cannot be stored
+     */
+    @Nonnull
+    private String store(@Nonnull final String data, final long exp) throws DataSealerException {
+        if (data.length() > storage.getCapabilities().getValueSize()) {
+            throw new DataSealerException("Token claims exceed the value size of the StorageService");
+        }
+        final String handle = HANDLE_PREFIX + handleGenerator.generateIdentifier(false);
+        try {
+            if (!storage.create(CONTEXT_NAME, handle, data, exp)) {
+                throw new DataSealerException("Token handle collision, unable to store the token claims");
+            }
+        } catch (final IOException e) {
+            throw new DataSealerException("Unable to store the token claims", e);
+        }
+        updateHistogram(MODE_REFERENCE, "payloadSize", data.length());
+        cache(handle, new StorageRecord<>(data, exp));
+        log.debug("Stored token claims behind handle {}", handle);
+        return handle;
+    }
+
+    /**
+     * Resolves the data behind the handle, first from the local cache and then from the storage.
+     *
+     * @param handle the handle
+     * @return the data
+     * @throws DataSealerException if the handle is unknown or expired
+     */
+    @Nonnull
+    private String resolve(@Nonnull final String handle) throws DataSealerException {
+        if (storage == null) {
+            throw new DataSealerException("Reference token received but no StorageService is configured");
+        }
+        final long now = System.currentTimeMillis();
+        StorageRecord<?> record = cache.get(handle);
+        if (record == null) {
+            try {
+                record = storage.read(CONTEXT_NAME, handle);
+            } catch (final IOException e) {
+                throw new DataSealerException("Unable to read the token claims", e);
+            }
+            if (record == null) {
+                throw new DataSealerException("Unknown token handle");
+            }
+            cache(handle, record);
+        }
+        if (record.getExpiration() != null && record.getExpiration() <= now) {
+            cache.remove(handle);
+            throw new DataSealerException("Token handle has expired");
+        }
+        return record.getValue();
+    }
+
+    /**
+     * Adds a record to the local cache, making room for it if the cache is full.
+     *
+     * @param handle the handle
+     * @param record the record
+     */
+    private void cache(@Nonnull final String handle, @Nonnull final StorageRecord<?> record) {
+        if (cache.size() >= maxCacheSize) {
+            purgeExpired(System.currentTimeMillis());
+            if (cache.size() >= maxCacheSize) {
+                log.debug("Local cache is full ({} handles) after purging expired handles, clearing it",
+                        maxCacheSize);
+                cache.clear();
+            }
+        }
+        cache.put(handle, record);
+    }
+
+    /**
+     * Purges the expired entries from the local cache.
+     *
+     * @param now the current time
+     */
+    private void purgeExpired(final long now) {
+        int purged = 0;
+        final Iterator<Map.Entry<String, StorageRecord<?>>> iterator = cache.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Long expiration = iterator.next().getValue().getExpiration();
+            if (expiration != null && expiration <= now) {
+                iterator.remove();
+                purged++;
+            }
+        }
+        log.trace("Purged {} expired handles from the local cache", purged);
+    }
+
+    /**
+     * Starts a timer for the given metric.
+     *
+     * @param mode the token mode
+     * @param name the metric name
+     * @return the timer context, null if no metric registry is available
+     */
+    @Nullable
+    private Context startTimer(@Nonnull final String mode, @Nonnull final String name) {
+        return metricRegistry == null ? null
+                : metricRegistry.timer(MetricRegistry.name(ReferenceTokenDataSealer.class, mode, name)).time();
+    }
+
+    /**
+     * Updates the given histogram.
+     *
+     * @param mode the token mode
+     * @param name the metric name
+     * @param value the value
+     */
+    private void updateHistogram(@Nonnull final String mode, @Nonnull final String name, final int value) {
+        if (metricRegistry != null) {
+            final Histogram histogram =
+                    metricRegistry.histogram(MetricRegistry.name(ReferenceTokenDataSealer.class, mode, name));
+            histogram.update(value);
+        }
+    }
+}
@@ -17,10 +17,16 @@
 package org.geant.idpextension.oidc.storage;
 
 import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 import net.shibboleth.utilities.java.support.annotation.Duration;
+import net.shibboleth.utilities.java.support.annotation.constraint.NonNegative;
 import net.shibboleth.utilities.java.support.annotation.constraint.NonnullAfterInit;
 import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
 import net.shibboleth.utilities.java.support.annotation.constraint.Positive;
@@ -45,6 +51,12 @@ import org.slf4j.LoggerFactory;
  * This class is thread-safe and uses a synchronized method to prevent race conditions within the underlying store
  * (lacking an atomic "check and insert" operation).
  * </p>
+ * 
+ * <p>
+ * Optionally the values found not to be revoked are remembered locally for a short time, saving the round trips to
+ * the store for the tokens used repeatedly. The revocations are then published to an {@link InvalidationBus}, so
+ * that the other instances and nodes forget the revoked values immediately.
+ * </p>
  */
 @ThreadSafeAfterInit
 public class RevocationCache extends AbstractIdentifiableInitializableComponent {
@@ -63,11 +75,43 @@ public class RevocationCache extends AbstractIdentifiableInitializableComponent
     @Duration
     private long expires;
 
+    /** Time to remember locally that a value is not revoked. Default value: 0, not remembered. */
+    @NonNegative
+    @Duration
+    private long nearCacheExpiration;
+
+    /** Maximum number of values remembered locally as not revoked. Default value: 100000. */
+    @Positive
+    private int maxNearCacheSize;
+
+    /** The expiration times of the values known not to be revoked, keyed by the context and the key. */
+    @Nonnull
+    private final ConcurrentMap<String, Long> notRevoked;
+
+    /** The bus notifying about the revocations, null if not used. */
+    @Nullable
+    private InvalidationBus invalidationBus;
+
+    /** The listener forgetting the values revoked through the bus. */
+    @Nonnull
+    private final InvalidationListener invalidationListener;
+
     /**
      * Constructor.
      */
     public RevocationCache() {
         expires = 6 * 60 * 60 * 1000;
+        maxNearCacheSize = 100000;
+        notRevoked = new ConcurrentHashMap<>();
+        invalidationListener = new InvalidationListener() {
+            public void invalidate(final String topic, final String key) {
+                if (key == null) {
+                    notRevoked.clear();
+                } else {
+                    notRevoked.remove(key);
+                }
+            }
+        };
     }
 
     /**
@@ -126,12 +170,62 @@ public class RevocationCache extends AbstractIdentifiableInitializableComponent
         strict = flag;
     }
 
+    /**
+     * Set the time to remember locally that a value is not revoked. Should only be set together with an invalidation
+     * bus shared by all the instances, as a revocation through another instance is otherwise noticed only after
+     * this time.
+     * 
+     * @param expiration time to remember a value not revoked in milliseconds, 0 not to remember
+     */
+    @Duration
+    public void setNearCacheExpiration(@NonNegative @Duration final long expiration) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        nearCacheExpiration = Constraint.isGreaterThanOrEqual(0, expiration,
+                "near cache expiration must be greater than or equal to 0");
+    }
+
+    /**
+     * Set the maximum number of values remembered locally as not revoked.
+     * 
+     * @param size maximum number of values
+     */
+    public void setMaxNearCacheSize(@Positive final int size) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        maxNearCacheSize = (int) Constraint.isGreaterThan(0, size, "near cache size must be greater than 0");
+    }
+
+    /**
+     * Set the bus notifying about the revocations.
+     * 
+     * @param bus the invalidation bus, null if not used
+     */
+    public void setInvalidationBus(@Nullable final InvalidationBus bus) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        invalidationBus = bus;
+    }
+
     /** {@inheritDoc} */
     @Override
     public void doInitialize() throws ComponentInitializationException {
         if (storage == null) {
             throw new ComponentInitializationException("StorageService cannot be null");
         }
+        if (invalidationBus != null) {
+            invalidationBus.subscribe(InvalidationTopics.REVOCATION, invalidationListener);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void doDestroy() {
+        if (invalidationBus != null) {
+            invalidationBus.unsubscribe(InvalidationTopics.REVOCATION, invalidationListener);
+        }
+        notRevoked.clear();
+        super.doDestroy();
     }
 
     /**
@@ -155,22 +249,26 @@ public class RevocationCache extends AbstractIdentifiableInitializableComponent
         } else {
             key = s;
         }
+        final String nearKey = context + '!' + key;
+        notRevoked.remove(nearKey);
         try {
             StorageRecord entry = storage.read(context, key);
             if (entry == null) {
                 log.debug("Entry '{}' of context '{}' is not yet on list of revoked entries,"
                         + " adding to cache with expiration time {}", key, context, expires);
                 storage.create(context, key, "y", System.currentTimeMillis() + expires);
-                return true;
             } else {
                 storage.update(context, key, "y", System.currentTimeMillis() + expires);
                 log.debug("Entry '{}' of context '{}' was already revoked, updating expiration", key, context);
-                return true;
             }
         } catch (IOException e) {
             log.error("Exception reading/writing to storage service, returning {}", e, strict ? "failure" : "success");
             return !strict;
         }
+        if (invalidationBus != null) {
+            invalidationBus.publish(InvalidationTopics.REVOCATION, nearKey);
+        }
+        return true;
     }
 
     /**
@@ -194,10 +292,22 @@ public class RevocationCache extends AbstractIdentifiableInitializableComponent
             key = s;
         }
 
+        final String nearKey = context + '!' + key;
+        if (nearCacheExpiration > 0) {
+            final Long expiration = notRevoked.get(nearKey);
+            if (expiration != null && expiration > System.currentTimeMillis()) {
+                log.debug("Entry '{}' is not revoked according to the near cache", key);
+                return false;
+            }
+        }
+
         try {
             StorageRecord entry = storage.read(context, key);
             if (entry == null) {
                 log.debug("Entry '{}' is not revoked");
+                if (nearCacheExpiration > 0) {
+                    rememberNotRevoked(nearKey);
+                }
                 return false;
             } else {
                 log.debug("Entry '{}' is revoked", s);
@@ -209,4 +319,26 @@ public class RevocationCache extends AbstractIdentifiableInitializableComponent
         }
     }
 
+    /**
+     * Remembers locally that the value is not revoked. The expired values are purged when the near cache is full, and
+     * the near cache is cleared if it is still full.
+     * 
+     * @param nearKey the context and the key of the value
+     */
+    private void rememberNotRevoked(@Nonnull final String nearKey) {
+        final long now = System.currentTimeMillis();
+        if (notRevoked.size() >= maxNearCacheSize) {
+            final Iterator<Map.Entry<String, Long>> iterator = notRevoked.entrySet().iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().getValue() <= now) {
+                    iterator.remove();
+                }
+            }
+            if (notRevoked.size() >= maxNearCacheSize) {
+                notRevoked.clear();
+            }
+        }
+        notRevoked.put(nearKey, now + nearCacheExpiration);
+    }
+
 }
\ No newline at end of file
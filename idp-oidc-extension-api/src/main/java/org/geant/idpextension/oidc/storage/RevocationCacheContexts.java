@@ -30,4 +30,18 @@ public class RevocationCacheContexts {
     @NotEmpty
     public static final String AUTHORIZATION_CODE = RevocationCacheContexts.class.getName() + ".AUTHORIZATION_CODE";
 
+    /**
+     * ID of context for the revocation epochs of the user principals.
+     */
+    @Nonnull
+    @NotEmpty
+    public static final String PRINCIPAL = RevocationCacheContexts.class.getName() + ".PRINCIPAL";
+
+    /**
+     * ID of context for the revocation epochs of the clients.
+     */
+    @Nonnull
+    @NotEmpty
+    public static final String CLIENT = RevocationCacheContexts.class.getName() + ".CLIENT";
+
 }
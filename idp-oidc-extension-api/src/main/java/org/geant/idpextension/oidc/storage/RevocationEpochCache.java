@@ -0,0 +1,466 @@
+/*
+ * Copyright (c) 2017 - 2020, GÉANT
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an “AS IS” BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.geant.idpextension.oidc.storage;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.shibboleth.utilities.java.support.annotation.Duration;
+import net.shibboleth.utilities.java.support.annotation.constraint.NonNegative;
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullAfterInit;
+import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
+import net.shibboleth.utilities.java.support.annotation.constraint.Positive;
+import net.shibboleth.utilities.java.support.annotation.constraint.ThreadSafeAfterInit;
+import net.shibboleth.utilities.java.support.component.AbstractIdentifiableInitializableComponent;
+import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
+import net.shibboleth.utilities.java.support.component.ComponentSupport;
+import net.shibboleth.utilities.java.support.logic.Constraint;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.geant.idpextension.oidc.token.support.TokenClaimsSet;
+import org.opensaml.storage.StorageCapabilities;
+import org.opensaml.storage.StorageCapabilitiesEx;
+import org.opensaml.storage.StorageRecord;
+import org.opensaml.storage.StorageService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stores and checks the revocation epochs of the user principals and the clients.
+ * 
+ * <p>
+ * An epoch is advanced to revoke all the tokens of a user principal or a client at once, with a single write to the
+ * store. The tokens are stamped with the current epochs at issuance, the tokens derived from them inherit the stamps,
+ * and a token is revoked if any of its stamps is older than the current epoch. The epochs must be kept in the store
+ * longer than any token lineage is used, as a token stamped with an epoch is valid again once the epoch has expired.
+ * </p>
+ * 
+ * <p>
+ * Optionally the epochs are remembered locally for a short time, saving the round trips to the store for the
+ * validation of every token. The advanced epochs are then published to an {@link InvalidationBus}, so that the other
+ * instances and nodes forget the previous epochs immediately.
+ * </p>
+ * 
+ * <p>
+ * The epoch of a client is advanced when its registration is removed. No flow advances the epoch of a user principal,
+ * the deployer calls {@link #revokePrincipal(String)} on the bean <code>shibboleth.oidc.RevocationEpochCache</code>,
+ * for instance from a script or a custom flow, to revoke all the tokens of the principal issued until then.
+ * </p>
+ */
+@ThreadSafeAfterInit
+public class RevocationEpochCache extends AbstractIdentifiableInitializableComponent {
+
+    /** Logger. */
+    private final Logger log = LoggerFactory.getLogger(RevocationEpochCache.class);
+
+    /** Backing storage for the epochs. */
+    private StorageService storage;
+
+    /** Flag controlling behavior on storage failure. */
+    private boolean strict;
+
+    /** Lifetime of an epoch. Default value: 30 days */
+    @Positive
+    @Duration
+    private long expires;
+
+    /** Time to remember an epoch locally. Default value: 0, not remembered. */
+    @NonNegative
+    @Duration
+    private long nearCacheExpiration;
+
+    /** Maximum number of epochs remembered locally. Default value: 100000. */
+    @Positive
+    private int maxNearCacheSize;
+
+    /** The epochs remembered locally, keyed by the context and the key. */
+    @Nonnull
+    private final ConcurrentMap<String, NearCacheEntry> epochs;
+
+    /** The bus notifying about the advanced epochs, null if not used. */
+    @Nullable
+    private InvalidationBus invalidationBus;
+
+    /** The listener forgetting the epochs advanced through the bus. */
+    @Nonnull
+    private final InvalidationListener invalidationListener;
+
+    /**
+     * Constructor.
+     */
+    public RevocationEpochCache() {
+        expires = 30L * 24 * 60 * 60 * 1000;
+        maxNearCacheSize = 100000;
+        epochs = new ConcurrentHashMap<>();
+        invalidationListener = new InvalidationListener() {
+            public void invalidate(final String topic, final String key) {
+                if (key == null) {
+                    epochs.clear();
+                } else {
+                    epochs.remove(key);
+                }
+            }
+        };
+    }
+
+    /**
+     * Set the epoch expiration. Must be longer than the lifetime of the token lineages, including the refresh tokens
+     * issued with the refresh token grant.
+     * 
+     * @param entryExpiration lifetime of an epoch in milliseconds
+     */
+    @Duration
+    public void setEntryExpiration(@Positive @Duration final long entryExpiration) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        expires = Constraint.isGreaterThan(0, entryExpiration, "epoch expiration must be greater than 0");
+    }
+
+    /**
+     * Get the backing store for the epochs.
+     * 
+     * @return the backing store.
+     */
+    @NonnullAfterInit
+    public StorageService getStorage() {
+        return storage;
+    }
+
+    /**
+     * Set the backing store for the epochs.
+     * 
+     * @param storageService backing store to use
+     */
+    public void setStorage(@Nonnull final StorageService storageService) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        storage = Constraint.isNotNull(storageService, "StorageService cannot be null");
+        final StorageCapabilities caps = storage.getCapabilities();
+        if (caps instanceof StorageCapabilitiesEx) {
+            Constraint.isTrue(((StorageCapabilitiesEx) caps).isServerSide(), "StorageService cannot be client-side");
+        }
+    }
+
+    /**
+     * Get the strictness flag.
+     * 
+     * @return true iff we should treat storage failures as a revocation
+     */
+    public boolean isStrict() {
+        return strict;
+    }
+
+    /**
+     * Set the strictness flag.
+     * 
+     * @param flag true iff we should treat storage failures as a revocation
+     */
+    public void setStrict(final boolean flag) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        strict = flag;
+    }
+
+    /**
+     * Set the time to remember an epoch locally. Should only be set together with an invalidation bus shared by all
+     * the instances, as an epoch advanced through another instance is otherwise noticed only after this time.
+     * 
+     * @param expiration time to remember an epoch in milliseconds, 0 not to remember
+     */
+    @Duration
+    public void setNearCacheExpiration(@NonNegative @Duration final long expiration) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        nearCacheExpiration = Constraint.isGreaterThanOrEqual(0, expiration,
+                "near cache expiration must be greater than or equal to 0");
+    }
+
+    /**
+     * Set the maximum number of epochs remembered locally.
+     * 
+     * @param size maximum number of epochs
+     */
+    public void setMaxNearCacheSize(@Positive final int size) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        maxNearCacheSize = (int) Constraint.isGreaterThan(0, size, "near cache size must be greater than 0");
+    }
+
+    /**
+     * Set the bus notifying about the advanced epochs.
+     * 
+     * @param bus the invalidation bus, null if not used
+     */
+    public void setInvalidationBus(@Nullable final InvalidationBus bus) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        invalidationBus = bus;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void doInitialize() throws ComponentInitializationException {
+        if (storage == null) {
+            throw new ComponentInitializationException("StorageService cannot be null");
+        }
+        if (invalidationBus != null) {
+            invalidationBus.subscribe(InvalidationTopics.REVOCATION_EPOCH, invalidationListener);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void doDestroy() {
+        if (invalidationBus != null) {
+            invalidationBus.unsubscribe(InvalidationTopics.REVOCATION_EPOCH, invalidationListener);
+        }
+        epochs.clear();
+        super.doDestroy();
+    }
+
+    /**
+     * Advances the epoch, revoking all the tokens stamped with the earlier epochs. The epoch is the current time, or
+     * the previous epoch incremented by one if the clock is behind it.
+     * 
+     * @param context a context label to subdivide the epochs, such as {@link RevocationCacheContexts#PRINCIPAL}
+     * @param s the user principal or the client ID the epoch is advanced for
+     * 
+     * @return true if the epoch has successfully been advanced in the store.
+     */
+    public synchronized boolean revoke(@Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String s) {
+        final String key = getStorageKey(context, s);
+        if (key == null) {
+            return false;
+        }
+        final String nearKey = context + '!' + key;
+        epochs.remove(nearKey);
+        try {
+            final StorageRecord entry = storage.read(context, key);
+            if (entry == null) {
+                final long epoch = System.currentTimeMillis();
+                log.debug("Creating epoch {} for '{}' of context '{}'", epoch, key, context);
+                storage.create(context, key, String.valueOf(epoch), System.currentTimeMillis() + expires);
+            } else {
+                final long epoch = Math.max(System.currentTimeMillis(), parseEpoch(entry) + 1);
+                log.debug("Advancing epoch of '{}' of context '{}' to {}", key, context, epoch);
+                storage.update(context, key, String.valueOf(epoch), System.currentTimeMillis() + expires);
+            }
+        } catch (IOException e) {
+            log.error("Exception reading/writing to storage service", e);
+            return false;
+        }
+        if (invalidationBus != null) {
+            invalidationBus.publish(InvalidationTopics.REVOCATION_EPOCH, nearKey);
+        }
+        return true;
+    }
+
+    /**
+     * Advances the epoch of the user principal, revoking all the tokens issued to the clients on behalf of the
+     * principal until now.
+     * 
+     * @param principal the user principal, as stamped to the tokens
+     * 
+     * @return true if the epoch has successfully been advanced in the store.
+     */
+    public boolean revokePrincipal(@Nonnull @NotEmpty final String principal) {
+        return revoke(RevocationCacheContexts.PRINCIPAL, principal);
+    }
+
+    /**
+     * Advances the epoch of the client, revoking all the tokens issued to the client until now.
+     * 
+     * @param clientId the client ID
+     * 
+     * @return true if the epoch has successfully been advanced in the store.
+     */
+    public boolean revokeClient(@Nonnull @NotEmpty final String clientId) {
+        return revoke(RevocationCacheContexts.CLIENT, clientId);
+    }
+
+    /**
+     * Returns the current epoch to be stamped to the issued tokens.
+     * 
+     * @param context a context label to subdivide the epochs, such as {@link RevocationCacheContexts#PRINCIPAL}
+     * @param s the user principal or the client ID
+     * 
+     * @return the current epoch, 0 if it has never been advanced
+     * @throws IOException if the epoch cannot be read from the store
+     */
+    public long getEpoch(@Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String s)
+            throws IOException {
+        final String key = getStorageKey(context, s);
+        if (key == null) {
+            throw new IOException("Context " + context + " too long for StorageService");
+        }
+        final String nearKey = context + '!' + key;
+        if (nearCacheExpiration > 0) {
+            final NearCacheEntry cached = epochs.get(nearKey);
+            if (cached != null && cached.expiration > System.currentTimeMillis()) {
+                return cached.epoch;
+            }
+        }
+        final StorageRecord entry = storage.read(context, key);
+        final long epoch = entry == null ? 0 : parseEpoch(entry);
+        if (nearCacheExpiration > 0) {
+            rememberEpoch(nearKey, epoch);
+        }
+        return epoch;
+    }
+
+    /**
+     * Stamps the current epochs of the user principal and the client to the token being built. The epochs are left
+     * unstamped if they cannot be read from the store, in which case the token is revoked by any advanced epoch.
+     * 
+     * @param builder the builder of the token
+     * @param principal the user principal
+     * @param clientId the client ID
+     */
+    public void stampRevocationEpochs(@Nonnull final TokenClaimsSet.Builder<?> builder,
+            @Nonnull @NotEmpty final String principal, @Nonnull @NotEmpty final String clientId) {
+        try {
+            builder.setRevocationEpochs(getEpoch(RevocationCacheContexts.PRINCIPAL, principal),
+                    getEpoch(RevocationCacheContexts.CLIENT, clientId));
+        } catch (IOException e) {
+            log.warn("Exception reading from storage service, revocation epochs not stamped", e);
+        }
+    }
+
+    /**
+     * Returns true if the epoch stamped to the token is older than the current epoch.
+     * 
+     * @param context a context label to subdivide the epochs, such as {@link RevocationCacheContexts#PRINCIPAL}
+     * @param s the user principal or the client ID
+     * @param stampedEpoch the epoch stamped to the token
+     * 
+     * @return true if the token is revoked
+     */
+    public boolean isRevoked(@Nonnull @NotEmpty final String context, @Nonnull @NotEmpty final String s,
+            final long stampedEpoch) {
+        try {
+            final long epoch = getEpoch(context, s);
+            if (stampedEpoch < epoch) {
+                log.debug("Epoch {} of '{}' is older than the current epoch {}", stampedEpoch, s, epoch);
+                return true;
+            }
+            return false;
+        } catch (IOException e) {
+            log.error("Exception reading from storage service, returning {}", strict ? "failure" : "success", e);
+            return strict;
+        }
+    }
+
+    /**
+     * Returns true if the token has been revoked by advancing the epoch of its user principal or its client.
+     * 
+     * @param tokenClaimsSet the claims of the token
+     * 
+     * @return true if the token is revoked
+     */
+    public boolean isRevoked(@Nonnull final TokenClaimsSet tokenClaimsSet) {
+        return isRevoked(RevocationCacheContexts.PRINCIPAL, tokenClaimsSet.getPrincipal(),
+                tokenClaimsSet.getPrincipalRevocationEpoch())
+                || isRevoked(RevocationCacheContexts.CLIENT, tokenClaimsSet.getClientID().getValue(),
+                        tokenClaimsSet.getClientRevocationEpoch());
+    }
+
+    /**
+     * Returns the key for the store, hashed if it is too long.
+     * 
+     * @param context a context label to subdivide the epochs
+     * @param s the user principal or the client ID
+     * @return the key for the store, null if the context is too long
+     */
+    @Nullable
+    private String getStorageKey(@Nonnull final String context, @Nonnull final String s) {
+        final StorageCapabilities caps = storage.getCapabilities();
+        if (context.length() > caps.getContextSize()) {
+            log.error("context {} too long for StorageService (limit {})", context, caps.getContextSize());
+            return null;
+        } else if (s.length() > caps.getKeySize()) {
+            return DigestUtils.sha1Hex(s);
+        }
+        return s;
+    }
+
+    /**
+     * Parses the epoch stored in the record.
+     * 
+     * @param entry the record
+     * @return the epoch
+     * @throws IOException if the value is not an epoch
+     */
+    @SuppressWarnings("rawtypes")
+    private long parseEpoch(@Nonnull final StorageRecord entry) throws IOException {
+        try {
+            return Long.parseLong(entry.getValue());
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid epoch " + entry.getValue(), e);
+        }
+    }
+
+    /**
+     * Remembers the epoch locally. The expired epochs are purged when the near cache is full, and the near cache is
+     * cleared if it is still full.
+     * 
+     * @param nearKey the context and the key of the epoch
+     * @param epoch the epoch
+     */
+    private void rememberEpoch(@Nonnull final String nearKey, final long epoch) {
+        final long now = System.currentTimeMillis();
+        if (epochs.size() >= maxNearCacheSize) {
+            final Iterator<Map.Entry<String, NearCacheEntry>> iterator = epochs.entrySet().iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().getValue().expiration <= now) {
+                    iterator.remove();
+                }
+            }
+            if (epochs.size() >= maxNearCacheSize) {
+                epochs.clear();
+            }
+        }
+        epochs.put(nearKey, new NearCacheEntry(epoch, now + nearCacheExpiration));
+    }
+
+    /** An epoch remembered locally. */
+    private static final class NearCacheEntry {
+
+        /** The epoch. */
+        private final long epoch;
+
+        /** The time after which the epoch is read from the store again. */
+        private final long expiration;
+
+        /**
+         * Constructor.
+         * 
+         * @param currentEpoch the epoch
+         * @param expirationTime the time after which the epoch is read from the store again
+         */
+        private NearCacheEntry(final long currentEpoch, final long expirationTime) {
+            epoch = currentEpoch;
+            expiration = expirationTime;
+        }
+    }
+
+}
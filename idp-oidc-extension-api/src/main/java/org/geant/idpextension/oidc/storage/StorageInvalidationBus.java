@@ -0,0 +1,301 @@
+/*
+ * Copyright (c) 2017 - 2020, GÉANT
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an “AS IS” BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.geant.idpextension.oidc.storage;
+
+import java.io.IOException;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.minidev.json.JSONArray;
+import net.minidev.json.JSONValue;
+import net.shibboleth.utilities.java.support.annotation.Duration;
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullAfterInit;
+import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
+import net.shibboleth.utilities.java.support.annotation.constraint.Positive;
+import net.shibboleth.utilities.java.support.annotation.constraint.ThreadSafeAfterInit;
+import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
+import net.shibboleth.utilities.java.support.component.ComponentSupport;
+import net.shibboleth.utilities.java.support.logic.Constraint;
+
+import org.opensaml.storage.StorageCapabilities;
+import org.opensaml.storage.StorageCapabilitiesEx;
+import org.opensaml.storage.StorageRecord;
+import org.opensaml.storage.StorageService;
+import org.opensaml.storage.VersionMismatchException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An {@link InvalidationBus} sharing the events between the nodes through a {@link StorageService} shared by them.
+ * 
+ * <p>
+ * The most recent events are kept in a single versioned storage record, appended to with optimistic locking. Each
+ * node polls the record at an interval and delivers the events published by the other nodes since the previous poll.
+ * If a node has missed events dropped from the record in between, it invalidates all the entries of its topics.
+ * </p>
+ */
+@ThreadSafeAfterInit
+public class StorageInvalidationBus extends LocalInvalidationBus {
+
+    /** The context name in the {@link StorageService}. */
+    public static final String CONTEXT_NAME = "oidcInvalidationEvents";
+
+    /** The key of the event record in the {@link StorageService}. */
+    public static final String EVENTS_KEY = "events";
+
+    /** Maximum number of attempts to append an event to the record modified concurrently by other nodes. */
+    private static final int MAX_ATTEMPTS = 10;
+
+    /** Logger. */
+    private final Logger log = LoggerFactory.getLogger(StorageInvalidationBus.class);
+
+    /** Backing storage shared by the nodes. */
+    @NonnullAfterInit private StorageService storage;
+
+    /** Interval for polling the events of the other nodes. Default value: 5 seconds. */
+    @Duration @Positive private long pollInterval;
+
+    /** Maximum number of events kept in the record. Default value: 100. */
+    @Positive private int maxEvents;
+
+    /** Timer used for polling the events. */
+    @Nullable private Timer pollTimer;
+
+    /** The version of the record when last polled. */
+    private long lastVersion;
+
+    /** The sequence number of the last event seen, -1 if none. */
+    private long lastSequence;
+
+    /**
+     * Constructor.
+     */
+    public StorageInvalidationBus() {
+        pollInterval = 5000;
+        maxEvents = 100;
+        lastSequence = -1;
+    }
+
+    /**
+     * Set the backing store shared by the nodes.
+     * 
+     * @param storageService backing store to use
+     */
+    public void setStorage(@Nonnull final StorageService storageService) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        storage = Constraint.isNotNull(storageService, "StorageService cannot be null");
+        final StorageCapabilities caps = storage.getCapabilities();
+        if (caps instanceof StorageCapabilitiesEx) {
+            Constraint.isTrue(((StorageCapabilitiesEx) caps).isServerSide(), "StorageService cannot be client-side");
+        }
+    }
+
+    /**
+     * Set the interval for polling the events of the other nodes.
+     * 
+     * @param interval interval in milliseconds
+     */
+    @Duration public void setPollInterval(@Duration @Positive final long interval) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        pollInterval = Constraint.isGreaterThan(0, interval, "Poll interval must be greater than 0");
+    }
+
+    /**
+     * Set the maximum number of events kept in the record. Should be large enough to hold the events published by
+     * all the nodes during a poll interval.
+     * 
+     * @param max maximum number of events
+     */
+    public void setMaxEvents(@Positive final int max) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        maxEvents = (int) Constraint.isGreaterThan(0, max, "Maximum number of events must be greater than 0");
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void doInitialize() throws ComponentInitializationException {
+        super.doInitialize();
+        if (storage == null) {
+            throw new ComponentInitializationException("StorageService cannot be null");
+        }
+        // the events published before this node started are not delivered
+        poll(false);
+        pollTimer = new Timer("StorageInvalidationBus", true);
+        pollTimer.schedule(new TimerTask() {
+            public void run() {
+                try {
+                    poll(true);
+                } catch (final RuntimeException e) {
+                    log.error("Could not poll the invalidation events", e);
+                }
+            }
+        }, pollInterval, pollInterval);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void doDestroy() {
+        if (pollTimer != null) {
+            pollTimer.cancel();
+            pollTimer = null;
+        }
+        super.doDestroy();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void transmit(@Nonnull @NotEmpty final String topic, @Nullable final String key) {
+        final int maxValueSize = storage.getCapabilities().getValueSize();
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            try {
+                final StorageRecord<?> record = storage.read(CONTEXT_NAME, EVENTS_KEY);
+                final JSONArray events = record != null ? parseEvents(record.getValue()) : new JSONArray();
+                final long sequence = events.isEmpty() ? 0 : getSequence(events.get(events.size() - 1)) + 1;
+                final JSONArray event = new JSONArray();
+                event.add(sequence);
+                event.add(getNodeId());
+                event.add(topic);
+                event.add(key);
+                events.add(event);
+                String value = events.toJSONString();
+                while (events.size() > maxEvents || (value.length() > maxValueSize && events.size() > 1)) {
+                    events.remove(0);
+                    value = events.toJSONString();
+                }
+                if (record == null) {
+                    if (storage.create(CONTEXT_NAME, EVENTS_KEY, value, null)) {
+                        return;
+                    }
+                } else if (storage.updateWithVersion(record.getVersion(), CONTEXT_NAME, EVENTS_KEY, value,
+                        null) != null) {
+                    return;
+                }
+            } catch (final VersionMismatchException e) {
+                log.debug("Invalidation event record modified concurrently, retrying");
+            } catch (final IOException e) {
+                log.error("Could not publish the invalidation event for {} of topic {} to the storage", key, topic,
+                        e);
+                return;
+            }
+        }
+        log.error("Could not publish the invalidation event for {} of topic {} in {} attempts", key, topic,
+                MAX_ATTEMPTS);
+    }
+
+    /**
+     * Polls the event record and delivers the new events of the other nodes.
+     * 
+     * @param deliver whether to deliver the new events, or only to record them as seen
+     */
+    protected synchronized void poll(final boolean deliver) {
+        final StorageRecord<?> record;
+        try {
+            record = storage.read(CONTEXT_NAME, EVENTS_KEY);
+        } catch (final IOException e) {
+            log.error("Could not poll the invalidation events from the storage", e);
+            return;
+        }
+        if (record == null || record.getVersion() == lastVersion) {
+            return;
+        }
+        lastVersion = record.getVersion();
+        final JSONArray events = parseEvents(record.getValue());
+        if (events.isEmpty()) {
+            return;
+        }
+        boolean missed = false;
+        if (getSequence(events.get(events.size() - 1)) < lastSequence) {
+            // the record has been recreated since the last poll
+            lastSequence = -1;
+            missed = true;
+        }
+        if (getSequence(events.get(0)) > lastSequence + 1) {
+            missed = true;
+        }
+        if (deliver && missed) {
+            log.warn("Invalidation events have been missed, invalidating all the entries");
+            for (final String topic : getTopics()) {
+                deliver(topic, null);
+            }
+        }
+        for (final Object event : events) {
+            final long sequence = getSequence(event);
+            if (sequence <= lastSequence) {
+                continue;
+            }
+            lastSequence = sequence;
+            final JSONArray fields = (JSONArray) event;
+            if (deliver && !getNodeId().equals(fields.get(1))) {
+                deliver((String) fields.get(2), (String) fields.get(3));
+            }
+        }
+    }
+
+    /**
+     * Parses the events from the record value. Each event is an array of the sequence number, the node identifier,
+     * the topic and the key.
+     * 
+     * @param value the record value
+     * @return the events, empty if the value cannot be parsed
+     */
+    @Nonnull private JSONArray parseEvents(@Nullable final String value) {
+        final Object parsed = value != null ? JSONValue.parse(value) : null;
+        if (parsed instanceof JSONArray && isValid((JSONArray) parsed)) {
+            return (JSONArray) parsed;
+        }
+        log.warn("Could not parse the invalidation event record, starting a new one");
+        return new JSONArray();
+    }
+
+    /**
+     * Checks that the parsed events have the expected structure.
+     * 
+     * @param events the parsed events
+     * @return whether all the events have the expected structure
+     */
+    private static boolean isValid(@Nonnull final JSONArray events) {
+        for (final Object event : events) {
+            if (!(event instanceof JSONArray) || ((JSONArray) event).size() != 4) {
+                return false;
+            }
+            final JSONArray fields = (JSONArray) event;
+            if (!(fields.get(0) instanceof Number) || !(fields.get(1) instanceof String)
+                    || !(fields.get(2) instanceof String)
+                    || (fields.get(3) != null && !(fields.get(3) instanceof String))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the sequence number of the event.
+     * 
+     * @param event the event
+     * @return the sequence number of the event
+     */
+    private static long getSequence(@Nonnull final Object event) {
+        return ((Number) ((JSONArray) event).get(0)).longValue();
+    }
+
+}
@@ -16,14 +16,20 @@
 
 package org.geant.idpextension.oidc.token.support;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
+import java.util.List;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
+import org.geant.idpextension.oidc.storage.ReferenceTokenDataSealer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import com.nimbusds.jose.JOSEObjectType;
 import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
 import com.nimbusds.oauth2.sdk.Scope;
 import com.nimbusds.oauth2.sdk.id.ClientID;
 import com.nimbusds.openid.connect.sdk.ClaimsRequest;
@@ -45,6 +51,12 @@ public final class AccessTokenClaimsSet extends TokenClaimsSet {
     /** Value of access token claims set type. */
     private static final String VALUE_TYPE_AT = "at";
 
+    /** JOSE header type of the JWT access tokens. */
+    public static final JOSEObjectType JWT_TYPE_AT = new JOSEObjectType("at+jwt");
+
+    /** Claim of a JWT access token carrying the client id. */
+    public static final String KEY_JWT_CLIENT_ID = "client_id";
+
     /** Class logger. */
     @Nonnull
     private Logger log = LoggerFactory.getLogger(AccessTokenClaimsSet.class);
@@ -69,6 +81,7 @@ public final class AccessTokenClaimsSet extends TokenClaimsSet {
                 tokenClaimSet.getNonce(), tokenClaimSet.getAuthenticationTime(), tokenClaimSet.getRedirectURI(), scope,
                 tokenClaimSet.getClaimsRequest(), dlClaims, null, dlClaimsUI, tokenClaimSet.getConsentableClaims(),
                 tokenClaimSet.getConsentedClaims(), null);
+        setRevocationEpochs(tokenClaimSet.getPrincipalRevocationEpoch(), tokenClaimSet.getClientRevocationEpoch());
     }
 
     /**
@@ -138,9 +151,43 @@ public final class AccessTokenClaimsSet extends TokenClaimsSet {
      */
     public static AccessTokenClaimsSet parse(@Nonnull String wrappedAccessToken, @Nonnull DataSealer dataSealer)
             throws ParseException, DataSealerException {
+        // Sealed tokens are base64 encoded and never contain a dot, JWT access tokens always do.
+        if (wrappedAccessToken.indexOf('.') > 0) {
+            final String reference = SignedJWT.parse(wrappedAccessToken).getJWTClaimsSet().getJWTID();
+            if (reference == null || !reference.startsWith(ReferenceTokenDataSealer.HANDLE_PREFIX)) {
+                throw new ParseException("JWT access token does not reference the access token claims", 0);
+            }
+            return parse(dataSealer.unwrap(reference));
+        }
         return parse(dataSealer.unwrap(wrappedAccessToken));
     }
 
+    /**
+     * Forms the claims of a JWT access token as specified in RFC 9068. The JWT ID is the handle of the access token
+     * claims kept server-side by {@link ReferenceTokenDataSealer#reference(String, long)}, allowing the OP to process
+     * the JWT as it processes the sealed token. Claims intended only for the OP, like the user principal and the token
+     * delivery claims, are not exposed.
+     * 
+     * @param reference handle of the access token claims, used as the JWT ID. Must not be NULL.
+     * @param audiences the resource servers the token is intended for. The issuer is used if NULL or empty.
+     * @return claims set of the JWT access token
+     */
+    @Nonnull
+    public JWTClaimsSet toJWTAccessTokenClaimsSet(@Nonnull String reference, @Nullable Collection<String> audiences) {
+        final List<String> audience = new ArrayList<>();
+        if (audiences == null || audiences.isEmpty()) {
+            audience.add(tokenClaimsSet.getIssuer());
+        } else {
+            audience.addAll(audiences);
+        }
+        return new JWTClaimsSet.Builder().issuer(tokenClaimsSet.getIssuer()).subject(tokenClaimsSet.getSubject())
+                .audience(audience).expirationTime(tokenClaimsSet.getExpirationTime())
+                .issueTime(tokenClaimsSet.getIssueTime()).jwtID(reference)
+                .claim(KEY_JWT_CLIENT_ID, getClientID().getValue())
+                .claim(KEY_SCOPE, tokenClaimsSet.getClaim(KEY_SCOPE)).claim(KEY_AUTH_TIME, getAuthenticationTime())
+                .claim(KEY_ACR, getACR()).build();
+    }
+
     /** Builder to create instance of AccessTokenClaimsSet. */
     public static class Builder extends TokenClaimsSet.Builder<AccessTokenClaimsSet> {
 
@@ -172,8 +219,11 @@ public final class AccessTokenClaimsSet extends TokenClaimsSet {
          * @return AccessTokenClaimsSet instance.
          */
         public AccessTokenClaimsSet build() {
-            return new AccessTokenClaimsSet(idGen, rpId, iss, usrPrincipal, sub, acr, iat, exp, nonce, authTime,
-                    redirect, reqScope, claims, dlClaims, dlClaimsUI, cnsntlClaims, cnsntdClaims);
+            final AccessTokenClaimsSet claimsSet = new AccessTokenClaimsSet(idGen, rpId, iss, usrPrincipal, sub, acr,
+                    iat, exp, nonce, authTime, redirect, reqScope, claims, dlClaims, dlClaimsUI, cnsntlClaims,
+                    cnsntdClaims);
+            claimsSet.setRevocationEpochs(principalEpoch, clientEpoch);
+            return claimsSet;
         }
 
     }
@@ -152,8 +152,11 @@ public final class AuthorizeCodeClaimsSet extends TokenClaimsSet {
          * @return AuthorizeCodeClaimsSet instance.
          */
         public AuthorizeCodeClaimsSet build() {
-            return new AuthorizeCodeClaimsSet(idGen, rpId, iss, usrPrincipal, sub, acr, iat, exp, nonce, authTime,
-                    redirect, reqScope, claims, dlClaims, dlClaimsID, dlClaimsUI, cnsntlClaims, cnsntdClaims, codeChallenge);
+            final AuthorizeCodeClaimsSet claimsSet = new AuthorizeCodeClaimsSet(idGen, rpId, iss, usrPrincipal, sub,
+                    acr, iat, exp, nonce, authTime, redirect, reqScope, claims, dlClaims, dlClaimsID, dlClaimsUI,
+                    cnsntlClaims, cnsntdClaims, codeChallenge);
+            claimsSet.setRevocationEpochs(principalEpoch, clientEpoch);
+            return claimsSet;
         }
 
     }
@@ -55,6 +55,7 @@ public final class RefreshTokenClaimsSet extends TokenClaimsSet {
                 tokenClaimsSet.getScope(), tokenClaimsSet.getClaimsRequest(), tokenClaimsSet.getDeliveryClaims(), null,
                 tokenClaimsSet.getUserinfoDeliveryClaims(), tokenClaimsSet.getConsentableClaims(),
                 tokenClaimsSet.getConsentedClaims(), null);
+        setRevocationEpochs(tokenClaimsSet.getPrincipalRevocationEpoch(), tokenClaimsSet.getClientRevocationEpoch());
     }
 
     /**
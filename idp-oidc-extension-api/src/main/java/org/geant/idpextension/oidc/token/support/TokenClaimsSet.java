@@ -21,6 +21,7 @@ import java.util.Date;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
+import org.geant.idpextension.oidc.messaging.UnmodifiableScope;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -98,6 +99,18 @@ public class TokenClaimsSet {
     /** Claims set for token delivery, user info only. */
     public static final String KEY_DELIVERY_CLAIMS_USERINFO = "dl_claims_ui";
 
+    /**
+     * Time of taking the userinfo claims snapshot, in seconds since epoch. Carried inside the claims set
+     * {@link #KEY_DELIVERY_CLAIMS_USERINFO} if the set is a full userinfo claims snapshot.
+     */
+    public static final String KEY_DELIVERY_CLAIMS_SNAPSHOT_TIME = "dl_snpsht_iat";
+
+    /**
+     * Names of the claims in the set {@link #KEY_DELIVERY_CLAIMS_USERINFO} that belong to the userinfo claims snapshot
+     * only, and are to be dropped when the attributes are resolved again instead of using the snapshot.
+     */
+    public static final String KEY_DELIVERY_CLAIMS_SNAPSHOT_NAMES = "dl_snpsht_names";
+
     /** Claims/Attributes requiring consent. */
     public static final String KEY_CONSENTABLE_CLAIMS = "cnsntbl_claims";
 
@@ -107,9 +120,39 @@ public class TokenClaimsSet {
     /** Code Challenge. */
     public static final String KEY_CODE_CHALLENGE = "cc";
 
+    /** Revocation epoch of the user principal at the issuance of the token lineage. */
+    public static final String KEY_PRINCIPAL_REVOCATION_EPOCH = "prncpl_rvk_epch";
+
+    /** Revocation epoch of the client at the issuance of the token lineage. */
+    public static final String KEY_CLIENT_REVOCATION_EPOCH = "clid_rvk_epch";
+
     /** Claims set for the claim. */
     protected JWTClaimsSet tokenClaimsSet;
 
+    /** Decoded scope, set on first access. */
+    @Nullable
+    private volatile Scope scope;
+
+    /** Decoded claims request, set on first access. */
+    @Nullable
+    private volatile ClaimsRequest claimsRequest;
+
+    /** Decoded token delivery claims, set on first access. */
+    @Nullable
+    private volatile ClaimsSet deliveryClaims;
+
+    /** Decoded id token token delivery claims, set on first access. */
+    @Nullable
+    private volatile ClaimsSet idTokenDeliveryClaims;
+
+    /** Decoded user info response token delivery claims, set on first access. */
+    @Nullable
+    private volatile ClaimsSet userinfoDeliveryClaims;
+
+    /** Decoded redirect uri, set on first access. */
+    @Nullable
+    private volatile URI redirectURI;
+
     /** Class logger. */
     @Nonnull
     private Logger log = LoggerFactory.getLogger(TokenClaimsSet.class);
@@ -249,6 +292,12 @@ public class TokenClaimsSet {
         if (tokenClaimsSet.getClaims().containsKey(KEY_CODE_CHALLENGE)) {
             tokenClaimsSet.getStringClaim(KEY_CODE_CHALLENGE);
         }
+        if (tokenClaimsSet.getClaims().containsKey(KEY_PRINCIPAL_REVOCATION_EPOCH)) {
+            tokenClaimsSet.getLongClaim(KEY_PRINCIPAL_REVOCATION_EPOCH);
+        }
+        if (tokenClaimsSet.getClaims().containsKey(KEY_CLIENT_REVOCATION_EPOCH)) {
+            tokenClaimsSet.getLongClaim(KEY_CLIENT_REVOCATION_EPOCH);
+        }
 
     }
     // Checkstyle: CyclomaticComplexity ON
@@ -304,19 +353,24 @@ public class TokenClaimsSet {
     }
 
     /**
-     * Get redirect uri of the request.
+     * Get redirect uri of the request. The uri is decoded once, on first access.
      * 
      * @return redirect uri of the request, null if not located.
      */
     @Nonnull
     public URI getRedirectURI() {
-        try {
-            return URI.create(tokenClaimsSet.getStringClaim(KEY_REDIRECT_URI));
-        } catch (ParseException e) {
-            log.error("error parsing redirect uri from token", e.getMessage());
+        URI uri = redirectURI;
+        if (uri == null) {
+            try {
+                uri = URI.create(tokenClaimsSet.getStringClaim(KEY_REDIRECT_URI));
+                redirectURI = uri;
+            } catch (ParseException e) {
+                log.error("error parsing redirect uri from token", e.getMessage());
+                // should never happen, programming error.
+                return null;
+            }
         }
-        // should never happen, programming error.
-        return null;
+        return uri;
     }
 
     /**
@@ -379,80 +433,91 @@ public class TokenClaimsSet {
     }
 
     /**
-     * Get claims request of the authentication request.
+     * Get claims request of the authentication request. The claims request is decoded once, on first access, and the
+     * returned instance is shared. It must not be modified.
      * 
      * @return claims request in authentication request, null if not existing.
      */
     @Nullable
     public ClaimsRequest getClaimsRequest() {
-        if (tokenClaimsSet.getClaim(KEY_CLAIMS) == null) {
-            return null;
-        }
-        try {
-            return ClaimsRequest.parse(tokenClaimsSet.getJSONObjectClaim(KEY_CLAIMS));
-        } catch (ParseException e) {
-            log.error("Error parsing claims request {}", tokenClaimsSet.getClaim(KEY_CLAIMS));
-            return null;
+        ClaimsRequest request = claimsRequest;
+        if (request == null) {
+            if (tokenClaimsSet.getClaim(KEY_CLAIMS) == null) {
+                return null;
+            }
+            try {
+                request = ClaimsRequest.parse(tokenClaimsSet.getJSONObjectClaim(KEY_CLAIMS));
+                claimsRequest = request;
+            } catch (ParseException e) {
+                log.error("Error parsing claims request {}", tokenClaimsSet.getClaim(KEY_CLAIMS));
+                return null;
+            }
         }
+        return request;
     }
 
     /**
-     * Get token delivery claims.
+     * Get token delivery claims. The claims are decoded once, on first access, and the returned instance is shared. It
+     * must not be modified.
      * 
      * @return token delivery claims
      */
     public ClaimsSet getDeliveryClaims() {
-        TokenDeliveryClaimsClaimsSet claimsSet = new TokenDeliveryClaimsClaimsSet();
-        try {
-            JSONObject claims = tokenClaimsSet.getJSONObjectClaim(KEY_DELIVERY_CLAIMS);
-            if (claims == null) {
-                return null;
-            }
-            claimsSet.putAll(claims);
-        } catch (ParseException e) {
-            log.error("Error parsing delivery claims {}", tokenClaimsSet.getClaim(KEY_DELIVERY_CLAIMS));
-            return null;
+        ClaimsSet claimsSet = deliveryClaims;
+        if (claimsSet == null) {
+            claimsSet = decodeDeliveryClaims(KEY_DELIVERY_CLAIMS);
+            deliveryClaims = claimsSet;
         }
         return claimsSet;
     }
 
     /**
-     * Get id token token delivery claims.
+     * Get id token token delivery claims. The claims are decoded once, on first access, and the returned instance is
+     * shared. It must not be modified.
      * 
      * @return id token token delivery claims
      */
     public ClaimsSet getIDTokenDeliveryClaims() {
-        TokenDeliveryClaimsClaimsSet claimsSet = new TokenDeliveryClaimsClaimsSet();
-        try {
-            JSONObject claims = tokenClaimsSet.getJSONObjectClaim(KEY_DELIVERY_CLAIMS_IDTOKEN);
-            if (claims == null) {
-                return null;
-            }
-            claimsSet.putAll(claims);
-        } catch (ParseException e) {
-            log.error("Error parsing id token delivery claims {}",
-                    tokenClaimsSet.getClaim(KEY_DELIVERY_CLAIMS_IDTOKEN));
-            return null;
+        ClaimsSet claimsSet = idTokenDeliveryClaims;
+        if (claimsSet == null) {
+            claimsSet = decodeDeliveryClaims(KEY_DELIVERY_CLAIMS_IDTOKEN);
+            idTokenDeliveryClaims = claimsSet;
         }
         return claimsSet;
     }
 
     /**
-     * Get user info response token delivery claims.
+     * Get user info response token delivery claims. The claims are decoded once, on first access, and the returned
+     * instance is shared. It must not be modified.
      * 
      * @return user info response token delivery claims
      */
     public ClaimsSet getUserinfoDeliveryClaims() {
+        ClaimsSet claimsSet = userinfoDeliveryClaims;
+        if (claimsSet == null) {
+            claimsSet = decodeDeliveryClaims(KEY_DELIVERY_CLAIMS_USERINFO);
+            userinfoDeliveryClaims = claimsSet;
+        }
+        return claimsSet;
+    }
+
+    /**
+     * Decodes token delivery claims.
+     * 
+     * @param key the claim carrying the token delivery claims
+     * @return token delivery claims, null if not existing or not decodable
+     */
+    @Nullable
+    private ClaimsSet decodeDeliveryClaims(@Nonnull String key) {
         TokenDeliveryClaimsClaimsSet claimsSet = new TokenDeliveryClaimsClaimsSet();
         try {
-            JSONObject claims = tokenClaimsSet.getJSONObjectClaim(KEY_DELIVERY_CLAIMS_USERINFO);
+            JSONObject claims = tokenClaimsSet.getJSONObjectClaim(key);
             if (claims == null) {
                 return null;
             }
             claimsSet.putAll(claims);
         } catch (ParseException e) {
-            log.error("Error parsing id token delivery claims {}",
-                    tokenClaimsSet.getClaim(KEY_DELIVERY_CLAIMS_USERINFO));
+            log.error("Error parsing token delivery claims {}", tokenClaimsSet.getClaim(key));
             return null;
         }
         return claimsSet;
@@ -477,19 +542,25 @@ public class TokenClaimsSet {
     }
 
     /**
-     * Get scope of the authentication request.
+     * Get scope of the authentication request. The scope is decoded once, on first access, and the returned instance
+     * is shared and unmodifiable.
      * 
      * @return scope of the authentication request.
      */
     @Nonnull
     public Scope getScope() {
-        try {
-            return Scope.parse(tokenClaimsSet.getStringClaim(KEY_SCOPE));
-        } catch (ParseException e) {
-            log.error("Error parsing scope in request {}", tokenClaimsSet.getClaim(KEY_SCOPE));
-            // should never happen, programming error.
-            return null;
+        Scope value = scope;
+        if (value == null) {
+            try {
+                value = new UnmodifiableScope(Scope.parse(tokenClaimsSet.getStringClaim(KEY_SCOPE)));
+                scope = value;
+            } catch (ParseException e) {
+                log.error("Error parsing scope in request {}", tokenClaimsSet.getClaim(KEY_SCOPE));
+                // should never happen, programming error.
+                return null;
+            }
         }
+        return value;
     }
 
     /**
@@ -525,6 +596,41 @@ public class TokenClaimsSet {
         return new ClientID((String) tokenClaimsSet.getClaim(KEY_CLIENTID));
     }
 
+    /**
+     * Get the revocation epoch of the user principal stamped to the token lineage.
+     * 
+     * @return revocation epoch of the user principal, 0 if not stamped
+     */
+    public long getPrincipalRevocationEpoch() {
+        final Object epoch = tokenClaimsSet.getClaim(KEY_PRINCIPAL_REVOCATION_EPOCH);
+        return epoch instanceof Number ? ((Number) epoch).longValue() : 0;
+    }
+
+    /**
+     * Get the revocation epoch of the client stamped to the token lineage.
+     * 
+     * @return revocation epoch of the client, 0 if not stamped
+     */
+    public long getClientRevocationEpoch() {
+        final Object epoch = tokenClaimsSet.getClaim(KEY_CLIENT_REVOCATION_EPOCH);
+        return epoch instanceof Number ? ((Number) epoch).longValue() : 0;
+    }
+
+    /**
+     * Stamp the revocation epochs to the token. The epochs that have never been advanced are not stamped.
+     * 
+     * @param principalEpoch revocation epoch of the user principal
+     * @param clientEpoch revocation epoch of the client
+     */
+    protected void setRevocationEpochs(final long principalEpoch, final long clientEpoch) {
+        if (principalEpoch == 0 && clientEpoch == 0) {
+            return;
+        }
+        tokenClaimsSet = new JWTClaimsSet.Builder(tokenClaimsSet)
+                .claim(KEY_PRINCIPAL_REVOCATION_EPOCH, principalEpoch == 0 ? null : principalEpoch)
+                .claim(KEY_CLIENT_REVOCATION_EPOCH, clientEpoch == 0 ? null : clientEpoch).build();
+    }
+
     /** Abstract builder to extend builders from that are instantiating claims sets extending TokenClaimsSet. */
     public abstract static class Builder<T extends TokenClaimsSet> {
 
@@ -604,6 +710,12 @@ public class TokenClaimsSet {
         @Nullable
         protected String codeChallenge;
 
+        /** Revocation epoch of the user principal. */
+        protected long principalEpoch;
+
+        /** Revocation epoch of the client. */
+        protected long clientEpoch;
+
         /**
          * Constructor for authorize code builder.
          * 
@@ -726,6 +838,18 @@ public class TokenClaimsSet {
             return this;
         }
 
+        /**
+         * Set revocation epochs of the user principal and the client.
+         * 
+         * @param principalRevocationEpoch revocation epoch of the user principal, 0 if never advanced
+         * @param clientRevocationEpoch revocation epoch of the client, 0 if never advanced
+         */
+        public Builder<T> setRevocationEpochs(long principalRevocationEpoch, long clientRevocationEpoch) {
+            principalEpoch = principalRevocationEpoch;
+            clientEpoch = clientRevocationEpoch;
+            return this;
+        }
+
         /**
          * Builds claims set.
          * 
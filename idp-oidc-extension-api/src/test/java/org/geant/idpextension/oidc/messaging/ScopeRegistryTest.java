@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2017 - 2020, GÉANT
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an “AS IS” BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.geant.idpextension.oidc.messaging;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.nimbusds.oauth2.sdk.ParseException;
+import com.nimbusds.oauth2.sdk.Scope;
+import com.nimbusds.openid.connect.sdk.ClaimsRequest;
+import com.nimbusds.openid.connect.sdk.OIDCScopeValue;
+
+import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
+
+/**
+ * Tests for {@link ScopeRegistry}.
+ */
+public class ScopeRegistryTest {
+
+    private ScopeRegistry registry;
+
+    private Scope registered;
+
+    @BeforeMethod
+    protected void setUp() throws ComponentInitializationException {
+        registry = new ScopeRegistry();
+        registry.setMaxScopes(3);
+        registry.initialize();
+        registered = new Scope(OIDCScopeValue.OPENID, OIDCScopeValue.EMAIL, OIDCScopeValue.PROFILE);
+    }
+
+    @Test
+    public void testIntern() {
+        final Scope interned = registry.intern(Scope.parse("openid email"));
+        Assert.assertSame(registry.intern(Scope.parse("openid email")), interned);
+        Assert.assertSame(registry.intern(interned), interned);
+        Assert.assertEquals(interned, Scope.parse("openid email"));
+        Assert.assertNull(registry.intern((Scope) null));
+    }
+
+    @Test(expectedExceptions = UnsupportedOperationException.class)
+    public void testInternedUnmodifiable() {
+        registry.intern(Scope.parse("openid email")).add("profile");
+    }
+
+    @Test
+    public void testInternOverflow() {
+        final Scope interned = registry.intern(Scope.parse("openid"));
+        registry.intern(Scope.parse("email"));
+        registry.intern(Scope.parse("profile"));
+        registry.intern(Scope.parse("phone"));
+        // the full registry was cleared, the values are still equal
+        Assert.assertNotSame(registry.intern(Scope.parse("openid")), interned);
+        Assert.assertEquals(registry.intern(Scope.parse("openid")), interned);
+    }
+
+    @Test
+    public void testRetainAllRegistered() {
+        final Scope requested = registry.intern(Scope.parse("openid email"));
+        Assert.assertSame(registry.retain(requested, registered, true), requested);
+        Assert.assertSame(registry.retain(Scope.parse("openid email"), registered, true), requested);
+    }
+
+    @Test
+    public void testRetainRegistered() {
+        final Scope retained = registry.retain(Scope.parse("openid unknown email"), registered, true);
+        Assert.assertEquals(retained.toString(), "openid email");
+        Assert.assertSame(registry.retain(Scope.parse("openid unknown email"), registered, true), retained);
+        Assert.assertTrue(registry.retain(Scope.parse("unknown"), registered, true).isEmpty());
+    }
+
+    @Test
+    public void testRetainNewlyRegistered() {
+        Assert.assertEquals(registry.retain(Scope.parse("openid phone"), registered, true).toString(), "openid");
+        // the value is given a bit index after the requested scope has been interned
+        final Scope other = new Scope(OIDCScopeValue.OPENID, OIDCScopeValue.PHONE);
+        Assert.assertEquals(registry.retain(Scope.parse("openid phone"), other, true).toString(), "openid phone");
+    }
+
+    @Test
+    public void testRetainUnindexed() throws ComponentInitializationException {
+        registry = new ScopeRegistry();
+        registry.setMaxScopeValues(1);
+        registry.initialize();
+        Assert.assertEquals(registry.retain(Scope.parse("email phone openid"), registered, true).toString(),
+                "email openid");
+    }
+
+    @Test
+    public void testRetainNotRegistered() {
+        Assert.assertEquals(registry.retain(Scope.parse("1 2 3"), Scope.parse("2 4"), false).toString(), "2");
+        final Scope validated = registry.intern(Scope.parse("1 2 3"));
+        Assert.assertSame(registry.retain(validated, Scope.parse("1 2 3 4"), false), validated);
+    }
+
+    @Test
+    public void testRemove() {
+        final Scope scope = registry.intern(Scope.parse("openid offline_access"));
+        Assert.assertEquals(registry.remove(scope, OIDCScopeValue.OFFLINE_ACCESS).toString(), "openid");
+        Assert.assertSame(registry.remove(scope, OIDCScopeValue.EMAIL), scope);
+    }
+
+    @Test
+    public void testInternClaimsRequest() throws ParseException {
+        final String claims = "{\"userinfo\":{\"email\":{\"essential\":true}},\"id_token\":{\"name\":null}}";
+        final ClaimsRequest interned = registry.intern(ClaimsRequest.parse(claims));
+        Assert.assertSame(registry.intern(ClaimsRequest.parse(claims)), interned);
+        Assert.assertNotSame(registry.intern(ClaimsRequest.parse("{\"id_token\":{\"name\":null}}")), interned);
+        Assert.assertNull(registry.intern((ClaimsRequest) null));
+    }
+}
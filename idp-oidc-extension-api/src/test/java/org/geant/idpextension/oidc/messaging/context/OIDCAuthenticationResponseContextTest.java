@@ -103,4 +103,20 @@ public class OIDCAuthenticationResponseContextTest {
         Assert.assertEquals("pairwise", ctx.getSubjectType());
         Assert.assertEquals(info, ctx.getUserInfo());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testRequestedClaimsIndex() {
+        RequestedClaimsIndex index = ctx.getRequestedClaimsIndex();
+        Assert.assertFalse(index.isClaimsRequested());
+        Assert.assertTrue(index.getScopes().isEmpty());
+        Assert.assertSame(index, ctx.getRequestedClaimsIndex());
+        ctx.setScope(new Scope("openid", "email"));
+        index = ctx.getRequestedClaimsIndex();
+        Assert.assertTrue(index.getScopes().contains("email"));
+        ClaimsRequest claims = new ClaimsRequest();
+        claims.addIDTokenClaim("email");
+        ctx.setRequestedClaims(claims);
+        Assert.assertNotSame(index, ctx.getRequestedClaimsIndex());
+        Assert.assertTrue(ctx.getRequestedClaimsIndex().getIDTokenClaims().containsKey("email"));
+    }
+}
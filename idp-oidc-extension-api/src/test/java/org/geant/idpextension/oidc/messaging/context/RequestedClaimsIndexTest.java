@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2017 - 2020, GÉANT
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an “AS IS” BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.geant.idpextension.oidc.messaging.context;
+
+import java.util.Collections;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.nimbusds.langtag.LangTag;
+import com.nimbusds.oauth2.sdk.Scope;
+import com.nimbusds.openid.connect.sdk.ClaimsRequest;
+import com.nimbusds.openid.connect.sdk.claims.ClaimRequirement;
+
+/** Tests for {@link RequestedClaimsIndex}. */
+public class RequestedClaimsIndexTest {
+
+    @Test
+    public void testEmpty() {
+        RequestedClaimsIndex index = new RequestedClaimsIndex(null, null);
+        Assert.assertFalse(index.isClaimsRequested());
+        Assert.assertTrue(index.getIDTokenClaims().isEmpty());
+        Assert.assertTrue(index.getUserInfoClaims().isEmpty());
+        Assert.assertTrue(index.getScopes().isEmpty());
+    }
+
+    @Test
+    public void testIndex() throws Exception {
+        ClaimsRequest request = new ClaimsRequest();
+        request.addIDTokenClaim("email", ClaimRequirement.ESSENTIAL);
+        request.addIDTokenClaim("name");
+        request.addUserInfoClaim("name", ClaimRequirement.VOLUNTARY);
+        request.addUserInfoClaim("name", ClaimRequirement.ESSENTIAL, LangTag.parse("fi"));
+        RequestedClaimsIndex index = new RequestedClaimsIndex(request, new Scope("openid", "profile"));
+        Assert.assertTrue(index.isClaimsRequested());
+        Assert.assertTrue(index.getIDTokenClaims().get("email"));
+        Assert.assertFalse(index.getIDTokenClaims().get("name"));
+        Assert.assertTrue(index.getUserInfoClaims().get("name"));
+        Assert.assertNull(index.getUserInfoClaims().get("email"));
+        Assert.assertTrue(index.getScopes().contains("profile"));
+        Assert.assertEquals(index.getScopes().size(), 2);
+    }
+
+    @Test
+    public void testAttributeClaimNames() {
+        RequestedClaimsIndex index = new RequestedClaimsIndex(null, null);
+        Assert.assertNull(index.getAttributeClaimNames("mail"));
+        index.setAttributeClaimNames("mail", Collections.singleton("email"));
+        Assert.assertEquals(index.getAttributeClaimNames("mail"), Collections.singleton("email"));
+    }
+}
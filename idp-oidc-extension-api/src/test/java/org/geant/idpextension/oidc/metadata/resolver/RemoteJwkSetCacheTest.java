@@ -16,9 +16,12 @@
 
 package org.geant.idpextension.oidc.metadata.resolver;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 
 import org.apache.http.HttpResponse;
 import org.apache.http.client.ClientProtocolException;
@@ -102,6 +105,51 @@ public class RemoteJwkSetCacheTest {
         Assert.assertNull(jwkSet);
     }
 
+    @Test
+    public void testSnapshot() throws Exception {
+        final File snapshot = File.createTempFile("jwk-sets", ".snapshot");
+        snapshot.delete();
+        try {
+            jwkSetCache.setStorage(storageService);
+            jwkSetCache.setHttpClient(createMockHttpClient(validJwkSet()));
+            jwkSetCache.setSnapshotPath(snapshot.getAbsolutePath());
+            jwkSetCache.initialize();
+            Assert.assertNotNull(jwkSetCache.fetch(new URI("http://example.org"), System.currentTimeMillis() + 60000));
+            jwkSetCache.fetch(new URI("http://example.org/expiring"), System.currentTimeMillis() + 100);
+            Thread.sleep(101);
+            jwkSetCache.destroy();
+            Assert.assertTrue(snapshot.exists());
+
+            final RemoteJwkSetCache restoredCache = new RemoteJwkSetCache();
+            restoredCache.setStorage(buildStorageService());
+            restoredCache.setHttpClient(createMockHttpClient("not_jwk_set"));
+            restoredCache.setSnapshotPath(snapshot.getAbsolutePath());
+            restoredCache.initialize();
+            final JWKSet jwkSet = restoredCache.fetch(new URI("http://example.org"), System.currentTimeMillis());
+            Assert.assertNotNull(jwkSet);
+            Assert.assertEquals(jwkSet.getKeys().size(), 2);
+            Assert.assertNull(restoredCache.fetch(new URI("http://example.org/expiring"), System.currentTimeMillis()));
+            restoredCache.destroy();
+        } finally {
+            snapshot.delete();
+        }
+    }
+
+    @Test
+    public void testInvalidSnapshot() throws Exception {
+        final File snapshot = File.createTempFile("jwk-sets", ".snapshot");
+        try {
+            Files.write(snapshot.toPath(), "not_snapshot".getBytes(StandardCharsets.UTF_8));
+            jwkSetCache.setStorage(storageService);
+            jwkSetCache.setHttpClient(createMockHttpClient(validJwkSet()));
+            jwkSetCache.setSnapshotPath(snapshot.getAbsolutePath());
+            jwkSetCache.initialize();
+            Assert.assertNotNull(jwkSetCache.fetch(new URI("http://example.org"), System.currentTimeMillis() + 60000));
+        } finally {
+            snapshot.delete();
+        }
+    }
+
     protected HttpClient createMockHttpClient(String output) throws ClientProtocolException, IOException {
         HttpClient httpClient = Mockito.mock(HttpClient.class);
         HttpResponse httpResponse = Mockito.mock(HttpResponse.class);
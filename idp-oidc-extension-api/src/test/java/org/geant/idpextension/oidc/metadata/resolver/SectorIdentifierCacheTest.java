@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2017 - 2020, GÉANT
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an “AS IS” BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.geant.idpextension.oidc.metadata.resolver;
+
+import java.io.IOException;
+import java.net.URI;
+
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.message.BasicStatusLine;
+import org.apache.http.protocol.HttpContext;
+import org.geant.idpextension.oidc.metadata.resolver.SectorIdentifierCache.CachedSectorIdentifier;
+import org.geant.idpextension.oidc.storage.LocalInvalidationBus;
+import org.mockito.Mockito;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
+
+/**
+ * Unit tests for {@link SectorIdentifierCache}.
+ */
+public class SectorIdentifierCacheTest {
+
+    SectorIdentifierCache cache;
+
+    URI sectorIdUri;
+
+    @BeforeMethod
+    public void setup() throws Exception {
+        cache = new SectorIdentifierCache();
+        sectorIdUri = new URI("https://sector.example.org/uris.json");
+    }
+
+    @Test(expectedExceptions = ComponentInitializationException.class)
+    public void testNoHttpClient() throws ComponentInitializationException {
+        cache.initialize();
+    }
+
+    @Test
+    public void testFetchAndCache() throws Exception {
+        HttpClient httpClient = createMockHttpClient(HttpStatus.SC_OK,
+                "[ \"https://rp1.example.org/cb\", \"https://RP2.example.org/cb\" ]", null);
+        cache.setHttpClient(httpClient);
+        cache.initialize();
+        Assert.assertNull(cache.peek(sectorIdUri));
+        CachedSectorIdentifier entry = cache.fetch(sectorIdUri);
+        Assert.assertNotNull(entry);
+        Assert.assertEquals(entry.getRedirectURIs().size(), 2);
+        Assert.assertTrue(entry.getRedirectURIs().contains(new URI("https://rp1.example.org/cb")));
+        Assert.assertTrue(entry.getHosts().contains("rp1.example.org"));
+        Assert.assertTrue(entry.getHosts().contains("rp2.example.org"));
+        Assert.assertSame(cache.fetch(sectorIdUri), entry);
+        Assert.assertSame(cache.peek(sectorIdUri), entry);
+        Mockito.verify(httpClient, Mockito.times(1)).execute((HttpUriRequest) Mockito.any(),
+                (HttpContext) Mockito.any());
+    }
+
+    @Test
+    public void testExpiredRevalidatedWithETag() throws Exception {
+        HttpClient httpClient = createMockHttpClient(HttpStatus.SC_OK, "[ \"https://rp1.example.org/cb\" ]", "\"v1\"");
+        cache.setHttpClient(httpClient);
+        cache.setEntryExpiration(50);
+        cache.initialize();
+        CachedSectorIdentifier entry = cache.fetch(sectorIdUri);
+        Assert.assertNotNull(entry);
+        Assert.assertEquals(entry.getETag(), "\"v1\"");
+        Thread.sleep(60);
+        Assert.assertNull(cache.peek(sectorIdUri));
+        HttpResponse notModified = createMockHttpResponse(HttpStatus.SC_NOT_MODIFIED, null, null);
+        Mockito.when(httpClient.execute((HttpUriRequest) Mockito.any(), (HttpContext) Mockito.any()))
+                .thenReturn(notModified);
+        CachedSectorIdentifier revalidated = cache.fetch(sectorIdUri);
+        Assert.assertNotNull(revalidated);
+        Assert.assertEquals(revalidated.getRedirectURIs(), entry.getRedirectURIs());
+        Assert.assertTrue(revalidated.getExpiration() > entry.getExpiration());
+    }
+
+    @Test
+    public void testInvalidContents() throws Exception {
+        cache.setHttpClient(createMockHttpClient(HttpStatus.SC_OK, "Not_JSON", null));
+        cache.initialize();
+        Assert.assertNull(cache.fetch(sectorIdUri));
+        Assert.assertNull(cache.peek(sectorIdUri));
+    }
+
+    @Test
+    public void testErrorStatus() throws Exception {
+        cache.setHttpClient(createMockHttpClient(HttpStatus.SC_NOT_FOUND, "[]", null));
+        cache.initialize();
+        Assert.assertNull(cache.fetch(sectorIdUri));
+    }
+
+    @Test
+    public void testInvalidate() throws Exception {
+        cache.setHttpClient(createMockHttpClient(HttpStatus.SC_OK, "[ \"https://rp1.example.org/cb\" ]", null));
+        cache.initialize();
+        Assert.assertNotNull(cache.fetch(sectorIdUri));
+        cache.invalidate(sectorIdUri);
+        Assert.assertNull(cache.peek(sectorIdUri));
+    }
+
+    @Test
+    public void testInvalidationBus() throws Exception {
+        final LocalInvalidationBus bus = new LocalInvalidationBus();
+        bus.setId("bus");
+        bus.initialize();
+        cache.setHttpClient(createMockHttpClient(HttpStatus.SC_OK, "[ \"https://rp1.example.org/cb\" ]", null));
+        cache.setInvalidationBus(bus);
+        cache.initialize();
+        final SectorIdentifierCache otherCache = new SectorIdentifierCache();
+        otherCache.setHttpClient(createMockHttpClient(HttpStatus.SC_OK, "[ \"https://rp1.example.org/cb\" ]", null));
+        otherCache.setInvalidationBus(bus);
+        otherCache.initialize();
+        Assert.assertNotNull(cache.fetch(sectorIdUri));
+        Assert.assertNotNull(otherCache.fetch(sectorIdUri));
+        cache.invalidate(sectorIdUri);
+        Assert.assertNull(otherCache.peek(sectorIdUri));
+        otherCache.destroy();
+        cache.destroy();
+        bus.destroy();
+    }
+
+    protected HttpClient createMockHttpClient(int status, String output, String etag)
+            throws ClientProtocolException, IOException {
+        HttpClient httpClient = Mockito.mock(HttpClient.class);
+        HttpResponse httpResponse = createMockHttpResponse(status, output, etag);
+        Mockito.when(httpClient.execute((HttpUriRequest) Mockito.any(), (HttpContext) Mockito.any()))
+                .thenReturn(httpResponse);
+        return httpClient;
+    }
+
+    protected HttpResponse createMockHttpResponse(int status, String output, String etag) throws IOException {
+        HttpResponse httpResponse = Mockito.mock(HttpResponse.class);
+        Mockito.when(httpResponse.getStatusLine()).thenReturn(new BasicStatusLine(HttpVersion.HTTP_1_1, status, null));
+        if (output != null) {
+            Mockito.when(httpResponse.getEntity()).thenReturn(new StringEntity(output));
+        }
+        if (etag != null) {
+            Mockito.when(httpResponse.getFirstHeader(HttpHeaders.ETAG)).thenReturn(new BasicHeader(HttpHeaders.ETAG,
+                    etag));
+        }
+        return httpResponse;
+    }
+}
@@ -16,8 +16,10 @@
 
 package org.geant.idpextension.oidc.profile.context.navigate;
 
+import org.geant.idpextension.oidc.messaging.ScopeRegistry;
 import org.testng.annotations.Test;
 import junit.framework.Assert;
+import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
 
 /** Test for {@link TokenRequestScopeLookupFunction}. */
 public class TokenRequestScopeLookupFunctionTest extends BaseTokenRequestLookupFunctionTest {
@@ -29,4 +31,20 @@ public class TokenRequestScopeLookupFunctionTest extends BaseTokenRequestLookupF
         Assert.assertEquals(scope, lookup.apply(prc));
     }
 
+    @Test
+    public void testLookupDecodedOnce() {
+        // repeated lookups within the request share the scope decoded from the token
+        Assert.assertSame(lookup.apply(prc), lookup.apply(prc));
+    }
+
+    @Test
+    public void testLookupInterned() throws ComponentInitializationException {
+        ScopeRegistry registry = new ScopeRegistry();
+        registry.initialize();
+        TokenRequestScopeLookupFunction internedLookup = new TokenRequestScopeLookupFunction();
+        internedLookup.setScopeRegistry(registry);
+        Assert.assertEquals(scope, internedLookup.apply(prc));
+        Assert.assertSame(registry.intern(scope), internedLookup.apply(prc));
+    }
+
 }
\ No newline at end of file
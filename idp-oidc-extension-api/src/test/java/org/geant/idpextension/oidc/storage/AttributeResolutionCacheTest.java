@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2017 - 2020, GÉANT
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an “AS IS” BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.geant.idpextension.oidc.storage;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.opensaml.storage.impl.MemoryStorageService;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.codahale.metrics.MetricRegistry;
+
+import net.shibboleth.idp.attribute.ByteAttributeValue;
+import net.shibboleth.idp.attribute.IdPAttribute;
+import net.shibboleth.idp.attribute.IdPAttributeValue;
+import net.shibboleth.idp.attribute.ScopedStringAttributeValue;
+import net.shibboleth.idp.attribute.StringAttributeValue;
+import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
+
+/**
+ * Tests for {@link AttributeResolutionCache}.
+ */
+public class AttributeResolutionCacheTest {
+
+    private MemoryStorageService storageService;
+
+    private MetricRegistry metricRegistry;
+
+    private AttributeResolutionCache cache;
+
+    private IdPAttribute attribute;
+
+    @BeforeMethod
+    protected void setUp() throws Exception {
+        storageService = new MemoryStorageService();
+        storageService.setId("test");
+        storageService.initialize();
+
+        metricRegistry = new MetricRegistry();
+        cache = new AttributeResolutionCache();
+        cache.setId("test");
+        cache.setStorage(storageService);
+        cache.setMetricRegistry(metricRegistry);
+        cache.setMaxNearCacheSize(1);
+
+        attribute = new IdPAttribute("mail");
+        attribute.setValues(Arrays.<IdPAttributeValue<?>> asList(new StringAttributeValue("user@example.org"),
+                new ScopedStringAttributeValue("user", "example.org"),
+                new ByteAttributeValue("bytes".getBytes())));
+    }
+
+    @AfterMethod
+    protected void tearDown() {
+        cache.destroy();
+        storageService.destroy();
+    }
+
+    @Test(expectedExceptions = ComponentInitializationException.class)
+    public void testNoStorage() throws ComponentInitializationException {
+        cache = new AttributeResolutionCache();
+        cache.setId("test");
+        cache.initialize();
+    }
+
+    @Test
+    public void testMiss() throws ComponentInitializationException {
+        cache.initialize();
+        Assert.assertNull(cache.get("principal", "rp", "sector"));
+        Assert.assertEquals(
+                metricRegistry.meter(MetricRegistry.name(AttributeResolutionCache.class, "misses")).getCount(), 1);
+    }
+
+    @Test
+    public void testFromNearCache() throws ComponentInitializationException {
+        cache.initialize();
+        cache.put("principal", "rp", "sector", Collections.singletonList(attribute));
+        final List<IdPAttribute> cached = cache.get("principal", "rp", "sector");
+        Assert.assertEquals(cached.size(), 1);
+        Assert.assertEquals(cached.get(0), attribute);
+        Assert.assertNotSame(cached.get(0), attribute);
+        Assert.assertEquals(cached.get(0).getValues(), attribute.getValues());
+        Assert.assertNull(cache.get("principal", "rp", "sector2"));
+        Assert.assertNull(cache.get("principal", "rp", null));
+        Assert.assertEquals(
+                metricRegistry.meter(MetricRegistry.name(AttributeResolutionCache.class, "localHits")).getCount(), 1);
+    }
+
+    @Test
+    public void testFromStorage() throws ComponentInitializationException {
+        cache.initialize();
+        cache.put("principal", "rp", "sector", Collections.singletonList(attribute));
+        // the second entry clears the full near cache
+        cache.put("principal", "rp2", null, Collections.singletonList(attribute));
+        final List<IdPAttribute> cached = cache.get("principal", "rp", "sector");
+        Assert.assertEquals(cached.size(), 1);
+        Assert.assertEquals(cached.get(0).getId(), "mail");
+        Assert.assertEquals(cached.get(0).getValues(), attribute.getValues());
+        Assert.assertTrue(cached.get(0).getEncoders().isEmpty());
+        Assert.assertEquals(
+                metricRegistry.meter(MetricRegistry.name(AttributeResolutionCache.class, "storageHits")).getCount(),
+                1);
+    }
+
+    @Test
+    public void testEvict() throws ComponentInitializationException {
+        cache.setMaxNearCacheSize(10);
+        cache.initialize();
+        cache.put("principal", "rp", "sector", Collections.singletonList(attribute));
+        cache.put("principal", "rp", null, Collections.singletonList(attribute));
+        cache.put("principal", "rp2", "sector", Collections.singletonList(attribute));
+        cache.evict("principal", "rp");
+        Assert.assertNull(cache.get("principal", "rp", "sector"));
+        Assert.assertNull(cache.get("principal", "rp", null));
+        Assert.assertNotNull(cache.get("principal", "rp2", "sector"));
+    }
+
+    @Test
+    public void testEvictPublished() throws ComponentInitializationException {
+        final LocalInvalidationBus bus = new LocalInvalidationBus();
+        bus.setId("bus");
+        bus.initialize();
+        cache.setInvalidationBus(bus);
+        cache.initialize();
+        final AttributeResolutionCache otherCache = new AttributeResolutionCache();
+        otherCache.setId("other");
+        otherCache.setStorage(storageService);
+        otherCache.setInvalidationBus(bus);
+        otherCache.initialize();
+        otherCache.put("principal", "rp", "sector", Collections.singletonList(attribute));
+        otherCache.put("principal", "rp2", "sector", Collections.singletonList(attribute));
+        cache.evict("principal", "rp");
+        Assert.assertNull(otherCache.get("principal", "rp", "sector"));
+        Assert.assertNotNull(otherCache.get("principal", "rp2", "sector"));
+        otherCache.destroy();
+        bus.destroy();
+    }
+
+    @Test
+    public void testExpired() throws Exception {
+        cache.setEntryExpiration(50);
+        cache.initialize();
+        cache.put("principal", "rp", "sector", Collections.singletonList(attribute));
+        Thread.sleep(100);
+        Assert.assertNull(cache.get("principal", "rp", "sector"));
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2017 - 2020, GÉANT
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an “AS IS” BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.geant.idpextension.oidc.storage;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Tests for {@link LocalInvalidationBus}.
+ */
+public class LocalInvalidationBusTest {
+
+    private LocalInvalidationBus bus;
+
+    private List<String> invalidated;
+
+    private InvalidationListener listener;
+
+    @BeforeMethod
+    protected void setUp() throws Exception {
+        bus = new LocalInvalidationBus();
+        bus.setId("bus");
+        bus.initialize();
+        invalidated = new ArrayList<>();
+        listener = new InvalidationListener() {
+            public void invalidate(final String topic, final String key) {
+                invalidated.add(topic + ":" + key);
+            }
+        };
+    }
+
+    @AfterMethod
+    protected void tearDown() {
+        bus.destroy();
+    }
+
+    @Test
+    public void testDelivery() {
+        bus.subscribe("topic", listener);
+        bus.publish("topic", "key");
+        bus.publish("other", "key");
+        bus.publish("topic", null);
+        Assert.assertEquals(invalidated.size(), 2);
+        Assert.assertEquals(invalidated.get(0), "topic:key");
+        Assert.assertEquals(invalidated.get(1), "topic:null");
+    }
+
+    @Test
+    public void testUnsubscribe() {
+        bus.subscribe("topic", listener);
+        bus.unsubscribe("topic", listener);
+        bus.publish("topic", "key");
+        Assert.assertTrue(invalidated.isEmpty());
+    }
+
+    @Test
+    public void testFailingListener() {
+        bus.subscribe("topic", new InvalidationListener() {
+            public void invalidate(final String topic, final String key) {
+                throw new IllegalStateException();
+            }
+        });
+        bus.subscribe("topic", listener);
+        bus.publish("topic", "key");
+        Assert.assertEquals(invalidated.size(), 1);
+    }
+}
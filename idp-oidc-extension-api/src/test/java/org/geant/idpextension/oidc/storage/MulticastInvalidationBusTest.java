@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2017 - 2020, GÉANT
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an “AS IS” BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.geant.idpextension.oidc.storage;
+
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.Assert;
+import org.testng.SkipException;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
+
+/**
+ * Tests for {@link MulticastInvalidationBus}, over the loopback interface.
+ */
+public class MulticastInvalidationBusTest {
+
+    private MulticastInvalidationBus bus;
+
+    private MulticastInvalidationBus otherBus;
+
+    private String loopback;
+
+    @BeforeMethod
+    protected void setUp() throws Exception {
+        final NetworkInterface nif = NetworkInterface.getByInetAddress(InetAddress.getLoopbackAddress());
+        if (nif == null || !nif.supportsMulticast()) {
+            throw new SkipException("No loopback interface supporting multicast");
+        }
+        loopback = nif.getName();
+    }
+
+    @AfterMethod
+    protected void tearDown() {
+        if (bus != null) {
+            bus.destroy();
+        }
+        if (otherBus != null) {
+            otherBus.destroy();
+        }
+    }
+
+    private MulticastInvalidationBus buildBus(final String id) throws ComponentInitializationException {
+        final MulticastInvalidationBus newBus = new MulticastInvalidationBus();
+        newBus.setId(id);
+        newBus.setNetworkInterface(loopback);
+        newBus.setTimeToLive(0);
+        newBus.initialize();
+        return newBus;
+    }
+
+    @Test(expectedExceptions = ComponentInitializationException.class)
+    public void testNotMulticastAddress() throws ComponentInitializationException {
+        bus = new MulticastInvalidationBus();
+        bus.setId("bus");
+        bus.setGroupAddress("127.0.0.1");
+        bus.initialize();
+    }
+
+    @Test
+    public void testDelivery() throws Exception {
+        bus = buildBus("bus");
+        otherBus = buildBus("otherBus");
+        final CountDownLatch received = new CountDownLatch(2);
+        final AtomicInteger receivedOwn = new AtomicInteger();
+        otherBus.subscribe("topic", new InvalidationListener() {
+            public void invalidate(final String topic, final String key) {
+                received.countDown();
+            }
+        });
+        bus.subscribe("topic", new InvalidationListener() {
+            public void invalidate(final String topic, final String key) {
+                receivedOwn.incrementAndGet();
+            }
+        });
+        bus.publish("topic", "key");
+        bus.publish("topic", null);
+        Assert.assertTrue(received.await(5, TimeUnit.SECONDS));
+        // the own events are delivered locally only, not again from the group
+        Thread.sleep(200);
+        Assert.assertEquals(receivedOwn.get(), 2);
+    }
+}
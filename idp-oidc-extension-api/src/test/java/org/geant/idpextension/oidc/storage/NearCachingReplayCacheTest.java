@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2017 - 2020, GÉANT
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an “AS IS” BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.geant.idpextension.oidc.storage;
+
+import org.opensaml.storage.impl.MemoryStorageService;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Tests for {@link NearCachingReplayCache}.
+ */
+public class NearCachingReplayCacheTest {
+
+    private MemoryStorageService storageService;
+
+    private MetricRegistry metricRegistry;
+
+    private NearCachingReplayCache replayCache;
+
+    @BeforeMethod
+    protected void setUp() throws Exception {
+        storageService = new MemoryStorageService();
+        storageService.setId("test");
+        storageService.initialize();
+
+        metricRegistry = new MetricRegistry();
+        replayCache = new NearCachingReplayCache();
+        replayCache.setStorage(storageService);
+        replayCache.setMetricRegistry(metricRegistry);
+        replayCache.setMaxNearCacheSize(2);
+        replayCache.initialize();
+    }
+
+    @AfterMethod
+    protected void tearDown() {
+        replayCache.destroy();
+        storageService.destroy();
+    }
+
+    @Test
+    public void testReplayFromNearCache() {
+        final long expires = System.currentTimeMillis() + 10000;
+        Assert.assertTrue(replayCache.check("context", "value", expires));
+        Assert.assertFalse(replayCache.check("context", "value", expires));
+        Assert.assertTrue(replayCache.check("context2", "value", expires));
+        final String prefix = MetricRegistry.name(NearCachingReplayCache.class, "context");
+        Assert.assertEquals(metricRegistry.meter(prefix + ".localHits").getCount(), 1);
+        Assert.assertEquals(metricRegistry.meter(prefix + ".backendChecks").getCount(), 1);
+        Assert.assertEquals(metricRegistry.meter(prefix + ".replays").getCount(), 1);
+        Assert.assertEquals(metricRegistry.timer(prefix + ".backendLatency").getCount(), 1);
+    }
+
+    @Test
+    public void testReplayFromStorage() throws Exception {
+        final long expires = System.currentTimeMillis() + 10000;
+        storageService.create("context", "value", "x", expires);
+        Assert.assertFalse(replayCache.check("context", "value", expires));
+        final String prefix = MetricRegistry.name(NearCachingReplayCache.class, "context");
+        Assert.assertEquals(metricRegistry.meter(prefix + ".backendChecks").getCount(), 1);
+        Assert.assertEquals(metricRegistry.meter(prefix + ".replays").getCount(), 1);
+    }
+
+    @Test
+    public void testNearCacheOverflow() {
+        final long expires = System.currentTimeMillis() + 10000;
+        Assert.assertTrue(replayCache.check("context", "value1", expires));
+        Assert.assertTrue(replayCache.check("context", "value2", expires));
+        Assert.assertTrue(replayCache.check("context", "value3", expires));
+        // the near cache was cleared, the replays are still detected from the storage
+        Assert.assertFalse(replayCache.check("context", "value1", expires));
+        Assert.assertFalse(replayCache.check("context", "value2", expires));
+        Assert.assertFalse(replayCache.check("context", "value3", expires));
+    }
+
+    @Test
+    public void testExpiredValue() throws Exception {
+        Assert.assertTrue(replayCache.check("context", "value", System.currentTimeMillis() + 50));
+        Thread.sleep(100);
+        Assert.assertTrue(replayCache.check("context", "value", System.currentTimeMillis() + 50));
+    }
+}
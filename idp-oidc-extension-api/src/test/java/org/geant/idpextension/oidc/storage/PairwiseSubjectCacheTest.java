@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2017 - 2020, GÉANT
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an “AS IS” BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.geant.idpextension.oidc.storage;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.codec.binary.Base32;
+import org.opensaml.storage.impl.MemoryStorageService;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.codahale.metrics.MetricRegistry;
+
+import net.shibboleth.utilities.java.support.codec.Base64Support;
+import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
+
+/**
+ * Tests for {@link PairwiseSubjectCache}.
+ */
+public class PairwiseSubjectCacheTest {
+
+    private MemoryStorageService storageService;
+
+    private MetricRegistry metricRegistry;
+
+    private PairwiseSubjectCache cache;
+
+    @BeforeMethod
+    protected void setUp() throws Exception {
+        storageService = new MemoryStorageService();
+        storageService.setId("test");
+        storageService.initialize();
+
+        metricRegistry = new MetricRegistry();
+        cache = new PairwiseSubjectCache();
+        cache.setId("test");
+        cache.setStorage(storageService);
+        cache.setSalt("salt");
+        cache.setMetricRegistry(metricRegistry);
+        cache.setMaxNearCacheSize(2);
+    }
+
+    @AfterMethod
+    protected void tearDown() {
+        cache.destroy();
+        storageService.destroy();
+    }
+
+    private byte[] digest(final String sector, final String source) throws Exception {
+        final MessageDigest md = MessageDigest.getInstance("SHA");
+        md.update((sector + "!" + source + "!").getBytes(StandardCharsets.UTF_8));
+        return md.digest("salt".getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test(expectedExceptions = ComponentInitializationException.class)
+    public void testNoSalt() throws ComponentInitializationException {
+        cache = new PairwiseSubjectCache();
+        cache.setId("test");
+        cache.setStorage(storageService);
+        cache.initialize();
+    }
+
+    @Test(expectedExceptions = ComponentInitializationException.class)
+    public void testUnsupportedEncoding() throws ComponentInitializationException {
+        cache.setEncoding("HEX");
+        cache.initialize();
+    }
+
+    @Test
+    public void testComputedSubject() throws Exception {
+        cache.initialize();
+        Assert.assertEquals(cache.getSubject("joe", "rp.example.org"),
+                new Base32().encodeAsString(digest("rp.example.org", "joe")));
+        Assert.assertEquals(storageService.read(cache.getContext("rp.example.org"), "joe").getValue(),
+                cache.getSubject("joe", "rp.example.org"));
+        final String prefix = MetricRegistry.name(PairwiseSubjectCache.class);
+        Assert.assertEquals(metricRegistry.meter(prefix + ".computations").getCount(), 1);
+        Assert.assertEquals(metricRegistry.meter(prefix + ".localHits").getCount(), 1);
+    }
+
+    @Test
+    public void testBase64() throws Exception {
+        cache.setEncoding(PairwiseSubjectCache.ENCODING_BASE64);
+        cache.initialize();
+        Assert.assertEquals(cache.getSubject("joe", "rp.example.org"),
+                Base64Support.encode(digest("rp.example.org", "joe"), Base64Support.UNCHUNKED));
+    }
+
+    @Test
+    public void testStoredSubject() throws Exception {
+        cache.initialize();
+        storageService.create(cache.getContext("rp.example.org"), "joe", "stored",
+                System.currentTimeMillis() + 10000);
+        Assert.assertEquals(cache.getSubject("joe", "rp.example.org"), "stored");
+        Assert.assertEquals(metricRegistry.meter(MetricRegistry.name(PairwiseSubjectCache.class, "storageHits"))
+                .getCount(), 1);
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEvicted() throws Exception {
+        cache.initialize();
+        cache.getSubject("joe", "rp.example.org");
+        cache.getSubject("jane", "rp.example.org");
+        cache.getSubject("joe", "rp.example.org");
+        cache.getSubject("jack", "rp.example.org");
+        final String prefix = MetricRegistry.name(PairwiseSubjectCache.class);
+        cache.getSubject("joe", "rp.example.org");
+        Assert.assertEquals(metricRegistry.meter(prefix + ".localHits").getCount(), 2);
+        cache.getSubject("jane", "rp.example.org");
+        Assert.assertEquals(metricRegistry.meter(prefix + ".storageHits").getCount(), 1);
+    }
+
+    @Test
+    public void testSaltChange() throws Exception {
+        cache.initialize();
+        final String subject = cache.getSubject("joe", "rp.example.org");
+        final PairwiseSubjectCache other = new PairwiseSubjectCache();
+        other.setId("other");
+        other.setStorage(storageService);
+        other.setSalt("other salt");
+        other.setMetricRegistry(metricRegistry);
+        other.initialize();
+        Assert.assertNotEquals(other.getContext("rp.example.org"), cache.getContext("rp.example.org"));
+        Assert.assertNotEquals(other.getSubject("joe", "rp.example.org"), subject);
+        other.destroy();
+    }
+
+    @Test
+    public void testPrecompute() throws Exception {
+        cache.initialize();
+        final List<String> sourceValues = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            sourceValues.add("user" + i);
+        }
+        Assert.assertEquals(cache.precompute(sourceValues, "rp.example.org"), 10);
+        Assert.assertEquals(cache.precompute(sourceValues, "rp.example.org"), 0);
+        Assert.assertEquals(cache.getSubject("user5", "rp.example.org"),
+                new Base32().encodeAsString(digest("rp.example.org", "user5")));
+        Assert.assertEquals(metricRegistry.meter(MetricRegistry.name(PairwiseSubjectCache.class, "storageHits"))
+                .getCount(), 1);
+    }
+}
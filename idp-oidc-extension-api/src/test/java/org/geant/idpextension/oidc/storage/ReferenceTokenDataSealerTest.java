@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2017 - 2020, GÉANT
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an “AS IS” BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.geant.idpextension.oidc.storage;
+
+import java.security.SecureRandom;
+
+import org.opensaml.storage.impl.MemoryStorageService;
+import org.springframework.core.io.ClassPathResource;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.codahale.metrics.MetricRegistry;
+
+import net.shibboleth.ext.spring.resource.ResourceHelper;
+import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
+import net.shibboleth.utilities.java.support.security.BasicKeystoreKeyStrategy;
+import net.shibboleth.utilities.java.support.security.DataSealerException;
+
+/**
+ * Tests for {@link ReferenceTokenDataSealer}.
+ */
+public class ReferenceTokenDataSealerTest {
+
+    private MemoryStorageService storageService;
+
+    private MetricRegistry metricRegistry;
+
+    private ReferenceTokenDataSealer sealer;
+
+    @BeforeMethod
+    protected void setUp() throws Exception {
+        storageService = new MemoryStorageService();
+        storageService.setId("test");
+        storageService.initialize();
+
+        metricRegistry = new MetricRegistry();
+        sealer = new ReferenceTokenDataSealer();
+        final BasicKeystoreKeyStrategy strategy = new BasicKeystoreKeyStrategy();
+        strategy.setKeystoreResource(ResourceHelper.of(new ClassPathResource("credentials/sealer.jks")));
+        strategy.setKeyVersionResource(ResourceHelper.of(new ClassPathResource("credentials/sealer.kver")));
+        strategy.setKeystorePassword("password");
+        strategy.setKeyAlias("secret");
+        strategy.setKeyPassword("password");
+        strategy.initialize();
+        sealer.setKeyStrategy(strategy);
+        sealer.setRandom(SecureRandom.getInstance("SHA1PRNG"));
+        sealer.setStorage(storageService);
+        sealer.setMetricRegistry(metricRegistry);
+        sealer.setMaxCacheSize(2);
+    }
+
+    @AfterMethod
+    protected void tearDown() {
+        sealer.destroy();
+        storageService.destroy();
+    }
+
+    @Test(expectedExceptions = ComponentInitializationException.class)
+    public void testNoStorage() throws ComponentInitializationException {
+        sealer.setStorage(null);
+        sealer.initialize();
+    }
+
+    @Test
+    public void testReferenceToken() throws Exception {
+        sealer.initialize();
+        final String data = "{\"claims\":\"value\"}";
+        final String handle = sealer.wrap(data, System.currentTimeMillis() + 10000);
+        Assert.assertTrue(handle.startsWith(ReferenceTokenDataSealer.HANDLE_PREFIX));
+        Assert.assertEquals(sealer.unwrap(handle), data);
+        Assert.assertNotNull(storageService.read(ReferenceTokenDataSealer.CONTEXT_NAME, handle));
+        Assert.assertEquals(metricRegistry
+                .histogram(MetricRegistry.name(ReferenceTokenDataSealer.class, "reference", "tokenSize"))
+                .getCount(), 1);
+        Assert.assertEquals(metricRegistry
+                .timer(MetricRegistry.name(ReferenceTokenDataSealer.class, "reference", "validationLatency"))
+                .getCount(), 1);
+    }
+
+    @Test
+    public void testReferenceInSealedTokenMode() throws Exception {
+        sealer.setReferenceTokens(false);
+        sealer.initialize();
+        final String handle = sealer.reference("data", System.currentTimeMillis() + 10000);
+        Assert.assertTrue(handle.startsWith(ReferenceTokenDataSealer.HANDLE_PREFIX));
+        Assert.assertEquals(sealer.unwrap(handle), "data");
+        Assert.assertFalse(sealer.wrap("data", System.currentTimeMillis() + 10000)
+                .startsWith(ReferenceTokenDataSealer.HANDLE_PREFIX));
+    }
+
+    @Test(expectedExceptions = DataSealerException.class)
+    public void testReferenceNoStorage() throws Exception {
+        sealer.setReferenceTokens(false);
+        sealer.setStorage(null);
+        sealer.initialize();
+        sealer.reference("data", System.currentTimeMillis() + 10000);
+    }
+
+    @Test
+    public void testReadThroughStorage() throws Exception {
+        sealer.initialize();
+        final long exp = System.currentTimeMillis() + 10000;
+        final String handle1 = sealer.wrap("data1", exp);
+        sealer.wrap("data2", exp);
+        // the third handle clears the full local cache
+        sealer.wrap("data3", exp);
+        Assert.assertEquals(sealer.unwrap(handle1), "data1");
+    }
+
+    @Test(expectedExceptions = DataSealerException.class)
+    public void testUnknownHandle() throws Exception {
+        sealer.initialize();
+        sealer.unwrap(ReferenceTokenDataSealer.HANDLE_PREFIX + "unknown");
+    }
+
+    @Test(expectedExceptions = DataSealerException.class)
+    public void testExpiredHandle() throws Exception {
+        sealer.initialize();
+        final String handle = sealer.wrap("data", System.currentTimeMillis() + 50);
+        Thread.sleep(100);
+        sealer.unwrap(handle);
+    }
+
+    @Test
+    public void testSealedTokens() throws Exception {
+        sealer.setReferenceTokens(false);
+        sealer.initialize();
+        final String sealed = sealer.wrap("data", System.currentTimeMillis() + 10000);
+        Assert.assertFalse(sealed.startsWith(ReferenceTokenDataSealer.HANDLE_PREFIX));
+        Assert.assertEquals(sealer.unwrap(sealed), "data");
+        Assert.assertEquals(metricRegistry
+                .histogram(MetricRegistry.name(ReferenceTokenDataSealer.class, "sealed", "tokenSize"))
+                .getCount(), 1);
+    }
+}
@@ -159,4 +159,41 @@ public class RevocationCacheTest {
         Thread.sleep(300L);
         Assert.assertTrue(revocationCache.isRevoked("context", "item"));
     }
+
+    @Test
+    public void testNearCacheWithoutBus() throws ComponentInitializationException {
+        final RevocationCache otherCache = new RevocationCache();
+        otherCache.setStorage(storageService);
+        otherCache.setNearCacheExpiration(60000);
+        otherCache.initialize();
+        Assert.assertFalse(otherCache.isRevoked("context", "item"));
+        Assert.assertTrue(revocationCache.revoke("context", "item"));
+        // the other instance is not notified, the value is not revoked until the near cache entry expires
+        Assert.assertFalse(otherCache.isRevoked("context", "item"));
+        otherCache.destroy();
+    }
+
+    @Test
+    public void testNearCacheWithBus() throws ComponentInitializationException {
+        final LocalInvalidationBus bus = new LocalInvalidationBus();
+        bus.setId("bus");
+        bus.initialize();
+        final RevocationCache cache = new RevocationCache();
+        cache.setStorage(storageService);
+        cache.setInvalidationBus(bus);
+        cache.initialize();
+        final RevocationCache otherCache = new RevocationCache();
+        otherCache.setStorage(storageService);
+        otherCache.setNearCacheExpiration(60000);
+        otherCache.setInvalidationBus(bus);
+        otherCache.initialize();
+        Assert.assertFalse(otherCache.isRevoked("context", "item"));
+        Assert.assertFalse(otherCache.isRevoked("context", "item2"));
+        Assert.assertTrue(cache.revoke("context", "item"));
+        Assert.assertTrue(otherCache.isRevoked("context", "item"));
+        Assert.assertFalse(otherCache.isRevoked("context", "item2"));
+        otherCache.destroy();
+        cache.destroy();
+        bus.destroy();
+    }
 }
\ No newline at end of file
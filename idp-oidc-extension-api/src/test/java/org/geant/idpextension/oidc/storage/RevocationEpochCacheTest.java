@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2017 - 2020, GÉANT
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an “AS IS” BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.geant.idpextension.oidc.storage;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Date;
+
+import org.geant.idpextension.oidc.token.support.AuthorizeCodeClaimsSet;
+import org.geant.idpextension.oidc.token.support.TokenClaimsSet;
+import org.opensaml.storage.impl.MemoryStorageService;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.nimbusds.oauth2.sdk.Scope;
+import com.nimbusds.oauth2.sdk.id.ClientID;
+
+import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
+import net.shibboleth.utilities.java.support.security.SecureRandomIdentifierGenerationStrategy;
+
+/**
+ * Tests for {@link RevocationEpochCache}.
+ */
+public class RevocationEpochCacheTest {
+
+    private MemoryStorageService storageService;
+
+    private RevocationEpochCache epochCache;
+
+    @BeforeMethod
+    protected void setUp() throws Exception {
+        storageService = new MemoryStorageService();
+        storageService.setId("test");
+        storageService.initialize();
+
+        epochCache = new RevocationEpochCache();
+        epochCache.setId("test");
+        epochCache.setStorage(storageService);
+    }
+
+    @AfterMethod
+    protected void tearDown() {
+        epochCache.destroy();
+        storageService.destroy();
+    }
+
+    private AuthorizeCodeClaimsSet buildClaimsSet() throws Exception {
+        final TokenClaimsSet.Builder<AuthorizeCodeClaimsSet> builder =
+                new AuthorizeCodeClaimsSet.Builder(new SecureRandomIdentifierGenerationStrategy(),
+                        new ClientID("client"), "issuer", "principal", "subject", new Date(),
+                        new Date(System.currentTimeMillis() + 60000), new Date(), new URI("https://example.com"),
+                        new Scope("openid"));
+        epochCache.stampRevocationEpochs(builder, "principal", "client");
+        return builder.build();
+    }
+
+    @Test(expectedExceptions = ComponentInitializationException.class)
+    public void testNoStorage() throws ComponentInitializationException {
+        epochCache = new RevocationEpochCache();
+        epochCache.initialize();
+    }
+
+    @Test
+    public void testEpochs() throws Exception {
+        epochCache.initialize();
+        Assert.assertEquals(epochCache.getEpoch(RevocationCacheContexts.PRINCIPAL, "principal"), 0);
+        Assert.assertFalse(epochCache.isRevoked(RevocationCacheContexts.PRINCIPAL, "principal", 0));
+        Assert.assertTrue(epochCache.revoke(RevocationCacheContexts.PRINCIPAL, "principal"));
+        final long epoch = epochCache.getEpoch(RevocationCacheContexts.PRINCIPAL, "principal");
+        Assert.assertTrue(epoch > 0);
+        Assert.assertTrue(epochCache.isRevoked(RevocationCacheContexts.PRINCIPAL, "principal", 0));
+        Assert.assertFalse(epochCache.isRevoked(RevocationCacheContexts.PRINCIPAL, "principal", epoch));
+        Assert.assertTrue(epochCache.revoke(RevocationCacheContexts.PRINCIPAL, "principal"));
+        Assert.assertTrue(epochCache.getEpoch(RevocationCacheContexts.PRINCIPAL, "principal") > epoch);
+        Assert.assertTrue(epochCache.isRevoked(RevocationCacheContexts.PRINCIPAL, "principal", epoch));
+        Assert.assertEquals(epochCache.getEpoch(RevocationCacheContexts.CLIENT, "principal"), 0);
+    }
+
+    @Test
+    public void testTokens() throws Exception {
+        epochCache.initialize();
+        final AuthorizeCodeClaimsSet unstamped = buildClaimsSet();
+        Assert.assertFalse(epochCache.isRevoked(unstamped));
+        epochCache.revoke(RevocationCacheContexts.PRINCIPAL, "principal");
+        Assert.assertTrue(epochCache.isRevoked(unstamped));
+        final AuthorizeCodeClaimsSet stamped = buildClaimsSet();
+        Assert.assertTrue(stamped.getPrincipalRevocationEpoch() > 0);
+        Assert.assertFalse(epochCache.isRevoked(AuthorizeCodeClaimsSet.parse(stamped.serialize())));
+        epochCache.revoke(RevocationCacheContexts.CLIENT, "client");
+        Assert.assertTrue(epochCache.isRevoked(stamped));
+        Assert.assertFalse(epochCache.isRevoked(buildClaimsSet()));
+    }
+
+    @Test
+    public void testRevokePrincipal() throws Exception {
+        final LocalInvalidationBus bus = new LocalInvalidationBus();
+        bus.setId("bus");
+        bus.initialize();
+        epochCache.setNearCacheExpiration(60000);
+        epochCache.setInvalidationBus(bus);
+        epochCache.initialize();
+        final RevocationEpochCache otherCache = new RevocationEpochCache();
+        otherCache.setId("other");
+        otherCache.setStorage(storageService);
+        otherCache.setInvalidationBus(bus);
+        otherCache.initialize();
+        final AuthorizeCodeClaimsSet token = buildClaimsSet();
+        Assert.assertFalse(epochCache.isRevoked(token));
+        Assert.assertTrue(otherCache.revokePrincipal("principal"));
+        Assert.assertTrue(epochCache.isRevoked(token));
+        Assert.assertFalse(epochCache.isRevoked(RevocationCacheContexts.PRINCIPAL, "other", 0));
+        Assert.assertEquals(epochCache.getEpoch(RevocationCacheContexts.CLIENT, "client"), 0);
+        Assert.assertFalse(epochCache.isRevoked(buildClaimsSet()));
+        Assert.assertTrue(otherCache.revokeClient("client"));
+        Assert.assertTrue(epochCache.getEpoch(RevocationCacheContexts.CLIENT, "client") > 0);
+        otherCache.destroy();
+        bus.destroy();
+    }
+
+    @Test
+    public void testNearCacheWithoutBus() throws Exception {
+        epochCache.setNearCacheExpiration(60000);
+        epochCache.initialize();
+        final RevocationEpochCache otherCache = new RevocationEpochCache();
+        otherCache.setId("other");
+        otherCache.setStorage(storageService);
+        otherCache.initialize();
+        Assert.assertEquals(epochCache.getEpoch(RevocationCacheContexts.CLIENT, "client"), 0);
+        otherCache.revoke(RevocationCacheContexts.CLIENT, "client");
+        // the epoch advanced through the other instance is not noticed before the near cache expires
+        Assert.assertEquals(epochCache.getEpoch(RevocationCacheContexts.CLIENT, "client"), 0);
+        epochCache.revoke(RevocationCacheContexts.CLIENT, "client");
+        Assert.assertTrue(epochCache.getEpoch(RevocationCacheContexts.CLIENT, "client") > 0);
+        otherCache.destroy();
+    }
+
+    @Test
+    public void testNearCacheWithBus() throws Exception {
+        final LocalInvalidationBus bus = new LocalInvalidationBus();
+        bus.setId("bus");
+        bus.initialize();
+        epochCache.setNearCacheExpiration(60000);
+        epochCache.setInvalidationBus(bus);
+        epochCache.initialize();
+        final RevocationEpochCache otherCache = new RevocationEpochCache();
+        otherCache.setId("other");
+        otherCache.setStorage(storageService);
+        otherCache.setInvalidationBus(bus);
+        otherCache.initialize();
+        Assert.assertEquals(epochCache.getEpoch(RevocationCacheContexts.CLIENT, "client"), 0);
+        otherCache.revoke(RevocationCacheContexts.CLIENT, "client");
+        Assert.assertTrue(epochCache.getEpoch(RevocationCacheContexts.CLIENT, "client") > 0);
+        otherCache.destroy();
+        bus.destroy();
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void testInvalidEpoch() throws Exception {
+        epochCache.initialize();
+        storageService.create(RevocationCacheContexts.PRINCIPAL, "principal", "invalid",
+                System.currentTimeMillis() + 60000);
+        epochCache.getEpoch(RevocationCacheContexts.PRINCIPAL, "principal");
+    }
+
+    @Test
+    public void testStorageFailure() throws Exception {
+        epochCache.setStrict(true);
+        epochCache.initialize();
+        storageService.create(RevocationCacheContexts.PRINCIPAL, "principal", "invalid",
+                System.currentTimeMillis() + 60000);
+        Assert.assertTrue(epochCache.isRevoked(RevocationCacheContexts.PRINCIPAL, "principal", 0));
+    }
+}
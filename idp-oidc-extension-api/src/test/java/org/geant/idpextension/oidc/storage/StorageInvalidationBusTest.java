@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2017 - 2020, GÉANT
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an “AS IS” BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.geant.idpextension.oidc.storage;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.opensaml.storage.impl.MemoryStorageService;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
+
+/**
+ * Tests for {@link StorageInvalidationBus}.
+ */
+public class StorageInvalidationBusTest {
+
+    private MemoryStorageService storageService;
+
+    private StorageInvalidationBus bus;
+
+    private StorageInvalidationBus otherBus;
+
+    private List<String> invalidated;
+
+    @BeforeMethod
+    protected void setUp() throws Exception {
+        storageService = new MemoryStorageService();
+        storageService.setId("test");
+        storageService.initialize();
+        invalidated = new ArrayList<>();
+    }
+
+    @AfterMethod
+    protected void tearDown() {
+        if (bus != null) {
+            bus.destroy();
+        }
+        if (otherBus != null) {
+            otherBus.destroy();
+        }
+        storageService.destroy();
+    }
+
+    private StorageInvalidationBus buildBus(final String id, final int maxEvents)
+            throws ComponentInitializationException {
+        final StorageInvalidationBus newBus = new StorageInvalidationBus();
+        newBus.setId(id);
+        newBus.setStorage(storageService);
+        // polled explicitly by the tests
+        newBus.setPollInterval(3600000);
+        newBus.setMaxEvents(maxEvents);
+        newBus.initialize();
+        return newBus;
+    }
+
+    private void subscribe(final InvalidationBus target) {
+        target.subscribe("topic", new InvalidationListener() {
+            public void invalidate(final String topic, final String key) {
+                invalidated.add(key);
+            }
+        });
+    }
+
+    @Test(expectedExceptions = ComponentInitializationException.class)
+    public void testNoStorage() throws ComponentInitializationException {
+        bus = new StorageInvalidationBus();
+        bus.setId("bus");
+        bus.initialize();
+    }
+
+    @Test
+    public void testDelivery() throws Exception {
+        bus = buildBus("bus", 100);
+        otherBus = buildBus("otherBus", 100);
+        subscribe(otherBus);
+        bus.publish("topic", "key1");
+        bus.publish("topic", "key2");
+        Assert.assertTrue(invalidated.isEmpty());
+        otherBus.poll(true);
+        Assert.assertEquals(invalidated.size(), 2);
+        Assert.assertEquals(invalidated.get(0), "key1");
+        Assert.assertEquals(invalidated.get(1), "key2");
+        otherBus.poll(true);
+        Assert.assertEquals(invalidated.size(), 2);
+    }
+
+    @Test
+    public void testOwnEventsDeliveredOnce() throws Exception {
+        bus = buildBus("bus", 100);
+        subscribe(bus);
+        bus.publish("topic", "key");
+        bus.poll(true);
+        Assert.assertEquals(invalidated.size(), 1);
+    }
+
+    @Test
+    public void testEarlierEventsNotDelivered() throws Exception {
+        bus = buildBus("bus", 100);
+        bus.publish("topic", "key");
+        otherBus = buildBus("otherBus", 100);
+        subscribe(otherBus);
+        otherBus.poll(true);
+        Assert.assertTrue(invalidated.isEmpty());
+    }
+
+    @Test
+    public void testMissedEvents() throws Exception {
+        bus = buildBus("bus", 2);
+        otherBus = buildBus("otherBus", 2);
+        subscribe(otherBus);
+        bus.publish("topic", "key0");
+        otherBus.poll(true);
+        bus.publish("topic", "key1");
+        bus.publish("topic", "key2");
+        bus.publish("topic", "key3");
+        otherBus.poll(true);
+        Assert.assertEquals(invalidated.size(), 4);
+        Assert.assertEquals(invalidated.get(0), "key0");
+        Assert.assertNull(invalidated.get(1));
+        Assert.assertEquals(invalidated.get(2), "key2");
+        Assert.assertEquals(invalidated.get(3), "key3");
+    }
+}
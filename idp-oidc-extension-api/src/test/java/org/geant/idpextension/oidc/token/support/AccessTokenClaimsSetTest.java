@@ -16,11 +16,25 @@
 
 package org.geant.idpextension.oidc.token.support;
 
+import org.geant.idpextension.oidc.storage.ReferenceTokenDataSealer;
+import org.opensaml.storage.impl.MemoryStorageService;
+import org.springframework.core.io.ClassPathResource;
 import org.testng.annotations.Test;
 
+import net.shibboleth.ext.spring.resource.ResourceHelper;
+import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
+import net.shibboleth.utilities.java.support.security.BasicKeystoreKeyStrategy;
 import net.shibboleth.utilities.java.support.security.DataSealerException;
 import net.shibboleth.utilities.java.support.security.SecureRandomIdentifierGenerationStrategy;
 import java.text.ParseException;
+import java.util.Collections;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.MACSigner;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
 
 import org.testng.Assert;
 
@@ -62,6 +76,61 @@ public class AccessTokenClaimsSetTest extends BaseTokenClaimsSetTest {
         Assert.assertEquals(acClaimsSet3.getACR(), acr.getValue());
     }
 
+    private ReferenceTokenDataSealer initReferenceSealer() throws ComponentInitializationException {
+        final MemoryStorageService storageService = new MemoryStorageService();
+        storageService.setId("test");
+        storageService.initialize();
+        final BasicKeystoreKeyStrategy strategy = new BasicKeystoreKeyStrategy();
+        strategy.setKeystoreResource(ResourceHelper.of(new ClassPathResource("credentials/sealer.jks")));
+        strategy.setKeyVersionResource(ResourceHelper.of(new ClassPathResource("credentials/sealer.kver")));
+        strategy.setKeystorePassword("password");
+        strategy.setKeyAlias("secret");
+        strategy.setKeyPassword("password");
+        strategy.initialize();
+        final ReferenceTokenDataSealer referenceSealer = new ReferenceTokenDataSealer();
+        referenceSealer.setKeyStrategy(strategy);
+        referenceSealer.setReferenceTokens(false);
+        referenceSealer.setStorage(storageService);
+        referenceSealer.initialize();
+        return referenceSealer;
+    }
+
+    @Test
+    public void testJWTAccessToken()
+            throws ParseException, DataSealerException, JOSEException, ComponentInitializationException {
+        init();
+        final ReferenceTokenDataSealer referenceSealer = initReferenceSealer();
+        String reference = referenceSealer.reference(atClaimsSet.serialize(), exp.getTime());
+        JWTClaimsSet jwtClaims = atClaimsSet.toJWTAccessTokenClaimsSet(reference, null);
+        Assert.assertEquals(jwtClaims.getJWTID(), reference);
+        Assert.assertEquals(jwtClaims.getAudience(), Collections.singletonList(issuer));
+        Assert.assertEquals(jwtClaims.getStringClaim(AccessTokenClaimsSet.KEY_JWT_CLIENT_ID), clientID.getValue());
+        Assert.assertEquals(jwtClaims.getStringClaim(TokenClaimsSet.KEY_SCOPE), scope.toString());
+        Assert.assertNull(jwtClaims.getClaim(TokenClaimsSet.KEY_USER_PRINCIPAL));
+        SignedJWT jwt = new SignedJWT(new JWSHeader.Builder(JWSAlgorithm.HS256)
+                .type(AccessTokenClaimsSet.JWT_TYPE_AT).build(), jwtClaims);
+        jwt.sign(new MACSigner("01234567890123456789012345678901"));
+        AccessTokenClaimsSet parsed = AccessTokenClaimsSet.parse(jwt.serialize(), referenceSealer);
+        Assert.assertEquals(parsed.getID(), atClaimsSet.getID());
+        Assert.assertEquals(parsed.getACR(), acr.getValue());
+    }
+
+    @Test
+    public void testJWTAccessTokenAudiences() {
+        init();
+        JWTClaimsSet jwtClaims = atClaimsSet.toJWTAccessTokenClaimsSet(ReferenceTokenDataSealer.HANDLE_PREFIX + "ref",
+                Collections.singleton("https://rs.example.org"));
+        Assert.assertEquals(jwtClaims.getAudience(), Collections.singletonList("https://rs.example.org"));
+    }
+
+    @Test(expectedExceptions = ParseException.class)
+    public void testJWTAccessTokenWithoutReference() throws ParseException, DataSealerException, JOSEException {
+        SignedJWT jwt = new SignedJWT(new JWSHeader.Builder(JWSAlgorithm.HS256).build(),
+                new JWTClaimsSet.Builder().subject("subject").jwtID("jwtId").build());
+        jwt.sign(new MACSigner("01234567890123456789012345678901"));
+        AccessTokenClaimsSet.parse(jwt.serialize(), sealer);
+    }
+
     @Test(expectedExceptions = ParseException.class)
     public void testSerializationWrongType() throws ParseException {
         AuthorizeCodeClaimsSet accessnClaimsSet =
@@ -46,6 +46,23 @@ public class RefreshTokenClaimsSetTest extends BaseTokenClaimsSetTest {
         Assert.assertEquals(rfClaimsSet3.getACR(), acr.getValue());
     }
 
+    @Test
+    public void testRevocationEpochs() throws ParseException {
+        init();
+        Assert.assertEquals(rfClaimsSet.getPrincipalRevocationEpoch(), 0);
+        Assert.assertEquals(rfClaimsSet.getClientRevocationEpoch(), 0);
+        Assert.assertNull(rfClaimsSet.getClaimsSet().getClaim(TokenClaimsSet.KEY_PRINCIPAL_REVOCATION_EPOCH));
+        AuthorizeCodeClaimsSet acClaimsSet =
+                new AuthorizeCodeClaimsSet.Builder(new SecureRandomIdentifierGenerationStrategy(), clientID, issuer,
+                        userPrincipal, subject, iat, exp, authTime, redirectURI, scope).setRevocationEpochs(1000, 2000)
+                                .build();
+        RefreshTokenClaimsSet rfClaimsSet2 =
+                RefreshTokenClaimsSet.parse(new RefreshTokenClaimsSet(acClaimsSet, iat, exp).serialize());
+        Assert.assertEquals(rfClaimsSet2.getPrincipalRevocationEpoch(), 1000);
+        Assert.assertEquals(rfClaimsSet2.getClientRevocationEpoch(), 2000);
+        Assert.assertEquals(new RefreshTokenClaimsSet(rfClaimsSet2, iat, exp).getClientRevocationEpoch(), 2000);
+    }
+
     @Test(expectedExceptions = ParseException.class)
     public void testSerializationWrongType() throws ParseException {
         AuthorizeCodeClaimsSet accessnClaimsSet =
@@ -16,7 +16,13 @@
 
 package org.geant.idpextension.oidc.token.support;
 
+import java.text.ParseException;
+import java.util.Iterator;
+
 import org.testng.annotations.Test;
+
+import com.nimbusds.oauth2.sdk.Scope;
+
 import org.testng.Assert;
 
 /**
@@ -59,6 +65,36 @@ public class TokenClaimsSetTest extends BaseTokenClaimsSetTest {
         Assert.assertEquals(tokenClaimsSet.getCodeChallenge(), codeChallenge);
     }
 
+    @Test
+    public void testDecodedOnce() throws ParseException {
+        init();
+        assertDecodedOnce(tokenClaimsSet);
+        assertDecodedOnce(AccessTokenClaimsSet.parse(
+                new AccessTokenClaimsSet(tokenClaimsSet, scope, dlClaims, dlClaimsUI, iat, exp).serialize()));
+    }
+
+    private void assertDecodedOnce(TokenClaimsSet claimsSet) {
+        Assert.assertSame(claimsSet.getScope(), claimsSet.getScope());
+        Assert.assertSame(claimsSet.getRedirectURI(), claimsSet.getRedirectURI());
+        Assert.assertSame(claimsSet.getClaimsRequest(), claimsSet.getClaimsRequest());
+        Assert.assertSame(claimsSet.getDeliveryClaims(), claimsSet.getDeliveryClaims());
+        Assert.assertSame(claimsSet.getUserinfoDeliveryClaims(), claimsSet.getUserinfoDeliveryClaims());
+    }
+
+    @Test(expectedExceptions = UnsupportedOperationException.class)
+    public void testScopeUnmodifiable() {
+        init();
+        tokenClaimsSet.getScope().add("new");
+    }
+
+    @Test(expectedExceptions = UnsupportedOperationException.class)
+    public void testScopeIteratorUnmodifiable() {
+        init();
+        Iterator<Scope.Value> iterator = tokenClaimsSet.getScope().iterator();
+        iterator.next();
+        iterator.remove();
+    }
+
     @Test
     public void testNullGetters() {
         tokenClaimsSet = new TokenClaimsSet(tokenType, tokenID, clientID, issuer, userPrincipal, subject, null, iat,
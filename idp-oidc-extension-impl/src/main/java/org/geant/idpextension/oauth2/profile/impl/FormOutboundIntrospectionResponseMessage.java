@@ -19,10 +19,12 @@ package org.geant.idpextension.oauth2.profile.impl;
 import java.text.ParseException;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 import org.geant.idpextension.oidc.profile.impl.AbstractOIDCRequestAction;
 import org.geant.idpextension.oidc.storage.RevocationCache;
 import org.geant.idpextension.oidc.storage.RevocationCacheContexts;
+import org.geant.idpextension.oidc.storage.RevocationEpochCache;
 import org.geant.idpextension.oidc.token.support.AccessTokenClaimsSet;
 import org.geant.idpextension.oidc.token.support.RefreshTokenClaimsSet;
 import org.geant.idpextension.oidc.token.support.TokenClaimsSet;
@@ -61,6 +63,10 @@ public class FormOutboundIntrospectionResponseMessage extends AbstractOIDCReques
     @NonnullAfterInit
     private RevocationCache revocationCache;
 
+    /** The cache of the revocation epochs, null if not checked. */
+    @Nullable
+    private RevocationEpochCache revocationEpochCache;
+
     /**
      * Constructor.
      * 
@@ -80,6 +86,16 @@ public class FormOutboundIntrospectionResponseMessage extends AbstractOIDCReques
         revocationCache = Constraint.isNotNull(cache, "RevocationCache cannot be null");
     }
 
+    /**
+     * Set the cache of the revocation epochs. The epochs are not checked if not set.
+     * 
+     * @param cache the revocation epoch cache
+     */
+    public void setRevocationEpochCache(@Nullable final RevocationEpochCache cache) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        revocationEpochCache = cache;
+    }
+
     /** {@inheritDoc} */
     @Override
     protected void doInitialize() throws ComponentInitializationException {
@@ -97,14 +113,18 @@ public class FormOutboundIntrospectionResponseMessage extends AbstractOIDCReques
         try {
             tokenClaimsSet = AccessTokenClaimsSet.parse(getRequest().getToken().getValue(), dataSealer);
             tokenType = AccessTokenType.BEARER;
-            log.debug("{} access token unwrapped {}", getLogPrefix(), tokenClaimsSet.serialize());
+            if (log.isDebugEnabled()) {
+                log.debug("{} access token unwrapped {}", getLogPrefix(), tokenClaimsSet.serialize());
+            }
         } catch (DataSealerException | ParseException e) {
             log.debug("{} token to introspect is not valid access token", getLogPrefix());
         }
         if (tokenClaimsSet == null) {
             try {
                 tokenClaimsSet = RefreshTokenClaimsSet.parse(getRequest().getToken().getValue(), dataSealer);
-                log.debug("{} refresh token unwrapped {}", getLogPrefix(), tokenClaimsSet.serialize());
+                if (log.isDebugEnabled()) {
+                    log.debug("{} refresh token unwrapped {}", getLogPrefix(), tokenClaimsSet.serialize());
+                }
             } catch (DataSealerException | ParseException e) {
                 log.debug("{} token to introspect is not valid refresh token", getLogPrefix());
             }
@@ -122,6 +142,13 @@ public class FormOutboundIntrospectionResponseMessage extends AbstractOIDCReques
                     .setMessage(new TokenIntrospectionSuccessResponse.Builder(false).build());
             return;
         }
+        if (revocationEpochCache != null && revocationEpochCache.isRevoked(tokenClaimsSet)) {
+            log.debug("{} tokens of the user principal or the client of {} are all revoked", getLogPrefix(),
+                    tokenClaimsSet.getID());
+            profileRequestContext.getOutboundMessageContext()
+                    .setMessage(new TokenIntrospectionSuccessResponse.Builder(false).build());
+            return;
+        }
         if (tokenClaimsSet.isExpired()) {
             log.debug("{} tokens is expired", getLogPrefix(), tokenClaimsSet.getID());
             profileRequestContext.getOutboundMessageContext()
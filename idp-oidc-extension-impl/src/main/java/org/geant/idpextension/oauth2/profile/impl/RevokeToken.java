@@ -18,7 +18,9 @@ package org.geant.idpextension.oauth2.profile.impl;
 
 import java.text.ParseException;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import org.geant.idpextension.oidc.profile.impl.AbstractOIDCRequestAction;
+import org.geant.idpextension.oidc.storage.AttributeResolutionCache;
 import org.geant.idpextension.oidc.storage.RevocationCache;
 import org.geant.idpextension.oidc.storage.RevocationCacheContexts;
 import org.geant.idpextension.oidc.token.support.AccessTokenClaimsSet;
@@ -42,6 +44,8 @@ import net.shibboleth.utilities.java.support.security.DataSealerException;
  * tokens based on it.
  * 
  * If the token to be revoked is not decodable or the revocation fails, the actions still returns success status.
+ * 
+ * If an {@link AttributeResolutionCache} is set, the cached attributes of the principal for the client are evicted.
  */
 @SuppressWarnings("rawtypes")
 public class RevokeToken extends AbstractOIDCRequestAction<TokenRevocationRequest> {
@@ -58,6 +62,10 @@ public class RevokeToken extends AbstractOIDCRequestAction<TokenRevocationReques
     @NonnullAfterInit
     private RevocationCache revocationCache;
 
+    /** The attribute resolution cache to evict the entries from, null if caching is disabled. */
+    @Nullable
+    private AttributeResolutionCache attributeResolutionCache;
+
     /**
      * Constructor.
      * 
@@ -77,6 +85,16 @@ public class RevokeToken extends AbstractOIDCRequestAction<TokenRevocationReques
         revocationCache = Constraint.isNotNull(cache, "RevocationCache cannot be null");
     }
 
+    /**
+     * Set the attribute resolution cache to evict the entries from when a token is revoked.
+     * 
+     * @param cache the attribute resolution cache
+     */
+    public void setAttributeResolutionCache(@Nullable final AttributeResolutionCache cache) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        attributeResolutionCache = cache;
+    }
+
     /** {@inheritDoc} */
     @Override
     protected void doInitialize() throws ComponentInitializationException {
@@ -91,14 +109,18 @@ public class RevokeToken extends AbstractOIDCRequestAction<TokenRevocationReques
         log.debug("{} token to revoke {}", getLogPrefix(), getRequest().getToken().getValue());
         try {
             tokenClaimsSet = AccessTokenClaimsSet.parse(getRequest().getToken().getValue(), dataSealer);
-            log.debug("{} access token unwrapped {}", getLogPrefix(), tokenClaimsSet.serialize());
+            if (log.isDebugEnabled()) {
+                log.debug("{} access token unwrapped {}", getLogPrefix(), tokenClaimsSet.serialize());
+            }
         } catch (DataSealerException | ParseException e) {
             log.debug("{} token to revoke is not valid access token", getLogPrefix());
         }
         if (tokenClaimsSet == null) {
             try {
                 tokenClaimsSet = RefreshTokenClaimsSet.parse(getRequest().getToken().getValue(), dataSealer);
-                log.debug("{} refresh token unwrapped {}", getLogPrefix(), tokenClaimsSet.serialize());
+                if (log.isDebugEnabled()) {
+                    log.debug("{} refresh token unwrapped {}", getLogPrefix(), tokenClaimsSet.serialize());
+                }
             } catch (DataSealerException | ParseException e) {
                 log.debug("{} token to revoke is not valid refresh token", getLogPrefix());
             }
@@ -112,5 +134,8 @@ public class RevokeToken extends AbstractOIDCRequestAction<TokenRevocationReques
         } else {
             log.warn("{} failed to revoke tokens based on authorize code {}", getLogPrefix(), tokenClaimsSet.getID());
         }
+        if (attributeResolutionCache != null) {
+            attributeResolutionCache.evict(tokenClaimsSet.getPrincipal(), tokenClaimsSet.getClientID().getValue());
+        }
     }
 }
\ No newline at end of file
@@ -50,6 +50,14 @@ import net.shibboleth.utilities.java.support.primitive.StringSupport;
 public abstract class AbstractOIDCAttributeEncoder extends AbstractInitializableComponent
         implements AttributeEncoder<JSONObject> {
 
+    /** Permissive JSON parser of the current thread, the parser instances are not thread-safe. */
+    private static final ThreadLocal<JSONParser> JSON_PARSER = new ThreadLocal<JSONParser>() {
+        @Override
+        protected JSONParser initialValue() {
+            return new JSONParser(JSONParser.MODE_PERMISSIVE);
+        }
+    };
+
     /** Class logger. */
     @Nonnull
     private final Logger log = LoggerFactory.getLogger(AbstractOIDCAttributeEncoder.class);
@@ -289,6 +297,25 @@ public abstract class AbstractOIDCAttributeEncoder extends AbstractInitializable
         name = Constraint.isNotNull(StringSupport.trimOrNull(attributeName), "Attribute name cannot be null or empty");
     }
 
+    /**
+     * Encode the attribute to the value of the claim named {@link #getName()}, without wrapping it into the JSON
+     * object returned by {@link #encode(IdPAttribute)}.
+     * 
+     * <p>
+     * The default implementation takes the value from the result of {@link #encode(IdPAttribute)}, the encoders of this
+     * package override it and build {@link #encode(IdPAttribute)} on top of it.
+     * </p>
+     * 
+     * @param idpAttribute the attribute to encode
+     * @return the claim value, or null if the attribute has no value to encode
+     * @throws AttributeEncodingException if the attribute cannot be encoded
+     */
+    @Nullable
+    public Object encodeValue(@Nonnull final IdPAttribute idpAttribute) throws AttributeEncodingException {
+        final JSONObject obj = encode(idpAttribute);
+        return obj != null ? obj.get(getName()) : null;
+    }
+
     /** {@inheritDoc} */
     @Override
     protected void doInitialize() throws ComponentInitializationException {
@@ -307,7 +334,7 @@ public abstract class AbstractOIDCAttributeEncoder extends AbstractInitializable
     private Object toJSONObject(String value) {
         JSONObject jsonObj = null;
         try {
-            jsonObj = (JSONObject) new JSONParser(JSONParser.MODE_PERMISSIVE).parse(value);
+            jsonObj = (JSONObject) JSON_PARSER.get().parse(value);
         } catch (Exception e) {
             log.warn("Unable to parse value {} as JSONObject for claim {}", value, name);
         }
@@ -338,30 +365,37 @@ public abstract class AbstractOIDCAttributeEncoder extends AbstractInitializable
         }
         // Values of type T placed to Array
         if (getAsArray()) {
-            JSONArray array = new JSONArray();
-            for (T value : values) {
-                array.add(value);
-            }
+            final JSONArray array = new JSONArray();
+            array.addAll(values);
             return array;
         }
-        // String catenation / integer or boolean value
-        String attributeString = "";
-        for (T value : values) {
-            if (value instanceof Integer || value instanceof Boolean) {
-                log.debug("for int and boolean first value is considered the result");
-                return value;
-            }
-            if (value instanceof String) {
-                if (attributeString.length() > 0 && getStringDelimiter() != null) {
-                    attributeString += getStringDelimiter();
-                }
-                attributeString += value;
-            } else {
-                log.warn("unrecognised type of value, {}", value.getClass().getName());
+        // Integer or boolean value
+        final T first = values.get(0);
+        if (first instanceof Integer || first instanceof Boolean) {
+            log.debug("for int and boolean first value is considered the result");
+            return first;
+        }
+        // String catenation
+        final String delimiter = getStringDelimiter();
+        int length = 0;
+        for (final T value : values) {
+            if (!(value instanceof String)) {
+                log.warn("unrecognised type of value, {}", value == null ? null : value.getClass().getName());
                 return null;
             }
+            length += ((String) value).length();
+        }
+        if (delimiter != null) {
+            length += delimiter.length() * (values.size() - 1);
+        }
+        final StringBuilder attributeString = new StringBuilder(length);
+        for (final T value : values) {
+            if (attributeString.length() > 0 && delimiter != null) {
+                attributeString.append(delimiter);
+            }
+            attributeString.append((String) value);
         }
-        return attributeString.length() != 0 ? attributeString : null;
+        return attributeString.length() != 0 ? attributeString.toString() : null;
     }
     // Checkstyle: CyclomaticComplexity ON
 
@@ -395,7 +429,7 @@ public abstract class AbstractOIDCAttributeEncoder extends AbstractInitializable
         if (attributevalues == null) {
             return null;
         }
-        List<String> values = new ArrayList<String>();
+        List<String> values = new ArrayList<String>(attributevalues.size());
         for (IdPAttributeValue<?> value : attributevalues) {
             if (value instanceof StringAttributeValue) {
                 log.debug("value {} added", ((StringAttributeValue) value).getValue());
@@ -415,7 +449,7 @@ public abstract class AbstractOIDCAttributeEncoder extends AbstractInitializable
         if (attributevalues == null) {
             return null;
         }
-        List<Integer> values = new ArrayList<Integer>();
+        List<Integer> values = new ArrayList<Integer>(attributevalues.size());
         for (IdPAttributeValue<?> value : attributevalues) {
             if (value instanceof StringAttributeValue) {
                 try {
@@ -440,7 +474,7 @@ public abstract class AbstractOIDCAttributeEncoder extends AbstractInitializable
         if (attributevalues == null) {
             return null;
         }
-        List<Boolean> values = new ArrayList<Boolean>();
+        List<Boolean> values = new ArrayList<Boolean>(attributevalues.size());
         for (IdPAttributeValue<?> value : attributevalues) {
             if (value instanceof StringAttributeValue) {
                 log.debug("value {} added as {}", (String) value.getValue(),
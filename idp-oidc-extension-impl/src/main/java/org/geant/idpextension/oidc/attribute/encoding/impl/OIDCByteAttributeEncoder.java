@@ -42,45 +42,64 @@ public class OIDCByteAttributeEncoder extends AbstractOIDCAttributeEncoder {
     @Nonnull
     private final Logger log = LoggerFactory.getLogger(OIDCByteAttributeEncoder.class);
 
+    @Override
+    public JSONObject encode(IdPAttribute idpAttribute) throws AttributeEncodingException {
+        JSONObject obj = new JSONObject();
+        obj.put(getName(), encodeValue(idpAttribute));
+        return obj;
+    }
+
     // Checkstyle: CyclomaticComplexity OFF
+    /** {@inheritDoc} */
     @SuppressWarnings("rawtypes")
     @Override
-    public JSONObject encode(IdPAttribute idpAttribute) throws AttributeEncodingException {
+    public Object encodeValue(IdPAttribute idpAttribute) throws AttributeEncodingException {
         Constraint.isNotNull(idpAttribute, "Attribute to encode cannot be null");
-        String attributeString = "";
-        JSONObject obj = new JSONObject();
-        JSONArray array = new JSONArray();
-        for (IdPAttributeValue value : idpAttribute.getValues()) {
-            if (value instanceof ByteAttributeValue && value.getValue() != null) {
-                if (getAsInt()) {
-                    // int
-                    JSONArray innerArray = new JSONArray();
-                    for (byte byteValue : ((ByteAttributeValue) value).getValue()) {
+        final JSONArray array = new JSONArray();
+        if (getAsInt()) {
+            for (IdPAttributeValue value : idpAttribute.getValues()) {
+                if (value instanceof ByteAttributeValue && value.getValue() != null) {
+                    // each byte array is converted to json int array and placed to json array.
+                    final byte[] bytes = ((ByteAttributeValue) value).getValue();
+                    final JSONArray innerArray = new JSONArray();
+                    innerArray.ensureCapacity(bytes.length);
+                    for (byte byteValue : bytes) {
                         innerArray.add((int) byteValue);
                     }
-                    // each byte array is converted to json int array and placed
-                    // to json array.
                     array.add(innerArray);
-                } else {
-                    // b64
-                    if (attributeString.length() > 0 && getStringDelimiter() != null) {
-                        attributeString += getStringDelimiter();
-                    }
-                    attributeString +=
-                            Base64Support.encode(((ByteAttributeValue) value).getValue(), Base64Support.UNCHUNKED);
-                    if (getAsArray()) {
-                        array.add(attributeString.toString());
-                        attributeString = "";
-                    }
                 }
             }
+            return array.isEmpty() ? null : array;
         }
-        if (getAsArray() || getAsInt()) {
-            obj.put(getName(), array.size() == 0 ? null : array);
-        } else {
-            obj.put(getName(), attributeString.toString().isEmpty() ? null : attributeString.toString());
+        if (getAsArray()) {
+            // each value is b64 encoded and placed to json array.
+            for (IdPAttributeValue value : idpAttribute.getValues()) {
+                if (value instanceof ByteAttributeValue && value.getValue() != null) {
+                    array.add(Base64Support.encode(((ByteAttributeValue) value).getValue(), Base64Support.UNCHUNKED));
+                }
+            }
+            return array.isEmpty() ? null : array;
         }
-        return obj;
+        // b64 encoded values catenated with the delimiter
+        final String delimiter = getStringDelimiter();
+        int length = 0;
+        for (IdPAttributeValue value : idpAttribute.getValues()) {
+            if (value instanceof ByteAttributeValue && value.getValue() != null) {
+                length += (((ByteAttributeValue) value).getValue().length + 2) / 3 * 4
+                        + (delimiter != null ? delimiter.length() : 0);
+            }
+        }
+        final StringBuilder attributeString = new StringBuilder(length);
+        for (IdPAttributeValue value : idpAttribute.getValues()) {
+            if (value instanceof ByteAttributeValue && value.getValue() != null) {
+                if (attributeString.length() > 0 && delimiter != null) {
+                    attributeString.append(delimiter);
+                }
+                attributeString
+                        .append(Base64Support.encode(((ByteAttributeValue) value).getValue(), Base64Support.UNCHUNKED));
+            }
+        }
+        return attributeString.length() == 0 ? null : attributeString.toString();
     }
     // Checkstyle: CyclomaticComplexity ON
 
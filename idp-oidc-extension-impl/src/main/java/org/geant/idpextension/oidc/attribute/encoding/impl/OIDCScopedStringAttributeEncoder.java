@@ -64,20 +64,29 @@ public class OIDCScopedStringAttributeEncoder extends AbstractOIDCAttributeEncod
         scopeDelimiter = StringSupport.trimOrNull(newScopeDelimiter);
     }
 
-    @SuppressWarnings("rawtypes")
     @Override
     public JSONObject encode(IdPAttribute idpAttribute) throws AttributeEncodingException {
+        JSONObject obj = new JSONObject();
+        obj.put(getName(), encodeValue(idpAttribute));
+        return obj;
+    }
+
+    /** {@inheritDoc} */
+    @SuppressWarnings("rawtypes")
+    @Override
+    public Object encodeValue(IdPAttribute idpAttribute) throws AttributeEncodingException {
         Constraint.isNotNull(idpAttribute, "Attribute to encode cannot be null");
         Constraint.isNotNull(scopeDelimiter, "Scope delimiter cannot be null");
-        JSONObject obj = new JSONObject();
-        List<String> values = new ArrayList<String>();
+        List<String> values = new ArrayList<String>(idpAttribute.getValues().size());
         for (IdPAttributeValue value : idpAttribute.getValues()) {
             if (value instanceof ScopedStringAttributeValue && value.getValue() != null) {
-                values.add(value.getValue() + scopeDelimiter + ((ScopedStringAttributeValue) value).getScope());
+                final String stringValue = ((ScopedStringAttributeValue) value).getValue();
+                final String scope = ((ScopedStringAttributeValue) value).getScope();
+                values.add(new StringBuilder(stringValue.length() + scopeDelimiter.length() + scope.length())
+                        .append(stringValue).append(scopeDelimiter).append(scope).toString());
             }
         }
-        obj.put(getName(), values.isEmpty() ? null : encodeValues(values));
-        return obj;
+        return values.isEmpty() ? null : encodeValues(values);
     }
 
 }
@@ -43,11 +43,17 @@ public class OIDCStringAttributeEncoder extends AbstractOIDCAttributeEncoder {
 
     @Override
     public JSONObject encode(IdPAttribute idpAttribute) throws AttributeEncodingException {
-        Constraint.isNotNull(idpAttribute, "Attribute to encode cannot be null");
-        log.debug("Encoding attribute {}", idpAttribute.getId());
         JSONObject obj = new JSONObject();
-        obj.put(getName(), encodeValues(getValues(idpAttribute.getValues())));
+        obj.put(getName(), encodeValue(idpAttribute));
         return obj;
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public Object encodeValue(IdPAttribute idpAttribute) throws AttributeEncodingException {
+        Constraint.isNotNull(idpAttribute, "Attribute to encode cannot be null");
+        log.debug("Encoding attribute {}", idpAttribute.getId());
+        return encodeValues(getValues(idpAttribute.getValues()));
+    }
+
 }
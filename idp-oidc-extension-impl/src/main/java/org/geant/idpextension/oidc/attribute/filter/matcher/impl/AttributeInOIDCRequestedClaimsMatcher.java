@@ -16,26 +16,23 @@
 
 package org.geant.idpextension.oidc.attribute.filter.matcher.impl;
 
-import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Collections;
-import java.util.List;
+import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 import org.geant.idpextension.oidc.attribute.encoding.impl.AbstractOIDCAttributeEncoder;
 import org.geant.idpextension.oidc.messaging.context.OIDCAuthenticationResponseContext;
-import org.opensaml.messaging.context.BaseContext;
-import org.opensaml.messaging.context.MessageContext;
+import org.geant.idpextension.oidc.messaging.context.RequestedClaimsIndex;
 import org.opensaml.messaging.context.navigate.RecursiveTypedParentContextLookup;
 import org.opensaml.profile.context.ProfileRequestContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import com.google.common.base.Function;
 import com.google.common.collect.ImmutableSet;
-import com.nimbusds.openid.connect.sdk.ClaimsRequest;
-import com.nimbusds.openid.connect.sdk.ClaimsRequest.Entry;
-import com.nimbusds.openid.connect.sdk.claims.ClaimRequirement;
 
 import net.shibboleth.idp.attribute.AttributeEncoder;
 import net.shibboleth.idp.attribute.IdPAttribute;
@@ -69,6 +66,13 @@ public class AttributeInOIDCRequestedClaimsMatcher extends AbstractIdentifiableI
     /** The String used to prefix log message. */
     private String logPrefix;
 
+    /** Strategy used to locate the {@link ProfileRequestContext} of the filter context. */
+    @SuppressWarnings("rawtypes")
+    @Nonnull
+    private final Function<AttributeFilterContext, ProfileRequestContext> profileRequestContextLookupStrategy =
+            new RecursiveTypedParentContextLookup<AttributeFilterContext, ProfileRequestContext>(
+                    ProfileRequestContext.class);
+
     /**
      * Gets whether to drop non essential claims.
      * 
@@ -145,38 +149,40 @@ public class AttributeInOIDCRequestedClaimsMatcher extends AbstractIdentifiableI
      * Resolve oidc encoder names for the attribute.
      * 
      * @param set attached to attribute
-     * @return list of names
+     * @return set of names
      */
-    private List<String> resolveClaimNames(Set<AttributeEncoder<?>> set) {
-        List<String> names = new ArrayList<String>();
-        if (set != null) {
-            for (AttributeEncoder<?> encoder : set) {
-                if (encoder instanceof AbstractOIDCAttributeEncoder) {
-                    names.add(((AbstractOIDCAttributeEncoder) encoder).getName());
-                }
+    @Nonnull
+    private Set<String> resolveClaimNames(@Nullable final Set<AttributeEncoder<?>> set) {
+        if (set == null || set.isEmpty()) {
+            return Collections.emptySet();
+        }
+        final Set<String> names = new HashSet<>(set.size() * 2);
+        for (final AttributeEncoder<?> encoder : set) {
+            if (encoder instanceof AbstractOIDCAttributeEncoder) {
+                names.add(((AbstractOIDCAttributeEncoder) encoder).getName());
             }
         }
         return names;
-
     }
 
     /**
-     * If any of the names have a matching claims request essentiality is verified.
+     * Checks whether any of the names is a requested claim passing the essentiality check.
      * 
-     * @param claims claims request claims
+     * @param claims requested claim names mapped to their essentiality
      * @param names names of the claims to be encoded
-     * @return false if any of the names of claims to be encoded match a claims request claim and essentiality check is
-     *         not passed.
+     * @return true if any of the names is a requested claim that is essential or essentiality is not required
      */
-    private boolean verifyEssentiality(Collection<Entry> claims, List<String> names) {
-        boolean bEssentialityCheckFailed = false;
-        for (Entry entry : claims) {
-            if (names.contains(entry.getClaimName())) {
-                bEssentialityCheckFailed =
-                        onlyIfEssential && !ClaimRequirement.ESSENTIAL.equals(entry.getClaimRequirement());
+    private boolean isRequested(@Nonnull final Map<String, Boolean> claims, @Nonnull final Set<String> names) {
+        if (claims.isEmpty()) {
+            return false;
+        }
+        for (final String name : names) {
+            final Boolean essential = claims.get(name);
+            if (essential != null && (!onlyIfEssential || essential)) {
+                return true;
             }
         }
-        return !bEssentialityCheckFailed;
+        return false;
     }
 
     // Checkstyle: CyclomaticComplexity OFF
@@ -185,28 +191,34 @@ public class AttributeInOIDCRequestedClaimsMatcher extends AbstractIdentifiableI
     public Set<IdPAttributeValue<?>> getMatchingValues(@Nonnull IdPAttribute attribute,
             @Nonnull AttributeFilterContext filtercontext) {
         ComponentSupport.ifNotInitializedThrowUninitializedComponentException(this);
-        List<String> names = resolveClaimNames(attribute.getEncoders());
+        final ProfileRequestContext profileRequestContext = profileRequestContextLookupStrategy.apply(filtercontext);
+        final OIDCAuthenticationResponseContext respCtx =
+                profileRequestContext == null || profileRequestContext.getOutboundMessageContext() == null ? null
+                        : profileRequestContext.getOutboundMessageContext()
+                                .getSubcontext(OIDCAuthenticationResponseContext.class, false);
+        final RequestedClaimsIndex index = respCtx == null ? null : respCtx.getRequestedClaimsIndex();
+        Set<String> names = index == null ? null : index.getAttributeClaimNames(attribute.getId());
+        if (names == null) {
+            names = resolveClaimNames(attribute.getEncoders());
+            if (index != null) {
+                index.setAttributeClaimNames(attribute.getId(), names);
+            }
+        }
         if (names.isEmpty()) {
             // This is always a failure.
             log.debug("{} No oidc encoders attached to attribute", getLogPrefix());
             return null;
         }
-        ProfileRequestContext profileRequestContext =
-                new RecursiveTypedParentContextLookup<AttributeFilterContext, ProfileRequestContext>(
-                        ProfileRequestContext.class).apply(filtercontext);
         if (profileRequestContext == null || profileRequestContext.getOutboundMessageContext() == null) {
             log.trace("{} No outbound message context", getLogPrefix());
             return null;
         }
-        OIDCAuthenticationResponseContext respCtx = profileRequestContext.getOutboundMessageContext()
-                .getSubcontext(OIDCAuthenticationResponseContext.class, false);
         if (respCtx == null) {
             // This is always a failure.
             log.debug("{} No oidc response ctx for this comparison", getLogPrefix());
             return null;
         }
-        ClaimsRequest request = respCtx.getRequestedClaims();
-        if (request == null || (request.getIDTokenClaims() == null && request.getUserInfoClaims() == null)) {
+        if (!index.isClaimsRequested()) {
             log.debug("{} No claims in request", getLogPrefix());
             if (getMatchIRequestedClaimsSilent()) {
                 log.debug("{} all values matched as in silent mode", getLogPrefix());
@@ -217,24 +229,15 @@ public class AttributeInOIDCRequestedClaimsMatcher extends AbstractIdentifiableI
             }
         }
         // Are we able to release the values based on claim being requested for id token?
-        if (request.getIDTokenClaimNames(false) != null && !getMatchOnlyUserInfo()) {
-            if (!Collections.disjoint(request.getIDTokenClaimNames(false), names)) {
-                if (verifyEssentiality(request.getIDTokenClaims(), names)) {
-                    log.debug("{} all values matched as {} is requested id token claims", getLogPrefix(),
-                            attribute.getId());
-                    return ImmutableSet.copyOf(attribute.getValues());
-                }
-            }
+        if (!getMatchOnlyUserInfo() && isRequested(index.getIDTokenClaims(), names)) {
+            log.debug("{} all values matched as {} is requested id token claims", getLogPrefix(), attribute.getId());
+            return ImmutableSet.copyOf(attribute.getValues());
         }
         // Are we able to release the values based on claim being requested for user info response?
-        if (request.getUserInfoClaimNames(false) != null && !getMatchOnlyIDToken()) {
-            if (!Collections.disjoint(request.getUserInfoClaimNames(false), names)) {
-                if (verifyEssentiality(request.getUserInfoClaims(), names)) {
-                    log.debug("{} all values matched as {} is requested user info claims", getLogPrefix(),
-                            attribute.getId());
-                    return ImmutableSet.copyOf(attribute.getValues());
-                }
-            }
+        if (!getMatchOnlyIDToken() && isRequested(index.getUserInfoClaims(), names)) {
+            log.debug("{} all values matched as {} is requested user info claims", getLogPrefix(),
+                    attribute.getId());
+            return ImmutableSet.copyOf(attribute.getValues());
         }
         log.debug("{} attribute {} was not a requested claim, none of the values matched", getLogPrefix(),
                 attribute.getId());
@@ -16,7 +16,7 @@
 
 package org.geant.idpextension.oidc.attribute.filter.spring.policyrule.filtercontext.impl;
 
-import java.util.List;
+import java.util.Set;
 
 import javax.annotation.Nonnull;
 import net.shibboleth.idp.attribute.filter.context.AttributeFilterContext;
@@ -28,6 +28,8 @@ import org.opensaml.profile.context.ProfileRequestContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.base.Function;
+
 /**
  * Compare the scopes of oidc authentication request with the provided value.
  */
@@ -37,6 +39,13 @@ public class AttributeOIDCScopePolicyRule extends AbstractStringPolicyRule {
     @Nonnull
     private final Logger log = LoggerFactory.getLogger(AttributeOIDCScopePolicyRule.class);
 
+    /** Strategy used to locate the {@link ProfileRequestContext} of the filter context. */
+    @SuppressWarnings("rawtypes")
+    @Nonnull
+    private final Function<AttributeFilterContext, ProfileRequestContext> profileRequestContextLookupStrategy =
+            new RecursiveTypedParentContextLookup<AttributeFilterContext, ProfileRequestContext>(
+                    ProfileRequestContext.class);
+
     /**
      * Compare the authentication request scopes with the provided string.
      * 
@@ -47,25 +56,27 @@ public class AttributeOIDCScopePolicyRule extends AbstractStringPolicyRule {
     @Override
     public Tristate matches(@Nonnull final AttributeFilterContext filterContext) {
         ComponentSupport.ifNotInitializedThrowUninitializedComponentException(this);
-        ProfileRequestContext profileRequestContext =
-                new RecursiveTypedParentContextLookup<AttributeFilterContext, ProfileRequestContext>(
-                        ProfileRequestContext.class).apply(filterContext);
+        final ProfileRequestContext profileRequestContext = profileRequestContextLookupStrategy.apply(filterContext);
         if (profileRequestContext == null || profileRequestContext.getOutboundMessageContext() == null) {
             log.trace("{} No outbound message context", getLogPrefix());
             return Tristate.FALSE;
         }
-        OIDCAuthenticationResponseContext ctx = profileRequestContext.getOutboundMessageContext()
+        final OIDCAuthenticationResponseContext ctx = profileRequestContext.getOutboundMessageContext()
                 .getSubcontext(OIDCAuthenticationResponseContext.class, false);
         if (ctx == null || ctx.getScope() == null) {
             log.trace("{} No verified requested scopes for oidc found", getLogPrefix());
             return Tristate.FALSE;
         }
-        List<String> scopes = ctx.getScope().toStringList();
-        if (scopes == null || scopes.isEmpty()) {
+        final Set<String> scopes = ctx.getRequestedClaimsIndex().getScopes();
+        if (scopes.isEmpty()) {
             log.warn("{} No scopes in oidc request, should not happen", getLogPrefix());
             return Tristate.FAIL;
         }
-        for (String scope : scopes) {
+        if (!isIgnoreCase()) {
+            log.debug("{} evaluating scopes {}", getLogPrefix(), scopes);
+            return scopes.contains(getMatchString()) ? Tristate.TRUE : Tristate.FALSE;
+        }
+        for (final String scope : scopes) {
             log.debug("{} evaluating scope {}", getLogPrefix(), scope);
             if (stringCompare(scope) == Tristate.TRUE) {
                 return Tristate.TRUE;
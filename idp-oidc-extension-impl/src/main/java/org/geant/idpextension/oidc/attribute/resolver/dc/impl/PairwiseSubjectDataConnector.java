@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2017 - 2020, GÉANT
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an “AS IS” BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.geant.idpextension.oidc.attribute.resolver.dc.impl;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.geant.idpextension.oidc.storage.PairwiseSubjectCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.shibboleth.idp.attribute.IdPAttribute;
+import net.shibboleth.idp.attribute.IdPAttributeValue;
+import net.shibboleth.idp.attribute.StringAttributeValue;
+import net.shibboleth.idp.attribute.resolver.AbstractDataConnector;
+import net.shibboleth.idp.attribute.resolver.PluginDependencySupport;
+import net.shibboleth.idp.attribute.resolver.ResolutionException;
+import net.shibboleth.idp.attribute.resolver.ResolverPluginDependency;
+import net.shibboleth.idp.attribute.resolver.context.AttributeResolutionContext;
+import net.shibboleth.idp.attribute.resolver.context.AttributeResolverWorkContext;
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullAfterInit;
+import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
+import net.shibboleth.utilities.java.support.component.ComponentSupport;
+import net.shibboleth.utilities.java.support.logic.Constraint;
+import net.shibboleth.utilities.java.support.primitive.StringSupport;
+
+/**
+ * A data connector that generates the pairwise subject identifier of the principal through a
+ * {@link PairwiseSubjectCache}, as a drop-in replacement of the ComputedId data connector.
+ * 
+ * <p>
+ * The identifier is computed from the source attribute and the sector identifier that
+ * SetSectorIdentifierForAttributeResolution sets as the attribute recipient group, falling back to the attribute
+ * recipient. With the same salt, algorithm and encoding the values are the same as the ones of the ComputedId data
+ * connector, but they are computed only once per principal and sector and looked up from the cache afterwards.
+ * </p>
+ */
+public class PairwiseSubjectDataConnector extends AbstractDataConnector {
+
+    /** Class logger. */
+    @Nonnull
+    private final Logger log = LoggerFactory.getLogger(PairwiseSubjectDataConnector.class);
+
+    /** The cache of the pairwise subject identifiers. */
+    @NonnullAfterInit
+    private PairwiseSubjectCache pairwiseSubjectCache;
+
+    /** ID of the attribute the identifiers are computed from. */
+    @NonnullAfterInit
+    private String sourceAttributeId;
+
+    /** ID of the attribute generated by this data connector. Defaults to the id of the data connector. */
+    @NonnullAfterInit
+    private String generatedAttributeId;
+
+    /**
+     * Set the cache of the pairwise subject identifiers.
+     * 
+     * @param cache the cache of the pairwise subject identifiers
+     */
+    public void setPairwiseSubjectCache(@Nonnull final PairwiseSubjectCache cache) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        pairwiseSubjectCache = Constraint.isNotNull(cache, "Pairwise subject cache cannot be null");
+    }
+
+    /**
+     * Set the ID of the attribute the identifiers are computed from. Defaults to the only dependency.
+     * 
+     * @param id ID of the source attribute
+     */
+    public void setSourceAttributeId(@Nullable final String id) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        sourceAttributeId = StringSupport.trimOrNull(id);
+    }
+
+    /**
+     * Get the ID of the attribute the identifiers are computed from.
+     * 
+     * @return ID of the source attribute
+     */
+    @NonnullAfterInit
+    public String getSourceAttributeId() {
+        return sourceAttributeId;
+    }
+
+    /**
+     * Set the ID of the attribute generated by this data connector.
+     * 
+     * @param id ID of the generated attribute
+     */
+    public void setGeneratedAttributeId(@Nullable final String id) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        generatedAttributeId = StringSupport.trimOrNull(id);
+    }
+
+    /**
+     * Get the ID of the attribute generated by this data connector.
+     * 
+     * @return ID of the generated attribute
+     */
+    @NonnullAfterInit
+    public String getGeneratedAttributeId() {
+        return generatedAttributeId;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void doInitialize() throws ComponentInitializationException {
+        super.doInitialize();
+        if (pairwiseSubjectCache == null) {
+            throw new ComponentInitializationException(
+                    "Data connector '" + getId() + "': pairwise subject cache cannot be null");
+        }
+        if (sourceAttributeId == null) {
+            if (getDependencies().size() != 1) {
+                throw new ComponentInitializationException("Data connector '" + getId()
+                        + "': source attribute id must be set unless there is exactly one dependency");
+            }
+            final ResolverPluginDependency dependency = getDependencies().iterator().next();
+            sourceAttributeId = dependency.getDependencyAttributeId() != null
+                    ? dependency.getDependencyAttributeId() : dependency.getDependencyPluginId();
+        }
+        if (generatedAttributeId == null) {
+            generatedAttributeId = getId();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    @Nullable
+    protected Map<String, IdPAttribute> doDataConnectorResolve(
+            @Nonnull final AttributeResolutionContext resolutionContext,
+            @Nonnull final AttributeResolverWorkContext workContext) throws ResolutionException {
+        final String sector = resolutionContext.getAttributeRecipientGroupID() != null
+                ? resolutionContext.getAttributeRecipientGroupID() : resolutionContext.getAttributeRecipientID();
+        if (sector == null) {
+            log.warn("Data connector '{}': no sector identifier, pairwise subject cannot be generated", getId());
+            return null;
+        }
+        final List<IdPAttributeValue<?>> values =
+                PluginDependencySupport.getMergedAttributeValues(workContext, getDependencies(), sourceAttributeId);
+        if (values == null || values.isEmpty()) {
+            log.debug("Data connector '{}': source attribute '{}' has no values", getId(), sourceAttributeId);
+            return null;
+        }
+        if (values.size() > 1) {
+            log.warn("Data connector '{}': source attribute '{}' has more than one value, using none", getId(),
+                    sourceAttributeId);
+            return null;
+        }
+        final IdPAttributeValue<?> value = values.get(0);
+        if (!(value instanceof StringAttributeValue)
+                || StringSupport.trimOrNull(((StringAttributeValue) value).getValue()) == null) {
+            log.warn("Data connector '{}': source attribute '{}' has no string value", getId(), sourceAttributeId);
+            return null;
+        }
+        final IdPAttribute attribute = new IdPAttribute(generatedAttributeId);
+        attribute.setValues(Collections.<IdPAttributeValue<?>> singletonList(new StringAttributeValue(
+                pairwiseSubjectCache.getSubject(((StringAttributeValue) value).getValue(), sector))));
+        return Collections.singletonMap(generatedAttributeId, attribute);
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2017 - 2020, GÉANT
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an “AS IS” BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.geant.idpextension.oidc.attribute.resolver.spring.dc.impl;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.xml.namespace.QName;
+
+import org.geant.idpextension.oidc.attribute.resolver.dc.impl.PairwiseSubjectDataConnector;
+import org.springframework.beans.factory.support.BeanDefinitionBuilder;
+import org.springframework.beans.factory.xml.ParserContext;
+import org.w3c.dom.Element;
+
+import net.shibboleth.idp.attribute.resolver.spring.dc.AbstractDataConnectorParser;
+import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
+import net.shibboleth.utilities.java.support.primitive.StringSupport;
+
+/**
+ * Spring bean definition parser for {@link PairwiseSubjectDataConnector}.
+ */
+public class PairwiseSubjectDataConnectorParser extends AbstractDataConnectorParser {
+
+    /** Schema type name. */
+    @Nonnull
+    public static final QName TYPE_NAME = new QName(DataConnectorNamespaceHandler.NAMESPACE, "PairwiseSubject");
+
+    /** Local name of the pairwise subject cache reference attribute. */
+    @Nonnull
+    @NotEmpty
+    public static final String CACHE_REF_ATTRIBUTE_NAME = "pairwiseSubjectCacheRef";
+
+    /** Local name of the source attribute id attribute. */
+    @Nonnull
+    @NotEmpty
+    public static final String SOURCE_ATTRIBUTE_ID_ATTRIBUTE_NAME = "sourceAttributeID";
+
+    /** Local name of the generated attribute id attribute. */
+    @Nonnull
+    @NotEmpty
+    public static final String GENERATED_ATTRIBUTE_ID_ATTRIBUTE_NAME = "generatedAttributeID";
+
+    /** Default bean name of the pairwise subject cache. */
+    @Nonnull
+    @NotEmpty
+    public static final String DEFAULT_CACHE_REF = "shibboleth.oidc.PairwiseSubjectCache";
+
+    /** {@inheritDoc} */
+    @Override
+    protected Class<PairwiseSubjectDataConnector> getBeanClass(@Nullable final Element element) {
+        return PairwiseSubjectDataConnector.class;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void doV2Parse(@Nonnull final Element config, @Nonnull final ParserContext parserContext,
+            @Nonnull final BeanDefinitionBuilder builder) {
+        final String cacheRef = StringSupport.trimOrNull(config.getAttributeNS(null, CACHE_REF_ATTRIBUTE_NAME));
+        builder.addPropertyReference("pairwiseSubjectCache", cacheRef != null ? cacheRef : DEFAULT_CACHE_REF);
+        if (config.hasAttributeNS(null, SOURCE_ATTRIBUTE_ID_ATTRIBUTE_NAME)) {
+            builder.addPropertyValue("sourceAttributeId",
+                    StringSupport.trimOrNull(config.getAttributeNS(null, SOURCE_ATTRIBUTE_ID_ATTRIBUTE_NAME)));
+        }
+        if (config.hasAttributeNS(null, GENERATED_ATTRIBUTE_ID_ATTRIBUTE_NAME)) {
+            builder.addPropertyValue("generatedAttributeId",
+                    StringSupport.trimOrNull(config.getAttributeNS(null, GENERATED_ATTRIBUTE_ID_ATTRIBUTE_NAME)));
+        }
+    }
+
+}
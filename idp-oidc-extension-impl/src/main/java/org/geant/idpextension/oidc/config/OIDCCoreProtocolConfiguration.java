@@ -137,6 +137,14 @@ public class OIDCCoreProtocolConfiguration extends AbstractOIDCFlowAwareProfileC
     /** Whether client is allowed to use PKCE code challenge method plain. */
     private boolean allowPKCEPlain;
 
+    /** Whether access tokens are issued as signed JWTs instead of opaque sealed tokens. */
+    private boolean jwtAccessTokens;
+
+    /** Audiences of the JWT access tokens, the issuer is used if empty. */
+    @Nonnull
+    @NonnullElements
+    private Set<String> jwtAccessTokenAudiences;
+
     /**
      * Constructor.
      */
@@ -160,6 +168,7 @@ public class OIDCCoreProtocolConfiguration extends AbstractOIDCFlowAwareProfileC
         accessTokenLifetime = 10 * 60 * 1000;
         refreshTokenLifetime = 120 * 60 * 1000;
         additionalAudiences = Collections.emptySet();
+        jwtAccessTokenAudiences = Collections.emptySet();
     }
 
     /**
@@ -474,4 +483,47 @@ public class OIDCCoreProtocolConfiguration extends AbstractOIDCFlowAwareProfileC
     public boolean getAllowPKCEPlain() {
         return allowPKCEPlain;
     }
-}
+
+    /**
+     * Set whether access tokens are issued as signed JWTs (RFC 9068) instead of opaque sealed tokens.
+     * 
+     * @param jwt whether access tokens are issued as signed JWTs
+     */
+    public void setJwtAccessTokens(boolean jwt) {
+        jwtAccessTokens = jwt;
+    }
+
+    /**
+     * Get whether access tokens are issued as signed JWTs (RFC 9068) instead of opaque sealed tokens.
+     * 
+     * @return whether access tokens are issued as signed JWTs
+     */
+    public boolean getJwtAccessTokens() {
+        return jwtAccessTokens;
+    }
+
+    /**
+     * Set the audiences of the JWT access tokens, i.e. the resource servers the tokens are intended for. The issuer is
+     * used as the audience if none are set.
+     * 
+     * @param audiences the audiences of the JWT access tokens
+     */
+    public void setJwtAccessTokenAudiences(@Nonnull @NonnullElements final Collection<String> audiences) {
+        Constraint.isNotNull(audiences, "Collection of JWT access token audiences cannot be null");
+
+        jwtAccessTokenAudiences = new HashSet<>(StringSupport.normalizeStringCollection(audiences));
+    }
+
+    /**
+     * Get the audiences of the JWT access tokens. The issuer is used as the audience if the set is empty.
+     * 
+     * @return the audiences of the JWT access tokens
+     */
+    @Nonnull
+    @NonnullElements
+    @NotLive
+    @Unmodifiable
+    public Set<String> getJwtAccessTokenAudiences() {
+        return ImmutableSet.copyOf(jwtAccessTokenAudiences);
+    }
+}
\ No newline at end of file
@@ -17,7 +17,11 @@
 package org.geant.idpextension.oidc.config;
 
 import javax.annotation.Nonnull;
+
+import net.shibboleth.utilities.java.support.annotation.Duration;
+import net.shibboleth.utilities.java.support.annotation.constraint.NonNegative;
 import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
+import net.shibboleth.utilities.java.support.logic.Constraint;
 
 /**
  * Profile configuration for the OpenID Connect core protocol userinfo endpoint.
@@ -30,6 +34,14 @@ public class OIDCUserInfoConfiguration extends AbstractOIDCProfileConfiguration
     /** ID for this profile configuration. */
     public static final String PROFILE_ID = "http://csc.fi/ns/profiles/oidc/userinfo";
 
+    /** Whether the userinfo response is built from the claims snapshot carried in the access token. */
+    private boolean claimsSnapshot;
+
+    /** Maximum age of the claims snapshot in milliseconds. Default value: 0, the age is not limited. */
+    @NonNegative
+    @Duration
+    private long claimsSnapshotMaxAge;
+
     /**
      * Constructor.
      */
@@ -46,4 +58,47 @@ public class OIDCUserInfoConfiguration extends AbstractOIDCProfileConfiguration
         super(profileId);
     }
 
+    /**
+     * Whether the userinfo response is built from the claims snapshot carried in the access token. The snapshot is
+     * taken of the claims released to the relying party at the authorization endpoint. Attribute resolution is not
+     * performed for the userinfo requests of which access token carries a snapshot that is not older than
+     * {@link #getClaimsSnapshotMaxAge()}.
+     * 
+     * @return whether the userinfo response is built from the claims snapshot
+     */
+    public boolean getClaimsSnapshot() {
+        return claimsSnapshot;
+    }
+
+    /**
+     * Set whether the userinfo response is built from the claims snapshot carried in the access token.
+     * 
+     * @param snapshot whether the userinfo response is built from the claims snapshot
+     */
+    public void setClaimsSnapshot(final boolean snapshot) {
+        claimsSnapshot = snapshot;
+    }
+
+    /**
+     * Get the maximum age of the claims snapshot for it to be used for the userinfo response.
+     * 
+     * @return maximum age of the claims snapshot in milliseconds, 0 if the age is not limited
+     */
+    @NonNegative
+    @Duration
+    public long getClaimsSnapshotMaxAge() {
+        return claimsSnapshotMaxAge;
+    }
+
+    /**
+     * Set the maximum age of the claims snapshot for it to be used for the userinfo response.
+     * 
+     * @param maxAge maximum age of the claims snapshot in milliseconds, 0 if the age is not limited
+     */
+    @Duration
+    public void setClaimsSnapshotMaxAge(@NonNegative @Duration final long maxAge) {
+        claimsSnapshotMaxAge = Constraint.isGreaterThanOrEqual(0, maxAge,
+                "claims snapshot max age must be greater than or equal to 0");
+    }
+
 }
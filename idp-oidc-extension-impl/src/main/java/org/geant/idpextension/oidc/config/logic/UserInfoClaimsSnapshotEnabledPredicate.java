@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2017 - 2020, GÉANT
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an “AS IS” BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.geant.idpextension.oidc.config.logic;
+
+import javax.annotation.Nullable;
+
+import org.geant.idpextension.oidc.config.OIDCUserInfoConfiguration;
+import org.opensaml.profile.context.ProfileRequestContext;
+
+import net.shibboleth.idp.profile.config.ProfileConfiguration;
+import net.shibboleth.idp.profile.context.RelyingPartyContext;
+import net.shibboleth.idp.profile.logic.AbstractRelyingPartyPredicate;
+
+/**
+ * A predicate implementation that forwards to {@link OIDCUserInfoConfiguration#getClaimsSnapshot()}. If the active
+ * profile configuration is not the userinfo configuration, as it is at the authorization and token endpoints, the
+ * userinfo configuration of the relying party is used.
+ */
+public class UserInfoClaimsSnapshotEnabledPredicate extends AbstractRelyingPartyPredicate {
+
+    /** {@inheritDoc} */
+    @SuppressWarnings("rawtypes")
+    @Override
+    public boolean apply(@Nullable final ProfileRequestContext input) {
+        final RelyingPartyContext rpc = getRelyingPartyContextLookupStrategy().apply(input);
+        if (rpc != null) {
+            ProfileConfiguration pc = rpc.getProfileConfig();
+            if (!(pc instanceof OIDCUserInfoConfiguration) && rpc.getConfiguration() != null) {
+                pc = rpc.getConfiguration().getProfileConfiguration(OIDCUserInfoConfiguration.PROFILE_ID);
+            }
+            if (pc instanceof OIDCUserInfoConfiguration) {
+                return ((OIDCUserInfoConfiguration) pc).getClaimsSnapshot();
+            }
+        }
+        return false;
+    }
+}
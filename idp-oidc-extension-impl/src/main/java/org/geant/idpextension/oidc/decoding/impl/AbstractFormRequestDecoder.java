@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) 2017 - 2020, GÉANT
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an “AS IS” BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.geant.idpextension.oidc.decoding.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import javax.annotation.Nonnull;
+import javax.servlet.http.HttpServletRequest;
+
+import org.opensaml.messaging.context.MessageContext;
+import org.opensaml.messaging.decoder.MessageDecodingException;
+import org.opensaml.messaging.decoder.servlet.AbstractHttpServletRequestMessageDecoder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.nimbusds.oauth2.sdk.ParseException;
+import com.nimbusds.oauth2.sdk.http.HTTPRequest;
+import com.nimbusds.oauth2.sdk.http.HTTPRequest.Method;
+import com.nimbusds.oauth2.sdk.util.URLUtils;
+
+import net.shibboleth.utilities.java.support.component.ComponentSupport;
+import net.shibboleth.utilities.java.support.logic.Constraint;
+
+/**
+ * Base class for decoders of form encoded POST requests, such as token, introspection and revocation requests.
+ * 
+ * <p>
+ * Instead of copying the complete servlet request into a nimbus {@link HTTPRequest}, the decoder checks the method,
+ * content type and declared content length first and rejects a malformed or oversized request before reading it. The
+ * body is then read up to {@link #getMaxBodySize()} bytes, and only the parts of the servlet request the message
+ * parsers use are copied: the form parameters, the Authorization header and the TLS client certificate. If the
+ * container has already consumed the body, the form parameters are taken from the servlet request parameters.
+ * </p>
+ * 
+ * @param <RequestType> the type of the decoded message
+ */
+public abstract class AbstractFormRequestDecoder<RequestType> extends
+        AbstractHttpServletRequestMessageDecoder<RequestType> {
+
+    /** Default maximum size of the request body in bytes. */
+    public static final int DEFAULT_MAX_BODY_SIZE = 64 * 1024;
+
+    /** Form content type. */
+    @Nonnull
+    private static final String FORM_CONTENT_TYPE = "application/x-www-form-urlencoded";
+
+    /** Servlet request attribute of the TLS client certificate chain. */
+    @Nonnull
+    private static final String CLIENT_CERTIFICATE_ATTRIBUTE = "javax.servlet.request.X509Certificate";
+
+    /** Class logger. */
+    @Nonnull
+    private final Logger log = LoggerFactory.getLogger(AbstractFormRequestDecoder.class);
+
+    /** Maximum size of the request body in bytes. */
+    private int maxBodySize = DEFAULT_MAX_BODY_SIZE;
+
+    /**
+     * Get the maximum size of the request body in bytes.
+     * 
+     * @return the maximum size of the request body in bytes
+     */
+    public int getMaxBodySize() {
+        return maxBodySize;
+    }
+
+    /**
+     * Set the maximum size of the request body in bytes.
+     * 
+     * @param size the maximum size of the request body in bytes
+     */
+    public void setMaxBodySize(final int size) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        maxBodySize = (int) Constraint.isGreaterThan(0, size, "Maximum body size must be greater than 0");
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void doDecode() throws MessageDecodingException {
+        final MessageContext<RequestType> messageContext = new MessageContext<>();
+        try {
+            final HTTPRequest httpReq = buildHTTPRequest(getHttpServletRequest());
+            if (log.isDebugEnabled()) {
+                log.debug("Inbound request {}", RequestUtil.toString(httpReq));
+            }
+            messageContext.setMessage(parse(httpReq));
+        } catch (ParseException | IOException e) {
+            log.error("Unable to decode inbound request: {}", e.getMessage());
+            throw new MessageDecodingException(e);
+        }
+        setMessageContext(messageContext);
+    }
+
+    /**
+     * Parse the message from the request.
+     * 
+     * @param httpReq the request carrying the form parameters, the Authorization header and the client certificate
+     * @return the message
+     * @throws ParseException if the message cannot be parsed
+     */
+    @Nonnull
+    protected abstract RequestType parse(@Nonnull final HTTPRequest httpReq) throws ParseException;
+
+    /**
+     * Build the nimbus request from the servlet request.
+     * 
+     * @param request the servlet request
+     * @return the nimbus request
+     * @throws ParseException if the request is not a form POST or its body is too large
+     * @throws IOException if the body cannot be read
+     */
+    @Nonnull
+    protected HTTPRequest buildHTTPRequest(@Nonnull final HttpServletRequest request)
+            throws ParseException, IOException {
+        if (!Method.POST.name().equalsIgnoreCase(request.getMethod())) {
+            throw new ParseException("The HTTP request method must be POST");
+        }
+        final String contentType = request.getContentType();
+        if (contentType == null || !contentType.regionMatches(true, 0, FORM_CONTENT_TYPE, 0,
+                FORM_CONTENT_TYPE.length())) {
+            throw new ParseException("The HTTP Content-Type header must be " + FORM_CONTENT_TYPE);
+        }
+        final int contentLength = request.getContentLength();
+        if (contentLength > maxBodySize) {
+            throw new ParseException("The HTTP request body exceeds " + maxBodySize + " bytes");
+        }
+        final HTTPRequest httpReq;
+        try {
+            httpReq = new HTTPRequest(Method.POST, new URL(request.getRequestURL().toString()));
+        } catch (MalformedURLException e) {
+            throw new ParseException("Invalid request URL: " + e.getMessage(), e);
+        }
+        httpReq.setContentType(contentType);
+        httpReq.setAuthorization(request.getHeader("Authorization"));
+        final String body = readBody(request, contentLength);
+        httpReq.setQuery(body.isEmpty() ? serializeParameters(request) : body);
+        final Object certificates = request.getAttribute(CLIENT_CERTIFICATE_ATTRIBUTE);
+        if (certificates instanceof X509Certificate[] && ((X509Certificate[]) certificates).length > 0) {
+            httpReq.setClientX509Certificate(((X509Certificate[]) certificates)[0]);
+        }
+        return httpReq;
+    }
+
+    /**
+     * Read the request body, up to the maximum body size.
+     * 
+     * @param request the servlet request
+     * @param contentLength the declared content length, -1 if unknown
+     * @return the body, empty if there is none or it has already been consumed
+     * @throws ParseException if the body is too large
+     * @throws IOException if the body cannot be read
+     */
+    @Nonnull
+    private String readBody(@Nonnull final HttpServletRequest request, final int contentLength)
+            throws ParseException, IOException {
+        if (contentLength == 0) {
+            return "";
+        }
+        // One byte over the expected length detects the end of the body, or a body exceeding the limit
+        byte[] buffer = new byte[contentLength > 0 ? contentLength + 1 : Math.min(maxBodySize + 1, 1024)];
+        int count = 0;
+        final InputStream in = request.getInputStream();
+        int read;
+        while ((read = in.read(buffer, count, buffer.length - count)) != -1) {
+            count += read;
+            if (count > maxBodySize) {
+                throw new ParseException("The HTTP request body exceeds " + maxBodySize + " bytes");
+            }
+            if (count == buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.min(buffer.length * 2, maxBodySize + 1));
+            }
+        }
+        return new String(buffer, 0, count, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Serialize the servlet request parameters, which the container has parsed from the body already.
+     * 
+     * @param request the servlet request
+     * @return the parameters in form encoding
+     */
+    @Nonnull
+    private String serializeParameters(@Nonnull final HttpServletRequest request) {
+        final Map<String, List<String>> parameters = new LinkedHashMap<>();
+        for (final Entry<String, String[]> entry : request.getParameterMap().entrySet()) {
+            parameters.put(entry.getKey(), Arrays.asList(entry.getValue()));
+        }
+        return URLUtils.serializeParameters(parameters);
+    }
+}
@@ -50,7 +50,9 @@ public class OIDCClientRegistrationRequestDecoder
         final MessageContext<OIDCClientRegistrationRequest> messageContext = new MessageContext<>();
         try {
             final HTTPRequest httpRequest = ServletUtils.createHTTPRequest(getHttpServletRequest());
-            log.debug("Inbound request {}", RequestUtil.toString(httpRequest));
+            if (log.isDebugEnabled()) {
+                log.debug("Inbound request {}", RequestUtil.toString(httpRequest));
+            }
             final JSONObject requestJson = httpRequest.getQueryAsJSONObject();
             //TODO: Nimbus seems to be interpreting scope in different way as many RPs, currently the scope
             //is removed in this phase, better solution TODO.
@@ -60,7 +62,9 @@ public class OIDCClientRegistrationRequestDecoder
                 httpRequest.setQuery(requestJson.toJSONString());
             }
             
-            log.trace("JSON object: {}", httpRequest.getQueryAsJSONObject().toJSONString());
+            if (log.isTraceEnabled()) {
+                log.trace("JSON object: {}", httpRequest.getQueryAsJSONObject().toJSONString());
+            }
             final OIDCClientRegistrationRequest request = OIDCClientRegistrationRequest.parse(httpRequest);
             messageContext.setMessage(request);
         } catch (IOException e) {
@@ -16,43 +16,22 @@
 
 package org.geant.idpextension.oidc.decoding.impl;
 
-import java.io.IOException;
 import javax.annotation.Nonnull;
-import org.opensaml.messaging.context.MessageContext;
 import org.opensaml.messaging.decoder.MessageDecoder;
-import org.opensaml.messaging.decoder.MessageDecodingException;
-import org.opensaml.messaging.decoder.servlet.AbstractHttpServletRequestMessageDecoder;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import com.nimbusds.oauth2.sdk.ParseException;
 import com.nimbusds.oauth2.sdk.TokenRequest;
 import com.nimbusds.oauth2.sdk.http.HTTPRequest;
-import com.nimbusds.oauth2.sdk.http.ServletUtils;
 
 /**
  * Message decoder decoding OpenID Connect {@link TokenRequest}s.
  */
-public class OIDCTokenRequestDecoder extends AbstractHttpServletRequestMessageDecoder<TokenRequest>
+public class OIDCTokenRequestDecoder extends AbstractFormRequestDecoder<TokenRequest>
         implements MessageDecoder<TokenRequest> {
 
-    /** Class logger. */
-    @Nonnull
-    private final Logger log = LoggerFactory.getLogger(OIDCTokenRequestDecoder.class);
-
     /** {@inheritDoc} */
     @Override
-    protected void doDecode() throws MessageDecodingException {
-        MessageContext<TokenRequest> messageContext = new MessageContext<>();
-        TokenRequest req = null;
-        try {
-            HTTPRequest httpReq = ServletUtils.createHTTPRequest(getHttpServletRequest());
-            log.debug("Inbound request {}", RequestUtil.toString(httpReq));
-            req = TokenRequest.parse(httpReq);
-        } catch (com.nimbusds.oauth2.sdk.ParseException | IOException e) {
-            log.error("Unable to decode inbound request: {}", e.getMessage());
-            throw new MessageDecodingException(e);
-        }
-        messageContext.setMessage(req);
-        setMessageContext(messageContext);
+    protected TokenRequest parse(@Nonnull final HTTPRequest httpReq) throws ParseException {
+        return TokenRequest.parse(httpReq);
     }
 
 }
\ No newline at end of file
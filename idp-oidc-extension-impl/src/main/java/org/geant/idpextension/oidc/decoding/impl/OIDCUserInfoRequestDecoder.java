@@ -46,7 +46,9 @@ public class OIDCUserInfoRequestDecoder extends AbstractHttpServletRequestMessag
         UserInfoRequest req = null;
         try {
             HTTPRequest httpReq = ServletUtils.createHTTPRequest(getHttpServletRequest());
-            log.debug("Inbound request {}", RequestUtil.toString(httpReq));
+            if (log.isDebugEnabled()) {
+                log.debug("Inbound request {}", RequestUtil.toString(httpReq));
+            }
             req = UserInfoRequest.parse(httpReq);
         } catch (com.nimbusds.oauth2.sdk.ParseException | IOException e) {
             log.error("Unable to decode inbound request: {}", e.getMessage());
@@ -34,22 +34,23 @@ public class RequestUtil {
         if (httpReq == null) {
             return null;
         }
-        String nl = System.lineSeparator();
-        String ret = httpReq.getMethod().toString() + nl;
-        Map<String, List<String>> headers = httpReq.getHeaderMap();
+        final String nl = System.lineSeparator();
+        final StringBuilder ret = new StringBuilder(256);
+        ret.append(httpReq.getMethod().toString()).append(nl);
+        final Map<String, List<String>> headers = httpReq.getHeaderMap();
         if (headers != null) {
-            ret += "Headers:" + nl;
+            ret.append("Headers:").append(nl);
             for (Entry<String, List<String>> entry : headers.entrySet()) {
-                ret += "\t" + entry.getKey() + ":" + entry.getValue() + nl;
+                ret.append('\t').append(entry.getKey()).append(':').append(entry.getValue()).append(nl);
             }
         }
-        Map<String, List<String>> parameters = httpReq.getQueryParameters();
+        final Map<String, List<String>> parameters = httpReq.getQueryParameters();
         if (parameters != null) {
-            ret += "Parameters:" + nl;
+            ret.append("Parameters:").append(nl);
             for (Entry<String, List<String>> entry : parameters.entrySet()) {
-                ret += "\t" + entry.getKey() + ":" + entry.getValue().get(0) + nl;
+                ret.append('\t').append(entry.getKey()).append(':').append(entry.getValue().get(0)).append(nl);
             }
         }
-        return ret;
+        return ret.toString();
     }
 }
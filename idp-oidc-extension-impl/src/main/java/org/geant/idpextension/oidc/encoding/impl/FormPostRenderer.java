@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2017 - 2020, GÉANT
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an “AS IS” BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.geant.idpextension.oidc.encoding.impl;
+
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.shibboleth.utilities.java.support.codec.HTMLEncoder;
+import net.shibboleth.utilities.java.support.logic.Constraint;
+
+/**
+ * Renders the page of the FORM POST response mode from a fixed template in a single pass. The output is equivalent
+ * to the default Velocity template {@link NimbusResponseEncoder#DEFAULT_TEMPLATE_ID}, but both the form action and
+ * the parameter values are encoded for HTML attributes and the page is built into a buffer sized up front.
+ */
+final class FormPostRenderer {
+
+    /** Names of the response parameters rendered as hidden form fields, in the order they are rendered. */
+    @Nonnull
+    static final String[] PARAMETER_NAMES = {"code", "state", "access_token", "token_type", "id_token", "expires_in",
+        "error", "error_description", "error_uri",};
+
+    /** Page content before the form action. */
+    @Nonnull
+    private static final String PAGE_START = "<!DOCTYPE html>\n<html>\n\n<head>\n    <meta charset=\"utf-8\" />\n"
+            + "</head>\n\n<body onload=\"document.forms[0].submit()\">\n    <noscript>\n        <p>\n"
+            + "            <strong>Note:</strong> Since your browser does not support JavaScript, you must press the "
+            + "Continue button once to proceed.\n        </p>\n    </noscript>\n\n    <form action=\"";
+
+    /** Page content between the form action and the hidden form fields. */
+    @Nonnull
+    private static final String FORM_START = "\" method=\"post\">\n        <div>\n";
+
+    /** Page content after the hidden form fields. */
+    @Nonnull
+    private static final String PAGE_END = "        </div>\n        <noscript>\n            <div>\n"
+            + "                <input type=\"submit\" value=\"Continue\" />\n            </div>\n        </noscript>\n"
+            + "    </form>\n</body>\n\n</html>";
+
+    /** Hidden form field content before the parameter name. */
+    @Nonnull
+    private static final String FIELD_START = "            <input type=\"hidden\" name=\"";
+
+    /** Hidden form field content between the parameter name and value. */
+    @Nonnull
+    private static final String FIELD_VALUE = "\" value=\"";
+
+    /** Hidden form field content after the parameter value. */
+    @Nonnull
+    private static final String FIELD_END = "\" />\n";
+
+    /** Constructor. */
+    private FormPostRenderer() {
+    }
+
+    /**
+     * Render the FORM POST page.
+     * 
+     * @param action the form action, i.e. the redirection URI of the client
+     * @param parameters the response parameters
+     * @return the rendered page
+     */
+    @Nonnull
+    static StringBuilder render(@Nonnull final String action, @Nonnull final Map<String, List<String>> parameters) {
+        Constraint.isNotNull(action, "Form action cannot be null");
+        Constraint.isNotNull(parameters, "Response parameters cannot be null");
+        final String[] values = new String[PARAMETER_NAMES.length];
+        final String encodedAction = HTMLEncoder.encodeForHTMLAttribute(action);
+        // The values are encoded before the buffer is sized, so the page is built without any resizing
+        int size = PAGE_START.length() + FORM_START.length() + PAGE_END.length() + encodedAction.length();
+        for (int i = 0; i < PARAMETER_NAMES.length; i++) {
+            values[i] = encodedValue(parameters.get(PARAMETER_NAMES[i]));
+            if (values[i] != null) {
+                size += FIELD_START.length() + PARAMETER_NAMES[i].length() + FIELD_VALUE.length()
+                        + values[i].length() + FIELD_END.length();
+            }
+        }
+        final StringBuilder page = new StringBuilder(size);
+        page.append(PAGE_START).append(encodedAction).append(FORM_START);
+        for (int i = 0; i < PARAMETER_NAMES.length; i++) {
+            if (values[i] != null) {
+                page.append(FIELD_START).append(PARAMETER_NAMES[i]).append(FIELD_VALUE).append(values[i])
+                        .append(FIELD_END);
+            }
+        }
+        return page.append(PAGE_END);
+    }
+
+    /**
+     * Get the first value of a response parameter encoded for a HTML attribute.
+     * 
+     * @param values the parameter values
+     * @return the encoded first value, or null if there is none
+     */
+    @Nullable
+    private static String encodedValue(@Nullable final List<String> values) {
+        if (values == null || values.isEmpty() || values.get(0) == null || values.get(0).isEmpty()) {
+            return null;
+        }
+        return HTMLEncoder.encodeForHTMLAttribute(values.get(0));
+    }
+}
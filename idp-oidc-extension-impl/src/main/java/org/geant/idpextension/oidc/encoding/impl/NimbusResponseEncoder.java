@@ -17,27 +17,42 @@
 package org.geant.idpextension.oidc.encoding.impl;
 
 import java.io.IOException;
-import java.io.OutputStreamWriter;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.StringWriter;
-import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.WeakHashMap;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.servlet.http.HttpServletResponse;
+import org.apache.velocity.Template;
 import org.apache.velocity.VelocityContext;
 import org.apache.velocity.app.VelocityEngine;
+import org.apache.velocity.exception.VelocityException;
+import org.geant.idpextension.oidc.messaging.JSONSuccessResponse;
+import org.opensaml.core.metrics.MetricsSupport;
 import org.opensaml.messaging.encoder.MessageEncodingException;
 import org.opensaml.messaging.encoder.servlet.AbstractHttpServletResponseMessageEncoder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.io.ByteStreams;
 import com.nimbusds.oauth2.sdk.AuthorizationResponse;
 import com.nimbusds.oauth2.sdk.Response;
 import com.nimbusds.oauth2.sdk.ResponseMode;
+import com.nimbusds.oauth2.sdk.http.CommonContentTypes;
 import com.nimbusds.oauth2.sdk.http.HTTPResponse;
 import com.nimbusds.oauth2.sdk.http.ServletUtils;
+import com.nimbusds.openid.connect.sdk.OIDCTokenResponse;
+import com.nimbusds.openid.connect.sdk.UserInfoSuccessResponse;
+
+import net.minidev.json.JSONObject;
 import net.shibboleth.utilities.java.support.codec.HTMLEncoder;
 import net.shibboleth.utilities.java.support.component.ComponentSupport;
 import net.shibboleth.utilities.java.support.logic.Constraint;
@@ -57,6 +72,18 @@ public class NimbusResponseEncoder extends AbstractHttpServletResponseMessageEnc
     @Nonnull
     public static final String DEFAULT_TEMPLATE_ID = "/templates/oidc-form-post.vm";
 
+    /** Initial buffer size for pages rendered from a custom Velocity template. */
+    private static final int INITIAL_PAGE_SIZE = 2048;
+
+    /** Whether the default template resolved by a Velocity engine is the bundled one, per engine. */
+    @Nonnull
+    private static final Map<VelocityEngine, Boolean> BUNDLED_DEFAULT_TEMPLATE =
+            Collections.synchronizedMap(new WeakHashMap<VelocityEngine, Boolean>());
+
+    /** Metric name of the bytes written for the responses written directly as JSON. */
+    @Nonnull
+    public static final String METRIC_BYTES_WRITTEN = "bytesWritten";
+
     /** Velocity engine used to evaluate the template when using FORM POST response mode. */
     @Nullable
     private VelocityEngine velocityEngine;
@@ -65,11 +92,17 @@ public class NimbusResponseEncoder extends AbstractHttpServletResponseMessageEnc
     @Nonnull
     private String velocityTemplateId = DEFAULT_TEMPLATE_ID;
 
+    /** Registry for the size metrics of the responses written directly as JSON. */
+    @Nullable
+    private MetricRegistry metricRegistry;
+
     /**
      * Set the Velocity template id.
      * 
      * <p>
-     * Defaults to {@link #DEFAULT_TEMPLATE_ID}.
+     * Defaults to {@link #DEFAULT_TEMPLATE_ID}. The bundled default template is rendered by a built-in renderer
+     * without the Velocity engine, a template the deployer has placed on the same path of the Velocity engine is
+     * merged by the engine like any custom template.
      * </p>
      * 
      * @param newVelocityTemplateId the new Velocity template id
@@ -92,6 +125,18 @@ public class NimbusResponseEncoder extends AbstractHttpServletResponseMessageEnc
         velocityEngine = newVelocityEngine;
     }
 
+    /**
+     * Set the registry for the size metrics of the responses written directly as JSON. Defaults to the registry from
+     * {@link MetricsSupport}.
+     * 
+     * @param registry the metric registry
+     */
+    public void setMetricRegistry(@Nullable final MetricRegistry registry) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        ComponentSupport.ifDestroyedThrowDestroyedComponentException(this);
+        metricRegistry = registry;
+    }
+
     /**
      * Whether we should use FORM POST response encoding.
      * 
@@ -104,7 +149,8 @@ public class NimbusResponseEncoder extends AbstractHttpServletResponseMessageEnc
     }
 
     /**
-     * Set response message to FORM POST velocity context.
+     * Set response message to FORM POST velocity context. The parameter values are set as such, the template is
+     * responsible for encoding them, for instance with <code>$encoder.encodeForHTMLAttribute</code>.
      * 
      * @param message response message.
      * @return response message as velocity context.
@@ -112,36 +158,175 @@ public class NimbusResponseEncoder extends AbstractHttpServletResponseMessageEnc
     private VelocityContext doPostEncode(AuthorizationResponse message) {
         final VelocityContext context = new VelocityContext();
         for (Entry<String, List<String>> entry : message.toParameters().entrySet()) {
-            context.put(entry.getKey(), entry.getValue().get(0));
+            if (entry.getValue() != null && !entry.getValue().isEmpty()) {
+                context.put(entry.getKey(), entry.getValue().get(0));
+            }
         }
         context.put("action", HTMLEncoder.encodeForHTMLAttribute(message.getRedirectionURI().toString()));
+        context.put("encoder", HTMLEncoder.class);
         return context;
     }
 
+    /**
+     * Whether the template to render is the bundled default template. That is the case if the default template id is
+     * set and the Velocity engine, if any, resolves it to the contents of the bundled template. The outcome is
+     * remembered per engine.
+     * 
+     * @return true if the template is the bundled default template, false otherwise
+     */
+    private boolean isBundledDefaultTemplate() {
+        if (!DEFAULT_TEMPLATE_ID.equals(velocityTemplateId)) {
+            return false;
+        }
+        if (velocityEngine == null) {
+            return true;
+        }
+        Boolean bundled = BUNDLED_DEFAULT_TEMPLATE.get(velocityEngine);
+        if (bundled == null) {
+            bundled = resolvesBundledTemplate(velocityEngine);
+            BUNDLED_DEFAULT_TEMPLATE.put(velocityEngine, bundled);
+        }
+        return bundled;
+    }
+
+    /**
+     * Compare the contents of the default template resolved by the Velocity engine to the bundled template.
+     * 
+     * @param engine the Velocity engine
+     * @return true if the engine resolves the bundled template or does not resolve the default template at all
+     */
+    private boolean resolvesBundledTemplate(@Nonnull final VelocityEngine engine) {
+        try (final InputStream bundled = NimbusResponseEncoder.class.getResourceAsStream(DEFAULT_TEMPLATE_ID)) {
+            if (bundled == null || !engine.resourceExists(DEFAULT_TEMPLATE_ID)) {
+                return true;
+            }
+            final Template template = engine.getTemplate(DEFAULT_TEMPLATE_ID, "UTF-8");
+            try (final InputStream resolved = template.getResourceLoader().getResourceStream(template.getName())) {
+                if (Arrays.equals(ByteStreams.toByteArray(bundled), ByteStreams.toByteArray(resolved))) {
+                    return true;
+                }
+            }
+        } catch (final IOException | VelocityException e) {
+            log.warn("Could not compare the template {} to the bundled one, rendering it with Velocity",
+                    DEFAULT_TEMPLATE_ID, e);
+            return false;
+        }
+        log.info("Template {} has been overridden, rendering it with Velocity", DEFAULT_TEMPLATE_ID);
+        return false;
+    }
+
+    /**
+     * Render the FORM POST page. The bundled default template is rendered by {@link FormPostRenderer} without
+     * Velocity, a custom or overridden template is merged once by the Velocity engine.
+     * 
+     * @param message response message.
+     * @return the rendered page.
+     * @throws MessageEncodingException if a custom template is set but there is no Velocity engine
+     */
+    @Nonnull
+    private CharSequence renderFormPost(@Nonnull final AuthorizationResponse message)
+            throws MessageEncodingException {
+        if (isBundledDefaultTemplate()) {
+            return FormPostRenderer.render(message.getRedirectionURI().toString(), message.toParameters());
+        }
+        if (velocityEngine == null) {
+            throw new MessageEncodingException("VelocityEngine must be supplied for form post response mode");
+        }
+        final StringWriter writer = new StringWriter(INITIAL_PAGE_SIZE);
+        velocityEngine.mergeTemplate(velocityTemplateId, "UTF-8", doPostEncode(message), writer);
+        return writer.getBuffer();
+    }
+
+    /**
+     * Write the token, user info and other JSON success responses directly to the servlet output stream, without
+     * building the content as a string first. The number of bytes written is recorded per response type.
+     * 
+     * @param message response message.
+     * @param response the servlet response.
+     * @return true if the message was written, false if it is not a JSON success response.
+     * @throws IOException if the response cannot be written
+     */
+    private boolean writeJSON(@Nonnull final Response message, @Nonnull final HttpServletResponse response)
+            throws IOException {
+        final JSONObject json;
+        final String type;
+        if (message instanceof OIDCTokenResponse) {
+            json = ((OIDCTokenResponse) message).toJSONObject();
+            type = "token";
+            response.setHeader("Cache-Control", "no-store");
+            response.setHeader("Pragma", "no-cache");
+        } else if (message instanceof UserInfoSuccessResponse
+                && ((UserInfoSuccessResponse) message).getUserInfo() != null) {
+            json = ((UserInfoSuccessResponse) message).getUserInfo().toJSONObject();
+            type = "userinfo";
+        } else if (message instanceof JSONSuccessResponse) {
+            final JSONSuccessResponse jsonResponse = (JSONSuccessResponse) message;
+            json = jsonResponse.getContent();
+            type = "json";
+            if (jsonResponse.getCacheControl() != null) {
+                response.setHeader("Cache-Control", jsonResponse.getCacheControl());
+            }
+            if (jsonResponse.getPragma() != null) {
+                response.setHeader("Pragma", jsonResponse.getPragma());
+            }
+        } else {
+            return false;
+        }
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType(CommonContentTypes.APPLICATION_JSON.toString());
+        final Utf8StreamWriter writer = new Utf8StreamWriter(response.getOutputStream());
+        try {
+            json.writeJSONString(writer);
+            if (!writer.isCommitted()) {
+                response.setContentLength((int) writer.getBytesWritten());
+            }
+        } finally {
+            writer.close();
+        }
+        getMetricRegistry().histogram(MetricRegistry.name(NimbusResponseEncoder.class, type, METRIC_BYTES_WRITTEN))
+                .update(writer.getBytesWritten());
+        if (log.isDebugEnabled()) {
+            log.debug("Outbound response {}", ResponseUtil.toString(response, json.toJSONString()));
+        }
+        return true;
+    }
+
+    /**
+     * Get the registry for the size metrics.
+     * 
+     * @return the configured registry, or the one from {@link MetricsSupport}
+     */
+    @Nonnull
+    private MetricRegistry getMetricRegistry() {
+        return metricRegistry != null ? metricRegistry : MetricsSupport.getMetricRegistry();
+    }
+
     /** {@inheritDoc} */
     protected void doEncode() throws MessageEncodingException {
         try {
             final HttpServletResponse response = getHttpServletResponse();
             if (impliesFormPost(getMessageContext().getMessage())) {
-                if (velocityEngine == null) {
-                    throw new MessageEncodingException("VelocityEngine must be supplied for form post response mode");
-                }
-                VelocityContext context = doPostEncode((AuthorizationResponse) getMessageContext().getMessage());
+                final CharSequence page = renderFormPost((AuthorizationResponse) getMessageContext().getMessage());
+                final byte[] content = page.toString().getBytes(StandardCharsets.UTF_8);
                 HttpServletSupport.addNoCacheHeaders(response);
                 HttpServletSupport.setUTF8Encoding(response);
                 HttpServletSupport.setContentType(response, "text/html");
-                final Writer out = new OutputStreamWriter(response.getOutputStream(), "UTF-8");
-                velocityEngine.mergeTemplate(velocityTemplateId, "UTF-8", context, out);
+                response.setContentLength(content.length);
+                final OutputStream out = response.getOutputStream();
+                out.write(content);
                 out.flush();
-                out.close();
-                // Write it also to log
-                final StringWriter writer = new StringWriter();
-                velocityEngine.mergeTemplate(velocityTemplateId, "UTF-8", context, writer);
-                log.debug("Outbound response {}", ResponseUtil.toString(response, writer.toString()));
+                if (log.isDebugEnabled()) {
+                    log.debug("Outbound response {}", ResponseUtil.toString(response, page.toString()));
+                }
+                return;
+            }
+            if (writeJSON(getMessageContext().getMessage(), response)) {
                 return;
             }
             final HTTPResponse resp = getMessageContext().getMessage().toHTTPResponse();
-            log.debug("Outbound response {}", ResponseUtil.toString(resp));
+            if (log.isDebugEnabled()) {
+                log.debug("Outbound response {}", ResponseUtil.toString(resp));
+            }
             ServletUtils.applyHTTPResponse(resp, response);
         } catch (IOException e) {
             throw new MessageEncodingException("Problem encoding response", e);
@@ -37,19 +37,19 @@ class ResponseUtil {
         if (httpResponse == null) {
             return null;
         }
-        String nl = System.lineSeparator();
-        String ret = nl;
-        Map<String, List<String>> headers = httpResponse.getHeaderMap();
+        final String nl = System.lineSeparator();
+        final StringBuilder ret = new StringBuilder(256).append(nl);
+        final Map<String, List<String>> headers = httpResponse.getHeaderMap();
         if (headers != null) {
-            ret += "Headers:" + nl;
+            ret.append("Headers:").append(nl);
             for (Entry<String, List<String>> entry : headers.entrySet()) {
-                ret += "\t" + entry.getKey() + ":" + entry.getValue().get(0) + nl;
+                ret.append('\t').append(entry.getKey()).append(':').append(entry.getValue().get(0)).append(nl);
             }
         }
         if (httpResponse.getContent() != null) {
-            ret += "Content:" + httpResponse.getContent();
+            ret.append("Content:").append(httpResponse.getContent());
         }
-        return ret;
+        return ret.toString();
     }
 
     /**
@@ -62,19 +62,20 @@ class ResponseUtil {
         if (httpServletResponse == null) {
             return null;
         }
-        String nl = System.lineSeparator();
-        String ret = nl;
-        Collection<String> headerNames = httpServletResponse.getHeaderNames();
+        final String nl = System.lineSeparator();
+        final StringBuilder ret = new StringBuilder(256).append(nl);
+        final Collection<String> headerNames = httpServletResponse.getHeaderNames();
         if (headerNames != null) {
-            ret += "Headers:" + nl;
+            ret.append("Headers:").append(nl);
             for (String headerName : headerNames) {
-                ret += "\t" + headerName + ":" + httpServletResponse.getHeader(headerName) + nl;
+                ret.append('\t').append(headerName).append(':').append(httpServletResponse.getHeader(headerName))
+                        .append(nl);
             }
         }
         if (content != null) {
-            ret += "Content:" + content;
+            ret.append("Content:").append(content);
         }
-        return ret;
+        return ret.toString();
     }
 
 }
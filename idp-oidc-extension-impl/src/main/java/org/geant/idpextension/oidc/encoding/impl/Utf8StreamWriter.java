@@ -0,0 +1,233 @@
+/*
+ * Copyright (c) 2017 - 2020, GÉANT
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an “AS IS” BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.geant.idpextension.oidc.encoding.impl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
+import javax.annotation.Nonnull;
+
+import net.shibboleth.utilities.java.support.logic.Constraint;
+
+/**
+ * A {@link Writer} encoding characters as UTF-8 straight into a byte buffer that is flushed to the underlying stream
+ * only when full or on {@link #flush()}. The buffer is borrowed from the calling thread and handed back on
+ * {@link #close()}, so that encoding a response allocates neither a character nor a byte copy of the content. The
+ * underlying stream is not closed.
+ * 
+ * <p>
+ * The writer is not thread safe and must be closed by the thread that created it.
+ * </p>
+ */
+class Utf8StreamWriter extends Writer {
+
+    /** Size of the buffer. */
+    static final int BUFFER_SIZE = 8192;
+
+    /** Buffers reused by the threads. */
+    @Nonnull
+    private static final ThreadLocal<byte[]> BUFFERS = new ThreadLocal<byte[]>() {
+        protected byte[] initialValue() {
+            return new byte[BUFFER_SIZE];
+        }
+    };
+
+    /** The underlying stream. */
+    @Nonnull
+    private final OutputStream out;
+
+    /** The buffer, null once the writer is closed. */
+    private byte[] buffer;
+
+    /** Number of bytes in the buffer. */
+    private int count;
+
+    /** Total number of bytes written, buffered or not. */
+    private long bytesWritten;
+
+    /** Whether part of the content has already been flushed to the underlying stream. */
+    private boolean committed;
+
+    /** High surrogate waiting for its low surrogate, 0 if none. */
+    private char highSurrogate;
+
+    /**
+     * Constructor.
+     * 
+     * @param outputStream the underlying stream
+     */
+    Utf8StreamWriter(@Nonnull final OutputStream outputStream) {
+        out = Constraint.isNotNull(outputStream, "Output stream cannot be null");
+        buffer = BUFFERS.get();
+        // The buffer stays checked out while in use, a nested writer on the same thread gets its own
+        BUFFERS.remove();
+    }
+
+    /**
+     * Get the total number of bytes written.
+     * 
+     * @return the total number of bytes written
+     */
+    long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * Whether part of the content has already been flushed to the underlying stream. If not, the whole content is
+     * still buffered and for instance the content length may still be set.
+     * 
+     * @return whether part of the content has been flushed
+     */
+    boolean isCommitted() {
+        return committed;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void write(final int c) throws IOException {
+        writeChar((char) c);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void write(final char[] cbuf, final int off, final int len) throws IOException {
+        for (int i = off; i < off + len; i++) {
+            writeChar(cbuf[i]);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void write(final String str, final int off, final int len) throws IOException {
+        for (int i = off; i < off + len; i++) {
+            writeChar(str.charAt(i));
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Writer append(final CharSequence csq) throws IOException {
+        final CharSequence seq = csq == null ? "null" : csq;
+        for (int i = 0; i < seq.length(); i++) {
+            writeChar(seq.charAt(i));
+        }
+        return this;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        flushBuffer();
+        out.flush();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void close() throws IOException {
+        if (buffer == null) {
+            return;
+        }
+        try {
+            if (highSurrogate != 0) {
+                highSurrogate = 0;
+                writeByte('?');
+            }
+            flush();
+        } finally {
+            BUFFERS.set(buffer);
+            buffer = null;
+        }
+    }
+
+    /**
+     * Encode a character.
+     * 
+     * @param c the character
+     * @throws IOException if the buffer cannot be flushed
+     */
+    private void writeChar(final char c) throws IOException {
+        ensureOpen();
+        if (highSurrogate != 0) {
+            final char high = highSurrogate;
+            highSurrogate = 0;
+            if (Character.isLowSurrogate(c)) {
+                final int cp = Character.toCodePoint(high, c);
+                writeByte(0xF0 | (cp >> 18));
+                writeByte(0x80 | ((cp >> 12) & 0x3F));
+                writeByte(0x80 | ((cp >> 6) & 0x3F));
+                writeByte(0x80 | (cp & 0x3F));
+                return;
+            }
+            // Unpaired surrogate, replaced like the JDK encoder does
+            writeByte('?');
+        }
+        if (c < 0x80) {
+            writeByte(c);
+        } else if (c < 0x800) {
+            writeByte(0xC0 | (c >> 6));
+            writeByte(0x80 | (c & 0x3F));
+        } else if (Character.isHighSurrogate(c)) {
+            highSurrogate = c;
+        } else if (Character.isLowSurrogate(c)) {
+            writeByte('?');
+        } else {
+            writeByte(0xE0 | (c >> 12));
+            writeByte(0x80 | ((c >> 6) & 0x3F));
+            writeByte(0x80 | (c & 0x3F));
+        }
+    }
+
+    /**
+     * Add a byte to the buffer, flushing the buffer first if it is full.
+     * 
+     * @param b the byte
+     * @throws IOException if the buffer cannot be flushed
+     */
+    private void writeByte(final int b) throws IOException {
+        if (count == buffer.length) {
+            flushBuffer();
+        }
+        buffer[count++] = (byte) b;
+        bytesWritten++;
+    }
+
+    /**
+     * Write the buffered bytes to the underlying stream.
+     * 
+     * @throws IOException if the bytes cannot be written
+     */
+    private void flushBuffer() throws IOException {
+        if (count > 0) {
+            out.write(buffer, 0, count);
+            count = 0;
+            committed = true;
+        }
+    }
+
+    /**
+     * Check that the writer has not been closed.
+     * 
+     * @throws IOException if the writer has been closed
+     */
+    private void ensureOpen() throws IOException {
+        if (buffer == null) {
+            throw new IOException("Writer has been closed");
+        }
+    }
+}
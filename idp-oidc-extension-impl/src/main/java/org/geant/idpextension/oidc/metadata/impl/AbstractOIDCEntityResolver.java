@@ -49,8 +49,8 @@ public abstract class AbstractOIDCEntityResolver<Key extends Identifier, Value>
     /** Class logger. */
     private final Logger log = LoggerFactory.getLogger(AbstractOIDCEntityResolver.class);
     
-    /** Backing store for runtime JSON data. */
-    private JsonBackingStore jsonBackingStore;
+    /** Backing store for runtime JSON data, replaced as a whole when the metadata is refreshed. */
+    private volatile JsonBackingStore jsonBackingStore;
     
     /** {@inheritDoc} */
     @Override protected void doInitialize() throws ComponentInitializationException {
@@ -20,7 +20,11 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
+import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 import org.joda.time.DateTime;
@@ -40,6 +44,12 @@ import net.shibboleth.utilities.java.support.resolver.ResolverException;
 
 /**
  * Based on {@link org.opensaml.saml.metadata.resolver.impl.AbstractReloadingMetadataResolver}.
+ * 
+ * <p>The initial refresh is run during the initialization, unless an initialization {@link Executor} is set. With an
+ * executor the initial refresh is run in the background, so that several resolvers may load their metadata in
+ * parallel. The lookups wait for the initial refresh to complete, unless lazy initialization is enabled, in which case
+ * they are answered from the metadata loaded so far. A failed background initial refresh is kept, and reported again
+ * by the lookup that has been waiting for it, as no entity information has then been loaded.</p>
  */
 public abstract class AbstractReloadingOIDCEntityResolver<Key extends Identifier, Value> 
     extends AbstractOIDCEntityResolver<Key, Value> {
@@ -74,6 +84,18 @@ public abstract class AbstractReloadingOIDCEntityResolver<Key extends Identifier
     /** Next time a refresh cycle will occur. */
     private DateTime nextRefresh;
 
+    /** Executor used for running the initial refresh in the background, null to run it during initialization. */
+    @Nullable private Executor initializationExecutor;
+
+    /** Whether the lookups are answered before the background initial refresh has been completed. */
+    private boolean lazyInitialization;
+
+    /** Latch released once the initial refresh has been completed, successfully or not. */
+    @Nonnull private final CountDownLatch initialRefreshLatch = new CountDownLatch(1);
+
+    /** The failure of the background initial refresh, null if it has not failed. */
+    @Nullable private volatile ResolverException initialRefreshFailure;
+
     /** Constructor. */
     protected AbstractReloadingOIDCEntityResolver() {
         this(null);
@@ -97,12 +119,97 @@ public abstract class AbstractReloadingOIDCEntityResolver<Key extends Identifier
 
     protected void initOIDCResolver() throws ComponentInitializationException {
         super.initOIDCResolver();
+        if (initializationExecutor != null) {
+            try {
+                initializationExecutor.execute(new InitialRefreshTask());
+                log.debug("Initial refresh of metadata from '{}' scheduled in the background",
+                        getMetadataIdentifier());
+                return;
+            } catch (RejectedExecutionException e) {
+                log.warn("Initial refresh of metadata from '{}' could not be scheduled, refreshing now",
+                        getMetadataIdentifier());
+            }
+        }
         try {
             refresh();
         } catch (ResolverException e) {
             log.error("Could not refresh the entity information", e);
             throw new ComponentInitializationException("Could not refresh the entity information", e);
+        } finally {
+            initialRefreshLatch.countDown();
+        }
+    }
+
+    /**
+     * Set the executor used for running the initial refresh in the background. If not set, the initial refresh is
+     * run during the initialization.
+     * 
+     * @param executor executor used for running the initial refresh
+     */
+    public void setInitializationExecutor(@Nullable final Executor executor) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        ComponentSupport.ifDestroyedThrowDestroyedComponentException(this);
+
+        initializationExecutor = executor;
+    }
+
+    /**
+     * Set whether the lookups are answered from the metadata loaded so far while the initial refresh is still running
+     * in the background. Only has an effect with an initialization executor. Default value: false.
+     * 
+     * @param flag whether to answer the lookups before the initial refresh has been completed
+     */
+    public void setLazyInitialization(final boolean flag) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        ComponentSupport.ifDestroyedThrowDestroyedComponentException(this);
+
+        lazyInitialization = flag;
+    }
+
+    /**
+     * Get whether the initial refresh is still running in the background.
+     * 
+     * @return whether the initial refresh is still running
+     */
+    public boolean isInitialRefreshPending() {
+        return initialRefreshLatch.getCount() > 0;
+    }
+
+    /**
+     * Get the failure of the initial refresh run in the background.
+     * 
+     * @return the failure of the initial refresh, null if it has not failed
+     */
+    @Nullable public ResolverException getInitialRefreshFailure() {
+        return initialRefreshFailure;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * <p>Waits for the initial refresh to complete, unless lazy initialization is enabled.</p>
+     */
+    @Override
+    @Nonnull protected JsonBackingStore getBackingStore() {
+        if (!lazyInitialization && isInitialRefreshPending()) {
+            log.debug("Waiting for the initial refresh of metadata from '{}'", getMetadataIdentifier());
+            boolean interrupted = false;
+            while (isInitialRefreshPending()) {
+                try {
+                    initialRefreshLatch.await();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (initialRefreshFailure != null) {
+                log.error("Initial refresh of metadata from '{}' failed, no entity information has been loaded",
+                        getMetadataIdentifier(), initialRefreshFailure);
+            }
         }
+        return super.getBackingStore();
     }
 
     /** {@inheritDoc} */
@@ -240,6 +347,24 @@ public abstract class AbstractReloadingOIDCEntityResolver<Key extends Identifier
      */
     protected abstract byte[] fetchMetadata() throws ResolverException;
     
+    /** Background task that runs the initial refresh. */
+    private class InitialRefreshTask implements Runnable {
+
+        /** {@inheritDoc} */
+        @Override
+        public void run() {
+            try {
+                refresh();
+            } catch (ResolverException e) {
+                initialRefreshFailure = e;
+                log.error("Initial refresh of metadata from '{}' failed, no entity information has been loaded",
+                        getMetadataIdentifier());
+            } finally {
+                initialRefreshLatch.countDown();
+            }
+        }
+    }
+
     /** Background task that refreshes metadata. */
     private class RefreshMetadataTask extends TimerTask {
 
@@ -20,12 +20,19 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
+import org.geant.idpextension.oidc.criterion.ClientIDCriterion;
 import org.geant.idpextension.oidc.metadata.resolver.ClientInformationResolver;
 import org.geant.idpextension.oidc.metadata.resolver.RefreshableClientInformationResolver;
+import org.geant.idpextension.oidc.storage.InvalidationBus;
+import org.geant.idpextension.oidc.storage.InvalidationListener;
+import org.geant.idpextension.oidc.storage.InvalidationTopics;
 import org.joda.time.DateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -35,12 +42,16 @@ import com.google.common.collect.Collections2;
 import com.google.common.collect.ImmutableList;
 import com.nimbusds.openid.connect.sdk.rp.OIDCClientInformation;
 
+import net.shibboleth.utilities.java.support.annotation.Duration;
+import net.shibboleth.utilities.java.support.annotation.constraint.NonNegative;
 import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
 import net.shibboleth.utilities.java.support.annotation.constraint.NotLive;
+import net.shibboleth.utilities.java.support.annotation.constraint.Positive;
 import net.shibboleth.utilities.java.support.annotation.constraint.Unmodifiable;
 import net.shibboleth.utilities.java.support.component.AbstractIdentifiableInitializableComponent;
 import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
 import net.shibboleth.utilities.java.support.component.ComponentSupport;
+import net.shibboleth.utilities.java.support.logic.Constraint;
 import net.shibboleth.utilities.java.support.resolver.CriteriaSet;
 import net.shibboleth.utilities.java.support.resolver.ResolverException;
 
@@ -59,9 +70,44 @@ public class ChainingClientInformationResolver extends AbstractIdentifiableIniti
     /** Registered resolvers. */
     @Nonnull @NonnullElements private List<ClientInformationResolver> resolvers;
 
+    /** The resolvers known to resolve the clients, keyed by the client ID. */
+    @Nonnull private final ConcurrentMap<String, ClientInformationResolver> routes;
+
+    /** The expiration times of the client IDs not known by any of the resolvers, keyed by the client ID. */
+    @Nonnull private final ConcurrentMap<String, Long> unknownClients;
+
+    /** Digest of the last update times of the refreshable resolvers, when the maps were last cleared. */
+    private volatile long resolverUpdates;
+
+    /** Time to remember a client ID not known by any of the resolvers. Default value: 0, not remembered. */
+    @Duration @NonNegative private long unknownClientExpiration;
+
+    /** Maximum number of client IDs remembered in each map. Default value: 10000. */
+    @Positive private int maxCacheSize;
+
+    /** The bus notifying about the registered and removed clients, null if not used. */
+    @Nullable private InvalidationBus invalidationBus;
+
+    /** The listener forgetting the clients invalidated through the bus. */
+    @Nonnull private final InvalidationListener invalidationListener;
+
     /** Constructor. */
     public ChainingClientInformationResolver() {
         resolvers = Collections.emptyList();
+        routes = new ConcurrentHashMap<>();
+        unknownClients = new ConcurrentHashMap<>();
+        maxCacheSize = 10000;
+        invalidationListener = new InvalidationListener() {
+            public void invalidate(final String topic, final String key) {
+                if (key == null) {
+                    routes.clear();
+                    unknownClients.clear();
+                } else {
+                    routes.remove(key);
+                    unknownClients.remove(key);
+                }
+            }
+        };
     }
     
     /**
@@ -93,6 +139,29 @@ public class ChainingClientInformationResolver extends AbstractIdentifiableIniti
         resolvers = new ArrayList<>(Collections2.filter(newResolvers, Predicates.notNull()));
     }
 
+    /**
+     * Set the time to remember a client ID not known by any of the resolvers. 0 disables remembering them.
+     * 
+     * @param expiration time to remember an unknown client ID in milliseconds
+     */
+    @Duration public void setUnknownClientExpiration(@Duration @NonNegative final long expiration) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        unknownClientExpiration = Constraint.isGreaterThanOrEqual(0, expiration,
+                "Unknown client expiration must be greater than or equal to 0");
+    }
+
+    /**
+     * Set the maximum number of client IDs remembered for the routing and as unknown.
+     * 
+     * @param size maximum number of client IDs remembered
+     */
+    public void setMaxCacheSize(@Positive final int size) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        maxCacheSize = (int) Constraint.isGreaterThan(0, size, "Maximum cache size must be greater than 0");
+    }
+
     /** {@inheritDoc} */
     @Override
     @Nullable public OIDCClientInformation resolveSingle(@Nullable final CriteriaSet criteria) 
@@ -115,22 +184,131 @@ public class ChainingClientInformationResolver extends AbstractIdentifiableIniti
             throws ResolverException {
         ComponentSupport.ifNotInitializedThrowUninitializedComponentException(this);
 
+        final ClientIDCriterion clientIdCriterion = criteria != null ? criteria.get(ClientIDCriterion.class) : null;
+        if (clientIdCriterion == null || clientIdCriterion.getClientID() == null) {
+            for (final ClientInformationResolver resolver : resolvers) {
+                final Iterable<OIDCClientInformation> clientInformations = resolve(resolver, criteria);
+                if (clientInformations != null) {
+                    return clientInformations;
+                }
+            }
+            return Collections.emptyList();
+        }
+
+        final String clientId = clientIdCriterion.getClientID().getValue();
+        checkResolverUpdates();
+        final Long expiration = unknownClients.get(clientId);
+        if (expiration != null) {
+            if (expiration > System.currentTimeMillis()) {
+                log.debug("Client {} is not known by any of the resolvers", clientId);
+                return Collections.emptyList();
+            }
+            unknownClients.remove(clientId, expiration);
+        }
+        boolean failed = false;
+        final ClientInformationResolver route = routes.get(clientId);
+        if (route != null) {
+            try {
+                final Iterable<OIDCClientInformation> clientInformations = route.resolve(criteria);
+                if (clientInformations != null && clientInformations.iterator().hasNext()) {
+                    return clientInformations;
+                }
+            } catch (final ResolverException e) {
+                log.warn("Error retrieving client information from resolver of type {}, proceeding to next resolver",
+                        route.getClass().getName(), e);
+                failed = true;
+            }
+            routes.remove(clientId, route);
+        }
         for (final ClientInformationResolver resolver : resolvers) {
+            if (resolver == route) {
+                // already queried above
+                continue;
+            }
             try {
                 final Iterable<OIDCClientInformation> clientInformations = resolver.resolve(criteria);
                 if (clientInformations != null && clientInformations.iterator().hasNext()) {
+                    if (routes.size() >= maxCacheSize) {
+                        routes.clear();
+                    }
+                    routes.put(clientId, resolver);
                     return clientInformations;
                 }
             } catch (final ResolverException e) {
                 log.warn("Error retrieving client information from resolver of type {}, proceeding to next resolver",
                         resolver.getClass().getName(), e);
-                continue;
+                failed = true;
             }
         }
-
+        if (!failed && unknownClientExpiration > 0) {
+            rememberUnknownClient(clientId);
+        }
         return Collections.emptyList();
     }
 
+    /**
+     * Resolve the client informations from the resolver.
+     * 
+     * @param resolver the resolver
+     * @param criteria the criteria to evaluate
+     * @return the non-empty client informations, or null if there were none or the resolver failed
+     */
+    @Nullable private Iterable<OIDCClientInformation> resolve(@Nonnull final ClientInformationResolver resolver,
+            @Nullable final CriteriaSet criteria) {
+        try {
+            final Iterable<OIDCClientInformation> clientInformations = resolver.resolve(criteria);
+            if (clientInformations != null && clientInformations.iterator().hasNext()) {
+                return clientInformations;
+            }
+        } catch (final ResolverException e) {
+            log.warn("Error retrieving client information from resolver of type {}, proceeding to next resolver",
+                    resolver.getClass().getName(), e);
+        }
+        return null;
+    }
+
+    /**
+     * Remember the client ID as not known by any of the resolvers. Expired client IDs are purged, and all of them
+     * forgotten if there are still too many.
+     * 
+     * @param clientId the client ID
+     */
+    private void rememberUnknownClient(@Nonnull final String clientId) {
+        final long now = System.currentTimeMillis();
+        if (unknownClients.size() >= maxCacheSize) {
+            final Iterator<Map.Entry<String, Long>> iterator = unknownClients.entrySet().iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().getValue() <= now) {
+                    iterator.remove();
+                }
+            }
+            if (unknownClients.size() >= maxCacheSize) {
+                unknownClients.clear();
+            }
+        }
+        unknownClients.put(clientId, now + unknownClientExpiration);
+    }
+
+    /**
+     * Forget the routing and the unknown client IDs if any of the refreshable resolvers has been updated since they
+     * were last forgotten.
+     */
+    private void checkResolverUpdates() {
+        long updates = 0;
+        for (final ClientInformationResolver resolver : resolvers) {
+            if (resolver instanceof RefreshableClientInformationResolver) {
+                final DateTime lastUpdate = ((RefreshableClientInformationResolver) resolver).getLastUpdate();
+                updates = 31 * updates + (lastUpdate != null ? lastUpdate.getMillis() : 0);
+            }
+        }
+        if (updates != resolverUpdates) {
+            log.debug("Resolvers have been updated, clearing the client routing and the unknown clients");
+            routes.clear();
+            unknownClients.clear();
+            resolverUpdates = updates;
+        }
+    }
+
     /** {@inheritDoc} */
     @Override public void refresh() throws ResolverException {
         for (final ClientInformationResolver resolver : resolvers) {
@@ -138,6 +316,8 @@ public class ChainingClientInformationResolver extends AbstractIdentifiableIniti
                 ((RefreshableClientInformationResolver) resolver).refresh();
             }
         }
+        routes.clear();
+        unknownClients.clear();
     }
 
     /** {@inheritDoc} */
@@ -172,9 +352,24 @@ public class ChainingClientInformationResolver extends AbstractIdentifiableIniti
         return ret;
     }
     
+    /**
+     * Set the bus notifying about the registered and removed clients. The routing and the unknown client IDs of the
+     * invalidated clients are forgotten.
+     * 
+     * @param bus the invalidation bus
+     */
+    public void setInvalidationBus(@Nullable final InvalidationBus bus) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        invalidationBus = bus;
+    }
+
     /** {@inheritDoc} */
     @Override protected void doInitialize() throws ComponentInitializationException {
         super.doInitialize();
+        if (invalidationBus != null) {
+            invalidationBus.subscribe(InvalidationTopics.CLIENT_INFORMATION, invalidationListener);
+        }
         if (resolvers == null) {
             log.warn("ChainingClientInformationResolver was not configured with any member " + 
                     "ClientInformationResolvers");
@@ -182,7 +377,8 @@ public class ChainingClientInformationResolver extends AbstractIdentifiableIniti
         } else {
             final List<String> resolverDetails = new ArrayList<>();
             for (final ClientInformationResolver resolver : resolvers) {
-                resolverDetails.add(resolver.getId() + ": " + countClients(resolver) + " clients");
+                final int count = countClients(resolver);
+                resolverDetails.add(resolver.getId() + ": " + (count < 0 ? "unknown number of" : count) + " clients");
             }
             log.info("ChainingClientInformationResolver was configured with the following resolvers: {}",
                     resolverDetails);
@@ -191,31 +387,32 @@ public class ChainingClientInformationResolver extends AbstractIdentifiableIniti
 
     /** {@inheritDoc} */
     @Override protected void doDestroy() {
+        if (invalidationBus != null) {
+            invalidationBus.unsubscribe(InvalidationTopics.CLIENT_INFORMATION, invalidationListener);
+        }
         super.doDestroy();
         resolvers = Collections.emptyList();
+        routes.clear();
+        unknownClients.clear();
     }
     
     /**
-     * Counts the clients found from the given resolver.
+     * Counts the clients found from the given resolver. The clients are counted from the index of the resolvers
+     * loading their client informations in memory, without resolving them. The resolvers still loading their client
+     * informations in the background are waited for, unless they have been configured for lazy initialization.
      * 
      * @param resolver The resolver whose clients are counted.
-     * @return The amount of resolvable clients.
+     * @return The amount of resolvable clients, or -1 if they cannot be counted (yet).
      */
     protected int countClients(final ClientInformationResolver resolver) {
-        int count = 0;
-        Iterable<OIDCClientInformation> iterable;
-        try {
-            iterable = resolver.resolve(new CriteriaSet());
-        } catch (ResolverException e) {
-            log.warn("ChainingClientInformationResolver could not count clients for {}", resolver.getId());
-            return 0;
+        if (!(resolver instanceof AbstractOIDCEntityResolver)) {
+            return -1;
         }
-        if (iterable != null) {
-            final Iterator<OIDCClientInformation> iterator = iterable.iterator();
-            while (iterator.hasNext()) {
-                iterator.next();
-                count++;
-            }
+        final int count =
+                ((AbstractOIDCEntityResolver<?, ?>) resolver).getBackingStore().getOrderedInformation().size();
+        if (resolver instanceof AbstractReloadingOIDCEntityResolver
+                && ((AbstractReloadingOIDCEntityResolver<?, ?>) resolver).isInitialRefreshPending()) {
+            return -1;
         }
         return count;
     }
@@ -17,17 +17,28 @@
 package org.geant.idpextension.oidc.metadata.impl;
 
 import java.io.IOException;
+import java.net.URI;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 import org.geant.idpextension.oidc.metadata.resolver.ClientInformationManager;
 import org.geant.idpextension.oidc.metadata.resolver.ClientInformationManagerException;
+import org.geant.idpextension.oidc.metadata.resolver.RemoteJwkSetCache;
+import org.geant.idpextension.oidc.storage.InvalidationBus;
+import org.geant.idpextension.oidc.storage.InvalidationTopics;
+import org.geant.idpextension.oidc.storage.RevocationEpochCache;
+import org.opensaml.storage.StorageRecord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.nimbusds.oauth2.sdk.ParseException;
 import com.nimbusds.oauth2.sdk.id.ClientID;
+import com.nimbusds.oauth2.sdk.util.JSONObjectUtils;
 import com.nimbusds.openid.connect.sdk.rp.OIDCClientInformation;
 
+import net.shibboleth.utilities.java.support.component.ComponentSupport;
+
 /**
  * A {@link ClientInfomationManager} exploiting {@link StorageService} for storing the data.
  */
@@ -37,12 +48,56 @@ public class StorageServiceClientInformationManager extends BaseStorageServiceCl
     /** Class logger. */
     @Nonnull private final Logger log = LoggerFactory.getLogger(StorageServiceClientInformationResolver.class);
 
+    /** The bus notified about the stored and destroyed client information. */
+    @Nullable private InvalidationBus invalidationBus;
+
+    /** The cache of the revocation epochs advanced for the destroyed clients. */
+    @Nullable private RevocationEpochCache revocationEpochCache;
+
+    /** The cache of the remote key sets invalidated for the stored and destroyed clients. */
+    @Nullable private RemoteJwkSetCache remoteJwkSetCache;
+
     /**
      * Constructor.
      */
     public StorageServiceClientInformationManager() {
         super();
     }
+
+    /**
+     * Set the bus notified about the stored and destroyed client information.
+     * 
+     * @param bus the invalidation bus, null if not used
+     */
+    public void setInvalidationBus(@Nullable final InvalidationBus bus) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        invalidationBus = bus;
+    }
+
+    /**
+     * Set the cache of the revocation epochs advanced for the destroyed clients, revoking all their tokens.
+     * 
+     * @param cache the revocation epoch cache, null if the tokens are not revoked
+     */
+    public void setRevocationEpochCache(@Nullable final RevocationEpochCache cache) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        revocationEpochCache = cache;
+    }
+
+    /**
+     * Set the cache of the remote key sets invalidated for the stored and destroyed clients. The key set behind the
+     * jwks_uri of a stored client is fetched again when next needed, as the client may have rotated its keys before
+     * registering, and the key set of a destroyed client is removed from the cache.
+     * 
+     * @param cache the remote key set cache, null if the key sets are not invalidated
+     */
+    public void setRemoteJwkSetCache(@Nullable final RemoteJwkSetCache cache) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        remoteJwkSetCache = cache;
+    }
     
     /** {@inheritDoc} */
     @Override
@@ -59,6 +114,13 @@ public class StorageServiceClientInformationManager extends BaseStorageServiceCl
             throw new ClientInformationManagerException("Could not store the client information", e);
         }
         log.info("Successfully stored the client information for id {}", clientId);
+        final URI jwkSetUri = clientInformation.getOIDCMetadata().getJWKSetURI();
+        if (remoteJwkSetCache != null && jwkSetUri != null) {
+            remoteJwkSetCache.invalidate(RemoteJwkSetCache.CONTEXT_NAME, jwkSetUri);
+        }
+        if (invalidationBus != null) {
+            invalidationBus.publish(InvalidationTopics.CLIENT_INFORMATION, clientId);
+        }
     }
 
     /** {@inheritDoc} */
@@ -68,11 +130,40 @@ public class StorageServiceClientInformationManager extends BaseStorageServiceCl
             log.warn("The null clientId cannot be destroyed, nothing to do");
             return;
         }
+        final URI jwkSetUri = remoteJwkSetCache != null ? readJWKSetURI(clientId.getValue()) : null;
         try {
             getStorageService().delete(CONTEXT_NAME, clientId.getValue());
         } catch (IOException e) {
             log.error("Could not delete the client ID {}", clientId.getValue(), e);
         }
+        if (revocationEpochCache != null && !revocationEpochCache.revokeClient(clientId.getValue())) {
+            log.error("Could not revoke the tokens of the client ID {}", clientId.getValue());
+        }
+        if (jwkSetUri != null) {
+            remoteJwkSetCache.invalidate(RemoteJwkSetCache.CONTEXT_NAME, jwkSetUri);
+        }
+        if (invalidationBus != null) {
+            invalidationBus.publish(InvalidationTopics.CLIENT_INFORMATION, clientId.getValue());
+        }
+    }
+
+    /**
+     * Reads the jwks_uri of the stored client information.
+     * 
+     * @param clientId the client ID
+     * @return the jwks_uri of the client, null if none or the client information could not be read
+     */
+    @Nullable private URI readJWKSetURI(@Nonnull final String clientId) {
+        try {
+            final StorageRecord<?> record = getStorageService().read(CONTEXT_NAME, clientId);
+            if (record != null) {
+                return OIDCClientInformation.parse(JSONObjectUtils.parse(record.getValue())).getOIDCMetadata()
+                        .getJWKSetURI();
+            }
+        } catch (IOException | ParseException e) {
+            log.warn("Could not read the jwks_uri of the client ID {}", clientId, e);
+        }
+        return null;
     }
 
 }
@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2017 - 2020, GÉANT
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an “AS IS” BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.geant.idpextension.oidc.profile.impl;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.shibboleth.idp.authn.context.SubjectContext;
+import net.shibboleth.idp.profile.AbstractProfileAction;
+import net.shibboleth.idp.profile.context.RelyingPartyContext;
+import net.shibboleth.utilities.java.support.component.ComponentSupport;
+import net.shibboleth.utilities.java.support.logic.Constraint;
+
+import org.geant.idpextension.oidc.profile.logic.AttributeRecipientGroupLookupFunction;
+import org.geant.idpextension.oidc.storage.AttributeResolutionCache;
+import org.opensaml.messaging.context.navigate.ChildContextLookup;
+import org.opensaml.profile.context.ProfileRequestContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Function;
+
+/**
+ * Base class for the actions using the {@link AttributeResolutionCache}. The cache entries are keyed by the principal
+ * name of the {@link SubjectContext}, the relying party id and the attribute recipient group (sector identifier). The
+ * actions do nothing if no cache is set.
+ */
+@SuppressWarnings("rawtypes")
+public abstract class AbstractAttributeResolutionCacheAction extends AbstractProfileAction {
+
+    /** Class logger. */
+    @Nonnull
+    private final Logger log = LoggerFactory.getLogger(AbstractAttributeResolutionCacheAction.class);
+
+    /** The attribute resolution cache, null if caching is disabled. */
+    @Nullable
+    private AttributeResolutionCache attributeResolutionCache;
+
+    /**
+     * Strategy used to locate the {@link RelyingPartyContext} associated with a given {@link ProfileRequestContext}.
+     */
+    @Nonnull
+    private Function<ProfileRequestContext, RelyingPartyContext> relyingPartyContextLookupStrategy;
+
+    /** Strategy used to locate the {@link SubjectContext} associated with a given {@link ProfileRequestContext}. */
+    @Nonnull
+    private Function<ProfileRequestContext, SubjectContext> subjectContextLookupStrategy;
+
+    /** Strategy used to obtain the attribute recipient group. */
+    @Nonnull
+    private Function<ProfileRequestContext, String> recipientGroupLookupStrategy;
+
+    /** The relying party context to operate on. */
+    @Nullable
+    private RelyingPartyContext relyingPartyContext;
+
+    /** The principal the attributes are resolved for. */
+    @Nullable
+    private String principalName;
+
+    /** The attribute recipient group the attributes are resolved for. */
+    @Nullable
+    private String recipientGroup;
+
+    /**
+     * Constructor.
+     */
+    public AbstractAttributeResolutionCacheAction() {
+        relyingPartyContextLookupStrategy = new ChildContextLookup<>(RelyingPartyContext.class);
+        subjectContextLookupStrategy = new ChildContextLookup<>(SubjectContext.class);
+        recipientGroupLookupStrategy = new AttributeRecipientGroupLookupFunction();
+    }
+
+    /**
+     * Set the attribute resolution cache. Caching is disabled if not set.
+     * 
+     * @param cache the attribute resolution cache
+     */
+    public void setAttributeResolutionCache(@Nullable final AttributeResolutionCache cache) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        attributeResolutionCache = cache;
+    }
+
+    /**
+     * Set the strategy used to locate the {@link RelyingPartyContext} associated with a given
+     * {@link ProfileRequestContext}.
+     * 
+     * @param strategy lookup strategy
+     */
+    public void setRelyingPartyContextLookupStrategy(
+            @Nonnull final Function<ProfileRequestContext, RelyingPartyContext> strategy) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        relyingPartyContextLookupStrategy =
+                Constraint.isNotNull(strategy, "RelyingPartyContext lookup strategy cannot be null");
+    }
+
+    /**
+     * Set the strategy used to locate the {@link SubjectContext} associated with a given
+     * {@link ProfileRequestContext}.
+     * 
+     * @param strategy lookup strategy
+     */
+    public void setSubjectContextLookupStrategy(
+            @Nonnull final Function<ProfileRequestContext, SubjectContext> strategy) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        subjectContextLookupStrategy = Constraint.isNotNull(strategy, "SubjectContext lookup strategy cannot be null");
+    }
+
+    /**
+     * Set the strategy used to obtain the attribute recipient group.
+     * 
+     * @param strategy lookup strategy
+     */
+    public void setRecipientGroupLookupStrategy(@Nonnull final Function<ProfileRequestContext, String> strategy) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        recipientGroupLookupStrategy =
+                Constraint.isNotNull(strategy, "Recipient group lookup strategy cannot be null");
+    }
+
+    /**
+     * Get the attribute resolution cache.
+     * 
+     * @return the attribute resolution cache
+     */
+    @Nonnull
+    protected AttributeResolutionCache getAttributeResolutionCache() {
+        return attributeResolutionCache;
+    }
+
+    /**
+     * Get the relying party context to operate on.
+     * 
+     * @return the relying party context
+     */
+    @Nonnull
+    protected RelyingPartyContext getRelyingPartyContext() {
+        return relyingPartyContext;
+    }
+
+    /**
+     * Get the principal the attributes are resolved for.
+     * 
+     * @return the principal name
+     */
+    @Nonnull
+    protected String getPrincipalName() {
+        return principalName;
+    }
+
+    /**
+     * Get the attribute recipient group the attributes are resolved for.
+     * 
+     * @return the attribute recipient group, may be null
+     */
+    @Nullable
+    protected String getRecipientGroup() {
+        return recipientGroup;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected boolean doPreExecute(@Nonnull final ProfileRequestContext profileRequestContext) {
+        if (attributeResolutionCache == null) {
+            log.trace("{} No attribute resolution cache, nothing to do", getLogPrefix());
+            return false;
+        }
+        relyingPartyContext = relyingPartyContextLookupStrategy.apply(profileRequestContext);
+        if (relyingPartyContext == null || relyingPartyContext.getRelyingPartyId() == null) {
+            log.debug("{} No relying party, attribute resolution cache not used", getLogPrefix());
+            return false;
+        }
+        final SubjectContext subjectCtx = subjectContextLookupStrategy.apply(profileRequestContext);
+        if (subjectCtx == null || subjectCtx.getPrincipalName() == null) {
+            log.debug("{} No principal, attribute resolution cache not used", getLogPrefix());
+            return false;
+        }
+        principalName = subjectCtx.getPrincipalName();
+        recipientGroup = recipientGroupLookupStrategy.apply(profileRequestContext);
+        return super.doPreExecute(profileRequestContext);
+    }
+
+}
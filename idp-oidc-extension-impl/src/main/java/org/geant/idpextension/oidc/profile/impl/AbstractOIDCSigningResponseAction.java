@@ -30,14 +30,11 @@ import net.shibboleth.utilities.java.support.logic.Constraint;
 
 /**
  * Abstract action to be extended by oidc response actions requiring signing parameters. Not having signing credentials
- * will not cause error event. Extending class must handle the case as appropriate.
+ * will not cause error event. Extending class must handle the case as appropriate. The signing parameters are located
+ * per request by {@link #getSignatureSigningParameters(ProfileRequestContext)}, the action itself is stateless.
  */
 @SuppressWarnings("rawtypes")
-public abstract class AbstractOIDCSigningResponseAction extends AbstractOIDCResponseAction {
-
-    /** The signature signing parameters. */
-    @Nullable
-    protected SignatureSigningParameters signatureSigningParameters;
+public abstract class AbstractOIDCSigningResponseAction extends AbstractStatelessOIDCResponseAction {
 
     /** Class logger. */
     @Nonnull
@@ -67,26 +64,36 @@ public abstract class AbstractOIDCSigningResponseAction extends AbstractOIDCResp
                 Constraint.isNotNull(strategy, "SecurityParameterContext lookup strategy cannot be null");
     }
 
-    /** {@inheritDoc} */
-    @Override
-    protected boolean doPreExecute(@Nonnull final ProfileRequestContext profileRequestContext) {
-
-        if (!super.doPreExecute(profileRequestContext)) {
-            return false;
-        }
-
+    /**
+     * Returns the signature signing parameters of the given profile request context.
+     * 
+     * @param profileRequestContext the current profile request context
+     * @return the signature signing parameters, null if there are no parameters having a signing credential
+     */
+    @Nullable
+    protected SignatureSigningParameters
+            getSignatureSigningParameters(@Nonnull final ProfileRequestContext profileRequestContext) {
         final SecurityParametersContext secParamCtx = securityParametersLookupStrategy.apply(profileRequestContext);
         if (secParamCtx == null) {
             log.debug("{} no security parameters context is available", getLogPrefix());
-            return false;
+            return null;
         }
-
-        signatureSigningParameters = secParamCtx.getSignatureSigningParameters();
-        if (signatureSigningParameters == null || signatureSigningParameters.getSigningCredential() == null) {
+        final SignatureSigningParameters params = secParamCtx.getSignatureSigningParameters();
+        if (params == null || params.getSigningCredential() == null) {
             log.debug("{} no signature signing credentials available", getLogPrefix());
+            return null;
+        }
+        return params;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected boolean doPreExecute(@Nonnull final ProfileRequestContext profileRequestContext) {
+
+        if (!super.doPreExecute(profileRequestContext)) {
             return false;
         }
-        return true;
+        return getSignatureSigningParameters(profileRequestContext) != null;
     }
 
 }
\ No newline at end of file
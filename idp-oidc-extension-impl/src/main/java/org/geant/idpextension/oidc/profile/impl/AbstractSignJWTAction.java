@@ -26,10 +26,12 @@ import org.opensaml.profile.action.ActionSupport;
 import org.opensaml.profile.action.EventIds;
 import org.opensaml.profile.context.ProfileRequestContext;
 import org.opensaml.security.credential.Credential;
+import org.opensaml.xmlsec.SignatureSigningParameters;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import com.nimbusds.jose.Algorithm;
 import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JOSEObjectType;
 import com.nimbusds.jose.JWSAlgorithm;
 import com.nimbusds.jose.JWSHeader;
 import com.nimbusds.jose.JWSSigner;
@@ -42,7 +44,8 @@ import com.nimbusds.jwt.SignedJWT;
 /**
  * Abstract action for signing JWT. The extending class is expected to set claims set by implementing
  * {@link getClaimsSetToSign}. The signed jwt is received by extending class by implementing method
- * {@link setSignedJWT}.
+ * {@link setSignedJWT}. Both methods are given the current profile request context, the extending classes are not
+ * expected to keep any per-request state in the action instance.
  */
 @SuppressWarnings("rawtypes")
 public abstract class AbstractSignJWTAction extends AbstractOIDCSigningResponseAction {
@@ -51,28 +54,16 @@ public abstract class AbstractSignJWTAction extends AbstractOIDCSigningResponseA
     @Nonnull
     private Logger log = LoggerFactory.getLogger(AbstractSignJWTAction.class);
 
-    /** resolved credential. */
-    private Credential credential;
-
-    /** {@inheritDoc} */
-    @Override
-    protected boolean doPreExecute(@Nonnull final ProfileRequestContext profileRequestContext) {
-
-        if (!super.doPreExecute(profileRequestContext)) {
-            return false;
-        }
-        credential = signatureSigningParameters.getSigningCredential();
-        return true;
-    }
-
     /**
      * Returns correct implementation of signer based on algorithm type.
      * 
      * @param jwsAlgorithm JWS algorithm
+     * @param credential signing credential
      * @return signer for algorithm and private key
      * @throws JOSEException if algorithm cannot be supported
      */
-    private JWSSigner getSigner(Algorithm jwsAlgorithm) throws JOSEException {
+    private JWSSigner getSigner(@Nonnull final Algorithm jwsAlgorithm, @Nonnull final Credential credential)
+            throws JOSEException {
         if (JWSAlgorithm.Family.EC.contains(jwsAlgorithm)) {
             return new ECDSASigner((ECPrivateKey) credential.getPrivateKey());
         }
@@ -88,11 +79,13 @@ public abstract class AbstractSignJWTAction extends AbstractOIDCSigningResponseA
     /**
      * Resolves JWS algorithm from signature signing parameters.
      * 
+     * @param params signature signing parameters
      * @return JWS algorithm
      */
-    protected JWSAlgorithm resolveAlgorithm() {
+    protected JWSAlgorithm resolveAlgorithm(@Nonnull final SignatureSigningParameters params) {
 
-        JWSAlgorithm algorithm = new JWSAlgorithm(signatureSigningParameters.getSignatureAlgorithm());
+        final Credential credential = params.getSigningCredential();
+        JWSAlgorithm algorithm = new JWSAlgorithm(params.getSignatureAlgorithm());
         if (credential instanceof JWKCredential) {
             if (!algorithm.equals(((JWKCredential) credential).getAlgorithm())) {
                 log.debug("{} Signature signing algorithm {} differs from JWK algorithm {}", getLogPrefix(),
@@ -103,42 +96,60 @@ public abstract class AbstractSignJWTAction extends AbstractOIDCSigningResponseA
         return algorithm;
     }
 
+    /**
+     * Returns the type to set to the JOSE header of the signed JWT.
+     * 
+     * @return the type, null if the type header is not set
+     */
+    @Nullable
+    protected JOSEObjectType getJOSEObjectType() {
+        return null;
+    }
+
     /**
      * Called with signed JWT as parameter.
      * 
+     * @param profileRequestContext the current profile request context
      * @param jwt signed JWT.
      */
-    protected abstract void setSignedJWT(@Nullable SignedJWT jwt);
+    protected abstract void setSignedJWT(@Nonnull ProfileRequestContext profileRequestContext,
+            @Nullable SignedJWT jwt);
 
     /**
-     * Called to get claim set to sign.
+     * Called to get claim set to sign. If null is returned, nothing is signed. Extending class is expected to build
+     * an error event before returning null if the situation is an error.
      * 
+     * @param profileRequestContext the current profile request context
      * @return claim set to sign
      */
-    protected abstract @Nonnull JWTClaimsSet getClaimsSetToSign();
+    @Nullable
+    protected abstract JWTClaimsSet getClaimsSetToSign(@Nonnull ProfileRequestContext profileRequestContext);
 
     /** {@inheritDoc} */
     @Override
     protected void doExecute(@Nonnull final ProfileRequestContext profileRequestContext) {
 
-        SignedJWT jwt = null;
-        JWTClaimsSet jwtClaimSet = getClaimsSetToSign();
+        final JWTClaimsSet jwtClaimSet = getClaimsSetToSign(profileRequestContext);
         if (jwtClaimSet == null) {
-            log.debug("Claim set is null, nothing to do");
+            log.debug("{} Claim set is null, nothing to do", getLogPrefix());
             return;
         }
+        final SignatureSigningParameters params = getSignatureSigningParameters(profileRequestContext);
+        final Credential credential = params.getSigningCredential();
+        final SignedJWT jwt;
         try {
-            Algorithm jwsAlgorithm = resolveAlgorithm();
-            JWSSigner signer = getSigner(jwsAlgorithm);
+            Algorithm jwsAlgorithm = resolveAlgorithm(params);
+            JWSSigner signer = getSigner(jwsAlgorithm, credential);
             jwt = new SignedJWT(new JWSHeader.Builder(new JWSAlgorithm(jwsAlgorithm.getName()))
-                    .keyID(CredentialConversionUtil.resolveKid(credential)).build(), jwtClaimSet);
+                    .keyID(CredentialConversionUtil.resolveKid(credential)).type(getJOSEObjectType()).build(),
+                    jwtClaimSet);
             jwt.sign(signer);
         } catch (JOSEException e) {
             log.error("{} Error signing claim set: {}", getLogPrefix(), e.getMessage());
             ActionSupport.buildEvent(profileRequestContext, EventIds.UNABLE_TO_SIGN);
             return;
         }
-        setSignedJWT(jwt);
+        setSignedJWT(profileRequestContext, jwt);
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2017 - 2020, GÉANT
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an “AS IS” BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.geant.idpextension.oidc.profile.impl;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.geant.idpextension.oidc.messaging.context.OIDCAuthenticationResponseContext;
+import org.geant.idpextension.oidc.messaging.context.OIDCMetadataContext;
+import org.opensaml.messaging.context.MessageContext;
+import org.opensaml.profile.action.ActionSupport;
+import org.opensaml.profile.action.EventIds;
+import org.opensaml.profile.context.ProfileRequestContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.shibboleth.idp.profile.AbstractProfileAction;
+
+/**
+ * Abstract class for actions performing actions on {@link OIDCAuthenticationResponseContext} located under
+ * {@link ProfileRequestContext#getOutboundMessageContext()} without keeping any per-request state in the action
+ * instance. The contexts are looked up from the {@link ProfileRequestContext} whenever needed, which makes the
+ * extending actions safe to be shared between concurrent requests once initialized, i.e. they may be defined as
+ * singleton beans. Extending classes must not store request specific state into instance fields either.
+ */
+@SuppressWarnings("rawtypes")
+public abstract class AbstractStatelessOIDCResponseAction extends AbstractProfileAction {
+
+    /** Class logger. */
+    @Nonnull
+    private Logger log = LoggerFactory.getLogger(AbstractStatelessOIDCResponseAction.class);
+
+    /**
+     * Returns oidc response context of the given profile request context.
+     * 
+     * @param profileRequestContext the current profile request context
+     * @return ctx, null if not available.
+     */
+    @Nullable
+    protected OIDCAuthenticationResponseContext
+            getOidcResponseContext(@Nonnull final ProfileRequestContext profileRequestContext) {
+        final MessageContext outboundMessageCtx = profileRequestContext.getOutboundMessageContext();
+        if (outboundMessageCtx == null) {
+            return null;
+        }
+        return outboundMessageCtx.getSubcontext(OIDCAuthenticationResponseContext.class, false);
+    }
+
+    /**
+     * Returns the OIDC Metadata context of the given profile request context.
+     * 
+     * @param profileRequestContext the current profile request context
+     * @return The OIDC Metadata context, null if not available.
+     */
+    @Nullable
+    protected OIDCMetadataContext getMetadataContext(@Nonnull final ProfileRequestContext profileRequestContext) {
+        final MessageContext inboundMessageCtx = profileRequestContext.getInboundMessageContext();
+        if (inboundMessageCtx == null) {
+            return null;
+        }
+        return inboundMessageCtx.getSubcontext(OIDCMetadataContext.class, false);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected boolean doPreExecute(@Nonnull final ProfileRequestContext profileRequestContext) {
+
+        if (!super.doPreExecute(profileRequestContext)) {
+            return false;
+        }
+        if (profileRequestContext.getOutboundMessageContext() == null) {
+            log.error("{} No outbound message context", getLogPrefix());
+            ActionSupport.buildEvent(profileRequestContext, EventIds.INVALID_MSG_CTX);
+            return false;
+        }
+        if (getOidcResponseContext(profileRequestContext) == null) {
+            log.error("{} No oidc response context", getLogPrefix());
+            ActionSupport.buildEvent(profileRequestContext, EventIds.INVALID_MSG_CTX);
+            return false;
+        }
+        if (getMetadataContext(profileRequestContext) == null) {
+            log.error("{} No metadata found for relying party", getLogPrefix());
+            ActionSupport.buildEvent(profileRequestContext, EventIds.INVALID_MSG_CTX);
+            return false;
+        }
+        return true;
+    }
+
+}
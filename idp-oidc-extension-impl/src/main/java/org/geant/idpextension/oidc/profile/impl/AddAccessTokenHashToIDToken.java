@@ -17,6 +17,8 @@
 package org.geant.idpextension.oidc.profile.impl;
 
 import javax.annotation.Nonnull;
+
+import org.geant.idpextension.oidc.messaging.context.OIDCAuthenticationResponseContext;
 import org.opensaml.profile.action.ActionSupport;
 import org.opensaml.profile.action.EventIds;
 import org.opensaml.profile.context.ProfileRequestContext;
@@ -41,28 +43,33 @@ public class AddAccessTokenHashToIDToken extends AbstractOIDCSigningResponseActi
     @Override
     protected void doExecute(@Nonnull final ProfileRequestContext profileRequestContext) {
 
-        if (getOidcResponseContext().getIDToken() == null) {
+        final OIDCAuthenticationResponseContext respCtx = getOidcResponseContext(profileRequestContext);
+        if (respCtx.getIDToken() == null) {
             log.error("{} No id token", getLogPrefix());
             ActionSupport.buildEvent(profileRequestContext, EventIds.INVALID_MSG_CTX);
             return;
         }
-        if (getOidcResponseContext().getAccessToken() == null) {
+        if (respCtx.getAccessToken() == null) {
             log.error("{} No access token to calculate hash on", getLogPrefix());
             ActionSupport.buildEvent(profileRequestContext, EventIds.INVALID_MSG_CTX);
             return;
         }
-        AccessTokenHash atHash = AccessTokenHash.compute(getOidcResponseContext().getAccessToken(),
-                new JWSAlgorithm(signatureSigningParameters.getSignatureAlgorithm()));
+        final String signatureAlgorithm =
+                getSignatureSigningParameters(profileRequestContext).getSignatureAlgorithm();
+        AccessTokenHash atHash = AccessTokenHash.compute(respCtx.getAccessToken(),
+                new JWSAlgorithm(signatureAlgorithm));
         if (atHash == null || atHash.getValue() == null) {
             log.error("{} Not able to generate at_hash using algorithm {}", getLogPrefix(),
-                    signatureSigningParameters.getSignatureAlgorithm());
+                    signatureAlgorithm);
             ActionSupport.buildEvent(profileRequestContext, EventIds.INVALID_SEC_CFG);
             return;
         }
         log.debug("{} Setting access token hash to id token", getLogPrefix());
-        getOidcResponseContext().getIDToken().setClaim(IDTokenClaimsSet.AT_HASH_CLAIM_NAME, atHash.getValue());
-        log.debug("{} Updated token {}", getLogPrefix(),
-                getOidcResponseContext().getIDToken().toJSONObject().toJSONString());
+        respCtx.getIDToken().setClaim(IDTokenClaimsSet.AT_HASH_CLAIM_NAME, atHash.getValue());
+        if (log.isDebugEnabled()) {
+            log.debug("{} Updated token {}", getLogPrefix(),
+                    respCtx.getIDToken().toJSONObject().toJSONString());
+        }
 
     }
 
@@ -45,8 +45,10 @@ public class AddAcrToIDToken extends AbstractOIDCAuthenticationResponseAction {
         if (getOidcResponseContext().getAcr() != null) {
             log.debug("{} Setting acr to id token", getLogPrefix());
             getOidcResponseContext().getIDToken().setACR(getOidcResponseContext().getAcr());
-            log.debug("{} Updated token {}", getLogPrefix(),
-                    getOidcResponseContext().getIDToken().toJSONObject().toJSONString());
+            if (log.isDebugEnabled()) {
+                log.debug("{} Updated token {}", getLogPrefix(),
+                        getOidcResponseContext().getIDToken().toJSONObject().toJSONString());
+            }
         }
     }
 }
\ No newline at end of file
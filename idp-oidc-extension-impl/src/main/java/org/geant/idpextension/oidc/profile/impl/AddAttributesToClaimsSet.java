@@ -16,20 +16,21 @@
 
 package org.geant.idpextension.oidc.profile.impl;
 
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
-import net.minidev.json.JSONObject;
-import net.shibboleth.idp.attribute.AttributeEncoder;
 import net.shibboleth.idp.attribute.AttributeEncodingException;
 import net.shibboleth.idp.attribute.IdPAttribute;
 import net.shibboleth.idp.attribute.context.AttributeContext;
 import net.shibboleth.idp.profile.context.RelyingPartyContext;
 import net.shibboleth.utilities.java.support.component.ComponentSupport;
 import net.shibboleth.utilities.java.support.logic.Constraint;
+import net.shibboleth.utilities.java.support.primitive.StringSupport;
 
 import org.geant.idpextension.oidc.attribute.encoding.impl.AbstractOIDCAttributeEncoder;
 import org.geant.idpextension.oidc.messaging.context.OIDCAuthenticationResponseConsentContext;
@@ -45,6 +46,7 @@ import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Function;
 import com.google.common.base.Functions;
+import com.google.common.collect.ImmutableSet;
 import com.nimbusds.oauth2.sdk.ResponseType;
 import com.nimbusds.openid.connect.sdk.AuthenticationRequest;
 import com.nimbusds.openid.connect.sdk.claims.ClaimsSet;
@@ -93,9 +95,13 @@ public class AddAttributesToClaimsSet extends AbstractOIDCResponseAction {
     @Nonnull
     private Function<ProfileRequestContext, OIDCAuthenticationResponseConsentContext> consentContextLookupStrategy;
 
-    /** List of claim names that will not be added. */
+    /** Claim names that will not be added. */
+    @Nonnull
+    private Set<String> reservedClaimNames;
+
+    /** Cache of the precompiled encoding plans of the relying parties. */
     @Nullable
-    private List<String> reservedClaimNames;
+    private AttributeClaimsEncodingPlanCache encodingPlanCache;
 
     /** Constructor. */
     AddAttributesToClaimsSet() {
@@ -105,6 +111,7 @@ public class AddAttributesToClaimsSet extends AbstractOIDCResponseAction {
         consentContextLookupStrategy =
                 Functions.compose(new ChildContextLookup<>(OIDCAuthenticationResponseConsentContext.class),
                         new OIDCAuthenticationResponseContextLookupFunction());
+        reservedClaimNames = Collections.emptySet();
     }
 
     /**
@@ -113,7 +120,20 @@ public class AddAttributesToClaimsSet extends AbstractOIDCResponseAction {
      * @param claimNames list of claim names that will not be added.
      */
     public void setReservedClaimNames(List<String> claimNames) {
-        reservedClaimNames = claimNames;
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        reservedClaimNames = claimNames == null ? Collections.<String> emptySet()
+                : ImmutableSet.copyOf(StringSupport.normalizeStringCollection(claimNames));
+    }
+
+    /**
+     * Set the cache of the precompiled encoding plans of the relying parties. Without a cache the plan is compiled
+     * for each request.
+     * 
+     * @param cache the cache of the precompiled encoding plans
+     */
+    public void setEncodingPlanCache(@Nullable final AttributeClaimsEncodingPlanCache cache) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        encodingPlanCache = cache;
     }
 
     /**
@@ -199,58 +219,78 @@ public class AddAttributesToClaimsSet extends AbstractOIDCResponseAction {
     @Override
     protected void doExecute(@Nonnull final ProfileRequestContext profileRequestContext) {
 
-        OIDCAuthenticationResponseConsentContext consentCtx = consentContextLookupStrategy.apply(profileRequestContext);
+        final AttributeClaimsEncodingPlan plan = getEncodingPlan(profileRequestContext);
+        final Set<String> claimsWithoutConsent =
+                getClaimsWithoutConsent(consentContextLookupStrategy.apply(profileRequestContext));
         for (IdPAttribute attribute : attributeCtx.getIdPAttributes().values()) {
-            final Set<AttributeEncoder<?>> encoders = attribute.getEncoders();
+            final List<AbstractOIDCAttributeEncoder> encoders = plan.getEncoders(attribute);
             if (encoders.isEmpty()) {
-                log.debug("{} Attribute {} does not have any encoders, nothing to do", getLogPrefix(),
-                        attribute.getId());
+                log.debug("{} Attribute {} does not have any encoders for the claims set, nothing to do",
+                        getLogPrefix(), attribute.getId());
                 continue;
             }
-            for (final AttributeEncoder<?> encoder : encoders) {
+            for (final AbstractOIDCAttributeEncoder encoder : encoders) {
+                if (encoder.getActivationCondition() != null
+                        && !encoder.getActivationCondition().apply(profileRequestContext)) {
+                    log.debug("{} Encoder not active", getLogPrefix());
+                    continue;
+                }
+                final String name = encoder.getName();
+                if (claimsWithoutConsent.contains(name)) {
+                    log.debug("{} Consentable attribute {} has no consent. Not added to claims set", getLogPrefix(),
+                            name);
+                    continue;
+                }
                 try {
-                    if (encoder instanceof AbstractOIDCAttributeEncoder) {
-                        if (encoder.getActivationCondition() != null
-                                && !encoder.getActivationCondition().apply(profileRequestContext)) {
-                            log.debug("{} Encoder not active", getLogPrefix());
-                            continue;
-                        }
-                        if (targetIDToken) {
-                            if (!addToIDTokenByDefault
-                                    && !((AbstractOIDCAttributeEncoder) encoder).getPlaceToIDToken()) {
-                                log.debug("{} Attribute {} not targeted for ID Token", getLogPrefix(),
-                                        attribute.getId());
-                                continue;
-                            }
-                        } else if (((AbstractOIDCAttributeEncoder) encoder).getDenyUserinfo()) {
-                            log.debug("{} Attribute {} not targeted for Userinfo response", getLogPrefix(),
-                                    attribute.getId());
-                            continue;
-                        }
-                        JSONObject obj = (JSONObject) encoder.encode(attribute);
-                        for (String name : obj.keySet()) {
-                            if (reservedClaimNames != null && reservedClaimNames.contains(name)) {
-                                log.debug("{} claim has a reserved name {}. Not added to claims set", getLogPrefix(),
-                                        name);
-                                continue;
-                            }
-                            if (consentCtx != null && consentCtx.getConsentableAttributes().contains(name)
-                                    && !consentCtx.getConsentedAttributes().contains(name)) {
-                                log.debug("{} Consentable attribute {} has no consent. Not added to claims set",
-                                        getLogPrefix(), name);
-                                continue;
-                            }
-                            log.debug("{} Adding claim {} with value {}", getLogPrefix(), name, obj.get(name));
-                            claimsSet.setClaim(name, obj.get(name));
-                        }
-                    }
+                    final Object value = encoder.encodeValue(attribute);
+                    log.debug("{} Adding claim {} with value {}", getLogPrefix(), name, value);
+                    claimsSet.setClaim(name, value);
                 } catch (AttributeEncodingException e) {
                     log.warn("{} Unable to encode attribute {} as OIDC attribute", getLogPrefix(), attribute.getId(),
                             e);
                 }
             }
         }
-        log.debug("{} claims set after mapping attributes to claims {}", getLogPrefix(),
-                claimsSet.toJSONObject().toJSONString());
+        if (log.isDebugEnabled()) {
+            log.debug("{} claims set after mapping attributes to claims {}", getLogPrefix(),
+                    claimsSet.toJSONObject().toJSONString());
+        }
+    }
+
+    /**
+     * Get the encoding plan of the relying party, from the cache if there is one.
+     * 
+     * @param profileRequestContext the current profile request context
+     * @return the encoding plan
+     */
+    @Nonnull
+    private AttributeClaimsEncodingPlan getEncodingPlan(@Nonnull final ProfileRequestContext profileRequestContext) {
+        if (encodingPlanCache == null) {
+            return new AttributeClaimsEncodingPlan(targetIDToken, addToIDTokenByDefault, reservedClaimNames);
+        }
+        final RelyingPartyContext rpCtx = profileRequestContext.getSubcontext(RelyingPartyContext.class);
+        return encodingPlanCache.getPlan(rpCtx != null ? rpCtx.getRelyingPartyId() : null, targetIDToken,
+                addToIDTokenByDefault, reservedClaimNames);
+    }
+
+    /**
+     * Get the names of the consentable claims the user has not consented to.
+     * 
+     * @param consentCtx the consent context, may be null
+     * @return the names of the claims without consent
+     */
+    @Nonnull
+    private Set<String> getClaimsWithoutConsent(@Nullable final OIDCAuthenticationResponseConsentContext consentCtx) {
+        if (consentCtx == null || consentCtx.getConsentableAttributes().isEmpty()) {
+            return Collections.emptySet();
+        }
+        final Set<String> claims = new HashSet<>();
+        for (final Object consentable : consentCtx.getConsentableAttributes()) {
+            claims.add(String.valueOf(consentable));
+        }
+        for (final Object consented : consentCtx.getConsentedAttributes()) {
+            claims.remove(String.valueOf(consented));
+        }
+        return claims;
     }
 }
\ No newline at end of file
@@ -17,6 +17,7 @@
 package org.geant.idpextension.oidc.profile.impl;
 
 import javax.annotation.Nonnull;
+import org.geant.idpextension.oidc.messaging.context.OIDCAuthenticationResponseContext;
 import org.opensaml.profile.action.ActionSupport;
 import org.opensaml.profile.action.EventIds;
 import org.opensaml.profile.context.ProfileRequestContext;
@@ -29,7 +30,7 @@ import com.nimbusds.openid.connect.sdk.claims.IDTokenClaimsSet;
  * Action that adds auth_time claim to a {@link IDTokenClaimsSet}.
  */
 @SuppressWarnings("rawtypes")
-public class AddAuthTimeToIDToken extends AbstractOIDCResponseAction {
+public class AddAuthTimeToIDToken extends AbstractStatelessOIDCResponseAction {
 
     /** Class logger. */
     @Nonnull
@@ -39,17 +40,20 @@ public class AddAuthTimeToIDToken extends AbstractOIDCResponseAction {
     @Override
     protected void doExecute(@Nonnull final ProfileRequestContext profileRequestContext) {
 
-        if (getOidcResponseContext().getIDToken() == null) {
+        final OIDCAuthenticationResponseContext respCtx = getOidcResponseContext(profileRequestContext);
+        if (respCtx.getIDToken() == null) {
             log.error("{} No id token", getLogPrefix());
             ActionSupport.buildEvent(profileRequestContext, EventIds.INVALID_MSG_CTX);
             return;
         }
-        if (getOidcResponseContext().getAuthTime() != null) {
+        if (respCtx.getAuthTime() != null) {
             log.debug("{} Setting auth_time to id token", getLogPrefix());
-            getOidcResponseContext().getIDToken().setClaim(IDTokenClaimsSet.AUTH_TIME_CLAIM_NAME,
-                    getOidcResponseContext().getAuthTime().getTime() / 1000);
-            log.debug("{} Updated token {}", getLogPrefix(),
-                    getOidcResponseContext().getIDToken().toJSONObject().toJSONString());
+            respCtx.getIDToken().setClaim(IDTokenClaimsSet.AUTH_TIME_CLAIM_NAME,
+                    respCtx.getAuthTime().getTime() / 1000);
+            if (log.isDebugEnabled()) {
+                log.debug("{} Updated token {}", getLogPrefix(),
+                        respCtx.getIDToken().toJSONObject().toJSONString());
+            }
         }
 
     }
@@ -17,6 +17,8 @@
 package org.geant.idpextension.oidc.profile.impl;
 
 import javax.annotation.Nonnull;
+
+import org.geant.idpextension.oidc.messaging.context.OIDCAuthenticationResponseContext;
 import org.opensaml.profile.action.ActionSupport;
 import org.opensaml.profile.action.EventIds;
 import org.opensaml.profile.context.ProfileRequestContext;
@@ -41,28 +43,33 @@ public class AddAuthorizationCodeHashToIDToken extends AbstractOIDCSigningRespon
     @Override
     protected void doExecute(@Nonnull final ProfileRequestContext profileRequestContext) {
 
-        if (getOidcResponseContext().getIDToken() == null) {
+        final OIDCAuthenticationResponseContext respCtx = getOidcResponseContext(profileRequestContext);
+        if (respCtx.getIDToken() == null) {
             log.error("{} No id token", getLogPrefix());
             ActionSupport.buildEvent(profileRequestContext, EventIds.INVALID_MSG_CTX);
             return;
         }
-        if (getOidcResponseContext().getAuthorizationCode() == null) {
+        if (respCtx.getAuthorizationCode() == null) {
             log.error("{} No authz code to calculate hash on", getLogPrefix());
             ActionSupport.buildEvent(profileRequestContext, EventIds.INVALID_MSG_CTX);
             return;
         }
-        CodeHash cHash = CodeHash.compute(getOidcResponseContext().getAuthorizationCode(),
-                new JWSAlgorithm(signatureSigningParameters.getSignatureAlgorithm()));
+        final String signatureAlgorithm =
+                getSignatureSigningParameters(profileRequestContext).getSignatureAlgorithm();
+        CodeHash cHash = CodeHash.compute(respCtx.getAuthorizationCode(),
+                new JWSAlgorithm(signatureAlgorithm));
         if (cHash == null || cHash.getValue() == null) {
             log.error("{} Not able to generate c_hash using algorithm {}", getLogPrefix(),
-                    signatureSigningParameters.getSignatureAlgorithm());
+                    signatureAlgorithm);
             ActionSupport.buildEvent(profileRequestContext, EventIds.INVALID_SEC_CFG);
             return;
         }
         log.debug("{} Setting authz code hash to id token", getLogPrefix());
-        getOidcResponseContext().getIDToken().setClaim(IDTokenClaimsSet.C_HASH_CLAIM_NAME, cHash.getValue());
-        log.debug("{} Updated token {}", getLogPrefix(),
-                getOidcResponseContext().getIDToken().toJSONObject().toJSONString());
+        respCtx.getIDToken().setClaim(IDTokenClaimsSet.C_HASH_CLAIM_NAME, cHash.getValue());
+        if (log.isDebugEnabled()) {
+            log.debug("{} Updated token {}", getLogPrefix(),
+                    respCtx.getIDToken().toJSONObject().toJSONString());
+        }
 
     }
 
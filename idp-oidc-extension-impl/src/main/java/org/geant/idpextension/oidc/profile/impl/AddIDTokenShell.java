@@ -169,8 +169,10 @@ public class AddIDTokenShell extends AbstractOIDCResponseAction {
         }
         IDTokenClaimsSet idToken = new IDTokenClaimsSet(new Issuer(issuerId),
                 new Subject(getOidcResponseContext().getSubject()), aud, exp, new Date());
-        log.debug("{} Setting id token shell to response context {}", getLogPrefix(),
-                idToken.toJSONObject().toJSONString());
+        if (log.isDebugEnabled()) {
+            log.debug("{} Setting id token shell to response context {}", getLogPrefix(),
+                    idToken.toJSONObject().toJSONString());
+        }
         getOidcResponseContext().setIDToken(idToken);
     }
 
@@ -18,6 +18,7 @@ package org.geant.idpextension.oidc.profile.impl;
 
 import javax.annotation.Nonnull;
 
+import org.geant.idpextension.oidc.messaging.context.OIDCAuthenticationResponseContext;
 import org.geant.idpextension.oidc.profile.context.navigate.DefaultRequestNonceLookupFunction;
 import org.opensaml.profile.action.ActionSupport;
 import org.opensaml.profile.action.EventIds;
@@ -33,7 +34,7 @@ import net.shibboleth.utilities.java.support.logic.Constraint;
  * Action that adds nonce claim to a {@link IDTokenClaimsSet}.
  */
 @SuppressWarnings("rawtypes")
-public class AddNonceToIDToken extends AbstractOIDCResponseAction {
+public class AddNonceToIDToken extends AbstractStatelessOIDCResponseAction {
 
     /** Class logger. */
     @Nonnull
@@ -65,7 +66,8 @@ public class AddNonceToIDToken extends AbstractOIDCResponseAction {
     @Override
     protected void doExecute(@Nonnull final ProfileRequestContext profileRequestContext) {
 
-        if (getOidcResponseContext().getIDToken() == null) {
+        final OIDCAuthenticationResponseContext respCtx = getOidcResponseContext(profileRequestContext);
+        if (respCtx.getIDToken() == null) {
             log.error("{} No id token", getLogPrefix());
             ActionSupport.buildEvent(profileRequestContext, EventIds.INVALID_MSG_CTX);
             return;
@@ -73,9 +75,11 @@ public class AddNonceToIDToken extends AbstractOIDCResponseAction {
         Nonce nonce = requestNonceLookupStrategy.apply(profileRequestContext);
         if (nonce != null) {
             log.debug("{} Setting nonce to id token", getLogPrefix());
-            getOidcResponseContext().getIDToken().setNonce(nonce);
-            log.debug("{} Updated token {}", getLogPrefix(),
-                    getOidcResponseContext().getIDToken().toJSONObject().toJSONString());
+            respCtx.getIDToken().setNonce(nonce);
+            if (log.isDebugEnabled()) {
+                log.debug("{} Updated token {}", getLogPrefix(),
+                        respCtx.getIDToken().toJSONObject().toJSONString());
+            }
         }
 
     }
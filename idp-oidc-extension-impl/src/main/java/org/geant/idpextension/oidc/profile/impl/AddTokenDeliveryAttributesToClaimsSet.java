@@ -146,7 +146,9 @@ public class AddTokenDeliveryAttributesToClaimsSet extends AbstractOIDCResponseA
         } else {
             claimsSet.putAll(tokenClaimsCtx.getUserinfoClaims());
         }
-        log.debug("{} claims set after adding token delivery claims {}", getLogPrefix(),
-                claimsSet.toJSONObject().toJSONString());
+        if (log.isDebugEnabled()) {
+            log.debug("{} claims set after adding token delivery claims {}", getLogPrefix(),
+                    claimsSet.toJSONObject().toJSONString());
+        }
     }
 }
\ No newline at end of file
@@ -137,8 +137,10 @@ public class AddUserInfoShell extends AbstractOIDCResponseAction {
             userInfo.setClaim("aud",rpCtx.getRelyingPartyId());
             userInfo.setIssuer(new Issuer(issuerId));
         }
-        log.debug("{} Setting userinfo response shell to response context {}", getLogPrefix(),
-                userInfo.toJSONObject().toJSONString());
+        if (log.isDebugEnabled()) {
+            log.debug("{} Setting userinfo response shell to response context {}", getLogPrefix(),
+                    userInfo.toJSONObject().toJSONString());
+        }
         getOidcResponseContext().setUserInfo(userInfo);
     }
 
@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2017 - 2020, GÉANT
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an “AS IS” BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.geant.idpextension.oidc.profile.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.geant.idpextension.oidc.attribute.encoding.impl.AbstractOIDCAttributeEncoder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableSet;
+
+import net.shibboleth.idp.attribute.AttributeEncoder;
+import net.shibboleth.idp.attribute.IdPAttribute;
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
+import net.shibboleth.utilities.java.support.annotation.constraint.Unmodifiable;
+import net.shibboleth.utilities.java.support.logic.Constraint;
+
+/**
+ * Precompiled plan for encoding attributes to the claims of one claims set target of one relying party. For each
+ * attribute the plan holds the OIDC encoders whose claims may be placed to the target: encoders of other types,
+ * encoders not targeted for the ID token or denied for the userinfo response and encoders of reserved claim names are
+ * left out when the attribute is first seen. The activation conditions of the encoders and the consent of the user
+ * depend on the request and are left to the caller.
+ * 
+ * <p>
+ * The encoders of an attribute are compiled again if they differ from the encoders the plan was compiled for, for
+ * instance after the attribute resolver has been reloaded.
+ * </p>
+ */
+@ThreadSafe
+public class AttributeClaimsEncodingPlan {
+
+    /** Class logger. */
+    @Nonnull
+    private final Logger log = LoggerFactory.getLogger(AttributeClaimsEncodingPlan.class);
+
+    /** Whether the target is the ID token. */
+    private final boolean targetIDToken;
+
+    /** Whether the claims may be placed to the ID token by default. */
+    private final boolean addToIDTokenByDefault;
+
+    /** Claim names that are never placed to the target. */
+    @Nonnull
+    @NonnullElements
+    private final Set<String> reservedClaimNames;
+
+    /** The compiled encoders by attribute id. */
+    @Nonnull
+    private final ConcurrentMap<String, CompiledAttribute> attributes;
+
+    /**
+     * Constructor.
+     * 
+     * @param idToken whether the target is the ID token
+     * @param idTokenByDefault whether the claims may be placed to the ID token by default
+     * @param reservedNames claim names that are never placed to the target
+     */
+    public AttributeClaimsEncodingPlan(final boolean idToken, final boolean idTokenByDefault,
+            @Nonnull @NonnullElements final Set<String> reservedNames) {
+        targetIDToken = idToken;
+        addToIDTokenByDefault = idTokenByDefault;
+        reservedClaimNames = ImmutableSet.copyOf(Constraint.isNotNull(reservedNames, "Reserved names cannot be null"));
+        attributes = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Get the encoders of the attribute whose claims may be placed to the target.
+     * 
+     * @param attribute the attribute
+     * @return the encoders, in the order of the attribute's encoders
+     */
+    @Nonnull
+    @NonnullElements
+    @Unmodifiable
+    public List<AbstractOIDCAttributeEncoder> getEncoders(@Nonnull final IdPAttribute attribute) {
+        final Set<AttributeEncoder<?>> encoders = attribute.getEncoders();
+        final CompiledAttribute compiled = attributes.get(attribute.getId());
+        if (compiled != null && compiled.getSourceEncoders().equals(encoders)) {
+            return compiled.getEncoders();
+        }
+        final CompiledAttribute recompiled = compile(attribute.getId(), encoders);
+        attributes.put(attribute.getId(), recompiled);
+        return recompiled.getEncoders();
+    }
+
+    /**
+     * Get the number of attributes compiled to the plan.
+     * 
+     * @return the number of attributes compiled to the plan
+     */
+    public int size() {
+        return attributes.size();
+    }
+
+    /**
+     * Compile the encoders of an attribute.
+     * 
+     * @param attributeId the attribute id
+     * @param encoders the encoders of the attribute
+     * @return the compiled attribute
+     */
+    @Nonnull
+    private CompiledAttribute compile(@Nonnull final String attributeId,
+            @Nonnull @NonnullElements final Set<AttributeEncoder<?>> encoders) {
+        final List<AbstractOIDCAttributeEncoder> applicable = new ArrayList<>(encoders.size());
+        for (final AttributeEncoder<?> encoder : encoders) {
+            if (!(encoder instanceof AbstractOIDCAttributeEncoder)) {
+                continue;
+            }
+            final AbstractOIDCAttributeEncoder oidcEncoder = (AbstractOIDCAttributeEncoder) encoder;
+            if (targetIDToken) {
+                if (!addToIDTokenByDefault && !oidcEncoder.getPlaceToIDToken()) {
+                    log.debug("Attribute {} not targeted for ID Token", attributeId);
+                    continue;
+                }
+            } else if (oidcEncoder.getDenyUserinfo()) {
+                log.debug("Attribute {} not targeted for Userinfo response", attributeId);
+                continue;
+            }
+            if (reservedClaimNames.contains(oidcEncoder.getName())) {
+                log.debug("Attribute {} has a reserved claim name {}, not added to claims set", attributeId,
+                        oidcEncoder.getName());
+                continue;
+            }
+            applicable.add(oidcEncoder);
+        }
+        return new CompiledAttribute(ImmutableSet.copyOf(encoders), applicable.isEmpty()
+                ? Collections.<AbstractOIDCAttributeEncoder> emptyList() : Collections.unmodifiableList(applicable));
+    }
+
+    /** The compiled encoders of an attribute. */
+    private static final class CompiledAttribute {
+
+        /** The encoders of the attribute the plan was compiled from. */
+        @Nonnull
+        private final Set<AttributeEncoder<?>> sourceEncoders;
+
+        /** The encoders whose claims may be placed to the target. */
+        @Nonnull
+        private final List<AbstractOIDCAttributeEncoder> encoders;
+
+        /**
+         * Constructor.
+         * 
+         * @param source the encoders of the attribute the plan was compiled from
+         * @param applicable the encoders whose claims may be placed to the target
+         */
+        private CompiledAttribute(@Nonnull final Set<AttributeEncoder<?>> source,
+                @Nonnull final List<AbstractOIDCAttributeEncoder> applicable) {
+            sourceEncoders = source;
+            encoders = applicable;
+        }
+
+        /**
+         * Get the encoders of the attribute the plan was compiled from.
+         * 
+         * @return the encoders of the attribute the plan was compiled from
+         */
+        @Nonnull
+        private Set<AttributeEncoder<?>> getSourceEncoders() {
+            return sourceEncoders;
+        }
+
+        /**
+         * Get the encoders whose claims may be placed to the target.
+         * 
+         * @return the encoders whose claims may be placed to the target
+         */
+        @Nonnull
+        private List<AbstractOIDCAttributeEncoder> getEncoders() {
+            return encoders;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2017 - 2020, GÉANT
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an “AS IS” BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.geant.idpextension.oidc.profile.impl;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
+import net.shibboleth.utilities.java.support.annotation.constraint.Positive;
+import net.shibboleth.utilities.java.support.component.AbstractInitializableComponent;
+import net.shibboleth.utilities.java.support.component.ComponentSupport;
+import net.shibboleth.utilities.java.support.logic.Constraint;
+
+/**
+ * Cache of the {@link AttributeClaimsEncodingPlan}s of the relying parties, shared by the actions adding attributes to
+ * claims sets. A plan is kept per relying party, claims set target and set of reserved claim names. When the cache is
+ * full it is cleared, and the plans are compiled again as the relying parties are seen.
+ */
+public class AttributeClaimsEncodingPlanCache extends AbstractInitializableComponent {
+
+    /** Default maximum number of plans. */
+    public static final int DEFAULT_MAX_SIZE = 10000;
+
+    /** The plans. */
+    @Nonnull
+    private final ConcurrentMap<PlanKey, AttributeClaimsEncodingPlan> plans;
+
+    /** Maximum number of plans. */
+    @Positive
+    private int maxSize;
+
+    /** Constructor. */
+    public AttributeClaimsEncodingPlanCache() {
+        plans = new ConcurrentHashMap<>();
+        maxSize = DEFAULT_MAX_SIZE;
+    }
+
+    /**
+     * Set the maximum number of plans.
+     * 
+     * @param size the maximum number of plans
+     */
+    public void setMaxSize(@Positive final int size) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        maxSize = (int) Constraint.isGreaterThan(0, size, "Maximum size must be greater than 0");
+    }
+
+    /**
+     * Get the plan of a relying party and claims set target, compiling a new one if there is none.
+     * 
+     * @param relyingPartyId the relying party id
+     * @param targetIDToken whether the target is the ID token
+     * @param addToIDTokenByDefault whether the claims may be placed to the ID token by default
+     * @param reservedClaimNames claim names that are never placed to the target
+     * @return the plan
+     */
+    @Nonnull
+    public AttributeClaimsEncodingPlan getPlan(@Nullable final String relyingPartyId, final boolean targetIDToken,
+            final boolean addToIDTokenByDefault, @Nonnull @NonnullElements final Set<String> reservedClaimNames) {
+        ComponentSupport.ifNotInitializedThrowUninitializedComponentException(this);
+        final PlanKey key = new PlanKey(relyingPartyId, targetIDToken, addToIDTokenByDefault, reservedClaimNames);
+        final AttributeClaimsEncodingPlan plan = plans.get(key);
+        if (plan != null) {
+            return plan;
+        }
+        if (plans.size() >= maxSize) {
+            plans.clear();
+        }
+        final AttributeClaimsEncodingPlan newPlan =
+                new AttributeClaimsEncodingPlan(targetIDToken, addToIDTokenByDefault, reservedClaimNames);
+        final AttributeClaimsEncodingPlan existing = plans.putIfAbsent(key, newPlan);
+        return existing != null ? existing : newPlan;
+    }
+
+    /**
+     * Get the number of cached plans.
+     * 
+     * @return the number of cached plans
+     */
+    public int size() {
+        return plans.size();
+    }
+
+    /** Key of a plan. */
+    private static final class PlanKey {
+
+        /** The relying party id. */
+        @Nullable
+        private final String relyingPartyId;
+
+        /** Whether the target is the ID token. */
+        private final boolean targetIDToken;
+
+        /** Whether the claims may be placed to the ID token by default. */
+        private final boolean addToIDTokenByDefault;
+
+        /** Claim names that are never placed to the target. */
+        @Nonnull
+        private final Set<String> reservedClaimNames;
+
+        /**
+         * Constructor.
+         * 
+         * @param rpId the relying party id
+         * @param idToken whether the target is the ID token
+         * @param idTokenByDefault whether the claims may be placed to the ID token by default
+         * @param reservedNames claim names that are never placed to the target
+         */
+        private PlanKey(@Nullable final String rpId, final boolean idToken, final boolean idTokenByDefault,
+                @Nonnull final Set<String> reservedNames) {
+            relyingPartyId = rpId;
+            targetIDToken = idToken;
+            addToIDTokenByDefault = idTokenByDefault;
+            reservedClaimNames = reservedNames;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public int hashCode() {
+            int result = relyingPartyId != null ? relyingPartyId.hashCode() : 0;
+            result = 31 * result + (targetIDToken ? 1 : 0);
+            result = 31 * result + (addToIDTokenByDefault ? 1 : 0);
+            return 31 * result + reservedClaimNames.hashCode();
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof PlanKey)) {
+                return false;
+            }
+            final PlanKey other = (PlanKey) obj;
+            return targetIDToken == other.targetIDToken && addToIDTokenByDefault == other.addToIDTokenByDefault
+                    && (relyingPartyId == null ? other.relyingPartyId == null
+                            : relyingPartyId.equals(other.relyingPartyId))
+                    && (reservedClaimNames == other.reservedClaimNames
+                            || reservedClaimNames.equals(other.reservedClaimNames));
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2017 - 2020, GÉANT
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an “AS IS” BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.geant.idpextension.oidc.profile.impl;
+
+import java.util.Collection;
+
+import javax.annotation.Nonnull;
+
+import net.shibboleth.idp.attribute.IdPAttribute;
+import net.shibboleth.idp.attribute.context.AttributeContext;
+
+import org.geant.idpextension.oidc.storage.AttributeResolutionCache;
+import org.opensaml.profile.context.ProfileRequestContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Action that stores the resolved, unfiltered attributes of the {@link AttributeContext} of the relying party to the
+ * {@link AttributeResolutionCache}. The action is expected to run right after the attribute resolution and before the
+ * attributes are filtered, as the filtering depends on the request. The attribute resolution is expected to have been
+ * made for the same attribute recipient group the cache entry is keyed by.
+ */
+@SuppressWarnings("rawtypes")
+public class CacheResolvedAttributes extends AbstractAttributeResolutionCacheAction {
+
+    /** Class logger. */
+    @Nonnull
+    private final Logger log = LoggerFactory.getLogger(CacheResolvedAttributes.class);
+
+    /** {@inheritDoc} */
+    @Override
+    protected void doExecute(@Nonnull final ProfileRequestContext profileRequestContext) {
+        final AttributeContext attributeCtx = getRelyingPartyContext().getSubcontext(AttributeContext.class);
+        if (attributeCtx == null) {
+            log.debug("{} No resolved attributes, nothing to cache", getLogPrefix());
+            return;
+        }
+        final Collection<IdPAttribute> attributes = attributeCtx.getUnfilteredIdPAttributes().values();
+        getAttributeResolutionCache().put(getPrincipalName(), getRelyingPartyContext().getRelyingPartyId(),
+                getRecipientGroup(), attributes);
+        log.debug("{} Cached {} resolved attributes of the principal for the relying party", getLogPrefix(),
+                attributes.size());
+    }
+
+}
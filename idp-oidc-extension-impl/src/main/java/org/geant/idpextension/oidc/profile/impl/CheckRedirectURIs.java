@@ -20,6 +20,7 @@ import java.io.IOException;
 import java.lang.reflect.Type;
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Set;
 
@@ -33,6 +34,8 @@ import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.client.methods.RequestBuilder;
 import org.apache.http.client.protocol.HttpClientContext;
 import org.apache.http.util.EntityUtils;
+import org.geant.idpextension.oidc.metadata.resolver.SectorIdentifierCache;
+import org.geant.idpextension.oidc.metadata.resolver.SectorIdentifierCache.CachedSectorIdentifier;
 import org.geant.idpextension.oidc.profile.OidcEventIds;
 import org.opensaml.profile.action.ActionSupport;
 import org.opensaml.profile.action.EventIds;
@@ -86,6 +89,9 @@ public class CheckRedirectURIs extends AbstractProfileAction {
     /** HTTP client security parameters. */
     @Nullable private HttpClientSecurityParameters httpClientSecurityParameters;
 
+    /** The optional cache for the sector_identifier_uri contents. */
+    @Nullable private SectorIdentifierCache sectorIdentifierCache;
+
     /** Constructor. */
     public CheckRedirectURIs() {
         super();
@@ -115,6 +121,19 @@ public class CheckRedirectURIs extends AbstractProfileAction {
         httpClientSecurityParameters = params;
     }
 
+    /**
+     * Set the optional cache for the sector_identifier_uri contents. If set, the contents are fetched via the cache
+     * instead of the HTTP client of this action.
+     * 
+     * @param cache the cache for the sector_identifier_uri contents
+     */
+    public void setSectorIdentifierCache(@Nullable final SectorIdentifierCache cache) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        ComponentSupport.ifDestroyedThrowDestroyedComponentException(this);
+
+        sectorIdentifierCache = cache;
+    }
+
     /** {@inheritDoc} */
     public void doInitialize() throws ComponentInitializationException {
         super.doInitialize();
@@ -221,6 +240,20 @@ public class CheckRedirectURIs extends AbstractProfileAction {
      * fetched.
      */
     protected boolean verifySectorIdUri(final URI sectorIdUri, final Set<URI> redirectURIs) {
+        if (sectorIdentifierCache != null) {
+            CachedSectorIdentifier cached = sectorIdentifierCache.fetch(sectorIdUri);
+            if (cached != null && !cached.getRedirectURIs().containsAll(redirectURIs)) {
+                log.debug("{} Cached sector_identifier_uri contents from {} not listing all the redirect URIs, "
+                        + "fetching them again", getLogPrefix(), sectorIdUri);
+                sectorIdentifierCache.invalidate(sectorIdUri);
+                cached = sectorIdentifierCache.fetch(sectorIdUri);
+            }
+            if (cached == null) {
+                log.error("{} Could not get the sector_identifier_uri contents from {}", getLogPrefix(), sectorIdUri);
+                return false;
+            }
+            return verifyRedirectURIs(cached.getRedirectURIs(), redirectURIs);
+        }
         final HttpResponse response;
         try {
             final HttpUriRequest get = RequestBuilder.get().setUri(sectorIdUri).build();
@@ -259,6 +292,16 @@ public class CheckRedirectURIs extends AbstractProfileAction {
             log.error("{} sector_identifier_uris contents is empty, no URLs included: {}", getLogPrefix(), output);
             return false;
         }
+        return verifyRedirectURIs(parsedUris, redirectURIs);
+    }
+
+    /**
+     * Verifies that all the given redirect URIs are found from the given sector identifier URI contents.
+     * @param parsedUris The URIs parsed from the sector identifier URI contents.
+     * @param redirectURIs The redirect URIs to be verified.
+     * @return true if redirect URIs were found from the contents, false otherwise.
+     */
+    protected boolean verifyRedirectURIs(final Collection<URI> parsedUris, final Set<URI> redirectURIs) {
         for (final URI redirectUri : redirectURIs) {
             if (!parsedUris.contains(redirectUri)) {
                 log.error("{} Redirect URI {} was not found from the sector_identifier_uris", getLogPrefix(), 
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2017 - 2020, GÉANT
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an “AS IS” BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.geant.idpextension.oidc.profile.impl;
+
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+import org.geant.idpextension.oidc.config.OIDCUserInfoConfiguration;
+import org.geant.idpextension.oidc.messaging.context.OIDCAuthenticationResponseTokenClaimsContext;
+import org.geant.idpextension.oidc.profile.OidcEventIds;
+import org.geant.idpextension.oidc.token.support.TokenClaimsSet;
+import org.opensaml.messaging.context.navigate.ChildContextLookup;
+import org.opensaml.profile.action.ActionSupport;
+import org.opensaml.profile.context.ProfileRequestContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Function;
+
+import net.shibboleth.idp.profile.context.RelyingPartyContext;
+import net.shibboleth.utilities.java.support.component.ComponentSupport;
+import net.shibboleth.utilities.java.support.logic.Constraint;
+
+/**
+ * Action that checks whether the userinfo response may be built from the claims snapshot carried in the access token.
+ * The snapshot is located from the userinfo claims of {@link OIDCAuthenticationResponseTokenClaimsContext} by the
+ * snapshot time claim {@link TokenClaimsSet#KEY_DELIVERY_CLAIMS_SNAPSHOT_TIME}, which is always removed from the
+ * claims. If the relying party has the claims snapshot enabled by {@link OIDCUserInfoConfiguration#getClaimsSnapshot()}
+ * and the snapshot is not older than {@link OIDCUserInfoConfiguration#getClaimsSnapshotMaxAge()}, the action signals
+ * {@link OidcEventIds#USE_CLAIMS_SNAPSHOT} to have the attribute resolution skipped. Otherwise the claims belonging to
+ * the snapshot only, listed by {@link TokenClaimsSet#KEY_DELIVERY_CLAIMS_SNAPSHOT_NAMES}, are removed so that they do
+ * not overwrite the claims of the resolved attributes, and the action proceeds.
+ */
+@SuppressWarnings("rawtypes")
+public class CheckUserInfoClaimsSnapshot extends AbstractStatelessOIDCResponseAction {
+
+    /** Class logger. */
+    @Nonnull
+    private Logger log = LoggerFactory.getLogger(CheckUserInfoClaimsSnapshot.class);
+
+    /**
+     * Strategy used to locate the {@link RelyingPartyContext} associated with a given {@link ProfileRequestContext}.
+     */
+    @Nonnull
+    private Function<ProfileRequestContext, RelyingPartyContext> relyingPartyContextLookupStrategy;
+
+    /** Constructor. */
+    public CheckUserInfoClaimsSnapshot() {
+        relyingPartyContextLookupStrategy = new ChildContextLookup<>(RelyingPartyContext.class);
+    }
+
+    /**
+     * Set the strategy used to locate the {@link RelyingPartyContext} associated with a given
+     * {@link ProfileRequestContext}.
+     * 
+     * @param strategy strategy used to locate the {@link RelyingPartyContext} associated with a given
+     *            {@link ProfileRequestContext}
+     */
+    public void setRelyingPartyContextLookupStrategy(
+            @Nonnull final Function<ProfileRequestContext, RelyingPartyContext> strategy) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        relyingPartyContextLookupStrategy =
+                Constraint.isNotNull(strategy, "RelyingPartyContext lookup strategy cannot be null");
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void doExecute(@Nonnull final ProfileRequestContext profileRequestContext) {
+
+        final OIDCAuthenticationResponseTokenClaimsContext tokenClaimsCtx = getOidcResponseContext(
+                profileRequestContext).getSubcontext(OIDCAuthenticationResponseTokenClaimsContext.class);
+        if (tokenClaimsCtx == null) {
+            log.debug("{} No token delivery claims, no claims snapshot available", getLogPrefix());
+            return;
+        }
+        final Object snapshotTime =
+                tokenClaimsCtx.getUserinfoClaims().getClaim(TokenClaimsSet.KEY_DELIVERY_CLAIMS_SNAPSHOT_TIME);
+        if (snapshotTime == null) {
+            log.debug("{} Access token does not carry a claims snapshot", getLogPrefix());
+            return;
+        }
+        final Object snapshotNames =
+                tokenClaimsCtx.getUserinfoClaims().getClaim(TokenClaimsSet.KEY_DELIVERY_CLAIMS_SNAPSHOT_NAMES);
+        // The snapshot time and names are not claims to be delivered in any case
+        tokenClaimsCtx.getUserinfoClaims().setClaim(TokenClaimsSet.KEY_DELIVERY_CLAIMS_SNAPSHOT_TIME, null);
+        tokenClaimsCtx.getUserinfoClaims().setClaim(TokenClaimsSet.KEY_DELIVERY_CLAIMS_SNAPSHOT_NAMES, null);
+        if (isSnapshotUsable(profileRequestContext, snapshotTime)) {
+            ActionSupport.buildEvent(profileRequestContext, OidcEventIds.USE_CLAIMS_SNAPSHOT);
+            return;
+        }
+        if (snapshotNames instanceof List) {
+            for (final Object name : (List<?>) snapshotNames) {
+                if (name instanceof String) {
+                    tokenClaimsCtx.getUserinfoClaims().setClaim((String) name, null);
+                }
+            }
+            log.debug("{} Claims {} of the snapshot dropped", getLogPrefix(), snapshotNames);
+        }
+    }
+
+    /**
+     * Checks whether the claims snapshot is enabled for the relying party and not too old.
+     * 
+     * @param profileRequestContext the current profile request context
+     * @param snapshotTime the time of taking the snapshot, in seconds since epoch
+     * @return whether the userinfo response may be built from the claims snapshot
+     */
+    private boolean isSnapshotUsable(@Nonnull final ProfileRequestContext profileRequestContext,
+            @Nonnull final Object snapshotTime) {
+        if (!(snapshotTime instanceof Number)) {
+            log.warn("{} Unexpected claims snapshot time {}, resolving attributes", getLogPrefix(), snapshotTime);
+            return false;
+        }
+        final RelyingPartyContext rpCtx = relyingPartyContextLookupStrategy.apply(profileRequestContext);
+        if (rpCtx == null || !(rpCtx.getProfileConfig() instanceof OIDCUserInfoConfiguration)
+                || !((OIDCUserInfoConfiguration) rpCtx.getProfileConfig()).getClaimsSnapshot()) {
+            log.debug("{} Claims snapshot not enabled for the relying party, resolving attributes", getLogPrefix());
+            return false;
+        }
+        final long maxAge = ((OIDCUserInfoConfiguration) rpCtx.getProfileConfig()).getClaimsSnapshotMaxAge();
+        final long age = System.currentTimeMillis() - ((Number) snapshotTime).longValue() * 1000;
+        if (maxAge > 0 && age > maxAge) {
+            log.debug("{} Claims snapshot age {} ms exceeds the maximum {} ms, resolving attributes", getLogPrefix(),
+                    age, maxAge);
+            return false;
+        }
+        log.debug("{} Building userinfo response from the claims snapshot of age {} ms", getLogPrefix(), age);
+        return true;
+    }
+}
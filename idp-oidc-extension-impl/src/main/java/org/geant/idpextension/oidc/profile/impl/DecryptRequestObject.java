@@ -189,7 +189,9 @@ public class DecryptRequestObject extends AbstractOIDCAuthenticationResponseActi
         }
         // Let's update decrypted request object back to response context
         getOidcResponseContext().setRequestObject(requestObject);
-        log.debug("{} Request object decrypted as {}", getLogPrefix(),
-                getOidcResponseContext().getRequestObject().serialize());
+        if (log.isDebugEnabled()) {
+            log.debug("{} Request object decrypted as {}", getLogPrefix(),
+                    getOidcResponseContext().getRequestObject().serialize());
+        }
     }
 }
\ No newline at end of file
@@ -20,7 +20,9 @@ import java.security.interfaces.ECPublicKey;
 import java.security.interfaces.RSAPublicKey;
 import java.text.ParseException;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
+import org.geant.idpextension.oidc.messaging.context.OIDCAuthenticationResponseContext;
 import org.geant.idpextension.oidc.security.impl.CredentialConversionUtil;
 import org.opensaml.messaging.context.navigate.ChildContextLookup;
 import org.opensaml.profile.action.ActionSupport;
@@ -57,7 +59,7 @@ import net.shibboleth.utilities.java.support.logic.Constraint;
  * encryption exists the actions fails.
  */
 @SuppressWarnings("rawtypes")
-public class EncryptProcessedToken extends AbstractOIDCResponseAction {
+public class EncryptProcessedToken extends AbstractStatelessOIDCResponseAction {
 
     /** Class logger. */
     @Nonnull
@@ -67,12 +69,6 @@ public class EncryptProcessedToken extends AbstractOIDCResponseAction {
     @Nonnull
     private Function<ProfileRequestContext, EncryptionContext> encryptionContextLookupStrategy;
 
-    /** Encryption parameters for encrypting payload. */
-    private EncryptionParameters params;
-
-    /** Payload to encrypt. */
-    private Payload payload;
-
     /**
      * Constructor.
      */
@@ -94,33 +90,33 @@ public class EncryptProcessedToken extends AbstractOIDCResponseAction {
                 Constraint.isNotNull(strategy, "EncryptionContext lookup strategy cannot be null");
     }
 
+    /**
+     * Returns the encryption parameters of the given profile request context.
+     * 
+     * @param profileRequestContext the current profile request context
+     * @return encryption parameters, null if not available
+     */
+    @Nullable
+    private EncryptionParameters getEncryptionParameters(@Nonnull final ProfileRequestContext profileRequestContext) {
+        final EncryptionContext encryptCtx = encryptionContextLookupStrategy.apply(profileRequestContext);
+        return encryptCtx == null ? null : encryptCtx.getAssertionEncryptionParameters();
+    }
+
     /** {@inheritDoc} */
     @Override
     protected boolean doPreExecute(@Nonnull final ProfileRequestContext profileRequestContext) {
         if (!super.doPreExecute(profileRequestContext)) {
             return false;
         }
-        final EncryptionContext encryptCtx = encryptionContextLookupStrategy.apply(profileRequestContext);
-        if (encryptCtx == null) {
+        if (encryptionContextLookupStrategy.apply(profileRequestContext) == null) {
             log.error("{} No EncryptionContext returned by lookup strategy", getLogPrefix());
             ActionSupport.buildEvent(profileRequestContext, EventIds.INVALID_PROFILE_CTX);
             return false;
         }
-        params = encryptCtx.getAssertionEncryptionParameters();
-        if (params == null) {
+        if (getEncryptionParameters(profileRequestContext) == null) {
             log.debug("{} No Encryption parameters, nothing to do", getLogPrefix());
             return false;
         }
-        if (getOidcResponseContext().getProcessedToken() != null) {
-            payload = new Payload((SignedJWT) getOidcResponseContext().getProcessedToken());
-        } else if (getOidcResponseContext().getUserInfo() != null) {
-            payload = new Payload(getOidcResponseContext().getUserInfo().toJSONObject());
-        }
-        if (payload == null) {
-            log.error("{} Instructed to encrypt but no plain text source available", getLogPrefix());
-            ActionSupport.buildEvent(profileRequestContext, EventIds.UNABLE_TO_ENCRYPT);
-            return false;
-        }
         return true;
     }
 
@@ -128,6 +124,19 @@ public class EncryptProcessedToken extends AbstractOIDCResponseAction {
     @Override
     protected void doExecute(@Nonnull final ProfileRequestContext profileRequestContext) {
 
+        final OIDCAuthenticationResponseContext respCtx = getOidcResponseContext(profileRequestContext);
+        Payload payload = null;
+        if (respCtx.getProcessedToken() != null) {
+            payload = new Payload((SignedJWT) respCtx.getProcessedToken());
+        } else if (respCtx.getUserInfo() != null) {
+            payload = new Payload(respCtx.getUserInfo().toJSONObject());
+        }
+        if (payload == null) {
+            log.error("{} Instructed to encrypt but no plain text source available", getLogPrefix());
+            ActionSupport.buildEvent(profileRequestContext, EventIds.UNABLE_TO_ENCRYPT);
+            return;
+        }
+        final EncryptionParameters params = getEncryptionParameters(profileRequestContext);
         JWEAlgorithm encAlg = JWEAlgorithm.parse(params.getKeyTransportEncryptionAlgorithm());
         Credential credential = params.getKeyTransportEncryptionCredential();
         EncryptionMethod encEnc = EncryptionMethod.parse(params.getDataEncryptionAlgorithm());
@@ -149,7 +158,7 @@ public class EncryptProcessedToken extends AbstractOIDCResponseAction {
                 log.error("{} Unsupported algorithm {}", getLogPrefix(), encAlg.getName());
                 ActionSupport.buildEvent(profileRequestContext, EventIds.UNABLE_TO_ENCRYPT);
             }
-            getOidcResponseContext().setProcessedToken(EncryptedJWT.parse(jweObject.serialize()));
+            respCtx.setProcessedToken(EncryptedJWT.parse(jweObject.serialize()));
         } catch (JOSEException | ParseException e) {
             log.error("{} Encryption failed {}", getLogPrefix(), e.getMessage());
             ActionSupport.buildEvent(profileRequestContext, EventIds.UNABLE_TO_ENCRYPT);
@@ -0,0 +1,241 @@
+/*
+ * Copyright (c) 2017 - 2020, GÉANT
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an “AS IS” BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.geant.idpextension.oidc.profile.impl;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
+import net.shibboleth.utilities.java.support.logic.Constraint;
+
+import org.opensaml.profile.context.ProfileRequestContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.webflow.definition.FlowDefinition;
+import org.springframework.webflow.execution.RequestContext;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+/**
+ * The invocation handler of the proxies measuring the execution of the wrapped profile actions. The proxies implement
+ * all the interfaces of the wrapped action, including the Web Flow <code>Action</code> and the OpenSAML
+ * <code>ProfileAction</code>. The latency of both execute methods is recorded to a timer and, if enabled, the bytes
+ * allocated by the executing thread to a histogram, both named by the flow id and the bean id of the action. The
+ * executions outside a flow are named by the profile id instead of the flow id. Executions slower than the threshold
+ * are logged.
+ * 
+ * <p>
+ * The proxies are created by {@link ProfileActionInstrumentationBeanPostProcessor}, which also holds the metrics.
+ * </p>
+ */
+public final class InstrumentedProfileAction implements InvocationHandler {
+
+    /** Prefix of the metric names. */
+    @Nonnull
+    @NotEmpty
+    public static final String METRIC_PREFIX = "org.geant.idpextension.oidc.profile.action";
+
+    /** Class logger. */
+    @Nonnull
+    private final Logger log = LoggerFactory.getLogger(InstrumentedProfileAction.class);
+
+    /** The wrapped action. */
+    @Nonnull
+    private final Object action;
+
+    /** The bean id of the wrapped action. */
+    @Nonnull
+    private final String beanId;
+
+    /** The post-processor holding the metrics and the settings. */
+    @Nonnull
+    private final ProfileActionInstrumentationBeanPostProcessor instrumentation;
+
+    /**
+     * Constructor.
+     * 
+     * @param wrapped the action to measure
+     * @param id the bean id of the action
+     * @param postProcessor the post-processor holding the metrics and the settings
+     */
+    InstrumentedProfileAction(@Nonnull final Object wrapped, @Nonnull @NotEmpty final String id,
+            @Nonnull final ProfileActionInstrumentationBeanPostProcessor postProcessor) {
+        action = Constraint.isNotNull(wrapped, "Action cannot be null");
+        beanId = Constraint.isNotNull(id, "Bean id cannot be null");
+        instrumentation = Constraint.isNotNull(postProcessor, "Post-processor cannot be null");
+    }
+
+    /**
+     * Get the wrapped action.
+     * 
+     * @return the wrapped action
+     */
+    @Nonnull
+    public Object getAction() {
+        return action;
+    }
+
+    /**
+     * Get the action wrapped by an instrumentation proxy.
+     * 
+     * @param bean the bean, possibly an instrumentation proxy
+     * @return the wrapped action if the bean is an instrumentation proxy, the bean otherwise
+     */
+    @Nullable
+    public static Object unwrap(@Nullable final Object bean) {
+        if (bean != null && Proxy.isProxyClass(bean.getClass())
+                && Proxy.getInvocationHandler(bean) instanceof InstrumentedProfileAction) {
+            return ((InstrumentedProfileAction) Proxy.getInvocationHandler(bean)).getAction();
+        }
+        return bean;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+        final int argCount = args == null ? 0 : args.length;
+        if (argCount == 1 && "execute".equals(method.getName())) {
+            if (args[0] instanceof RequestContext) {
+                return measure(method, args, getFlowId((RequestContext) args[0]));
+            }
+            if (args[0] instanceof ProfileRequestContext) {
+                final String profileId = ((ProfileRequestContext) args[0]).getProfileId();
+                return measure(method, args, profileId != null ? profileId : "unknown");
+            }
+        }
+        if (argCount == 1 && "equals".equals(method.getName()) && method.getParameterTypes()[0] == Object.class) {
+            return proxy == args[0];
+        }
+        if (argCount == 0 && "hashCode".equals(method.getName())) {
+            return System.identityHashCode(proxy);
+        }
+        if (argCount == 0 && "toString".equals(method.getName())) {
+            return "Instrumented " + action.toString();
+        }
+        return invokeAction(method, args);
+    }
+
+    /**
+     * Executes the wrapped action and records its metrics.
+     * 
+     * @param method the execute method
+     * @param args the arguments of the method
+     * @param flowId the id of the flow the action is executed in
+     * @return the result of the method
+     * @throws Throwable if thrown by the wrapped action
+     */
+    @Nullable
+    private Object measure(@Nonnull final Method method, @Nonnull final Object[] args,
+            @Nonnull final String flowId) throws Throwable {
+        final com.sun.management.ThreadMXBean threadBean = instrumentation.getThreadBean();
+        final long threadId = threadBean != null ? Thread.currentThread().getId() : 0;
+        final long allocatedBefore = threadBean != null ? threadBean.getThreadAllocatedBytes(threadId) : 0;
+        final long start = System.nanoTime();
+        try {
+            return invokeAction(method, args);
+        } finally {
+            final long elapsed = System.nanoTime() - start;
+            final ActionMetrics metrics = instrumentation.getMetrics(flowId, beanId);
+            metrics.latency.update(elapsed, TimeUnit.NANOSECONDS);
+            if (threadBean != null && metrics.allocatedBytes != null) {
+                final long allocatedAfter = threadBean.getThreadAllocatedBytes(threadId);
+                if (allocatedBefore >= 0 && allocatedAfter >= allocatedBefore) {
+                    metrics.allocatedBytes.update(allocatedAfter - allocatedBefore);
+                }
+            }
+            final long slowThreshold = instrumentation.getSlowThresholdNanos();
+            if (slowThreshold > 0 && elapsed > slowThreshold) {
+                log.warn("Action {} in flow {} took {} ms", beanId, flowId, TimeUnit.NANOSECONDS.toMillis(elapsed));
+            }
+        }
+    }
+
+    /**
+     * Invokes the method on the wrapped action.
+     * 
+     * @param method the method
+     * @param args the arguments of the method
+     * @return the result of the method
+     * @throws Throwable if thrown by the wrapped action
+     */
+    @Nullable
+    private Object invokeAction(@Nonnull final Method method, @Nullable final Object[] args) throws Throwable {
+        try {
+            return method.invoke(action, args);
+        } catch (final InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Get the id of the flow the action is executed in.
+     * 
+     * @param context the request context
+     * @return the id of the flow
+     */
+    @Nonnull
+    private String getFlowId(@Nonnull final RequestContext context) {
+        try {
+            final FlowDefinition flow = context.getActiveFlow();
+            if (flow != null) {
+                return flow.getId();
+            }
+        } catch (final IllegalStateException e) {
+            log.trace("No active flow for action {}", beanId);
+        }
+        return "unknown";
+    }
+
+    /**
+     * The metrics of an action in a flow.
+     */
+    static final class ActionMetrics {
+
+        /** The latency of the action. */
+        @Nonnull
+        private final Timer latency;
+
+        /** The bytes allocated by the action, null if not measured. */
+        @Nullable
+        private final Histogram allocatedBytes;
+
+        /**
+         * Constructor.
+         * 
+         * @param registry the registry for publishing the metrics
+         * @param flowId the flow id
+         * @param beanId the bean id of the action
+         * @param allocations whether the allocations are measured
+         */
+        ActionMetrics(@Nonnull final MetricRegistry registry, @Nonnull final String flowId,
+                @Nonnull final String beanId, final boolean allocations) {
+            latency = registry.timer(MetricRegistry.name(METRIC_PREFIX, flowId, beanId, "latency"));
+            allocatedBytes = allocations
+                    ? registry.histogram(MetricRegistry.name(METRIC_PREFIX, flowId, beanId, "allocatedBytes"))
+                    : null;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2017 - 2020, GÉANT
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an “AS IS” BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.geant.idpextension.oidc.profile.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.shibboleth.idp.attribute.IdPAttribute;
+import net.shibboleth.idp.attribute.context.AttributeContext;
+import net.shibboleth.idp.attribute.resolver.AttributeDefinition;
+import net.shibboleth.idp.attribute.resolver.AttributeResolver;
+import net.shibboleth.utilities.java.support.component.ComponentSupport;
+import net.shibboleth.utilities.java.support.service.ReloadableService;
+import net.shibboleth.utilities.java.support.service.ServiceableComponent;
+
+import org.geant.idpextension.oidc.profile.OidcEventIds;
+import org.geant.idpextension.oidc.storage.AttributeResolutionCache;
+import org.opensaml.profile.action.ActionSupport;
+import org.opensaml.profile.context.ProfileRequestContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Action that looks up the resolved attributes of the principal and the relying party from the
+ * {@link AttributeResolutionCache}. If the attributes are found, they are set as the unfiltered attributes of the
+ * {@link AttributeContext} of the relying party and {@link OidcEventIds#USE_CACHED_ATTRIBUTES} is raised, allowing the
+ * flow to skip the attribute resolution. The attributes still need to be filtered for the request: the attributes to
+ * be filtered are set to separate copies of the cached ones, which the filtering then replaces.
+ * 
+ * <p>
+ * Attributes read from the storage of the cache carry no encoders. If the attribute resolver service is set, the
+ * encoders, display names and descriptions are restored from the attribute definitions of the resolver.
+ * </p>
+ */
+@SuppressWarnings("rawtypes")
+public class LookupCachedAttributes extends AbstractAttributeResolutionCacheAction {
+
+    /** Class logger. */
+    @Nonnull
+    private final Logger log = LoggerFactory.getLogger(LookupCachedAttributes.class);
+
+    /** The attribute resolver service used for restoring the attribute encoders. */
+    @Nullable
+    private ReloadableService<AttributeResolver> attributeResolverService;
+
+    /**
+     * Set the attribute resolver service used for restoring the attribute encoders.
+     * 
+     * @param service the attribute resolver service
+     */
+    public void setAttributeResolverService(@Nullable final ReloadableService<AttributeResolver> service) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        attributeResolverService = service;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void doExecute(@Nonnull final ProfileRequestContext profileRequestContext) {
+        final List<IdPAttribute> attributes =
+                getAttributeResolutionCache().get(getPrincipalName(), getRelyingPartyContext().getRelyingPartyId(),
+                        getRecipientGroup());
+        if (attributes == null) {
+            log.debug("{} No cached attributes for the principal and the relying party, resolving them",
+                    getLogPrefix());
+            return;
+        }
+        restoreEncoders(attributes);
+        final AttributeContext attributeCtx = getRelyingPartyContext().getSubcontext(AttributeContext.class, true);
+        attributeCtx.setUnfilteredIdPAttributes(attributes);
+        attributeCtx.setIdPAttributes(copy(attributes));
+        log.debug("{} Using {} cached attributes of the principal for the relying party", getLogPrefix(),
+                attributes.size());
+        ActionSupport.buildEvent(profileRequestContext, OidcEventIds.USE_CACHED_ATTRIBUTES);
+    }
+
+    /**
+     * Copies the attributes, so that the filtering does not share the instances of the unfiltered attributes.
+     * 
+     * @param attributes the attributes to copy
+     * @return the copies
+     */
+    @Nonnull
+    private List<IdPAttribute> copy(@Nonnull final List<IdPAttribute> attributes) {
+        final List<IdPAttribute> copies = new ArrayList<>(attributes.size());
+        for (final IdPAttribute attribute : attributes) {
+            try {
+                copies.add(attribute.clone());
+            } catch (final CloneNotSupportedException e) {
+                log.warn("{} Unable to copy attribute {}, filtering the cached instance", getLogPrefix(),
+                        attribute.getId());
+                copies.add(attribute);
+            }
+        }
+        return copies;
+    }
+
+    /**
+     * Restores the encoders, display names and descriptions of the attributes lacking encoders from the attribute
+     * definitions of the resolver.
+     * 
+     * @param attributes the attributes
+     */
+    private void restoreEncoders(@Nonnull final List<IdPAttribute> attributes) {
+        if (attributeResolverService == null) {
+            return;
+        }
+        ServiceableComponent<AttributeResolver> component = null;
+        try {
+            for (final IdPAttribute attribute : attributes) {
+                if (!attribute.getEncoders().isEmpty()) {
+                    continue;
+                }
+                if (component == null) {
+                    component = attributeResolverService.getServiceableComponent();
+                    if (component == null) {
+                        log.warn("{} Attribute resolver service unavailable, unable to restore attribute encoders",
+                                getLogPrefix());
+                        return;
+                    }
+                }
+                final Map<String, AttributeDefinition> definitions =
+                        component.getComponent().getAttributeDefinitions();
+                final AttributeDefinition definition = definitions.get(attribute.getId());
+                if (definition != null) {
+                    attribute.setEncoders(definition.getAttributeEncoders());
+                    attribute.setDisplayNames(definition.getDisplayNames());
+                    attribute.setDisplayDescriptions(definition.getDisplayDescriptions());
+                }
+            }
+        } finally {
+            if (component != null) {
+                component.unpinComponent();
+            }
+        }
+    }
+
+}
@@ -101,6 +101,10 @@ public class OIDCMetadataLookupHandler extends AbstractMessageHandler {
         ComponentSupport.ifNotInitializedThrowUninitializedComponentException(this);
         // Resolve client id from inbound message
         final ClientID clientId = clientIDLookupStrategy.apply(messageContext);
+        if (clientId == null) {
+            log.warn("{} No client id in the request, no client information to look up", getLogPrefix());
+            return;
+        }
         // Resolve metadata for client id
         final ClientIDCriterion clientCriterion = new ClientIDCriterion(clientId);
         final CriteriaSet criteria = new CriteriaSet(clientCriterion);
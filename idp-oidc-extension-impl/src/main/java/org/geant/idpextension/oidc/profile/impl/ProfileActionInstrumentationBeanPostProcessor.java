@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2017 - 2020, GÉANT
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an “AS IS” BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.geant.idpextension.oidc.profile.impl;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.shibboleth.utilities.java.support.annotation.Duration;
+import net.shibboleth.utilities.java.support.annotation.constraint.NonNegative;
+import net.shibboleth.utilities.java.support.logic.Constraint;
+
+import org.geant.idpextension.oidc.profile.impl.InstrumentedProfileAction.ActionMetrics;
+import org.opensaml.core.metrics.MetricsSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.util.ClassUtils;
+import org.springframework.webflow.execution.Action;
+
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Post-processes the Web Flow actions of the flows, wrapping them to proxies handled by
+ * {@link InstrumentedProfileAction} that record the per-action latency, optionally the bytes allocated by the
+ * executing thread, and log slow executions. The proxies implement all the interfaces of the actions, so the adapted
+ * OpenSAML profile actions remain profile actions.
+ * 
+ * <p>
+ * The thread bean and the metrics of each action in each flow are resolved once and kept here, so that the prototype
+ * actions wrapped for every request share them. The beans are returned as such if the instrumentation is disabled or
+ * no metric registry is available, the disabled instrumentation has no cost at runtime. The post-processor should be
+ * declared after the <code>ProfileActionBeanPostProcessor</code> so that the OpenSAML profile actions are instrumented
+ * in their adapted form.
+ * </p>
+ */
+public class ProfileActionInstrumentationBeanPostProcessor implements BeanPostProcessor {
+
+    /** Class logger. */
+    @Nonnull
+    private final Logger log = LoggerFactory.getLogger(ProfileActionInstrumentationBeanPostProcessor.class);
+
+    /** The metrics of the actions, keyed by the flow id and the bean id. */
+    @Nonnull
+    private final ConcurrentMap<String, ConcurrentMap<String, ActionMetrics>> metrics;
+
+    /** Whether the actions are instrumented. */
+    private boolean enabled;
+
+    /** The thread bean for measuring the allocations, null if allocations are not measured. */
+    @Nullable
+    private com.sun.management.ThreadMXBean threadBean;
+
+    /** The threshold for logging slow executions in nanoseconds, 0 if disabled. */
+    @NonNegative
+    private long slowThreshold;
+
+    /** The registry for publishing the metrics. */
+    @Nullable
+    private MetricRegistry metricRegistry;
+
+    /** Constructor. */
+    public ProfileActionInstrumentationBeanPostProcessor() {
+        metrics = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Set whether the actions are instrumented.
+     * 
+     * @param flag whether the actions are instrumented
+     */
+    public void setEnabled(final boolean flag) {
+        enabled = flag;
+    }
+
+    /**
+     * Set whether the bytes allocated by the executing thread are measured.
+     * 
+     * @param flag whether the allocations are measured
+     */
+    public void setAllocations(final boolean flag) {
+        threadBean = flag ? getAllocationMeasuringThreadBean() : null;
+    }
+
+    /**
+     * Set the threshold for logging slow executions.
+     * 
+     * @param threshold the threshold in milliseconds, 0 to disable
+     */
+    @Duration
+    public void setSlowThreshold(@NonNegative @Duration final long threshold) {
+        slowThreshold = TimeUnit.MILLISECONDS.toNanos(
+                Constraint.isGreaterThanOrEqual(0, threshold, "Slow threshold must be greater than or equal to 0"));
+    }
+
+    /**
+     * Set the registry for publishing the metrics. Defaults to the registry from {@link MetricsSupport}.
+     * 
+     * @param registry the metric registry
+     */
+    public void setMetricRegistry(@Nullable final MetricRegistry registry) {
+        metricRegistry = registry;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Object postProcessBeforeInitialization(final Object bean, final String beanName) throws BeansException {
+        return bean;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Object postProcessAfterInitialization(final Object bean, final String beanName) throws BeansException {
+        if (!enabled || !(bean instanceof Action) || InstrumentedProfileAction.unwrap(bean) != bean) {
+            return bean;
+        }
+        if (getMetricRegistry() == null) {
+            return bean;
+        }
+        return Proxy.newProxyInstance(bean.getClass().getClassLoader(), ClassUtils.getAllInterfaces(bean),
+                new InstrumentedProfileAction(bean, beanName, this));
+    }
+
+    /**
+     * Get the metrics of the action in the flow, created on the first execution.
+     * 
+     * @param flowId the flow id
+     * @param beanId the bean id of the action
+     * @return the metrics of the action in the flow
+     */
+    @Nonnull
+    ActionMetrics getMetrics(@Nonnull final String flowId, @Nonnull final String beanId) {
+        ConcurrentMap<String, ActionMetrics> flowMetrics = metrics.get(flowId);
+        if (flowMetrics == null) {
+            metrics.putIfAbsent(flowId, new ConcurrentHashMap<String, ActionMetrics>());
+            flowMetrics = metrics.get(flowId);
+        }
+        ActionMetrics actionMetrics = flowMetrics.get(beanId);
+        if (actionMetrics == null) {
+            flowMetrics.putIfAbsent(beanId, new ActionMetrics(metricRegistry, flowId, beanId, threadBean != null));
+            actionMetrics = flowMetrics.get(beanId);
+        }
+        return actionMetrics;
+    }
+
+    /**
+     * Get the thread bean for measuring the allocations.
+     * 
+     * @return the thread bean, null if allocations are not measured
+     */
+    @Nullable
+    com.sun.management.ThreadMXBean getThreadBean() {
+        return threadBean;
+    }
+
+    /**
+     * Get the threshold for logging slow executions.
+     * 
+     * @return the threshold in nanoseconds, 0 if disabled
+     */
+    long getSlowThresholdNanos() {
+        return slowThreshold;
+    }
+
+    /**
+     * Get the registry for publishing the metrics.
+     * 
+     * @return the metric registry, null if not available
+     */
+    @Nullable
+    private MetricRegistry getMetricRegistry() {
+        if (metricRegistry == null) {
+            metricRegistry = MetricsSupport.getMetricRegistry();
+        }
+        return metricRegistry;
+    }
+
+    /**
+     * Get the thread bean measuring the allocations of the threads.
+     * 
+     * @return the thread bean, null if the JVM does not measure allocations
+     */
+    @Nullable
+    private com.sun.management.ThreadMXBean getAllocationMeasuringThreadBean() {
+        final java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()
+                && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemoryEnabled()) {
+            return (com.sun.management.ThreadMXBean) bean;
+        }
+        log.warn("Thread allocation measurement not supported by the JVM, action allocations are not measured");
+        return null;
+    }
+}
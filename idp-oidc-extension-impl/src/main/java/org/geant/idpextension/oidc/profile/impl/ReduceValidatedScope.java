@@ -16,9 +16,9 @@
 
 package org.geant.idpextension.oidc.profile.impl;
 
-import java.util.List;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import org.geant.idpextension.oidc.messaging.ScopeRegistry;
 import org.geant.idpextension.oidc.messaging.context.OIDCAuthenticationResponseTokenClaimsContext;
 import org.geant.idpextension.oidc.profile.context.navigate.OIDCAuthenticationResponseContextLookupFunction;
 import org.opensaml.messaging.context.BaseContext;
@@ -41,6 +41,8 @@ import net.shibboleth.utilities.java.support.logic.Constraint;
  * If in the case we do have scope request parameter we remove token delivery attributes as we have no way of
  * reproducing the circumstances they were produced in. ie. no way of telling if the scope change effects to their
  * release.
+ * 
+ * If a {@link ScopeRegistry} is set, the reduced scope is the shared canonical instance of the registry.
  */
 
 public class ReduceValidatedScope extends AbstractOIDCTokenResponseAction {
@@ -58,6 +60,10 @@ public class ReduceValidatedScope extends AbstractOIDCTokenResponseAction {
     @Nullable
     private OIDCAuthenticationResponseTokenClaimsContext tokenClaimsCtx;
 
+    /** The registry of canonical scopes, if any. */
+    @Nullable
+    private ScopeRegistry scopeRegistry;
+
     /** Constructor. */
     ReduceValidatedScope() {
         tokenClaimsContextLookupStrategy =
@@ -79,6 +85,16 @@ public class ReduceValidatedScope extends AbstractOIDCTokenResponseAction {
                 "OIDCAuthenticationResponseTokenClaimsContextt lookup strategy cannot be null");
     }
 
+    /**
+     * Set the registry of canonical scopes.
+     * 
+     * @param registry the registry of canonical scopes
+     */
+    public void setScopeRegistry(@Nullable final ScopeRegistry registry) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        scopeRegistry = registry;
+    }
+
     /** {@inheritDoc} */
     @SuppressWarnings("rawtypes")
     @Override
@@ -87,15 +103,21 @@ public class ReduceValidatedScope extends AbstractOIDCTokenResponseAction {
         if (requestedScope == null) {
             return;
         }
-        List<String> validatedScopes = getOidcResponseContext().getScope().toStringList();
-        log.debug("{} Original scope {}", getLogPrefix(), getOidcResponseContext().getScope().toString());
-        validatedScopes.retainAll(requestedScope.toStringList());
-        Scope reducedScope = new Scope();
-        for (String scope : validatedScopes) {
-            reducedScope.add(scope);
+        final Scope validatedScope = getOidcResponseContext().getScope();
+        log.debug("{} Original scope {}", getLogPrefix(), validatedScope);
+        final Scope reducedScope;
+        if (scopeRegistry != null) {
+            reducedScope = scopeRegistry.retain(validatedScope, requestedScope, false);
+        } else {
+            reducedScope = new Scope();
+            for (Scope.Value scope : validatedScope) {
+                if (requestedScope.contains(scope)) {
+                    reducedScope.add(scope);
+                }
+            }
         }
-        log.debug("{} Reduced scope {}", getLogPrefix(), reducedScope.toString());
-        if (!reducedScope.equals(getOidcResponseContext().getScope())) {
+        log.debug("{} Reduced scope {}", getLogPrefix(), reducedScope);
+        if (!reducedScope.equals(validatedScope)) {
             getOidcResponseContext().setScope(reducedScope);
             tokenClaimsCtx = tokenClaimsContextLookupStrategy.apply(profileRequestContext);
             if (tokenClaimsCtx != null) {
@@ -17,8 +17,11 @@
 package org.geant.idpextension.oidc.profile.impl;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 import org.geant.idpextension.oidc.profile.context.navigate.DefaultRequestedPromptLookupFunction;
+import org.geant.idpextension.oidc.storage.AttributeResolutionCache;
+import org.opensaml.messaging.context.navigate.ChildContextLookup;
 import org.opensaml.profile.context.ProfileRequestContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -27,15 +30,19 @@ import com.google.common.base.Function;
 import com.nimbusds.openid.connect.sdk.OIDCScopeValue;
 import com.nimbusds.openid.connect.sdk.Prompt;
 
+import net.shibboleth.idp.authn.context.SubjectContext;
 import net.shibboleth.idp.consent.context.ConsentManagementContext;
+import net.shibboleth.idp.profile.context.RelyingPartyContext;
 import net.shibboleth.utilities.java.support.component.ComponentSupport;
 import net.shibboleth.utilities.java.support.logic.Constraint;
 
 /**
- * Action that revokes consent if offline_access scope or prompt with consent is requested.
+ * Action that revokes consent if offline_access scope or prompt with consent is requested. If an
+ * {@link AttributeResolutionCache} is set, the cached attributes of the principal for the relying party are evicted
+ * when the consent is revoked.
  */
 @SuppressWarnings("rawtypes")
-public class RevokeConsent extends AbstractOIDCResponseAction {
+public class RevokeConsent extends AbstractStatelessOIDCResponseAction {
 
     /** Class logger. */
     @Nonnull
@@ -45,11 +52,20 @@ public class RevokeConsent extends AbstractOIDCResponseAction {
     @Nonnull
     private Function<ProfileRequestContext, Prompt> promptLookupStrategy;
 
+    /** Strategy used to locate the {@link SubjectContext} associated with a given {@link ProfileRequestContext}. */
+    @Nonnull
+    private Function<ProfileRequestContext, SubjectContext> subjectContextLookupStrategy;
+
+    /** The attribute resolution cache to evict the entries from, null if caching is disabled. */
+    @Nullable
+    private AttributeResolutionCache attributeResolutionCache;
+
     /**
      * Constructor.
      */
     public RevokeConsent() {
         promptLookupStrategy = new DefaultRequestedPromptLookupFunction();
+        subjectContextLookupStrategy = new ChildContextLookup<>(SubjectContext.class);
     }
 
     /**
@@ -62,18 +78,61 @@ public class RevokeConsent extends AbstractOIDCResponseAction {
         promptLookupStrategy = Constraint.isNotNull(strategy, "PromptLookupStrategy lookup strategy cannot be null");
     }
 
+    /**
+     * Set the strategy used to locate the {@link SubjectContext} associated with a given
+     * {@link ProfileRequestContext}.
+     * 
+     * @param strategy lookup strategy
+     */
+    public void setSubjectContextLookupStrategy(
+            @Nonnull final Function<ProfileRequestContext, SubjectContext> strategy) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        subjectContextLookupStrategy = Constraint.isNotNull(strategy, "SubjectContext lookup strategy cannot be null");
+    }
+
+    /**
+     * Set the attribute resolution cache to evict the entries from when the consent is revoked.
+     * 
+     * @param cache the attribute resolution cache
+     */
+    public void setAttributeResolutionCache(@Nullable final AttributeResolutionCache cache) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        attributeResolutionCache = cache;
+    }
+
     /** {@inheritDoc} */
     @Override
     protected void doExecute(@Nonnull final ProfileRequestContext profileRequestContext) {
-        if (getOidcResponseContext().getScope().contains(OIDCScopeValue.OFFLINE_ACCESS)) {
+        if (getOidcResponseContext(profileRequestContext).getScope().contains(OIDCScopeValue.OFFLINE_ACCESS)) {
             log.debug("{} Pre-existing consent revoked as offline_access scope is requested", getLogPrefix());
             profileRequestContext.getSubcontext(ConsentManagementContext.class, true).setRevokeConsent(true);
+            evictCachedAttributes(profileRequestContext);
             return;
         }
         Prompt prompt = promptLookupStrategy.apply(profileRequestContext);
         if (prompt != null && prompt.contains(Prompt.Type.CONSENT)) {
             log.debug("{} Pre-existing consent revoked as user consent is requested", getLogPrefix());
             profileRequestContext.getSubcontext(ConsentManagementContext.class, true).setRevokeConsent(true);
+            evictCachedAttributes(profileRequestContext);
+        }
+    }
+
+    /**
+     * Evicts the cached attributes of the principal for the relying party, if the cache is set.
+     * 
+     * @param profileRequestContext the current profile request context
+     */
+    private void evictCachedAttributes(@Nonnull final ProfileRequestContext profileRequestContext) {
+        if (attributeResolutionCache == null) {
+            return;
+        }
+        final SubjectContext subjectCtx = subjectContextLookupStrategy.apply(profileRequestContext);
+        final RelyingPartyContext rpCtx = profileRequestContext.getSubcontext(RelyingPartyContext.class);
+        if (subjectCtx == null || subjectCtx.getPrincipalName() == null || rpCtx == null
+                || rpCtx.getRelyingPartyId() == null) {
+            log.debug("{} No principal or relying party, no cached attributes to evict", getLogPrefix());
+            return;
         }
+        attributeResolutionCache.evict(subjectCtx.getPrincipalName(), rpCtx.getRelyingPartyId());
     }
 }
\ No newline at end of file
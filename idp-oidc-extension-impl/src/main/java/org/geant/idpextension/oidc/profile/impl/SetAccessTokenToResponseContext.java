@@ -41,6 +41,7 @@ import org.geant.idpextension.oidc.config.OIDCCoreProtocolConfiguration;
 import org.geant.idpextension.oidc.messaging.context.OIDCAuthenticationResponseConsentContext;
 import org.geant.idpextension.oidc.messaging.context.OIDCAuthenticationResponseTokenClaimsContext;
 import org.geant.idpextension.oidc.profile.context.navigate.OIDCAuthenticationResponseContextLookupFunction;
+import org.geant.idpextension.oidc.storage.RevocationEpochCache;
 import org.geant.idpextension.oidc.token.support.AccessTokenClaimsSet;
 import org.geant.idpextension.oidc.token.support.AuthorizeCodeClaimsSet;
 import org.geant.idpextension.oidc.token.support.RefreshTokenClaimsSet;
@@ -110,6 +111,10 @@ public class SetAccessTokenToResponseContext extends AbstractOIDCResponseAction
     @Nonnull
     private Function<ProfileRequestContext, OIDCAuthenticationResponseConsentContext> consentContextLookupStrategy;
 
+    /** The cache the revocation epochs are stamped from, null if not stamped. */
+    @Nullable
+    private RevocationEpochCache revocationEpochCache;
+
     /**
      * Constructor.
      * 
@@ -132,6 +137,18 @@ public class SetAccessTokenToResponseContext extends AbstractOIDCResponseAction
         };
     }
 
+    /**
+     * Set the cache the revocation epochs are stamped from to the access tokens not derived from an authorization
+     * code or a refresh token, the derived ones inherit the stamps. Not stamped if not set.
+     * 
+     * @param cache the revocation epoch cache
+     */
+    public void setRevocationEpochCache(@Nullable final RevocationEpochCache cache) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        revocationEpochCache = cache;
+    }
+
     /**
      * Set the strategy used to locate the {@link OIDCAuthenticationResponseTokenClaimsContext} associated with a given
      * {@link ProfileRequestContext}.
@@ -282,18 +299,27 @@ public class SetAccessTokenToResponseContext extends AbstractOIDCResponseAction
                 consented = consentCtx.getConsentedAttributes();
             }
             // "token id_token" response type. Access token is not derived from Authorization code / Refresh token..
-            claimsSet = new AccessTokenClaimsSet.Builder(idGenerator, authenticationRequest.getClientID(),
-                    issuerLookupStrategy.apply(profileRequestContext), subjectCtx.getPrincipalName(),
-                    getOidcResponseContext().getSubject(), new Date(), dateExp, getOidcResponseContext().getAuthTime(),
-                    getOidcResponseContext().getRedirectURI(), getOidcResponseContext().getScope())
-                            .setACR(getOidcResponseContext().getAcr()).setClaims(authenticationRequest.getClaims())
-                            .setConsentableClaims(consentable).setConsentedClaims(consented).setDlClaims(claims)
-                            .setDlClaimsUI(claimsUI).setNonce(authenticationRequest.getNonce()).build();
+            TokenClaimsSet.Builder<AccessTokenClaimsSet> builder = new AccessTokenClaimsSet.Builder(idGenerator,
+                    authenticationRequest.getClientID(), issuerLookupStrategy.apply(profileRequestContext),
+                    subjectCtx.getPrincipalName(), getOidcResponseContext().getSubject(), new Date(), dateExp,
+                    getOidcResponseContext().getAuthTime(), getOidcResponseContext().getRedirectURI(),
+                    getOidcResponseContext().getScope()).setACR(getOidcResponseContext().getAcr())
+                            .setClaims(authenticationRequest.getClaims()).setConsentableClaims(consentable)
+                            .setConsentedClaims(consented).setDlClaims(claims).setDlClaimsUI(claimsUI)
+                            .setNonce(authenticationRequest.getNonce());
+            if (revocationEpochCache != null) {
+                revocationEpochCache.stampRevocationEpochs(builder, subjectCtx.getPrincipalName(),
+                        authenticationRequest.getClientID().getValue());
+            }
+            claimsSet = builder.build();
         }
         try {
             getOidcResponseContext().setAccessToken(claimsSet.serialize(dataSealer), accessTokenLifetime / 1000);
-            log.debug("{} Setting access token {} as {} to response context ", getLogPrefix(), claimsSet.serialize(),
-                    getOidcResponseContext().getAccessToken());
+            getOidcResponseContext().setAccessTokenClaimsSet(claimsSet);
+            if (log.isDebugEnabled()) {
+                log.debug("{} Setting access token {} as {} to response context ", getLogPrefix(),
+                        claimsSet.serialize(), getOidcResponseContext().getAccessToken());
+            }
         } catch (DataSealerException e) {
             log.error("{} Access Token generation failed {}", getLogPrefix(), e.getMessage());
             ActionSupport.buildEvent(profileRequestContext, EventIds.UNABLE_TO_ENCRYPT);
@@ -32,7 +32,7 @@ import com.google.common.base.Function;
  * {@link ProfileRequestContext#getOutboundMessageContext()}.
  */
 @SuppressWarnings("rawtypes")
-public class SetAuthenticationTimeToResponseContext extends AbstractOIDCResponseAction {
+public class SetAuthenticationTimeToResponseContext extends AbstractStatelessOIDCResponseAction {
 
     /** Class logger. */
     @Nonnull
@@ -70,7 +70,7 @@ public class SetAuthenticationTimeToResponseContext extends AbstractOIDCResponse
             return;
         }
         log.debug("{} Setting authentication time to {}", getLogPrefix(), value);
-        getOidcResponseContext().setAuthTime(value);
+        getOidcResponseContext(profileRequestContext).setAuthTime(value);
     }
 
 }
\ No newline at end of file
@@ -40,7 +40,9 @@ import org.geant.idpextension.oidc.profile.context.navigate.DefaultRequestCodeCh
 import org.geant.idpextension.oidc.profile.context.navigate.DefaultRequestCodeChallengeMethodLookupFunction;
 import org.geant.idpextension.oidc.profile.context.navigate.DefaultRequestNonceLookupFunction;
 import org.geant.idpextension.oidc.profile.context.navigate.OIDCAuthenticationResponseContextLookupFunction;
+import org.geant.idpextension.oidc.storage.RevocationEpochCache;
 import org.geant.idpextension.oidc.token.support.AuthorizeCodeClaimsSet;
+import org.geant.idpextension.oidc.token.support.TokenClaimsSet;
 import org.opensaml.messaging.context.navigate.ChildContextLookup;
 import org.opensaml.profile.action.ActionSupport;
 import net.shibboleth.utilities.java.support.annotation.ParameterName;
@@ -112,6 +114,10 @@ public class SetAuthorizationCodeToResponseContext extends AbstractOIDCAuthentic
     @Nullable
     private String codeChallenge;
 
+    /** The cache the revocation epochs are stamped from, null if not stamped. */
+    @Nullable
+    private RevocationEpochCache revocationEpochCache;
+
     /**
      * Constructor.
      * 
@@ -136,6 +142,17 @@ public class SetAuthorizationCodeToResponseContext extends AbstractOIDCAuthentic
         };
     }
 
+    /**
+     * Set the cache the revocation epochs are stamped from to the authorization codes. Not stamped if not set.
+     * 
+     * @param cache the revocation epoch cache
+     */
+    public void setRevocationEpochCache(@Nullable final RevocationEpochCache cache) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        revocationEpochCache = cache;
+    }
+
     /**
      * Set the strategy used to locate the Code Challenge of the request.
      * 
@@ -285,7 +302,7 @@ public class SetAuthorizationCodeToResponseContext extends AbstractOIDCAuthentic
             claimsUI = tokenClaimsCtx.getUserinfoClaims();
         }
         Date dateExp = new Date(System.currentTimeMillis() + authCodeLifetime);
-        AuthorizeCodeClaimsSet claimsSet = new AuthorizeCodeClaimsSet.Builder(idGenerator,
+        TokenClaimsSet.Builder<AuthorizeCodeClaimsSet> builder = new AuthorizeCodeClaimsSet.Builder(idGenerator,
                 getAuthenticationRequest().getClientID(), issuerLookupStrategy.apply(profileRequestContext),
                 subjectCtx.getPrincipalName(), getOidcResponseContext().getSubject(), new Date(), dateExp,
                 getOidcResponseContext().getAuthTime(), getOidcResponseContext().getRedirectURI(),
@@ -294,13 +311,20 @@ public class SetAuthorizationCodeToResponseContext extends AbstractOIDCAuthentic
                         .setClaims(getOidcResponseContext().getRequestedClaims()).setDlClaims(claims)
                         .setDlClaimsID(claimsID).setDlClaimsUI(claimsUI).setConsentableClaims(consentable)
                         .setConsentedClaims(consented)
-                        .setCodeChallenge(codeChallenge).build();
+                        .setCodeChallenge(codeChallenge);
+        if (revocationEpochCache != null) {
+            revocationEpochCache.stampRevocationEpochs(builder, subjectCtx.getPrincipalName(),
+                    getAuthenticationRequest().getClientID().getValue());
+        }
+        AuthorizeCodeClaimsSet claimsSet = builder.build();
         // We set token claims set to response context for possible access token generation.
         getOidcResponseContext().setTokenClaimsSet(claimsSet);
         try {
             getOidcResponseContext().setAuthorizationCode(claimsSet.serialize(dataSealer));
-            log.debug("{} Setting authz code {} as {} to response context ", getLogPrefix(), claimsSet.serialize(),
-                    getOidcResponseContext().getAuthorizationCode());
+            if (log.isDebugEnabled()) {
+                log.debug("{} Setting authz code {} as {} to response context ", getLogPrefix(), claimsSet.serialize(),
+                        getOidcResponseContext().getAuthorizationCode());
+            }
         } catch (DataSealerException e) {
             log.error("{} Authorization Code generation failed {}", getLogPrefix(), e.getMessage());
             ActionSupport.buildEvent(profileRequestContext, EventIds.UNABLE_TO_ENCRYPT);
@@ -34,7 +34,7 @@ import com.google.common.base.Function;
  * consent placed there. Token and user info end points use the consent context for forming response.
  **/
 @SuppressWarnings("rawtypes")
-public class SetConsentFromTokenToResponseContext extends AbstractOIDCResponseAction {
+public class SetConsentFromTokenToResponseContext extends AbstractStatelessOIDCResponseAction {
 
     /** Class logger. */
     @Nonnull
@@ -86,8 +86,8 @@ public class SetConsentFromTokenToResponseContext extends AbstractOIDCResponseAc
         JSONArray consentedAttributes = consentedAttributesLookupStrategy.apply(profileRequestContext);
         JSONArray consentableAttributes = consentableAttributesLookupStrategy.apply(profileRequestContext);
         if (consentedAttributes != null || consentableAttributes != null) {
-            OIDCAuthenticationResponseConsentContext consentClaimsCtx =
-                    getOidcResponseContext().getSubcontext(OIDCAuthenticationResponseConsentContext.class, true);
+            OIDCAuthenticationResponseConsentContext consentClaimsCtx = getOidcResponseContext(profileRequestContext)
+                    .getSubcontext(OIDCAuthenticationResponseConsentContext.class, true);
             consentClaimsCtx.getConsentableAttributes().addAll(consentableAttributes);
             consentClaimsCtx.getConsentedAttributes().addAll(consentedAttributes);
         }
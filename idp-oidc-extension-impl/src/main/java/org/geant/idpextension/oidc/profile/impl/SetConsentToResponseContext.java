@@ -130,9 +130,11 @@ public class SetConsentToResponseContext extends AbstractOIDCResponseAction {
             oidcConsentCtx.getConsentableAttributes()
                     .addAll(attributeReleaseContext.getConsentableAttributes().keySet());
         }
-        log.debug("{} Set to response context consented attributes {} and consentable attributes {}", getLogPrefix(),
-                oidcConsentCtx.getConsentedAttributes().toJSONString(),
-                oidcConsentCtx.getConsentableAttributes().toJSONString());
+        if (log.isDebugEnabled()) {
+            log.debug("{} Set to response context consented attributes {} and consentable attributes {}",
+                    getLogPrefix(), oidcConsentCtx.getConsentedAttributes().toJSONString(),
+                    oidcConsentCtx.getConsentableAttributes().toJSONString());
+        }
 
     }
 }
\ No newline at end of file
@@ -138,8 +138,10 @@ public class SetRefreshTokenToResponseContext extends AbstractOIDCResponseAction
         claimsSet = new RefreshTokenClaimsSet(tokenClaimsSet, new Date(), dateExp);
         try {
             getOidcResponseContext().setRefreshToken(claimsSet.serialize(dataSealer));
-            log.debug("{} Setting refresh token {} as {} to response context ", getLogPrefix(), claimsSet.serialize(),
-                    getOidcResponseContext().getRefreshToken());
+            if (log.isDebugEnabled()) {
+                log.debug("{} Setting refresh token {} as {} to response context ", getLogPrefix(),
+                        claimsSet.serialize(), getOidcResponseContext().getRefreshToken());
+            }
         } catch (DataSealerException e) {
             log.error("{} Refresh Token generation failed {}", getLogPrefix(), e.getMessage());
             ActionSupport.buildEvent(profileRequestContext, EventIds.UNABLE_TO_ENCRYPT);
@@ -126,8 +126,10 @@ public class SetRequestObjectToResponseContext extends AbstractOIDCAuthenticatio
 	protected void doExecute(@Nonnull final ProfileRequestContext profileRequestContext) {
 		if (getAuthenticationRequest().getRequestObject() != null) {
 			getOidcResponseContext().setRequestObject(getAuthenticationRequest().getRequestObject());
-			log.debug("{} Request object {} by value stored to oidc response context", getLogPrefix(),
-					getOidcResponseContext().getRequestObject().serialize());
+			if (log.isDebugEnabled()) {
+				log.debug("{} Request object {} by value stored to oidc response context", getLogPrefix(),
+						getOidcResponseContext().getRequestObject().serialize());
+			}
 			return;
 		}
 		final HttpGet httpRequest = new HttpGet(getAuthenticationRequest().getRequestURI());
@@ -139,8 +141,10 @@ public class SetRequestObjectToResponseContext extends AbstractOIDCAuthenticatio
 				String requestObject = EntityUtils.toString(response.getEntity());
 				try {
 					getOidcResponseContext().setRequestObject(JWTParser.parse(requestObject));
-					log.debug("{} Request object {} by reference stored to oidc response context", getLogPrefix(),
-							getOidcResponseContext().getRequestObject().serialize());
+					if (log.isDebugEnabled()) {
+						log.debug("{} Request object {} by reference stored to oidc response context", getLogPrefix(),
+								getOidcResponseContext().getRequestObject().serialize());
+					}
 					return;
 				} catch (ParseException e) {
 					log.error("{} Unable to parse request object from request_uri, {}", getLogPrefix(), e.getMessage());
@@ -17,6 +17,9 @@
 package org.geant.idpextension.oidc.profile.impl;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.geant.idpextension.oidc.messaging.ScopeRegistry;
 import org.geant.idpextension.oidc.profile.context.navigate.DefaultRequestedClaimsLookupFunction;
 import org.opensaml.profile.context.ProfileRequestContext;
 import org.slf4j.Logger;
@@ -29,9 +32,10 @@ import net.shibboleth.utilities.java.support.logic.Constraint;
 
 /**
  * Action that sets requested claims to response context. For instance attribute filtering may use this information.
+ * If a {@link ScopeRegistry} is set, the requested claims are the shared canonical instance of the registry.
  */
 @SuppressWarnings("rawtypes")
-public class SetRequestedClaimsToResponseContext extends AbstractOIDCResponseAction {
+public class SetRequestedClaimsToResponseContext extends AbstractStatelessOIDCResponseAction {
 
     /** Class logger. */
     @Nonnull
@@ -41,6 +45,10 @@ public class SetRequestedClaimsToResponseContext extends AbstractOIDCResponseAct
     @Nonnull
     private Function<ProfileRequestContext, ClaimsRequest> requestedClaimsLookupStrategy;
 
+    /** The registry of canonical claims requests, if any. */
+    @Nullable
+    private ScopeRegistry scopeRegistry;
+
     /**
      * Constructor.
      */
@@ -60,9 +68,21 @@ public class SetRequestedClaimsToResponseContext extends AbstractOIDCResponseAct
                 Constraint.isNotNull(strategy, "RequestedClaimsLookupStrategy lookup strategy cannot be null");
     }
 
+    /**
+     * Set the registry of canonical claims requests.
+     * 
+     * @param registry the registry of canonical claims requests
+     */
+    public void setScopeRegistry(@Nullable final ScopeRegistry registry) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        scopeRegistry = registry;
+    }
+
     /** {@inheritDoc} */
     @Override
     protected void doExecute(@Nonnull final ProfileRequestContext profileRequestContext) {
-        getOidcResponseContext().setRequestedClaims(requestedClaimsLookupStrategy.apply(profileRequestContext));
+        final ClaimsRequest requestedClaims = requestedClaimsLookupStrategy.apply(profileRequestContext);
+        getOidcResponseContext(profileRequestContext).setRequestedClaims(
+                scopeRegistry != null ? scopeRegistry.intern(requestedClaims) : requestedClaims);
     }
 }
\ No newline at end of file
@@ -16,12 +16,22 @@
 
 package org.geant.idpextension.oidc.profile.impl;
 
+import java.net.URI;
+import java.util.Locale;
+import java.util.Set;
+
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
 import net.shibboleth.idp.attribute.resolver.context.AttributeResolutionContext;
 import net.shibboleth.utilities.java.support.component.ComponentSupport;
 import net.shibboleth.utilities.java.support.logic.Constraint;
 
+import org.geant.idpextension.oidc.messaging.context.OIDCMetadataContext;
+import org.geant.idpextension.oidc.metadata.resolver.SectorIdentifierCache;
+import org.geant.idpextension.oidc.metadata.resolver.SectorIdentifierCache.CachedSectorIdentifier;
 import org.geant.idpextension.oidc.profile.OidcEventIds;
+import org.geant.idpextension.oidc.profile.context.navigate.DefaultOIDCMetadataContextLookupFunction;
 import org.geant.idpextension.oidc.profile.context.navigate.SectorIdentifierLookupFunction;
 import org.geant.idpextension.oidc.profile.logic.DefaultSubjectTypeStrategy;
 import org.opensaml.profile.action.ActionSupport;
@@ -35,6 +45,13 @@ import com.nimbusds.openid.connect.sdk.SubjectType;
  * An action that sets {@link AttributeResolutionContext#setAttributeRecipientGroupID} to sector identifier if pairwise
  * subject is requested. This values is later used by computed id generation. If public subject is requested, then a
  * shared value is used instead of sector identifier.
+ * 
+ * <p>
+ * If a {@link SectorIdentifierCache} is set and the client has registered a sector_identifier_uri, the hosts of the
+ * registered redirect_uris are verified against the contents of the sector_identifier_uri, if they are in the cache.
+ * The contents are never fetched here, they are fetched and verified when the client registers. A failed
+ * verification results in the {@link OidcEventIds#INVALID_SECTOR_IDENTIFIER_URI} event.
+ * </p>
  */
 @SuppressWarnings("rawtypes")
 public class SetSectorIdentifierForAttributeResolution extends AbstractOIDCAuthenticationRequestAction {
@@ -51,12 +68,21 @@ public class SetSectorIdentifierForAttributeResolution extends AbstractOIDCAuthe
     @Nonnull
     private Function<ProfileRequestContext, SubjectType> subjectTypeLookupStrategy;
 
+    /** Strategy used to obtain the OIDC metadata context. */
+    @Nonnull
+    private Function<ProfileRequestContext, OIDCMetadataContext> oidcMetadataContextLookupStrategy;
+
+    /** The optional cache for the sector_identifier_uri contents, enables the verification of the hosts. */
+    @Nullable
+    private SectorIdentifierCache sectorIdentifierCache;
+
     /**
      * Constructor.
      */
     public SetSectorIdentifierForAttributeResolution() {
         sectorIdentifierLookupStrategy = new SectorIdentifierLookupFunction();
         subjectTypeLookupStrategy = new DefaultSubjectTypeStrategy();
+        oidcMetadataContextLookupStrategy = new DefaultOIDCMetadataContextLookupFunction();
     }
 
     /**
@@ -81,6 +107,29 @@ public class SetSectorIdentifierForAttributeResolution extends AbstractOIDCAuthe
                 Constraint.isNotNull(strategy, "SubjectTypeLookupStrategy lookup strategy cannot be null");
     }
 
+    /**
+     * Set the strategy used to locate the OIDC metadata context.
+     * 
+     * @param strategy lookup strategy
+     */
+    public void setOIDCMetadataContextLookupStrategy(
+            @Nonnull final Function<ProfileRequestContext, OIDCMetadataContext> strategy) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        oidcMetadataContextLookupStrategy =
+                Constraint.isNotNull(strategy, "OIDCMetadataContext lookup strategy cannot be null");
+    }
+
+    /**
+     * Set the optional cache for the sector_identifier_uri contents. If set, the hosts of the registered redirect_uris
+     * are verified against the contents of the registered sector_identifier_uri.
+     * 
+     * @param cache the cache for the sector_identifier_uri contents
+     */
+    public void setSectorIdentifierCache(@Nullable final SectorIdentifierCache cache) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        sectorIdentifierCache = cache;
+    }
+
     /** {@inheritDoc} */
     @Override
     protected void doExecute(@Nonnull final ProfileRequestContext profileRequestContext) {
@@ -97,6 +146,10 @@ public class SetSectorIdentifierForAttributeResolution extends AbstractOIDCAuthe
             ActionSupport.buildEvent(profileRequestContext, OidcEventIds.MISSING_REDIRECT_URIS);
             return;
         }
+        if (!verifySectorIdentifierHosts(profileRequestContext)) {
+            ActionSupport.buildEvent(profileRequestContext, OidcEventIds.INVALID_SECTOR_IDENTIFIER_URI);
+            return;
+        }
         ((AttributeResolutionContext) profileRequestContext.getSubcontext(AttributeResolutionContext.class, true))
                 .setAttributeRecipientGroupID(sectorIdentifier);
         log.debug(
@@ -104,4 +157,42 @@ public class SetSectorIdentifierForAttributeResolution extends AbstractOIDCAuthe
                 getLogPrefix(), sectorIdentifier);
     }
 
+    /**
+     * Verifies the hosts of the registered redirect URIs against the cached contents of the registered sector
+     * identifier URI.
+     * 
+     * @param profileRequestContext the current profile request context
+     * @return false if the cached contents do not contain all the hosts, true otherwise or if there is no cache, sector
+     *         identifier URI or cached contents
+     */
+    private boolean verifySectorIdentifierHosts(@Nonnull final ProfileRequestContext profileRequestContext) {
+        if (sectorIdentifierCache == null) {
+            return true;
+        }
+        final OIDCMetadataContext ctx = oidcMetadataContextLookupStrategy.apply(profileRequestContext);
+        if (ctx == null || ctx.getClientInformation() == null || ctx.getClientInformation().getOIDCMetadata() == null
+                || ctx.getClientInformation().getOIDCMetadata().getSectorIDURI() == null) {
+            return true;
+        }
+        final URI sectorIdUri = ctx.getClientInformation().getOIDCMetadata().getSectorIDURI();
+        final CachedSectorIdentifier cached = sectorIdentifierCache.peek(sectorIdUri);
+        if (cached == null) {
+            log.debug("{} No cached sector_identifier_uri contents from {}, hosts not verified", getLogPrefix(),
+                    sectorIdUri);
+            return true;
+        }
+        final Set<URI> redirectURIs = ctx.getClientInformation().getOIDCMetadata().getRedirectionURIs();
+        if (redirectURIs != null) {
+            for (final URI redirectURI : redirectURIs) {
+                if (redirectURI.getHost() == null
+                        || !cached.getHosts().contains(redirectURI.getHost().toLowerCase(Locale.ROOT))) {
+                    log.error("{} Redirection uri host {} not listed in sector_identifier_uri {}", getLogPrefix(),
+                            redirectURI.getHost(), sectorIdUri);
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
 }
\ No newline at end of file
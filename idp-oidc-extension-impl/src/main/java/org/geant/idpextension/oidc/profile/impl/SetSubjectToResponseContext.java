@@ -21,6 +21,7 @@ import javax.annotation.Nonnull;
 import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
 import net.shibboleth.utilities.java.support.component.ComponentSupport;
 import net.shibboleth.utilities.java.support.logic.Constraint;
+import org.geant.idpextension.oidc.messaging.context.OIDCAuthenticationResponseContext;
 import org.geant.idpextension.oidc.profile.context.navigate.TokenRequestSubjectLookupFunction;
 import org.opensaml.profile.action.ActionSupport;
 import org.opensaml.profile.action.EventIds;
@@ -34,7 +35,7 @@ import com.nimbusds.openid.connect.sdk.SubjectType;
  * Action that locates subject using strategy. Located subject is set to {@link OIDCAuthenticationResponseContext}.
  **/
 @SuppressWarnings("rawtypes")
-public class SetSubjectToResponseContext extends AbstractOIDCResponseAction {
+public class SetSubjectToResponseContext extends AbstractStatelessOIDCResponseAction {
 
     /** Class logger. */
     @Nonnull
@@ -83,15 +84,16 @@ public class SetSubjectToResponseContext extends AbstractOIDCResponseAction {
     /** {@inheritDoc} */
     @Override
     protected void doExecute(@Nonnull final ProfileRequestContext profileRequestContext) {
+        final OIDCAuthenticationResponseContext respCtx = getOidcResponseContext(profileRequestContext);
         String subject = subjectLookupStrategy.apply(profileRequestContext);
         if (subject == null) {
             log.error("{} Subject may not be null", getLogPrefix());
             ActionSupport.buildEvent(profileRequestContext, EventIds.INVALID_PROFILE_CTX);
             return;
         }
-        getOidcResponseContext().setSubject(subject);
+        respCtx.setSubject(subject);
         if (subjectTypeStrategy != null) {
-            getOidcResponseContext()
+            respCtx
                     .setSubjectType(SubjectType.PUBLIC.equals(subjectTypeStrategy.apply(profileRequestContext))
                             ? "public" : "pairwise");
         }
@@ -21,6 +21,7 @@ import javax.annotation.Nullable;
 
 import net.shibboleth.utilities.java.support.component.ComponentSupport;
 import net.shibboleth.utilities.java.support.logic.Constraint;
+import org.geant.idpextension.oidc.messaging.context.OIDCAuthenticationResponseContext;
 import org.geant.idpextension.oidc.messaging.context.OIDCAuthenticationResponseTokenClaimsContext;
 import org.geant.idpextension.oidc.profile.context.navigate.TokenRequestDeliveryClaimsLookupFunction;
 import org.geant.idpextension.oidc.profile.context.navigate.TokenRequestIDTokenDeliveryClaimsLookupFunction;
@@ -37,7 +38,7 @@ import com.nimbusds.openid.connect.sdk.claims.ClaimsSet;
  * the claims are placed there. Token and user info end points use the context for forming response.
  **/
 @SuppressWarnings("rawtypes")
-public class SetTokenDeliveryAttributesFromTokenToResponseContext extends AbstractOIDCResponseAction {
+public class SetTokenDeliveryAttributesFromTokenToResponseContext extends AbstractStatelessOIDCResponseAction {
 
     /** Class logger. */
     @Nonnull
@@ -100,16 +101,17 @@ public class SetTokenDeliveryAttributesFromTokenToResponseContext extends Abstra
     /** {@inheritDoc} */
     @Override
     protected void doExecute(@Nonnull final ProfileRequestContext profileRequestContext) {
+        final OIDCAuthenticationResponseContext respCtx = getOidcResponseContext(profileRequestContext);
         ClaimsSet claims = deliveryClaimsLookupStrategy.apply(profileRequestContext);
         if (claims != null) {
             OIDCAuthenticationResponseTokenClaimsContext tokenClaimsCtx =
-                    getOidcResponseContext().getSubcontext(OIDCAuthenticationResponseTokenClaimsContext.class, true);
+                    respCtx.getSubcontext(OIDCAuthenticationResponseTokenClaimsContext.class, true);
             tokenClaimsCtx.getClaims().putAll(claims);
         }
         if (idTokenDeliveryClaimsLookupStrategy != null) {
             claims = idTokenDeliveryClaimsLookupStrategy.apply(profileRequestContext);
             if (claims != null) {
-                OIDCAuthenticationResponseTokenClaimsContext tokenClaimsCtx = getOidcResponseContext()
+                OIDCAuthenticationResponseTokenClaimsContext tokenClaimsCtx = respCtx
                         .getSubcontext(OIDCAuthenticationResponseTokenClaimsContext.class, true);
                 tokenClaimsCtx.getIdtokenClaims().putAll(claims);
             }
@@ -118,7 +120,7 @@ public class SetTokenDeliveryAttributesFromTokenToResponseContext extends Abstra
         if (userinfoDeliveryClaimsLookupStrategy != null) {
             claims = userinfoDeliveryClaimsLookupStrategy.apply(profileRequestContext);
             if (claims != null) {
-                OIDCAuthenticationResponseTokenClaimsContext tokenClaimsCtx = getOidcResponseContext()
+                OIDCAuthenticationResponseTokenClaimsContext tokenClaimsCtx = respCtx
                         .getSubcontext(OIDCAuthenticationResponseTokenClaimsContext.class, true);
                 tokenClaimsCtx.getUserinfoClaims().putAll(claims);
             }
@@ -21,6 +21,7 @@ import java.util.Set;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
+import net.minidev.json.JSONArray;
 import net.minidev.json.JSONObject;
 import net.shibboleth.idp.attribute.AttributeEncoder;
 import net.shibboleth.idp.attribute.AttributeEncodingException;
@@ -30,18 +31,25 @@ import net.shibboleth.idp.profile.context.RelyingPartyContext;
 import net.shibboleth.utilities.java.support.component.ComponentSupport;
 import net.shibboleth.utilities.java.support.logic.Constraint;
 import org.geant.idpextension.oidc.attribute.encoding.impl.AbstractOIDCAttributeEncoder;
+import org.geant.idpextension.oidc.config.logic.UserInfoClaimsSnapshotEnabledPredicate;
 import org.geant.idpextension.oidc.messaging.context.OIDCAuthenticationResponseTokenClaimsContext;
+import org.geant.idpextension.oidc.token.support.TokenClaimsSet;
 import org.opensaml.messaging.context.navigate.ChildContextLookup;
 import org.opensaml.profile.context.ProfileRequestContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import com.google.common.base.Function;
 import com.google.common.base.Functions;
+import com.google.common.base.Predicate;
+import com.nimbusds.openid.connect.sdk.claims.ClaimsSet;
 
 /**
  * Action that checks for any released attributes marked for token delivery. For such attributes
  * {@link OIDCAuthenticationResponseTokenClaimsContext} is created under {@link OIDCAuthenticationResponseContext} and
- * the marked attributes are placed there.
+ * the marked attributes are placed there. If the relying party has userinfo claims snapshot enabled, all the released
+ * attributes not denied from userinfo response are placed to the userinfo claims together with the snapshot time
+ * {@link TokenClaimsSet#KEY_DELIVERY_CLAIMS_SNAPSHOT_TIME} and the names of the snapshot claims
+ * {@link TokenClaimsSet#KEY_DELIVERY_CLAIMS_SNAPSHOT_NAMES}.
  **/
 
 @SuppressWarnings("rawtypes")
@@ -57,6 +65,10 @@ public class SetTokenDeliveryAttributesToResponseContext extends AbstractOIDCRes
     @Nonnull
     private Function<ProfileRequestContext, AttributeContext> attributeContextLookupStrategy;
 
+    /** Condition for taking a snapshot of the userinfo claims. */
+    @Nonnull
+    private Predicate<ProfileRequestContext> claimsSnapshotCondition;
+
     /** AttributeContext to use. */
     @Nullable
     private AttributeContext attributeCtx;
@@ -65,6 +77,18 @@ public class SetTokenDeliveryAttributesToResponseContext extends AbstractOIDCRes
     SetTokenDeliveryAttributesToResponseContext() {
         attributeContextLookupStrategy = Functions.compose(new ChildContextLookup<>(AttributeContext.class),
                 new ChildContextLookup<ProfileRequestContext, RelyingPartyContext>(RelyingPartyContext.class));
+        claimsSnapshotCondition = new UserInfoClaimsSnapshotEnabledPredicate();
+    }
+
+    /**
+     * Set the condition for taking a snapshot of the userinfo claims.
+     * 
+     * @param condition condition for taking a snapshot of the userinfo claims
+     */
+    public void setClaimsSnapshotCondition(@Nonnull final Predicate<ProfileRequestContext> condition) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        claimsSnapshotCondition = Constraint.isNotNull(condition, "Claims snapshot condition cannot be null");
     }
 
     /**
@@ -100,6 +124,8 @@ public class SetTokenDeliveryAttributesToResponseContext extends AbstractOIDCRes
     @Override
     protected void doExecute(@Nonnull final ProfileRequestContext profileRequestContext) {
 
+        final boolean snapshot = claimsSnapshotCondition.apply(profileRequestContext);
+        final JSONArray snapshotNames = new JSONArray();
         for (IdPAttribute attribute : attributeCtx.getIdPAttributes().values()) {
             final Set<AttributeEncoder<?>> encoders = attribute.getEncoders();
             if (encoders.isEmpty()) {
@@ -135,6 +161,12 @@ public class SetTokenDeliveryAttributesToResponseContext extends AbstractOIDCRes
                                     tokenClaimsCtx.getUserinfoClaims().setClaim(name, obj.get(name));
                                 }
 
+                            } else if (snapshot && !((AbstractOIDCAttributeEncoder) encoder).getDenyUserinfo()) {
+                                log.debug("{} Attribute {} added to userinfo claims snapshot", getLogPrefix(), name);
+                                getOidcResponseContext()
+                                        .getSubcontext(OIDCAuthenticationResponseTokenClaimsContext.class, true)
+                                        .getUserinfoClaims().setClaim(name, obj.get(name));
+                                snapshotNames.add(name);
                             }
                         }
                     }
@@ -144,5 +176,12 @@ public class SetTokenDeliveryAttributesToResponseContext extends AbstractOIDCRes
                 }
             }
         }
+        if (snapshot) {
+            final ClaimsSet userinfoClaims = getOidcResponseContext()
+                    .getSubcontext(OIDCAuthenticationResponseTokenClaimsContext.class, true).getUserinfoClaims();
+            userinfoClaims.setClaim(TokenClaimsSet.KEY_DELIVERY_CLAIMS_SNAPSHOT_TIME,
+                    System.currentTimeMillis() / 1000);
+            userinfoClaims.setClaim(TokenClaimsSet.KEY_DELIVERY_CLAIMS_SNAPSHOT_NAMES, snapshotNames);
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2017 - 2020, GÉANT
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an “AS IS” BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.geant.idpextension.oidc.profile.impl;
+
+import javax.annotation.Nonnull;
+
+import org.geant.idpextension.oidc.config.OIDCCoreProtocolConfiguration;
+import org.geant.idpextension.oidc.messaging.context.OIDCAuthenticationResponseContext;
+import org.geant.idpextension.oidc.storage.ReferenceTokenDataSealer;
+import org.geant.idpextension.oidc.token.support.AccessTokenClaimsSet;
+import org.opensaml.messaging.context.navigate.ChildContextLookup;
+import org.opensaml.profile.action.ActionSupport;
+import org.opensaml.profile.action.EventIds;
+import org.opensaml.profile.context.ProfileRequestContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Function;
+import com.nimbusds.jose.JOSEObjectType;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+
+import net.shibboleth.idp.profile.context.RelyingPartyContext;
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullAfterInit;
+import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
+import net.shibboleth.utilities.java.support.component.ComponentSupport;
+import net.shibboleth.utilities.java.support.logic.Constraint;
+import net.shibboleth.utilities.java.support.security.DataSealerException;
+
+/**
+ * Action that replaces the sealed access token in {@link OIDCAuthenticationResponseContext#getAccessToken()} with a
+ * signed JWT access token (RFC 9068), if the profile configuration of the relying party is set to issue JWT access
+ * tokens. The JWT is signed with the same signing parameters as the id token and is verifiable with the published key
+ * set. Its audience is the configured list of resource servers, or the issuer by default. The JWT ID is a handle to the
+ * access token claims kept server-side by the {@link ReferenceTokenDataSealer}, instead of the sealed token itself.
+ * Action fails silently if there are no signing parameters available, leaving the sealed access token in place.
+ */
+@SuppressWarnings("rawtypes")
+public class SignAccessToken extends AbstractSignJWTAction {
+
+    /** Class logger. */
+    @Nonnull
+    private Logger log = LoggerFactory.getLogger(SignAccessToken.class);
+
+    /**
+     * Strategy used to locate the {@link RelyingPartyContext} associated with a given {@link ProfileRequestContext}.
+     */
+    @Nonnull
+    private Function<ProfileRequestContext, RelyingPartyContext> relyingPartyContextLookupStrategy;
+
+    /** Sealer keeping the access token claims referenced from the JWT. */
+    @NonnullAfterInit
+    private ReferenceTokenDataSealer tokenSealer;
+
+    /** Constructor. */
+    public SignAccessToken() {
+        relyingPartyContextLookupStrategy = new ChildContextLookup<>(RelyingPartyContext.class);
+    }
+
+    /**
+     * Set the strategy used to locate the {@link RelyingPartyContext} associated with a given
+     * {@link ProfileRequestContext}.
+     *
+     * @param strategy strategy used to locate the {@link RelyingPartyContext} associated with a given
+     *            {@link ProfileRequestContext}
+     */
+    public void setRelyingPartyContextLookupStrategy(
+            @Nonnull final Function<ProfileRequestContext, RelyingPartyContext> strategy) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        relyingPartyContextLookupStrategy =
+                Constraint.isNotNull(strategy, "RelyingPartyContext lookup strategy cannot be null");
+    }
+
+    /**
+     * Set the sealer keeping the access token claims referenced from the JWT.
+     *
+     * @param sealer sealer keeping the access token claims
+     */
+    public void setTokenSealer(@Nonnull final ReferenceTokenDataSealer sealer) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        tokenSealer = Constraint.isNotNull(sealer, "Token sealer cannot be null");
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void doInitialize() throws ComponentInitializationException {
+        super.doInitialize();
+        if (tokenSealer == null) {
+            throw new ComponentInitializationException("Token sealer cannot be null");
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected boolean doPreExecute(@Nonnull final ProfileRequestContext profileRequestContext) {
+
+        if (getJwtAccessTokenConfiguration(profileRequestContext) == null) {
+            log.debug("{} JWT access tokens not enabled for the relying party", getLogPrefix());
+            return false;
+        }
+        if (getSignatureSigningParameters(profileRequestContext) == null) {
+            log.debug("{} No signing parameters, issuing sealed access token", getLogPrefix());
+            return false;
+        }
+        return super.doPreExecute(profileRequestContext);
+    }
+
+    /**
+     * Returns the profile configuration of the relying party if it is set to issue JWT access tokens.
+     *
+     * @param profileRequestContext the current profile request context
+     * @return the profile configuration, null if JWT access tokens are not enabled
+     */
+    private OIDCCoreProtocolConfiguration
+            getJwtAccessTokenConfiguration(@Nonnull final ProfileRequestContext profileRequestContext) {
+        final RelyingPartyContext rpCtx = relyingPartyContextLookupStrategy.apply(profileRequestContext);
+        if (rpCtx == null || !(rpCtx.getProfileConfig() instanceof OIDCCoreProtocolConfiguration)
+                || !((OIDCCoreProtocolConfiguration) rpCtx.getProfileConfig()).getJwtAccessTokens()) {
+            return null;
+        }
+        return (OIDCCoreProtocolConfiguration) rpCtx.getProfileConfig();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected JOSEObjectType getJOSEObjectType() {
+        return AccessTokenClaimsSet.JWT_TYPE_AT;
+    }
+
+    /**
+     * Returns access token claims as input for signing.
+     *
+     * @param profileRequestContext the current profile request context
+     * @return access token claims, null if not available.
+     */
+    @Override
+    protected JWTClaimsSet getClaimsSetToSign(@Nonnull final ProfileRequestContext profileRequestContext) {
+        final OIDCAuthenticationResponseContext respCtx = getOidcResponseContext(profileRequestContext);
+        final AccessTokenClaimsSet claimsSet = respCtx.getAccessTokenClaimsSet();
+        if (claimsSet == null || respCtx.getAccessToken() == null) {
+            log.error("{} No access token available", getLogPrefix());
+            ActionSupport.buildEvent(profileRequestContext, EventIds.INVALID_MSG_CTX);
+            return null;
+        }
+        final String accessToken = respCtx.getAccessToken().getValue();
+        final String reference;
+        if (accessToken.startsWith(ReferenceTokenDataSealer.HANDLE_PREFIX)) {
+            reference = accessToken;
+        } else {
+            try {
+                reference = tokenSealer.reference(claimsSet.serialize(), claimsSet.getExp().getTime());
+            } catch (DataSealerException e) {
+                log.error("{} Unable to store the access token claims {}", getLogPrefix(), e.getMessage());
+                ActionSupport.buildEvent(profileRequestContext, EventIds.UNABLE_TO_ENCRYPT);
+                return null;
+            }
+        }
+        return claimsSet.toJWTAccessTokenClaimsSet(reference,
+                getJwtAccessTokenConfiguration(profileRequestContext).getJwtAccessTokenAudiences());
+    }
+
+    /**
+     * Replaces the sealed access token in response context with the signed access token.
+     *
+     * @param profileRequestContext the current profile request context
+     * @param jwt signed access token.
+     */
+    @Override
+    protected void setSignedJWT(@Nonnull final ProfileRequestContext profileRequestContext, SignedJWT jwt) {
+        final OIDCAuthenticationResponseContext respCtx = getOidcResponseContext(profileRequestContext);
+        respCtx.setAccessToken(jwt.serialize(), respCtx.getAccessToken().getLifetime());
+        log.debug("{} Access token set as signed JWT", getLogPrefix());
+    }
+
+}
@@ -25,6 +25,7 @@ import org.slf4j.LoggerFactory;
 import com.nimbusds.jwt.JWTClaimsSet;
 import com.nimbusds.jwt.SignedJWT;
 import com.nimbusds.oauth2.sdk.ParseException;
+import com.nimbusds.openid.connect.sdk.claims.IDTokenClaimsSet;
 
 /**
  * Action that signs {@link IDTokenClaimsSet} and sets it to {@link OidcResponseContext#getProcessedToken}. Actions fails
@@ -36,51 +37,40 @@ public class SignIDToken extends AbstractSignJWTAction {
     @Nonnull
     private Logger log = LoggerFactory.getLogger(SignIDToken.class);
 
-    /** token claims set to sign. */
-    private JWTClaimsSet idTokenClaims;
-
-    /** {@inheritDoc} */
+    /**
+     * Returns id token claims as input for signing.
+     * 
+     * @param profileRequestContext the current profile request context
+     * @return id token claims, null if not available.
+     */
     @Override
-    protected boolean
-            doPreExecute(@SuppressWarnings("rawtypes") @Nonnull final ProfileRequestContext profileRequestContext) {
-
-        if (!super.doPreExecute(profileRequestContext)) {
-            return false;
-        }
-        if (getOidcResponseContext().getIDToken() == null) {
+    protected JWTClaimsSet getClaimsSetToSign(
+            @SuppressWarnings("rawtypes") @Nonnull final ProfileRequestContext profileRequestContext) {
+        final IDTokenClaimsSet idToken = getOidcResponseContext(profileRequestContext).getIDToken();
+        if (idToken == null) {
             log.error("{} No id token available", getLogPrefix());
             ActionSupport.buildEvent(profileRequestContext, EventIds.INVALID_MSG_CTX);
-            return false;
+            return null;
         }
         try {
-            idTokenClaims = getOidcResponseContext().getIDToken().toJWTClaimsSet();
+            return idToken.toJWTClaimsSet();
         } catch (ParseException e) {
             log.error("{} id token parsing failed {}", getLogPrefix(), e.getMessage());
             ActionSupport.buildEvent(profileRequestContext, EventIds.INVALID_MSG_CTX);
-            return false;
+            return null;
         }
-        return true;
-    }
-
-    /**
-     * Sets id token claims as input for signing.
-     * 
-     * @return id token claims.
-     */
-    @Override
-    protected JWTClaimsSet getClaimsSetToSign() {
-        return idTokenClaims;
     }
 
     /**
      * Set signed id token to response context.
      * 
+     * @param profileRequestContext the current profile request context
      * @param jwt signed id token.
      */
     @Override
-    protected void setSignedJWT(SignedJWT jwt) {
-        getOidcResponseContext().setProcessedToken(jwt);
-
+    protected void setSignedJWT(
+            @SuppressWarnings("rawtypes") @Nonnull final ProfileRequestContext profileRequestContext, SignedJWT jwt) {
+        getOidcResponseContext(profileRequestContext).setProcessedToken(jwt);
     }
 
-}
\ No newline at end of file
+}
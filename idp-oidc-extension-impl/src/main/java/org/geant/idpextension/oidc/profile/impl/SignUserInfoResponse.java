@@ -29,6 +29,7 @@ import com.nimbusds.jose.JWSAlgorithm;
 import com.nimbusds.jwt.JWTClaimsSet;
 import com.nimbusds.jwt.SignedJWT;
 import com.nimbusds.oauth2.sdk.ParseException;
+import com.nimbusds.openid.connect.sdk.claims.UserInfo;
 import net.shibboleth.utilities.java.support.component.ComponentSupport;
 import net.shibboleth.utilities.java.support.logic.Constraint;
 
@@ -42,9 +43,6 @@ public class SignUserInfoResponse extends AbstractSignJWTAction {
     @Nonnull
     private Logger log = LoggerFactory.getLogger(SignUserInfoResponse.class);
 
-    /** token claims set to sign. */
-    private JWTClaimsSet userInfoClaims;
-    
     /** Strategy used to determine user info response signing algorithm. */
     @SuppressWarnings("rawtypes")
     @Nonnull
@@ -74,42 +72,43 @@ public class SignUserInfoResponse extends AbstractSignJWTAction {
     @Override
     protected boolean
             doPreExecute(@SuppressWarnings("rawtypes") @Nonnull final ProfileRequestContext profileRequestContext) {
-        if (!super.doPreExecute(profileRequestContext) || userInfoSigAlgStrategy.apply(profileRequestContext) == null) {
-            return false;
-        }
-        if (getOidcResponseContext().getUserInfo() == null) {
+        return super.doPreExecute(profileRequestContext) && userInfoSigAlgStrategy.apply(profileRequestContext) != null;
+    }
+
+    /**
+     * Returns user info claims as input for signing.
+     * 
+     * @param profileRequestContext the current profile request context
+     * @return user info claims, null if not available.
+     */
+    @Override
+    protected JWTClaimsSet getClaimsSetToSign(
+            @SuppressWarnings("rawtypes") @Nonnull final ProfileRequestContext profileRequestContext) {
+        final UserInfo userInfo = getOidcResponseContext(profileRequestContext).getUserInfo();
+        if (userInfo == null) {
             log.error("{} No userinfo available", getLogPrefix());
             ActionSupport.buildEvent(profileRequestContext, EventIds.INVALID_MSG_CTX);
-            return false;
+            return null;
         }
         try {
-            userInfoClaims = getOidcResponseContext().getUserInfo().toJWTClaimsSet();
+            return userInfo.toJWTClaimsSet();
         } catch (ParseException e) {
             log.error("{} userinfo parsing failed {}", getLogPrefix(), e.getMessage());
             ActionSupport.buildEvent(profileRequestContext, EventIds.INVALID_MSG_CTX);
-            return false;
+            return null;
         }
-        return true;
-    }
-
-    /**
-     * Sets user info claims as input for signing.
-     * 
-     * @return user info claims.
-     */
-    @Override
-    protected JWTClaimsSet getClaimsSetToSign() {
-        return userInfoClaims;
     }
 
     /**
      * Set signed user info to response context.
      * 
+     * @param profileRequestContext the current profile request context
      * @param jwt signed user info response.
      */
     @Override
-    protected void setSignedJWT(SignedJWT jwt) {
-        getOidcResponseContext().setProcessedToken(jwt);
+    protected void setSignedJWT(
+            @SuppressWarnings("rawtypes") @Nonnull final ProfileRequestContext profileRequestContext, SignedJWT jwt) {
+        getOidcResponseContext(profileRequestContext).setProcessedToken(jwt);
     }
 
-}
\ No newline at end of file
+}
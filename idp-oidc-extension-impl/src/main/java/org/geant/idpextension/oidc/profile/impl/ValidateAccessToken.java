@@ -18,9 +18,11 @@ package org.geant.idpextension.oidc.profile.impl;
 
 import java.text.ParseException;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import org.geant.idpextension.oidc.profile.OidcEventIds;
 import org.geant.idpextension.oidc.storage.RevocationCache;
 import org.geant.idpextension.oidc.storage.RevocationCacheContexts;
+import org.geant.idpextension.oidc.storage.RevocationEpochCache;
 import org.geant.idpextension.oidc.token.support.AccessTokenClaimsSet;
 import org.opensaml.profile.action.ActionSupport;
 import org.opensaml.profile.context.ProfileRequestContext;
@@ -55,6 +57,10 @@ public class ValidateAccessToken extends AbstractOIDCUserInfoValidationResponseA
     @NonnullAfterInit
     private RevocationCache revocationCache;
 
+    /** The cache of the revocation epochs, null if not checked. */
+    @Nullable
+    private RevocationEpochCache revocationEpochCache;
+
     /**
      * Constructor.
      * 
@@ -74,6 +80,16 @@ public class ValidateAccessToken extends AbstractOIDCUserInfoValidationResponseA
         revocationCache = Constraint.isNotNull(cache, "ReplayCache cannot be null");
     }
 
+    /**
+     * Set the cache of the revocation epochs. The epochs are not checked if not set.
+     * 
+     * @param cache the revocation epoch cache
+     */
+    public void setRevocationEpochCache(@Nullable final RevocationEpochCache cache) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        revocationEpochCache = cache;
+    }
+
     /** {@inheritDoc} */
     @Override
     protected void doInitialize() throws ComponentInitializationException {
@@ -88,7 +104,9 @@ public class ValidateAccessToken extends AbstractOIDCUserInfoValidationResponseA
         try {
             accessTokenClaimsSet =
                     AccessTokenClaimsSet.parse(getUserInfoRequest().getAccessToken().getValue(), dataSealer);
-            log.debug("{} access token unwrapped {}", getLogPrefix(), accessTokenClaimsSet.serialize());
+            if (log.isDebugEnabled()) {
+                log.debug("{} access token unwrapped {}", getLogPrefix(), accessTokenClaimsSet.serialize());
+            }
         } catch (DataSealerException | ParseException e) {
             log.error("{} Obtaining access token failed {}", getLogPrefix(), e.getMessage());
             ActionSupport.buildEvent(profileRequestContext, OidcEventIds.INVALID_GRANT);
@@ -105,6 +123,12 @@ public class ValidateAccessToken extends AbstractOIDCUserInfoValidationResponseA
             ActionSupport.buildEvent(profileRequestContext, OidcEventIds.INVALID_GRANT);
             return;
         }
+        if (revocationEpochCache != null && revocationEpochCache.isRevoked(accessTokenClaimsSet)) {
+            log.error("{} tokens of the user principal or the client of {} have been revoked", getLogPrefix(),
+                    accessTokenClaimsSet.getID());
+            ActionSupport.buildEvent(profileRequestContext, OidcEventIds.INVALID_GRANT);
+            return;
+        }
         log.debug("{} access token {} validated", getLogPrefix(), accessTokenClaimsSet.getID());
         getOidcResponseContext().setTokenClaimsSet(accessTokenClaimsSet);
         return;
@@ -23,6 +23,7 @@ import javax.annotation.Nullable;
 
 import org.geant.idpextension.oidc.config.navigate.TokenEndpointAuthMethodLookupFunction;
 import org.geant.idpextension.oidc.messaging.context.OIDCMetadataContext;
+import org.geant.idpextension.oidc.metadata.resolver.RemoteJwkSetCache;
 import org.geant.idpextension.oidc.security.impl.JWTSignatureValidationUtil;
 import org.geant.idpextension.oidc.security.impl.OIDCSignatureValidationParameters;
 import org.opensaml.messaging.context.navigate.ChildContextLookup;
@@ -44,6 +45,7 @@ import com.nimbusds.oauth2.sdk.auth.ClientAuthenticationMethod;
 import com.nimbusds.oauth2.sdk.auth.ClientSecretBasic;
 import com.nimbusds.oauth2.sdk.auth.ClientSecretPost;
 import com.nimbusds.oauth2.sdk.auth.JWTAuthentication;
+import com.nimbusds.oauth2.sdk.auth.JWTAuthenticationClaimsSet;
 import com.nimbusds.oauth2.sdk.auth.PlainClientSecret;
 import com.nimbusds.oauth2.sdk.auth.Secret;
 import com.nimbusds.openid.connect.sdk.rp.OIDCClientInformation;
@@ -87,6 +89,10 @@ public class ValidateEndpointAuthentication extends AbstractOIDCRequestAction<Ab
     @Nonnull
     private Function<ProfileRequestContext, SecurityParametersContext> securityParametersLookupStrategy;
 
+    /** The cache of the remote key sets of the clients, null if not used. */
+    @Nullable
+    private RemoteJwkSetCache remoteJwkSetCache;
+
     
     /**
      * Constructor.
@@ -146,6 +152,18 @@ public class ValidateEndpointAuthentication extends AbstractOIDCRequestAction<Ab
                 Constraint.isNotNull(strategy, "SecurityParameterContext lookup strategy cannot be null");
     }
 
+    /**
+     * Set the cache of the remote key sets, invalidated when the signature is made with a key ID not found from the
+     * cached key set of the client.
+     * 
+     * @param cache the remote key set cache, null if not used
+     */
+    public void setRemoteJwkSetCache(@Nullable final RemoteJwkSetCache cache) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        remoteJwkSetCache = cache;
+    }
+
     /** {@inheritDoc} */
     @Override
     protected void doInitialize() throws ComponentInitializationException {
@@ -210,7 +228,12 @@ public class ValidateEndpointAuthentication extends AbstractOIDCRequestAction<Ab
                 final String errorEventId = JWTSignatureValidationUtil.validateSignature(
                         securityParametersLookupStrategy.apply(profileRequestContext), jwt, EventIds.ACCESS_DENIED);
                 if (errorEventId != null) {
+                    JWTSignatureValidationUtil.invalidateUnknownKeySet(remoteJwkSetCache, jwt, clientMetadata);
                     ActionSupport.buildEvent(profileRequestContext, errorEventId);
+                    return;
+                }
+                if (!checkReplay((JWTAuthentication) clientAuth)) {
+                    ActionSupport.buildEvent(profileRequestContext, EventIds.ACCESS_DENIED);
                 }
                 return;
             }
@@ -243,6 +266,28 @@ public class ValidateEndpointAuthentication extends AbstractOIDCRequestAction<Ab
         return false;
     }
     
+    /**
+     * Checks that the identifier of the given client assertion has not been used before by the same client. The
+     * identifiers are only unique per issuer, the client_id is therefore part of the key.
+     * @param clientAuth The JWT client authentication.
+     * @return True if the assertion was not replayed, false otherwise.
+     */
+    protected boolean checkReplay(final JWTAuthentication clientAuth) {
+        final JWTAuthenticationClaimsSet claimsSet = clientAuth.getJWTAuthenticationClaimsSet();
+        if (claimsSet.getJWTID() == null || claimsSet.getExpirationTime() == null) {
+            log.warn("{} The client assertion is missing jti or exp claim", getLogPrefix());
+            return false;
+        }
+        if (!replayCache.check(getClass().getName(),
+                clientAuth.getClientID().getValue() + "!" + claimsSet.getJWTID().getValue(),
+                claimsSet.getExpirationTime().getTime())) {
+            log.warn("{} Replay detected of client assertion {} from client {}", getLogPrefix(), claimsSet.getJWTID(),
+                    clientAuth.getClientID());
+            return false;
+        }
+        return true;
+    }
+
     /**
      * Validates the given client secret against the one stored in the client's metadata.
      * @param secret The secret to be validated.
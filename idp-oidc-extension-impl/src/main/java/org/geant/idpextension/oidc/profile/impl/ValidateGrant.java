@@ -23,11 +23,13 @@ import javax.annotation.Nullable;
 import org.geant.idpextension.oidc.profile.OidcEventIds;
 import org.geant.idpextension.oidc.storage.RevocationCache;
 import org.geant.idpextension.oidc.storage.RevocationCacheContexts;
+import org.geant.idpextension.oidc.storage.RevocationEpochCache;
 import org.geant.idpextension.oidc.token.support.AuthorizeCodeClaimsSet;
 import org.geant.idpextension.oidc.token.support.RefreshTokenClaimsSet;
 import org.geant.idpextension.oidc.token.support.TokenClaimsSet;
 import org.opensaml.messaging.context.navigate.ChildContextLookup;
 import org.opensaml.profile.action.ActionSupport;
+import org.opensaml.profile.action.EventIds;
 import org.opensaml.profile.context.ProfileRequestContext;
 import org.opensaml.storage.ReplayCache;
 import org.slf4j.Logger;
@@ -38,6 +40,7 @@ import com.nimbusds.oauth2.sdk.AuthorizationCodeGrant;
 import com.nimbusds.oauth2.sdk.AuthorizationGrant;
 import com.nimbusds.oauth2.sdk.GrantType;
 import com.nimbusds.oauth2.sdk.RefreshTokenGrant;
+import com.nimbusds.oauth2.sdk.TokenRequest;
 
 import net.shibboleth.idp.profile.IdPEventIds;
 import net.shibboleth.idp.profile.context.RelyingPartyContext;
@@ -56,7 +59,7 @@ import net.shibboleth.utilities.java.support.security.DataSealerException;
  * to response context retrievable as claims {@link OIDCAuthenticationResponseContext#getTokenClaimsSet()}.
  */
 @SuppressWarnings("rawtypes")
-public class ValidateGrant extends AbstractOIDCTokenResponseAction {
+public class ValidateGrant extends AbstractStatelessOIDCResponseAction {
 
     /** Class logger. */
     @Nonnull
@@ -74,16 +77,16 @@ public class ValidateGrant extends AbstractOIDCTokenResponseAction {
     @NonnullAfterInit
     private RevocationCache revocationCache;
 
+    /** The cache of the revocation epochs, null if not checked. */
+    @Nullable
+    private RevocationEpochCache revocationEpochCache;
+
     /**
      * Strategy used to locate the {@link RelyingPartyContext} associated with a given {@link ProfileRequestContext}.
      */
     @Nonnull
     private Function<ProfileRequestContext, RelyingPartyContext> relyingPartyContextLookupStrategy;
 
-    /** The RelyingPartyContext to operate on. */
-    @Nullable
-    private RelyingPartyContext rpCtx;
-
     /**
      * Constructor.
      * 
@@ -129,6 +132,16 @@ public class ValidateGrant extends AbstractOIDCTokenResponseAction {
         revocationCache = Constraint.isNotNull(cache, "ReplayCache cannot be null");
     }
 
+    /**
+     * Set the cache of the revocation epochs. The epochs are not checked if not set.
+     * 
+     * @param cache the revocation epoch cache
+     */
+    public void setRevocationEpochCache(@Nullable final RevocationEpochCache cache) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        revocationEpochCache = cache;
+    }
+
     /** {@inheritDoc} */
     @Override
     protected void doInitialize() throws ComponentInitializationException {
@@ -141,19 +154,28 @@ public class ValidateGrant extends AbstractOIDCTokenResponseAction {
     @Override
     protected boolean doPreExecute(@Nonnull final ProfileRequestContext profileRequestContext) {
 
-        rpCtx = relyingPartyContextLookupStrategy.apply(profileRequestContext);
-        if (rpCtx == null) {
+        if (relyingPartyContextLookupStrategy.apply(profileRequestContext) == null) {
             log.debug("{} No relying party context associated with this profile request", getLogPrefix());
             ActionSupport.buildEvent(profileRequestContext, IdPEventIds.INVALID_RELYING_PARTY_CTX);
             return false;
         }
-        return super.doPreExecute(profileRequestContext);
+        if (!super.doPreExecute(profileRequestContext)) {
+            return false;
+        }
+        if (!(profileRequestContext.getInboundMessageContext().getMessage() instanceof TokenRequest)) {
+            log.error("{} Unable to locate inbound token request", getLogPrefix());
+            ActionSupport.buildEvent(profileRequestContext, EventIds.INVALID_MSG_CTX);
+            return false;
+        }
+        return true;
     }
 
     /** {@inheritDoc} */
     @Override
     protected void doExecute(@Nonnull final ProfileRequestContext profileRequestContext) {
-        AuthorizationGrant grant = getTokenRequest().getAuthorizationGrant();
+        final RelyingPartyContext rpCtx = relyingPartyContextLookupStrategy.apply(profileRequestContext);
+        final AuthorizationGrant grant =
+                ((TokenRequest) profileRequestContext.getInboundMessageContext().getMessage()).getAuthorizationGrant();
         TokenClaimsSet tokenClaimsSet = null;
         if (grant.getType().equals(GrantType.AUTHORIZATION_CODE)) {
             AuthorizationCodeGrant codeGrant = (AuthorizationCodeGrant) grant;
@@ -161,7 +183,9 @@ public class ValidateGrant extends AbstractOIDCTokenResponseAction {
                 try {
                     AuthorizeCodeClaimsSet authzCodeClaimsSet =
                             AuthorizeCodeClaimsSet.parse(codeGrant.getAuthorizationCode().getValue(), dataSealer);
-                    log.debug("{} authz code unwrapped {}", getLogPrefix(), authzCodeClaimsSet.serialize());
+                    if (log.isDebugEnabled()) {
+                        log.debug("{} authz code unwrapped {}", getLogPrefix(), authzCodeClaimsSet.serialize());
+                    }
                     if (!replayCache.check(getClass().getName(), authzCodeClaimsSet.getID(),
                             authzCodeClaimsSet.getExp().getTime())) {
                         log.error("{} Replay detected of authz code {}", getLogPrefix(), authzCodeClaimsSet.getID());
@@ -211,13 +235,19 @@ public class ValidateGrant extends AbstractOIDCTokenResponseAction {
             ActionSupport.buildEvent(profileRequestContext, OidcEventIds.INVALID_GRANT);
             return;
         }
+        if (revocationEpochCache != null && revocationEpochCache.isRevoked(tokenClaimsSet)) {
+            log.error("{} tokens of the user principal or the client of {} have been revoked", getLogPrefix(),
+                    tokenClaimsSet.getID());
+            ActionSupport.buildEvent(profileRequestContext, OidcEventIds.INVALID_GRANT);
+            return;
+        }
         if (!tokenClaimsSet.getClientID().getValue().equals(rpCtx.getRelyingPartyId())) {
             log.error("{} token issued for client {}, expected value was {}", getLogPrefix(),
                     tokenClaimsSet.getClientID().getValue(), rpCtx.getRelyingPartyId());
             ActionSupport.buildEvent(profileRequestContext, OidcEventIds.INVALID_GRANT);
             return;
         }
-        getOidcResponseContext().setTokenClaimsSet(tokenClaimsSet);
+        getOidcResponseContext(profileRequestContext).setTokenClaimsSet(tokenClaimsSet);
 
     }
 }
@@ -93,17 +93,21 @@ public class ValidateRedirectURI extends AbstractOIDCAuthenticationResponseActio
             ActionSupport.buildEvent(profileRequestContext, OidcEventIds.INVALID_REDIRECT_URI);
             return;
         }
+        // the registered URIs are a hash set, the lookup does not depend on their number
         if (redirectionURIs.contains(requestRedirectURI)) {
             getOidcResponseContext().setRedirectURI(requestRedirectURI);
             log.debug("{} Redirection URI validated {}", getLogPrefix(), requestRedirectURI);
             return;
         }
-        String registered = "";
-        for (URI uri : redirectionURIs) {
-            registered += registered.isEmpty() ? uri.toString() : ", " + uri.toString();
+        log.error("{} Redirection URI {} not matching any of the {} registered Redirection URIs", getLogPrefix(),
+                requestRedirectURI, redirectionURIs.size());
+        if (log.isDebugEnabled()) {
+            final StringBuilder registeredURIs = new StringBuilder();
+            for (URI uri : redirectionURIs) {
+                registeredURIs.append(registeredURIs.length() == 0 ? "" : ", ").append(uri);
+            }
+            log.debug("{} Registered Redirection URIs [{}]", getLogPrefix(), registeredURIs);
         }
-        log.error("{} Redirection URI {} not matching any of the registered Redirection URIs [{}] ", getLogPrefix(),
-                requestRedirectURI.toString(), registered);
         ActionSupport.buildEvent(profileRequestContext, OidcEventIds.INVALID_REDIRECT_URI);
         return;
     }
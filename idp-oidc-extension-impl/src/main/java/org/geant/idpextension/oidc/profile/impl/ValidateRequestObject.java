@@ -21,6 +21,7 @@ import java.text.ParseException;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
+import org.geant.idpextension.oidc.metadata.resolver.RemoteJwkSetCache;
 import org.geant.idpextension.oidc.profile.OidcEventIds;
 import org.geant.idpextension.oidc.security.impl.JWTSignatureValidationUtil;
 import org.geant.idpextension.oidc.security.impl.OIDCSignatureValidationParameters;
@@ -65,6 +66,10 @@ public class ValidateRequestObject extends AbstractOIDCAuthenticationResponseAct
     /** Request Object. */
     private JWT requestObject;
 
+    /** The cache of the remote key sets of the clients, null if not used. */
+    @Nullable
+    private RemoteJwkSetCache remoteJwkSetCache;
+
     /** Constructor. */
     public ValidateRequestObject() {
         securityParametersLookupStrategy = new ChildContextLookup<>(SecurityParametersContext.class);
@@ -83,6 +88,18 @@ public class ValidateRequestObject extends AbstractOIDCAuthenticationResponseAct
                 Constraint.isNotNull(strategy, "SecurityParameterContext lookup strategy cannot be null");
     }
 
+    /**
+     * Set the cache of the remote key sets, invalidated when the signature is made with a key ID not found from the
+     * cached key set of the client.
+     * 
+     * @param cache the remote key set cache, null if not used
+     */
+    public void setRemoteJwkSetCache(@Nullable final RemoteJwkSetCache cache) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        remoteJwkSetCache = cache;
+    }
+
     /** {@inheritDoc} */
     @Override
     protected boolean doPreExecute(@Nonnull final ProfileRequestContext profileRequestContext) {
@@ -117,6 +134,8 @@ public class ValidateRequestObject extends AbstractOIDCAuthenticationResponseAct
             final String errorEventId = JWTSignatureValidationUtil.validateSignature(secParamCtx,
                     (SignedJWT) requestObject, OidcEventIds.INVALID_REQUEST_OBJECT);
             if (errorEventId != null) {
+                JWTSignatureValidationUtil.invalidateUnknownKeySet(remoteJwkSetCache, (SignedJWT) requestObject,
+                        getMetadataContext().getClientInformation().getOIDCMetadata());
                 ActionSupport.buildEvent(profileRequestContext, errorEventId);
                 return;
             }
@@ -16,9 +16,10 @@
 
 package org.geant.idpextension.oidc.profile.impl;
 
-import java.util.Iterator;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
+import org.geant.idpextension.oidc.messaging.ScopeRegistry;
 import org.geant.idpextension.oidc.profile.context.navigate.DefaultRequestResponseTypeLookupFunction;
 import org.geant.idpextension.oidc.profile.context.navigate.DefaultRequestedScopeLookupFunction;
 import org.opensaml.profile.context.ProfileRequestContext;
@@ -35,7 +36,8 @@ import net.shibboleth.utilities.java.support.logic.Constraint;
 
 /**
  * Action that validates requested scopes are registered ones. Validated scopes are stored to response context.
- * Offline_access scope is ignored in authentication endpoint validation unless response type contains code.
+ * Offline_access scope is ignored in authentication endpoint validation unless response type contains code. If a
+ * {@link ScopeRegistry} is set, the validated scopes are the shared canonical instances of the registry.
  */
 @SuppressWarnings("rawtypes")
 public class ValidateScope extends AbstractOIDCAuthenticationResponseAction {
@@ -48,6 +50,10 @@ public class ValidateScope extends AbstractOIDCAuthenticationResponseAction {
     @Nonnull
     private Function<ProfileRequestContext, Scope> scopeLookupStrategy;
 
+    /** The registry of canonical scopes, if any. */
+    @Nullable
+    private ScopeRegistry scopeRegistry;
+
     /**
      * Constructor.
      */
@@ -65,6 +71,16 @@ public class ValidateScope extends AbstractOIDCAuthenticationResponseAction {
         scopeLookupStrategy = Constraint.isNotNull(strategy, "ScopeLookupStrategy lookup strategy cannot be null");
     }
 
+    /**
+     * Set the registry of canonical scopes.
+     * 
+     * @param registry the registry of canonical scopes
+     */
+    public void setScopeRegistry(@Nullable final ScopeRegistry registry) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+        scopeRegistry = registry;
+    }
+
     /** {@inheritDoc} */
     @Override
     protected void doExecute(@Nonnull final ProfileRequestContext profileRequestContext) {
@@ -74,13 +90,28 @@ public class ValidateScope extends AbstractOIDCAuthenticationResponseAction {
                     getMetadataContext().getClientInformation().getID());
             return;
         }
-        Scope requestedScopes = scopeLookupStrategy.apply(profileRequestContext);
-        for (Iterator<Scope.Value> i = requestedScopes.iterator(); i.hasNext();) {
-            Scope.Value scope = i.next();
-            if (!registeredScopes.contains(scope)) {
-                log.warn("{} removing requested scope {} for rp {} as it is not a registered one", getLogPrefix(),
-                        scope.getValue(), getMetadataContext().getClientInformation().getID());
-                i.remove();
+        final Scope scope = scopeLookupStrategy.apply(profileRequestContext);
+        Scope requestedScopes;
+        if (scopeRegistry != null) {
+            requestedScopes = scopeRegistry.retain(scope, registeredScopes, true);
+            if (requestedScopes.size() != scope.size()) {
+                for (Scope.Value value : scope) {
+                    if (!requestedScopes.contains(value)) {
+                        log.warn("{} removing requested scope {} for rp {} as it is not a registered one",
+                                getLogPrefix(), value.getValue(), getMetadataContext().getClientInformation().getID());
+                    }
+                }
+            }
+        } else {
+            // The looked up scope may be shared, for instance with the token claims set, and is not modified.
+            requestedScopes = new Scope();
+            for (Scope.Value value : scope) {
+                if (registeredScopes.contains(value)) {
+                    requestedScopes.add(value);
+                } else {
+                    log.warn("{} removing requested scope {} for rp {} as it is not a registered one", getLogPrefix(),
+                            value.getValue(), getMetadataContext().getClientInformation().getID());
+                }
             }
         }
         if (requestedScopes.contains(OIDCScopeValue.OFFLINE_ACCESS)) {
@@ -88,7 +119,11 @@ public class ValidateScope extends AbstractOIDCAuthenticationResponseAction {
             // remove offline_scope in this first validation turn.
             ResponseType responseType = new DefaultRequestResponseTypeLookupFunction().apply(profileRequestContext);
             if (responseType != null && !responseType.contains(ResponseType.Value.CODE)) {
-                requestedScopes.remove(OIDCScopeValue.OFFLINE_ACCESS);
+                if (scopeRegistry != null) {
+                    requestedScopes = scopeRegistry.remove(requestedScopes, OIDCScopeValue.OFFLINE_ACCESS);
+                } else {
+                    requestedScopes.remove(OIDCScopeValue.OFFLINE_ACCESS);
+                }
             }
         }
         getOidcResponseContext().setScope(requestedScopes);
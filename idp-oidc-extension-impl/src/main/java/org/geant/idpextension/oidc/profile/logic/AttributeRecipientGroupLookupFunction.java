@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2017 - 2020, GÉANT
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an “AS IS” BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.geant.idpextension.oidc.profile.logic;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.shibboleth.idp.attribute.resolver.context.AttributeResolutionContext;
+import net.shibboleth.utilities.java.support.logic.Constraint;
+
+import org.geant.idpextension.oidc.profile.context.navigate.SectorIdentifierLookupFunction;
+import org.opensaml.messaging.context.navigate.ChildContextLookup;
+import org.opensaml.messaging.context.navigate.ContextDataLookupFunction;
+import org.opensaml.profile.context.ProfileRequestContext;
+
+import com.google.common.base.Function;
+import com.nimbusds.openid.connect.sdk.SubjectType;
+
+/**
+ * A function that returns the attribute recipient group (sector identifier) the attributes of the relying party are
+ * resolved for. The value set to the {@link AttributeResolutionContext} is returned if available. Otherwise the value is
+ * derived from the client's registration data the same way as in the authorization flow: public for the public subject
+ * type and the sector identifier for the pairwise subject type.
+ */
+@SuppressWarnings("rawtypes")
+public class AttributeRecipientGroupLookupFunction
+        implements ContextDataLookupFunction<ProfileRequestContext, String> {
+
+    /** The recipient group used for the public subject type. */
+    @Nonnull
+    public static final String PUBLIC_RECIPIENT_GROUP = "public";
+
+    /** Strategy used to locate the {@link AttributeResolutionContext}. */
+    @Nonnull
+    private Function<ProfileRequestContext, AttributeResolutionContext> attributeResolutionContextLookupStrategy;
+
+    /** Strategy used to obtain sector identifier. */
+    @Nonnull
+    private Function<ProfileRequestContext, String> sectorIdentifierLookupStrategy;
+
+    /** Strategy used to obtain subject type. */
+    @Nonnull
+    private Function<ProfileRequestContext, SubjectType> subjectTypeLookupStrategy;
+
+    /**
+     * Constructor.
+     */
+    public AttributeRecipientGroupLookupFunction() {
+        attributeResolutionContextLookupStrategy = new ChildContextLookup<>(AttributeResolutionContext.class);
+        sectorIdentifierLookupStrategy = new SectorIdentifierLookupFunction();
+        subjectTypeLookupStrategy = new DefaultSubjectTypeStrategy();
+    }
+
+    /**
+     * Set the strategy used to locate the {@link AttributeResolutionContext}.
+     * 
+     * @param strategy lookup strategy
+     */
+    public void setAttributeResolutionContextLookupStrategy(
+            @Nonnull final Function<ProfileRequestContext, AttributeResolutionContext> strategy) {
+        attributeResolutionContextLookupStrategy =
+                Constraint.isNotNull(strategy, "AttributeResolutionContext lookup strategy cannot be null");
+    }
+
+    /**
+     * Set the strategy used to locate sector identifier.
+     * 
+     * @param strategy lookup strategy
+     */
+    public void setSectorIdentifierLookupStrategy(@Nonnull final Function<ProfileRequestContext, String> strategy) {
+        sectorIdentifierLookupStrategy =
+                Constraint.isNotNull(strategy, "SectorIdentifierLookupStrategy lookup strategy cannot be null");
+    }
+
+    /**
+     * Set the strategy used to locate subject type.
+     * 
+     * @param strategy lookup strategy
+     */
+    public void setSubjectTypeLookupStrategy(@Nonnull final Function<ProfileRequestContext, SubjectType> strategy) {
+        subjectTypeLookupStrategy =
+                Constraint.isNotNull(strategy, "SubjectTypeLookupStrategy lookup strategy cannot be null");
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    @Nullable
+    public String apply(@Nullable final ProfileRequestContext input) {
+        if (input == null) {
+            return null;
+        }
+        final AttributeResolutionContext resolutionCtx = attributeResolutionContextLookupStrategy.apply(input);
+        if (resolutionCtx != null && resolutionCtx.getAttributeRecipientGroupID() != null) {
+            return resolutionCtx.getAttributeRecipientGroupID();
+        }
+        if (SubjectType.PUBLIC.equals(subjectTypeLookupStrategy.apply(input))) {
+            return PUBLIC_RECIPIENT_GROUP;
+        }
+        return sectorIdentifierLookupStrategy.apply(input);
+    }
+
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2017 - 2020, GÉANT
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an “AS IS” BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.geant.idpextension.oidc.profile.pipeline;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
+import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
+import net.shibboleth.utilities.java.support.annotation.constraint.Unmodifiable;
+import net.shibboleth.utilities.java.support.logic.Constraint;
+import net.shibboleth.utilities.java.support.primitive.StringSupport;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * A stage of a {@link ProfileActionPipeline}, the counterpart of a Web Flow action-state. The actions of the stage are
+ * executed in order. They are referenced by their bean names and resolved by the pipeline, so that prototype actions
+ * are instantiated for each request. After the proceed event the pipeline continues with the next stage, or the stage
+ * set as the target of the proceed transition. The other events are errors unless a transition to another stage is
+ * defined for them.
+ */
+public class PipelineStage {
+
+    /** The name of the stage. */
+    @Nonnull
+    @NotEmpty
+    private final String name;
+
+    /** The bean names of the actions of the stage. */
+    @Nonnull
+    @NonnullElements
+    private final List<String> actionNames;
+
+    /** The names of the stages to continue with, keyed by the event. */
+    @Nonnull
+    @NonnullElements
+    private Map<String, String> transitions;
+
+    /**
+     * Constructor.
+     * 
+     * @param stageName the name of the stage
+     * @param stageActionNames the bean names of the actions of the stage
+     */
+    public PipelineStage(@Nonnull @NotEmpty final String stageName,
+            @Nonnull @NonnullElements final List<String> stageActionNames) {
+        name = Constraint.isNotNull(StringSupport.trimOrNull(stageName), "Stage name cannot be null or empty");
+        actionNames = ImmutableList.copyOf(Constraint.isNotNull(stageActionNames, "Stage actions cannot be null"));
+        transitions = Collections.emptyMap();
+    }
+
+    /**
+     * Get the name of the stage.
+     * 
+     * @return the name of the stage
+     */
+    @Nonnull
+    @NotEmpty
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get the bean names of the actions of the stage.
+     * 
+     * @return the bean names of the actions of the stage
+     */
+    @Nonnull
+    @NonnullElements
+    @Unmodifiable
+    public List<String> getActionNames() {
+        return actionNames;
+    }
+
+    /**
+     * Get the names of the stages to continue with, keyed by the event.
+     * 
+     * @return the transitions of the stage
+     */
+    @Nonnull
+    @NonnullElements
+    @Unmodifiable
+    public Map<String, String> getTransitions() {
+        return transitions;
+    }
+
+    /**
+     * Set the names of the stages to continue with, keyed by the event.
+     * 
+     * @param stageTransitions the transitions of the stage
+     */
+    public void setTransitions(@Nullable final Map<String, String> stageTransitions) {
+        if (stageTransitions == null) {
+            transitions = Collections.emptyMap();
+        } else {
+            transitions = Collections.unmodifiableMap(new HashMap<>(stageTransitions));
+        }
+    }
+
+}
@@ -0,0 +1,386 @@
+/*
+ * Copyright (c) 2017 - 2020, GÉANT
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an “AS IS” BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.geant.idpextension.oidc.profile.pipeline;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullAfterInit;
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullElements;
+import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
+import net.shibboleth.utilities.java.support.annotation.constraint.ThreadSafeAfterInit;
+import net.shibboleth.utilities.java.support.component.AbstractIdentifiableInitializableComponent;
+import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
+import net.shibboleth.utilities.java.support.component.ComponentSupport;
+import net.shibboleth.utilities.java.support.component.InitializableComponent;
+import net.shibboleth.utilities.java.support.logic.Constraint;
+
+import org.geant.idpextension.oidc.profile.impl.AbstractStatelessOIDCResponseAction;
+import org.geant.idpextension.oidc.profile.impl.InstrumentedProfileAction;
+import org.opensaml.profile.action.ActionSupport;
+import org.opensaml.profile.action.EventIds;
+import org.opensaml.profile.action.ProfileAction;
+import org.opensaml.profile.context.EventContext;
+import org.opensaml.profile.context.ProfileRequestContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Executes the ordered {@link PipelineStage}s of a stateless API endpoint directly, without the Spring Web Flow
+ * machinery, keeping the semantics of the oidc/abstract-api flows.
+ * 
+ * <p>
+ * The actions of a stage are executed in order. An event set by an action that matches a transition of the stage
+ * continues the execution from the target stage. The proceed event continues with the next action, or with the next
+ * stage at the end of the stage. Any other event, as well as an uncaught runtime exception reported as
+ * <code>RuntimeException</code>, is an error: the error actions (LogEvent, BuildErrorResponseFromEvent) are executed
+ * with the event in place. Finally the completion actions (EncodeMessage, PostResponsePopulateAuditContext,
+ * WriteAuditLog, RecordResponseComplete) are executed on both the success and the error path.
+ * </p>
+ * 
+ * <p>
+ * The stage names and transitions are compiled to indices on initialization. The actions are referenced by their bean
+ * names. Most profile actions keep per-request state in their fields, so prototype beans are instantiated (and
+ * initialized if needed) for each execution, like Web Flow does for the actions of a flow. Singleton beans are resolved
+ * once and shared by the concurrent executions, they are therefore accepted only if they extend
+ * {@link AbstractStatelessOIDCResponseAction}.
+ * </p>
+ */
+@ThreadSafeAfterInit
+public class ProfileActionPipeline extends AbstractIdentifiableInitializableComponent implements BeanFactoryAware {
+
+    /** The event reported for uncaught runtime exceptions. */
+    @Nonnull
+    @NotEmpty
+    public static final String RUNTIME_EXCEPTION = "RuntimeException";
+
+    /** Class logger. */
+    @Nonnull
+    private final Logger log = LoggerFactory.getLogger(ProfileActionPipeline.class);
+
+    /** The bean factory the actions are resolved from. */
+    @NonnullAfterInit
+    private BeanFactory beanFactory;
+
+    /** The stages of the pipeline. */
+    @Nonnull
+    @NonnullElements
+    private List<PipelineStage> stages;
+
+    /** The bean names of the actions executed on error. */
+    @Nonnull
+    @NonnullElements
+    private List<String> errorActions;
+
+    /** The bean names of the actions executed to complete the response. */
+    @Nonnull
+    @NonnullElements
+    private List<String> completionActions;
+
+    /** The compiled actions of each stage. */
+    @NonnullAfterInit
+    private ActionReference[][] compiledActions;
+
+    /** The compiled transitions of each stage, from event to stage index. */
+    @NonnullAfterInit
+    private Map<String, Integer>[] compiledTransitions;
+
+    /** The compiled error actions. */
+    @NonnullAfterInit
+    private ActionReference[] compiledErrorActions;
+
+    /** The compiled completion actions. */
+    @NonnullAfterInit
+    private ActionReference[] compiledCompletionActions;
+
+    /**
+     * Constructor.
+     */
+    public ProfileActionPipeline() {
+        stages = Collections.emptyList();
+        errorActions = Collections.emptyList();
+        completionActions = Collections.emptyList();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setBeanFactory(@Nonnull final BeanFactory factory) throws BeansException {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        beanFactory = Constraint.isNotNull(factory, "Bean factory cannot be null");
+    }
+
+    /**
+     * Set the stages of the pipeline, in the order of execution.
+     * 
+     * @param pipelineStages the stages of the pipeline
+     */
+    public void setStages(@Nonnull @NonnullElements final List<PipelineStage> pipelineStages) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        stages = ImmutableList.copyOf(Constraint.isNotNull(pipelineStages, "Stages cannot be null"));
+    }
+
+    /**
+     * Set the bean names of the actions executed on error.
+     * 
+     * @param actions the bean names of the actions executed on error
+     */
+    public void setErrorActions(@Nullable @NonnullElements final List<String> actions) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        errorActions = actions == null ? Collections.<String> emptyList() : ImmutableList.copyOf(actions);
+    }
+
+    /**
+     * Set the bean names of the actions executed to complete the response.
+     * 
+     * @param actions the bean names of the actions executed to complete the response
+     */
+    public void setCompletionActions(@Nullable @NonnullElements final List<String> actions) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        completionActions = actions == null ? Collections.<String> emptyList() : ImmutableList.copyOf(actions);
+    }
+
+    /** {@inheritDoc} */
+    @SuppressWarnings("unchecked")
+    @Override
+    protected void doInitialize() throws ComponentInitializationException {
+        super.doInitialize();
+        if (beanFactory == null) {
+            throw new ComponentInitializationException("Bean factory cannot be null");
+        }
+        if (stages.isEmpty()) {
+            throw new ComponentInitializationException("Pipeline must have at least one stage");
+        }
+        final Map<String, Integer> indices = new HashMap<>();
+        for (int i = 0; i < stages.size(); i++) {
+            if (indices.put(stages.get(i).getName(), i) != null) {
+                throw new ComponentInitializationException("Duplicate stage name " + stages.get(i).getName());
+            }
+        }
+        compiledActions = new ActionReference[stages.size()][];
+        compiledTransitions = new Map[stages.size()];
+        for (int i = 0; i < stages.size(); i++) {
+            final PipelineStage stage = stages.get(i);
+            compiledActions[i] = compile(stage.getActionNames());
+            final Map<String, Integer> transitions = new HashMap<>();
+            for (final Map.Entry<String, String> entry : stage.getTransitions().entrySet()) {
+                final Integer target = indices.get(entry.getValue());
+                if (target == null) {
+                    throw new ComponentInitializationException("Stage " + stage.getName()
+                            + " has a transition to an unknown stage " + entry.getValue());
+                }
+                transitions.put(entry.getKey(), target);
+            }
+            compiledTransitions[i] = transitions;
+        }
+        compiledErrorActions = compile(errorActions);
+        compiledCompletionActions = compile(completionActions);
+    }
+
+    /**
+     * Compiles the action bean names to action references. Singleton actions are resolved here and must be stateless,
+     * prototype actions are resolved for each execution.
+     * 
+     * @param names the bean names of the actions
+     * @return the action references
+     * @throws ComponentInitializationException if an action is unknown, of a wrong type or a stateful singleton
+     */
+    @Nonnull
+    private ActionReference[] compile(@Nonnull @NonnullElements final List<String> names)
+            throws ComponentInitializationException {
+        final ActionReference[] references = new ActionReference[names.size()];
+        for (int i = 0; i < names.size(); i++) {
+            final String name = names.get(i);
+            if (!beanFactory.containsBean(name)) {
+                throw new ComponentInitializationException("Pipeline " + getId() + " refers to unknown action " + name);
+            }
+            if (!beanFactory.isTypeMatch(name, ProfileAction.class)) {
+                throw new ComponentInitializationException("Bean " + name + " is not a profile action");
+            }
+            if (beanFactory.isSingleton(name)) {
+                final ProfileAction action = beanFactory.getBean(name, ProfileAction.class);
+                if (!(InstrumentedProfileAction.unwrap(action) instanceof AbstractStatelessOIDCResponseAction)) {
+                    throw new ComponentInitializationException("Action " + name
+                            + " keeps per-request state and cannot be shared, it must be defined as a prototype");
+                }
+                references[i] = new ActionReference(name, action);
+            } else {
+                references[i] = new ActionReference(name, null);
+            }
+        }
+        return references;
+    }
+
+    /**
+     * Executes the pipeline for the request.
+     * 
+     * @param profileRequestContext the profile request context of the request
+     * @return the proceed event, or the event of the error the response was built from
+     */
+    @Nonnull
+    @NotEmpty
+    public String execute(@Nonnull final ProfileRequestContext profileRequestContext) {
+        ComponentSupport.ifNotInitializedThrowUninitializedComponentException(this);
+
+        final String event = executeStages(profileRequestContext);
+        if (!EventIds.PROCEED_EVENT_ID.equals(event)) {
+            log.debug("Pipeline {} raised event {}, building the error response", getId(), event);
+            executeAll(compiledErrorActions, profileRequestContext);
+        }
+        executeAll(compiledCompletionActions, profileRequestContext);
+        return event;
+    }
+
+    /**
+     * Executes the stages of the pipeline.
+     * 
+     * @param profileRequestContext the profile request context of the request
+     * @return the proceed event, or the event of the error
+     */
+    @Nonnull
+    private String executeStages(@Nonnull final ProfileRequestContext profileRequestContext) {
+        int stage = 0;
+        nextStage: while (stage < compiledActions.length) {
+            for (final ActionReference action : compiledActions[stage]) {
+                final String event = executeAction(action, profileRequestContext);
+                if (event == null) {
+                    continue;
+                }
+                final Integer target = compiledTransitions[stage].get(event);
+                if (target != null) {
+                    profileRequestContext.removeSubcontext(EventContext.class);
+                    stage = target;
+                    continue nextStage;
+                }
+                if (!EventIds.PROCEED_EVENT_ID.equals(event)) {
+                    return event;
+                }
+                profileRequestContext.removeSubcontext(EventContext.class);
+            }
+            final Integer target = compiledTransitions[stage].get(EventIds.PROCEED_EVENT_ID);
+            stage = target != null ? target : stage + 1;
+        }
+        return EventIds.PROCEED_EVENT_ID;
+    }
+
+    /**
+     * Executes the action and returns the event it set, if any.
+     * 
+     * @param action the action to execute
+     * @param profileRequestContext the profile request context of the request
+     * @return the event set by the action, null if none was set
+     */
+    @Nullable
+    private String executeAction(@Nonnull final ActionReference action,
+            @Nonnull final ProfileRequestContext profileRequestContext) {
+        try {
+            action.resolve().execute(profileRequestContext);
+        } catch (final RuntimeException e) {
+            log.error("Uncaught runtime exception", e);
+            ActionSupport.buildEvent(profileRequestContext, RUNTIME_EXCEPTION);
+            return RUNTIME_EXCEPTION;
+        }
+        final EventContext eventCtx = profileRequestContext.getSubcontext(EventContext.class);
+        if (eventCtx == null || eventCtx.getEvent() == null) {
+            return null;
+        }
+        final Object event = eventCtx.getEvent();
+        if (event instanceof org.springframework.webflow.execution.Event) {
+            return ((org.springframework.webflow.execution.Event) event).getId();
+        }
+        return event.toString();
+    }
+
+    /**
+     * Executes the actions in order, regardless of the events they set. A runtime exception stops the execution.
+     * 
+     * @param actions the actions to execute
+     * @param profileRequestContext the profile request context of the request
+     */
+    private void executeAll(@Nonnull final ActionReference[] actions,
+            @Nonnull final ProfileRequestContext profileRequestContext) {
+        for (final ActionReference action : actions) {
+            try {
+                action.resolve().execute(profileRequestContext);
+            } catch (final RuntimeException e) {
+                log.error("Uncaught runtime exception while completing the response", e);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Reference to an action of the pipeline, either a shared stateless singleton or a prototype bean.
+     */
+    private final class ActionReference {
+
+        /** The bean name of the action. */
+        @Nonnull
+        private final String name;
+
+        /** The shared action, null for a prototype bean. */
+        @Nullable
+        private final ProfileAction shared;
+
+        /**
+         * Constructor.
+         * 
+         * @param beanName the bean name of the action
+         * @param sharedAction the shared action, null for a prototype bean
+         */
+        private ActionReference(@Nonnull final String beanName, @Nullable final ProfileAction sharedAction) {
+            name = beanName;
+            shared = sharedAction;
+        }
+
+        /**
+         * Returns the action to execute, a new instance for a prototype bean.
+         * 
+         * @return the action to execute
+         */
+        @Nonnull
+        private ProfileAction resolve() {
+            if (shared != null) {
+                return shared;
+            }
+            final ProfileAction action = beanFactory.getBean(name, ProfileAction.class);
+            if (action instanceof InitializableComponent && !((InitializableComponent) action).isInitialized()) {
+                try {
+                    ((InitializableComponent) action).initialize();
+                } catch (final ComponentInitializationException e) {
+                    throw new IllegalStateException("Action " + name + " could not be initialized", e);
+                }
+            }
+            return action;
+        }
+    }
+
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2017 - 2020, GÉANT
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an “AS IS” BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.geant.idpextension.oidc.profile.pipeline;
+
+import java.io.IOException;
+
+import javax.annotation.Nonnull;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import net.shibboleth.utilities.java.support.annotation.constraint.NonnullAfterInit;
+import net.shibboleth.utilities.java.support.annotation.constraint.NotEmpty;
+import net.shibboleth.utilities.java.support.component.AbstractIdentifiableInitializableComponent;
+import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
+import net.shibboleth.utilities.java.support.component.ComponentSupport;
+import net.shibboleth.utilities.java.support.logic.Constraint;
+import net.shibboleth.utilities.java.support.net.HttpServletRequestResponseContext;
+import net.shibboleth.utilities.java.support.primitive.StringSupport;
+
+import org.opensaml.profile.context.ProfileRequestContext;
+import org.springframework.web.HttpRequestHandler;
+
+/**
+ * Serves a stateless API endpoint by executing a {@link ProfileActionPipeline} for each request, in place of the
+ * InitializeProfileRequestContext action and the Web Flow execution of the endpoint.
+ * 
+ * <p>
+ * A new {@link ProfileRequestContext} is created for each request with the profile id and the logging id of the
+ * endpoint. The current request and response are made available through {@link HttpServletRequestResponseContext}
+ * for the duration of the execution, unless already set by the filters of the web application.
+ * </p>
+ */
+public class ProfileActionPipelineRequestHandler extends AbstractIdentifiableInitializableComponent
+        implements HttpRequestHandler {
+
+    /** The pipeline to execute. */
+    @NonnullAfterInit
+    private ProfileActionPipeline pipeline;
+
+    /** The profile id of the endpoint. */
+    @NonnullAfterInit
+    private String profileId;
+
+    /** The logging id of the endpoint. */
+    @NonnullAfterInit
+    private String loggingId;
+
+    /**
+     * Set the pipeline to execute.
+     * 
+     * @param actionPipeline the pipeline to execute
+     */
+    public void setPipeline(@Nonnull final ProfileActionPipeline actionPipeline) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        pipeline = Constraint.isNotNull(actionPipeline, "Pipeline cannot be null");
+    }
+
+    /**
+     * Set the profile id of the endpoint.
+     * 
+     * @param id the profile id
+     */
+    public void setProfileId(@Nonnull @NotEmpty final String id) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        profileId = Constraint.isNotNull(StringSupport.trimOrNull(id), "Profile id cannot be null or empty");
+    }
+
+    /**
+     * Set the logging id of the endpoint.
+     * 
+     * @param id the logging id
+     */
+    public void setLoggingId(@Nonnull @NotEmpty final String id) {
+        ComponentSupport.ifInitializedThrowUnmodifiabledComponentException(this);
+
+        loggingId = Constraint.isNotNull(StringSupport.trimOrNull(id), "Logging id cannot be null or empty");
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void doInitialize() throws ComponentInitializationException {
+        super.doInitialize();
+        if (pipeline == null) {
+            throw new ComponentInitializationException("Pipeline cannot be null");
+        }
+        if (profileId == null) {
+            throw new ComponentInitializationException("Profile id cannot be null");
+        }
+        if (loggingId == null) {
+            loggingId = profileId;
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void handleRequest(final HttpServletRequest request, final HttpServletResponse response)
+            throws ServletException, IOException {
+        ComponentSupport.ifNotInitializedThrowUninitializedComponentException(this);
+
+        final boolean loaded = HttpServletRequestResponseContext.getRequest() == null;
+        if (loaded) {
+            HttpServletRequestResponseContext.loadCurrent(request, response);
+        }
+        try {
+            final ProfileRequestContext profileRequestContext = new ProfileRequestContext();
+            profileRequestContext.setProfileId(profileId);
+            profileRequestContext.setLoggingId(loggingId);
+            profileRequestContext.setBrowserProfile(false);
+            pipeline.execute(profileRequestContext);
+        } finally {
+            if (loaded) {
+                HttpServletRequestResponseContext.clearCurrent();
+            }
+        }
+    }
+
+}
@@ -16,12 +16,15 @@
 
 package org.geant.idpextension.oidc.security.impl;
 
+import java.net.URI;
 import java.security.interfaces.ECPublicKey;
 import java.security.interfaces.RSAPublicKey;
 import java.util.Iterator;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
+import org.geant.idpextension.oidc.metadata.resolver.RemoteJwkSetCache;
 import org.geant.security.jwk.JWKCredential;
 import org.opensaml.profile.action.EventIds;
 import org.opensaml.xmlsec.context.SecurityParametersContext;
@@ -36,6 +39,7 @@ import com.nimbusds.jose.crypto.ECDSAVerifier;
 import com.nimbusds.jose.crypto.MACVerifier;
 import com.nimbusds.jose.crypto.RSASSAVerifier;
 import com.nimbusds.jwt.SignedJWT;
+import com.nimbusds.openid.connect.sdk.rp.OIDCClientMetadata;
 
 /**
  * Generic utility class for helping JWT signature validation.
@@ -114,8 +118,10 @@ public class JWTSignatureValidationUtil {
                     }
                 }
                 verified = true;
-                log.debug("JWT {} verified using algorithm {} and key {}", signedJwt.serialize(), algorithm.getName(),
-                        credential.getKid());
+                if (log.isDebugEnabled()) {
+                    log.debug("JWT {} verified using algorithm {} and key {}", signedJwt.serialize(),
+                            algorithm.getName(), credential.getKid());
+                }
                 break;
             } catch (JOSEException e) {
                 if (it.hasNext()) {
@@ -134,4 +140,26 @@ public class JWTSignatureValidationUtil {
         return null;
     }
 
+    /**
+     * Invalidates the cached remote key set of the client if the JWT is signed with a key ID not found from it. The
+     * client may have rotated its keys after the key set was cached, so the key set is fetched again when next
+     * needed.
+     * 
+     * @param remoteJwkSetCache The cache of the remote key sets, nothing is done if null.
+     * @param signedJwt The signed JWT whose signature validation failed.
+     * @param metadata The metadata of the client.
+     */
+    public static void invalidateUnknownKeySet(@Nullable final RemoteJwkSetCache remoteJwkSetCache,
+            @Nonnull final SignedJWT signedJwt, @Nonnull final OIDCClientMetadata metadata) {
+        final String kid = signedJwt.getHeader().getKeyID();
+        final URI jwkSetUri = metadata.getJWKSetURI();
+        if (remoteJwkSetCache == null || kid == null || jwkSetUri == null) {
+            return;
+        }
+        if (metadata.getJWKSet() == null || metadata.getJWKSet().getKeyByKeyId(kid) == null) {
+            log.info("Key {} not found from the cached key set of {}, invalidating it", kid, jwkSetUri);
+            remoteJwkSetCache.invalidate(RemoteJwkSetCache.CONTEXT_NAME, jwkSetUri);
+        }
+    }
+
 }
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2017 - 2020, GÉANT
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an “AS IS” BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.geant.idpextension.oidc.attribute.encoding.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import ch.qos.logback.classic.Level;
+import net.minidev.json.JSONArray;
+import net.shibboleth.idp.attribute.ByteAttributeValue;
+import net.shibboleth.idp.attribute.IdPAttribute;
+import net.shibboleth.idp.attribute.IdPAttributeValue;
+import net.shibboleth.idp.attribute.StringAttributeValue;
+
+/**
+ * Benchmark of the OIDC attribute encoders with multi-valued attributes, such as group memberships. Only the
+ * correctness of the results is asserted, the timings are logged.
+ */
+public class OIDCAttributeEncoderBenchmarkTest {
+
+    /** Class logger. */
+    private final Logger log = LoggerFactory.getLogger(OIDCAttributeEncoderBenchmarkTest.class);
+
+    /** Number of values encoded per measurement. */
+    private static final int VALUES_PER_MEASUREMENT = 200000;
+
+    @DataProvider(name = "valueCounts")
+    public Object[][] valueCounts() {
+        return new Object[][] {{10}, {1000}, {10000}};
+    }
+
+    /**
+     * Measures the catenation and the array encoding of string values.
+     */
+    @Test(dataProvider = "valueCounts", groups = "benchmark")
+    public void testStringValues(final int count) throws Exception {
+        final IdPAttribute attribute = new IdPAttribute("memberOf");
+        final List<IdPAttributeValue<?>> values = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            values.add(new StringAttributeValue("cn=group" + i + ",ou=groups,dc=example,dc=org"));
+        }
+        attribute.setValues(values);
+        final OIDCStringAttributeEncoder encoder = new OIDCStringAttributeEncoder();
+        encoder.setName("groups");
+        encoder.initialize();
+        final OIDCStringAttributeEncoder arrayEncoder = new OIDCStringAttributeEncoder();
+        arrayEncoder.setName("groups");
+        arrayEncoder.setAsArray(true);
+        arrayEncoder.initialize();
+
+        final String catenated = (String) encoder.encodeValue(attribute);
+        Assert.assertTrue(catenated.startsWith("cn=group0,ou=groups,dc=example,dc=org"));
+        Assert.assertEquals(catenated.split(" ").length, count);
+        Assert.assertEquals(((JSONArray) arrayEncoder.encodeValue(attribute)).size(), count);
+        log.info("{} string values: catenated {} ns/encoding, array {} ns/encoding", count,
+                measure(encoder, attribute, count), measure(arrayEncoder, attribute, count));
+    }
+
+    /**
+     * Measures the catenation and the array encoding of byte values.
+     */
+    @Test(dataProvider = "valueCounts", groups = "benchmark")
+    public void testByteValues(final int count) throws Exception {
+        final IdPAttribute attribute = new IdPAttribute("certificates");
+        final List<IdPAttributeValue<?>> values = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            values.add(new ByteAttributeValue(("value" + i).getBytes("UTF-8")));
+        }
+        attribute.setValues(values);
+        final OIDCByteAttributeEncoder encoder = new OIDCByteAttributeEncoder();
+        encoder.setName("certificates");
+        encoder.initialize();
+        final OIDCByteAttributeEncoder arrayEncoder = new OIDCByteAttributeEncoder();
+        arrayEncoder.setName("certificates");
+        arrayEncoder.setAsArray(true);
+        arrayEncoder.initialize();
+
+        Assert.assertEquals(((String) encoder.encodeValue(attribute)).split(" ").length, count);
+        final JSONArray array = (JSONArray) arrayEncoder.encodeValue(attribute);
+        Assert.assertEquals(array.size(), count);
+        Assert.assertEquals(array.get(count - 1), ((String) encoder.encodeValue(attribute)).split(" ")[count - 1]);
+        log.info("{} byte values: catenated {} ns/encoding, array {} ns/encoding", count,
+                measure(encoder, attribute, count), measure(arrayEncoder, attribute, count));
+    }
+
+    /**
+     * Measures the average encoding time of the attribute, the per value debug logging of the encoders is disabled
+     * while measuring.
+     * 
+     * @return nanoseconds per encoding
+     */
+    private long measure(final AbstractOIDCAttributeEncoder encoder, final IdPAttribute attribute, final int count)
+            throws Exception {
+        final ch.qos.logback.classic.Logger logger =
+                (ch.qos.logback.classic.Logger) LoggerFactory.getLogger("org.geant");
+        final Level originalLevel = logger.getLevel();
+        logger.setLevel(Level.INFO);
+        try {
+            final int iterations = Math.max(10, VALUES_PER_MEASUREMENT / count);
+            // warm up
+            for (int i = 0; i < iterations / 10; i++) {
+                encoder.encodeValue(attribute);
+            }
+            final long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                encoder.encodeValue(attribute);
+            }
+            return (System.nanoTime() - start) / iterations;
+        } finally {
+            logger.setLevel(originalLevel);
+        }
+    }
+}
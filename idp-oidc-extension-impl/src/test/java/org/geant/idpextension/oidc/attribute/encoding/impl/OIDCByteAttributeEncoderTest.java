@@ -117,4 +117,30 @@ public class OIDCByteAttributeEncoderTest {
         JSONObject object = encoder.encode(attribute);
         Assert.assertNull(object.get("attributeName"));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testEncodingMultipleValues() throws ComponentInitializationException, AttributeEncodingException {
+        init();
+        IdPAttribute attribute = new IdPAttribute("test");
+        List<ByteAttributeValue> byteAttributeValues = new ArrayList<ByteAttributeValue>();
+        byteAttributeValues.add(new ByteAttributeValue(new byte[] {0}));
+        byteAttributeValues.add(new ByteAttributeValue(new byte[] {1, 2}));
+        attribute.setValues(byteAttributeValues);
+        Assert.assertEquals(encoder.encode(attribute).get("attributeName"), "AA== AQI=");
+    }
+
+    @Test
+    public void testEncodingMultipleValuesArray() throws ComponentInitializationException, AttributeEncodingException {
+        init();
+        IdPAttribute attribute = new IdPAttribute("test");
+        List<ByteAttributeValue> byteAttributeValues = new ArrayList<ByteAttributeValue>();
+        byteAttributeValues.add(new ByteAttributeValue(new byte[] {0}));
+        byteAttributeValues.add(new ByteAttributeValue(new byte[] {1, 2}));
+        attribute.setValues(byteAttributeValues);
+        encoder.setAsArray(true);
+        JSONArray array = (JSONArray) encoder.encode(attribute).get("attributeName");
+        Assert.assertEquals(array.size(), 2);
+        Assert.assertEquals(array.get(0), "AA==");
+        Assert.assertEquals(array.get(1), "AQI=");
+    }
+}
@@ -19,12 +19,14 @@ package org.geant.idpextension.oidc.attribute.filter.matcher.impl;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.Set;
 
 import net.shibboleth.idp.attribute.AttributeEncoder;
 import net.shibboleth.idp.attribute.IdPAttribute;
 import net.shibboleth.idp.attribute.IdPAttributeValue;
+import net.shibboleth.idp.attribute.StringAttributeValue;
 import net.shibboleth.idp.attribute.filter.context.AttributeFilterContext;
 import net.shibboleth.idp.profile.RequestContextBuilder;
 import net.shibboleth.idp.profile.context.navigate.WebflowRequestContextProfileRequestContextLookup;
@@ -46,6 +48,7 @@ import com.nimbusds.oauth2.sdk.id.State;
 import com.nimbusds.openid.connect.sdk.AuthenticationRequest;
 import com.nimbusds.openid.connect.sdk.ClaimsRequest;
 import com.nimbusds.openid.connect.sdk.Nonce;
+import com.nimbusds.openid.connect.sdk.claims.ClaimRequirement;
 import com.nimbusds.openid.connect.sdk.rp.OIDCClientInformation;
 import com.nimbusds.openid.connect.sdk.rp.OIDCClientMetadata;
 
@@ -206,4 +209,30 @@ public class AttributeInOIDCRequestedClaimsMatcherTest {
         Assert.assertNotNull(matcher.getMatchingValues(attribute, filtercontext));
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testOnlyIfEssential() throws Exception {
+        setUp(true, false);
+        attribute.setValues(Collections.<IdPAttributeValue<?>> singletonList(new StringAttributeValue("value")));
+        matcher.setOnlyIfEssential(true);
+        matcher.initialize();
+        OIDCAuthenticationResponseContext respCtx =
+                msgCtx.getSubcontext(OIDCAuthenticationResponseContext.class, false);
+        Assert.assertTrue(matcher.getMatchingValues(attribute, filtercontext).isEmpty());
+        ClaimsRequest request = getClaimsRequest(false, false);
+        request.addIDTokenClaim("test", ClaimRequirement.ESSENTIAL);
+        respCtx.setRequestedClaims(request);
+        Assert.assertEquals(matcher.getMatchingValues(attribute, filtercontext).size(), 1);
+    }
+
+    @Test
+    public void testClaimNamesIndexed() throws Exception {
+        setUp(true, false);
+        matcher.initialize();
+        Assert.assertNotNull(matcher.getMatchingValues(attribute, filtercontext));
+        OIDCAuthenticationResponseContext respCtx =
+                msgCtx.getSubcontext(OIDCAuthenticationResponseContext.class, false);
+        Assert.assertEquals(respCtx.getRequestedClaimsIndex().getAttributeClaimNames("test"),
+                Collections.singleton("test"));
+    }
+
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2017 - 2020, GÉANT
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an “AS IS” BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.geant.idpextension.oidc.attribute.filter.matcher.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.geant.idpextension.oidc.attribute.encoding.impl.OIDCStringAttributeEncoder;
+import org.geant.idpextension.oidc.attribute.filter.spring.policyrule.filtercontext.impl.AttributeOIDCScopePolicyRule;
+import org.geant.idpextension.oidc.messaging.context.OIDCAuthenticationResponseContext;
+import org.opensaml.messaging.context.MessageContext;
+import org.opensaml.profile.context.ProfileRequestContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.webflow.execution.RequestContext;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.nimbusds.oauth2.sdk.Scope;
+import com.nimbusds.openid.connect.sdk.ClaimsRequest;
+import com.nimbusds.openid.connect.sdk.claims.ClaimRequirement;
+
+import net.shibboleth.idp.attribute.AttributeEncoder;
+import net.shibboleth.idp.attribute.IdPAttribute;
+import net.shibboleth.idp.attribute.IdPAttributeValue;
+import net.shibboleth.idp.attribute.StringAttributeValue;
+import net.shibboleth.idp.attribute.filter.PolicyRequirementRule.Tristate;
+import net.shibboleth.idp.attribute.filter.context.AttributeFilterContext;
+import net.shibboleth.idp.profile.RequestContextBuilder;
+import net.shibboleth.idp.profile.context.navigate.WebflowRequestContextProfileRequestContextLookup;
+
+/**
+ * Benchmark of {@link AttributeInOIDCRequestedClaimsMatcher} and {@link AttributeOIDCScopePolicyRule} evaluated as
+ * part of large filter policies. The requested claims are set for each simulated request, so the requested claims
+ * index is built once per request and shared by all the matchers and rules. Only the correctness of the results is
+ * asserted, the timings are logged.
+ */
+public class RequestedClaimsFilterBenchmarkTest {
+
+    /** Class logger. */
+    private final Logger log = LoggerFactory.getLogger(RequestedClaimsFilterBenchmarkTest.class);
+
+    /** Number of simulated requests. */
+    private static final int ITERATIONS = 2000;
+
+    /** Number of attributes. */
+    private static final int ATTRIBUTES = 200;
+
+    /** Number of requested claims, every other one essential. */
+    private static final int REQUESTED = 50;
+
+    /** Number of policies, each having a scope rule and a matcher for every attribute. */
+    private static final int POLICIES = 20;
+
+    /**
+     * Measures the evaluation of the policies against a claims request.
+     */
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    @Test(groups = "benchmark")
+    public void testLargeFilterPolicies() throws Exception {
+        final RequestContext requestCtx = new RequestContextBuilder().buildRequestContext();
+        final ProfileRequestContext prc = new WebflowRequestContextProfileRequestContextLookup().apply(requestCtx);
+        final MessageContext msgCtx = new MessageContext();
+        prc.setOutboundMessageContext(msgCtx);
+        final OIDCAuthenticationResponseContext respCtx = new OIDCAuthenticationResponseContext();
+        msgCtx.addSubcontext(respCtx);
+        final AttributeFilterContext filterContext = prc.getSubcontext(AttributeFilterContext.class, true);
+
+        final List<IdPAttribute> attributes = new ArrayList<>();
+        for (int i = 0; i < ATTRIBUTES; i++) {
+            final OIDCStringAttributeEncoder encoder = new OIDCStringAttributeEncoder();
+            encoder.setName("claim" + i);
+            final IdPAttribute attribute = new IdPAttribute("attribute" + i);
+            attribute.setValues(Collections.<IdPAttributeValue<?>> singletonList(new StringAttributeValue("v" + i)));
+            attribute.setEncoders(Collections.<AttributeEncoder<?>> singletonList(encoder));
+            attributes.add(attribute);
+        }
+        final List<AttributeOIDCScopePolicyRule> rules = new ArrayList<>();
+        final List<AttributeInOIDCRequestedClaimsMatcher> matchers = new ArrayList<>();
+        for (int i = 0; i < POLICIES; i++) {
+            final AttributeOIDCScopePolicyRule rule = new AttributeOIDCScopePolicyRule();
+            rule.setId("rule" + i);
+            rule.setMatchString(i % 2 == 0 ? "profile" : "scope" + i);
+            rule.initialize();
+            rules.add(rule);
+            final AttributeInOIDCRequestedClaimsMatcher matcher = new AttributeInOIDCRequestedClaimsMatcher();
+            matcher.setId("matcher" + i);
+            matcher.setOnlyIfEssential(i % 4 == 0);
+            matcher.setMatchOnlyIDToken(i % 4 == 2);
+            matcher.initialize();
+            matchers.add(matcher);
+        }
+
+        // warm up
+        run(respCtx, filterContext, attributes, rules, matchers, ITERATIONS / 10);
+        final long start = System.nanoTime();
+        final int released = run(respCtx, filterContext, attributes, rules, matchers, ITERATIONS);
+        final long elapsed = System.nanoTime() - start;
+        log.info("{} policies over {} attributes: {} ns/request, {} ns/matcher evaluation", POLICIES, ATTRIBUTES,
+                elapsed / ITERATIONS, elapsed / ((long) ITERATIONS * POLICIES * ATTRIBUTES));
+        // half of the policies have the matching scope, half of those release only the essential claims
+        Assert.assertEquals(released, ITERATIONS * (POLICIES / 4 * REQUESTED + POLICIES / 4 * REQUESTED / 2));
+    }
+
+    /**
+     * Evaluates the policies for the simulated requests.
+     * 
+     * @return the number of attributes released by the policies over all the requests
+     */
+    private int run(final OIDCAuthenticationResponseContext respCtx, final AttributeFilterContext filterContext,
+            final List<IdPAttribute> attributes, final List<AttributeOIDCScopePolicyRule> rules,
+            final List<AttributeInOIDCRequestedClaimsMatcher> matchers, final int iterations) {
+        int released = 0;
+        for (int n = 0; n < iterations; n++) {
+            final ClaimsRequest request = new ClaimsRequest();
+            for (int i = 0; i < REQUESTED; i++) {
+                request.addIDTokenClaim("claim" + i,
+                        i % 2 == 0 ? ClaimRequirement.ESSENTIAL : ClaimRequirement.VOLUNTARY);
+            }
+            respCtx.setRequestedClaims(request);
+            respCtx.setScope(new Scope("openid", "profile", "email"));
+            for (int p = 0; p < POLICIES; p++) {
+                if (rules.get(p).matches(filterContext) != Tristate.TRUE) {
+                    continue;
+                }
+                for (final IdPAttribute attribute : attributes) {
+                    if (!matchers.get(p).getMatchingValues(attribute, filterContext).isEmpty()) {
+                        released++;
+                    }
+                }
+            }
+        }
+        return released;
+    }
+}
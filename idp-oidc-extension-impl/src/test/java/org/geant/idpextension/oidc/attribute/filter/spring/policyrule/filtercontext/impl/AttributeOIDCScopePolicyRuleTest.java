@@ -89,4 +89,23 @@ public class AttributeOIDCScopePolicyRuleTest {
         Assert.assertEquals(Tristate.FAIL, rule.matches(filtercontext));
     }
 
+    @Test
+    public void testIgnoreCaseMatch() throws Exception {
+        rule = new AttributeOIDCScopePolicyRule();
+        rule.setMatchString("TEST");
+        rule.setIgnoreCase(true);
+        rule.setId("componentId");
+        rule.initialize();
+        Assert.assertEquals(Tristate.TRUE, rule.matches(filtercontext));
+    }
+
+    @Test
+    public void testCaseSensitiveNoMatch() throws Exception {
+        rule = new AttributeOIDCScopePolicyRule();
+        rule.setMatchString("TEST");
+        rule.setId("componentId");
+        rule.initialize();
+        Assert.assertEquals(Tristate.FALSE, rule.matches(filtercontext));
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2017 - 2020, GÉANT
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an “AS IS” BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geant.idpextension.oidc.attribute.resolver.dc.impl;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.geant.idpextension.oidc.storage.PairwiseSubjectCache;
+import org.mockito.Mockito;
+import org.opensaml.storage.impl.MemoryStorageService;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import net.shibboleth.idp.attribute.IdPAttribute;
+import net.shibboleth.idp.attribute.IdPAttributeValue;
+import net.shibboleth.idp.attribute.StringAttributeValue;
+import net.shibboleth.idp.attribute.resolver.AttributeDefinition;
+import net.shibboleth.idp.attribute.resolver.ResolutionException;
+import net.shibboleth.idp.attribute.resolver.ResolverPluginDependency;
+import net.shibboleth.idp.attribute.resolver.context.AttributeResolutionContext;
+import net.shibboleth.idp.attribute.resolver.context.AttributeResolverWorkContext;
+import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
+
+/**
+ * Tests for {@link PairwiseSubjectDataConnector}.
+ */
+public class PairwiseSubjectDataConnectorTest {
+
+    private MemoryStorageService storageService;
+
+    private PairwiseSubjectCache cache;
+
+    private PairwiseSubjectDataConnector connector;
+
+    @BeforeMethod
+    protected void setUp() throws Exception {
+        storageService = new MemoryStorageService();
+        storageService.setId("test");
+        storageService.initialize();
+        cache = new PairwiseSubjectCache();
+        cache.setId("test");
+        cache.setStorage(storageService);
+        cache.setSalt("salt");
+        cache.initialize();
+        connector = new PairwiseSubjectDataConnector();
+        connector.setId("pairwiseSubject");
+        connector.setPairwiseSubjectCache(cache);
+        connector.setDependencies(Collections.singleton(new ResolverPluginDependency("uid")));
+    }
+
+    @AfterMethod
+    protected void tearDown() {
+        connector.destroy();
+        cache.destroy();
+        storageService.destroy();
+    }
+
+    private AttributeResolutionContext buildContext(final String sector, final String uid)
+            throws ResolutionException {
+        final AttributeResolutionContext resolutionContext = new AttributeResolutionContext();
+        resolutionContext.setAttributeRecipientGroupID(sector);
+        final AttributeResolverWorkContext workContext =
+                resolutionContext.getSubcontext(AttributeResolverWorkContext.class, true);
+        final AttributeDefinition definition = Mockito.mock(AttributeDefinition.class);
+        Mockito.when(definition.getId()).thenReturn("uid");
+        final IdPAttribute attribute = new IdPAttribute("uid");
+        attribute.setValues(Collections.<IdPAttributeValue<?>> singletonList(new StringAttributeValue(uid)));
+        workContext.recordAttributeDefinitionResolution(definition, attribute);
+        return resolutionContext;
+    }
+
+    @Test(expectedExceptions = ComponentInitializationException.class)
+    public void testNoCache() throws ComponentInitializationException {
+        connector = new PairwiseSubjectDataConnector();
+        connector.setId("pairwiseSubject");
+        connector.setDependencies(Collections.singleton(new ResolverPluginDependency("uid")));
+        connector.initialize();
+    }
+
+    @Test
+    public void testDefaults() throws ComponentInitializationException {
+        connector.initialize();
+        Assert.assertEquals(connector.getSourceAttributeId(), "uid");
+        Assert.assertEquals(connector.getGeneratedAttributeId(), "pairwiseSubject");
+    }
+
+    @Test
+    public void testResolve() throws Exception {
+        connector.setGeneratedAttributeId("subjectId");
+        connector.initialize();
+        final Map<String, IdPAttribute> attributes = connector.resolve(buildContext("rp.example.org", "joe"));
+        Assert.assertEquals(attributes.size(), 1);
+        Assert.assertEquals(attributes.get("subjectId").getValues().get(0).getValue(),
+                cache.getSubject("joe", "rp.example.org"));
+        Assert.assertNotEquals(connector.resolve(buildContext("other.example.org", "joe")).get("subjectId")
+                .getValues().get(0).getValue(), attributes.get("subjectId").getValues().get(0).getValue());
+    }
+
+    @Test
+    public void testNoSector() throws Exception {
+        connector.initialize();
+        Assert.assertNull(connector.resolve(buildContext(null, "joe")));
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2017 - 2020, GÉANT
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an “AS IS” BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geant.idpextension.oidc.attribute.resolver.spring.dc.impl;
+
+import org.geant.idpextension.oidc.attribute.resolver.dc.impl.PairwiseSubjectDataConnector;
+import org.geant.idpextension.oidc.storage.PairwiseSubjectCache;
+import org.opensaml.storage.impl.MemoryStorageService;
+import org.springframework.context.support.GenericApplicationContext;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import net.shibboleth.idp.attribute.resolver.spring.BaseAttributeDefinitionParserTest;
+
+public class PairwiseSubjectDataConnectorParserTest extends BaseAttributeDefinitionParserTest {
+
+    public static final String DATA_CONNECTOR_FILE_PATH = "org/geant/idpextension/oidc/attribute/resolver/spring/dc/";
+
+    @Test
+    public void resolver() throws Exception {
+        final MemoryStorageService storageService = new MemoryStorageService();
+        storageService.setId("test");
+        storageService.initialize();
+        final PairwiseSubjectCache cache = new PairwiseSubjectCache();
+        cache.setId("test");
+        cache.setStorage(storageService);
+        cache.setSalt("salt");
+        cache.initialize();
+        final GenericApplicationContext context = new GenericApplicationContext();
+        context.getBeanFactory().registerSingleton("testCache", cache);
+
+        final PairwiseSubjectDataConnector connector = getBean(DATA_CONNECTOR_FILE_PATH + "pairwisesubject.xml",
+                PairwiseSubjectDataConnector.class, context);
+        connector.initialize();
+
+        Assert.assertEquals(connector.getId(), "pairwiseSubject");
+        Assert.assertEquals(connector.getGeneratedAttributeId(), "subjectId");
+        Assert.assertEquals(connector.getSourceAttributeId(), "uid");
+        cache.destroy();
+        storageService.destroy();
+    }
+
+}
@@ -18,7 +18,9 @@ package org.geant.idpextension.oidc.config;
 
 import java.security.Principal;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 import org.testng.Assert;
@@ -57,6 +59,20 @@ public class OIDCCoreProtocolConfigurationTest {
         Assert.assertFalse(config.getAcrRequestAlwaysEssential());
         Assert.assertTrue(config.getAdditionalAudiencesForIdToken().isEmpty());
         Assert.assertTrue(config.isResolveAttributes());
+        Assert.assertFalse(config.getJwtAccessTokens());
+        Assert.assertTrue(config.getJwtAccessTokenAudiences().isEmpty());
+    }
+
+    @Test
+    void testSetJwtAccessTokens() {
+        config.setJwtAccessTokens(true);
+        Assert.assertTrue(config.getJwtAccessTokens());
+    }
+
+    @Test
+    void testSetJwtAccessTokenAudiences() {
+        config.setJwtAccessTokenAudiences(Arrays.asList("https://rs.example.org", " ", null));
+        Assert.assertEquals(config.getJwtAccessTokenAudiences(), Collections.singleton("https://rs.example.org"));
     }
 
     @Test
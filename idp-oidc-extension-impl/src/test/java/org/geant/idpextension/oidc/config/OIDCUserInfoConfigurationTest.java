@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2017 - 2020, GÉANT
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an “AS IS” BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.geant.idpextension.oidc.config;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import net.shibboleth.utilities.java.support.logic.ConstraintViolationException;
+
+/**
+ * Unit tests for {@link OIDCUserInfoConfiguration}
+ */
+public class OIDCUserInfoConfigurationTest {
+
+    private OIDCUserInfoConfiguration config;
+
+    @BeforeMethod
+    protected void setUp() throws Exception {
+        config = new OIDCUserInfoConfiguration();
+    }
+
+    @Test
+    public void testInitialState() {
+        Assert.assertEquals(config.getId(), OIDCUserInfoConfiguration.PROFILE_ID);
+        Assert.assertFalse(config.getClaimsSnapshot());
+        Assert.assertEquals(config.getClaimsSnapshotMaxAge(), 0);
+    }
+
+    @Test
+    public void testSetClaimsSnapshot() {
+        config.setClaimsSnapshot(true);
+        config.setClaimsSnapshotMaxAge(60000);
+        Assert.assertTrue(config.getClaimsSnapshot());
+        Assert.assertEquals(config.getClaimsSnapshotMaxAge(), 60000);
+    }
+
+    @Test(expectedExceptions = ConstraintViolationException.class)
+    public void testNegativeClaimsSnapshotMaxAge() {
+        config.setClaimsSnapshotMaxAge(-1);
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2017 - 2020, GÉANT
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an “AS IS” BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.geant.idpextension.oidc.encoding.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.Writer;
+import java.net.URI;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.velocity.Template;
+import org.apache.velocity.VelocityContext;
+import org.apache.velocity.runtime.resource.loader.ResourceLoader;
+import org.geant.idpextension.oidc.messaging.JSONSuccessResponse;
+import org.apache.velocity.app.VelocityEngine;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.opensaml.messaging.context.MessageContext;
+import org.opensaml.messaging.encoder.MessageEncodingException;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.nimbusds.oauth2.sdk.AuthorizationCode;
+import com.nimbusds.oauth2.sdk.Response;
+import com.nimbusds.oauth2.sdk.ResponseMode;
+import com.nimbusds.oauth2.sdk.id.State;
+import com.nimbusds.oauth2.sdk.id.Subject;
+import com.nimbusds.openid.connect.sdk.AuthenticationSuccessResponse;
+import com.nimbusds.openid.connect.sdk.UserInfoSuccessResponse;
+import com.nimbusds.openid.connect.sdk.claims.UserInfo;
+
+import net.minidev.json.JSONObject;
+import net.shibboleth.utilities.java.support.codec.HTMLEncoder;
+
+/**
+ * Tests for {@link NimbusResponseEncoder}.
+ */
+public class NimbusResponseEncoderTest {
+
+    private NimbusResponseEncoder encoder;
+
+    private MockHttpServletResponse httpResponse;
+
+    private MessageContext<Response> messageContext;
+
+    @BeforeMethod
+    protected void setUp() throws Exception {
+        httpResponse = new MockHttpServletResponse();
+        encoder = new NimbusResponseEncoder();
+        encoder.setHttpServletResponse(httpResponse);
+        messageContext = new MessageContext<>();
+        messageContext.setMessage(new AuthenticationSuccessResponse(new URI("https://client.example.org/cb?a=1&b=2"),
+                new AuthorizationCode("code123"), null, null, new State("\"><script>"), null,
+                ResponseMode.FORM_POST));
+        encoder.setMessageContext(messageContext);
+    }
+
+    @Test
+    public void testFormPost() throws Exception {
+        encoder.initialize();
+        encoder.encode();
+        final String page = httpResponse.getContentAsString();
+        Assert.assertEquals(httpResponse.getContentType(), "text/html;charset=UTF-8");
+        Assert.assertEquals(httpResponse.getContentLength(), page.getBytes("UTF-8").length);
+        Assert.assertTrue(page.contains("action=\"https&#x3a;&#x2f;&#x2f;client.example.org&#x2f;cb&#x3f;a&#x3d;1"));
+        Assert.assertTrue(page.contains("<input type=\"hidden\" name=\"code\" value=\"code123\" />"));
+        Assert.assertTrue(page.contains("name=\"state\" value=\"&quot;&gt;&lt;script&gt;\""));
+        Assert.assertFalse(page.contains("<script>"));
+        Assert.assertFalse(page.contains("name=\"id_token\""));
+        Assert.assertTrue(page.endsWith("</html>"));
+    }
+
+    @Test
+    public void testCustomTemplateRenderedOnce() throws Exception {
+        final VelocityEngine engine = Mockito.mock(VelocityEngine.class);
+        encoder.setVelocityEngine(engine);
+        encoder.setVelocityTemplateId("/templates/custom.vm");
+        encoder.initialize();
+        encoder.encode();
+        Mockito.verify(engine, Mockito.times(1)).mergeTemplate(Mockito.eq("/templates/custom.vm"),
+                Mockito.eq("UTF-8"), Mockito.any(VelocityContext.class), Mockito.any(Writer.class));
+    }
+
+    @Test
+    public void testCustomTemplateRawValues() throws Exception {
+        final VelocityEngine engine = Mockito.mock(VelocityEngine.class);
+        encoder.setVelocityEngine(engine);
+        encoder.setVelocityTemplateId("/templates/custom.vm");
+        encoder.initialize();
+        encoder.encode();
+        final ArgumentCaptor<VelocityContext> context = ArgumentCaptor.forClass(VelocityContext.class);
+        Mockito.verify(engine).mergeTemplate(Mockito.eq("/templates/custom.vm"), Mockito.eq("UTF-8"),
+                context.capture(), Mockito.any(Writer.class));
+        Assert.assertEquals(context.getValue().get("state"), "\"><script>");
+        Assert.assertEquals(context.getValue().get("code"), "code123");
+        Assert.assertEquals(context.getValue().get("encoder"), HTMLEncoder.class);
+    }
+
+    @Test
+    public void testOverriddenDefaultTemplate() throws Exception {
+        final VelocityEngine engine = mockEngineResolvingDefault(new ByteArrayInputStream("custom".getBytes("UTF-8")));
+        encoder.setVelocityEngine(engine);
+        encoder.initialize();
+        encoder.encode();
+        Mockito.verify(engine, Mockito.times(1)).mergeTemplate(Mockito.eq(NimbusResponseEncoder.DEFAULT_TEMPLATE_ID),
+                Mockito.eq("UTF-8"), Mockito.any(VelocityContext.class), Mockito.any(Writer.class));
+    }
+
+    @Test
+    public void testBundledDefaultTemplate() throws Exception {
+        final VelocityEngine engine = mockEngineResolvingDefault(
+                NimbusResponseEncoder.class.getResourceAsStream(NimbusResponseEncoder.DEFAULT_TEMPLATE_ID));
+        encoder.setVelocityEngine(engine);
+        encoder.initialize();
+        encoder.encode();
+        Mockito.verify(engine, Mockito.never()).mergeTemplate(Mockito.anyString(), Mockito.anyString(),
+                Mockito.any(VelocityContext.class), Mockito.any(Writer.class));
+        Assert.assertTrue(
+                httpResponse.getContentAsString().contains("name=\"state\" value=\"&quot;&gt;&lt;script&gt;\""));
+    }
+
+    private VelocityEngine mockEngineResolvingDefault(final InputStream content) throws Exception {
+        final ResourceLoader loader = Mockito.mock(ResourceLoader.class);
+        Mockito.when(loader.getResourceStream(NimbusResponseEncoder.DEFAULT_TEMPLATE_ID))
+                .thenReturn(new ByteArrayInputStream(IOUtils.toByteArray(content)));
+        final Template template = Mockito.mock(Template.class);
+        Mockito.when(template.getName()).thenReturn(NimbusResponseEncoder.DEFAULT_TEMPLATE_ID);
+        Mockito.when(template.getResourceLoader()).thenReturn(loader);
+        final VelocityEngine engine = Mockito.mock(VelocityEngine.class);
+        Mockito.when(engine.resourceExists(NimbusResponseEncoder.DEFAULT_TEMPLATE_ID)).thenReturn(true);
+        Mockito.when(engine.getTemplate(NimbusResponseEncoder.DEFAULT_TEMPLATE_ID, "UTF-8")).thenReturn(template);
+        return engine;
+    }
+
+    @Test(expectedExceptions = MessageEncodingException.class)
+    public void testCustomTemplateNoEngine() throws Exception {
+        encoder.setVelocityTemplateId("/templates/custom.vm");
+        encoder.initialize();
+        encoder.encode();
+    }
+
+    @Test
+    public void testUserInfo() throws Exception {
+        final MetricRegistry registry = new MetricRegistry();
+        final UserInfo userInfo = new UserInfo(new Subject("sub\u00e4"));
+        userInfo.setName("\ud83d\ude00 name");
+        messageContext.setMessage(new UserInfoSuccessResponse(userInfo));
+        encoder.setMetricRegistry(registry);
+        encoder.initialize();
+        encoder.encode();
+        final byte[] content = httpResponse.getContentAsByteArray();
+        Assert.assertEquals(httpResponse.getContentLength(), content.length);
+        Assert.assertTrue(httpResponse.getContentType().startsWith("application/json"));
+        Assert.assertEquals(new String(content, "UTF-8"), userInfo.toJSONObject().toJSONString());
+        final Histogram histogram =
+                registry.histogram(MetricRegistry.name(NimbusResponseEncoder.class, "userinfo", "bytesWritten"));
+        Assert.assertEquals(histogram.getCount(), 1);
+        Assert.assertEquals(histogram.getSnapshot().getMax(), content.length);
+    }
+
+    @Test
+    public void testJSONSuccessResponse() throws Exception {
+        final JSONObject json = new JSONObject();
+        final StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 3000; i++) {
+            value.append("\u00e4bc");
+        }
+        json.put("large", value.toString());
+        messageContext.setMessage(new JSONSuccessResponse(json, "no-store", "no-cache"));
+        encoder.setMetricRegistry(new MetricRegistry());
+        encoder.initialize();
+        encoder.encode();
+        Assert.assertEquals(httpResponse.getHeader("Cache-Control"), "no-store");
+        Assert.assertEquals(httpResponse.getHeader("Pragma"), "no-cache");
+        Assert.assertEquals(new String(httpResponse.getContentAsByteArray(), "UTF-8"), json.toJSONString());
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2017 - 2020, GÉANT
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an “AS IS” BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.geant.idpextension.oidc.metadata.impl;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.geant.idpextension.oidc.criterion.ClientIDCriterion;
+import org.geant.idpextension.oidc.metadata.resolver.ClientInformationResolver;
+import org.geant.idpextension.oidc.metadata.resolver.RefreshableClientInformationResolver;
+import org.geant.idpextension.oidc.storage.InvalidationTopics;
+import org.geant.idpextension.oidc.storage.LocalInvalidationBus;
+import org.joda.time.DateTime;
+import org.mockito.Mockito;
+import org.springframework.core.io.ClassPathResource;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.nimbusds.oauth2.sdk.id.ClientID;
+import com.nimbusds.openid.connect.sdk.rp.OIDCClientInformation;
+import com.nimbusds.openid.connect.sdk.rp.OIDCClientMetadata;
+
+import net.shibboleth.utilities.java.support.resolver.CriteriaSet;
+import net.shibboleth.utilities.java.support.resolver.ResolverException;
+
+/**
+ * Unit tests for {@link ChainingClientInformationResolver}.
+ */
+public class ChainingClientInformationResolverTest {
+
+    private ChainingClientInformationResolver resolver;
+
+    private ClientInformationResolver fileResolver;
+
+    private ClientInformationResolver storageResolver;
+
+    private OIDCClientInformation clientInformation;
+
+    private CriteriaSet criteria;
+
+    private CriteriaSet unknownCriteria;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        fileResolver = Mockito.mock(ClientInformationResolver.class,
+                Mockito.withSettings().extraInterfaces(RefreshableClientInformationResolver.class));
+        storageResolver = Mockito.mock(ClientInformationResolver.class);
+        clientInformation =
+                new OIDCClientInformation(new ClientID("dynamic"), null, new OIDCClientMetadata(), null);
+        criteria = new CriteriaSet(new ClientIDCriterion(new ClientID("dynamic")));
+        unknownCriteria = new CriteriaSet(new ClientIDCriterion(new ClientID("unknown")));
+        Mockito.when(fileResolver.resolve(criteria)).thenReturn(Collections.<OIDCClientInformation>emptyList());
+        Mockito.when(fileResolver.resolve(unknownCriteria))
+                .thenReturn(Collections.<OIDCClientInformation>emptyList());
+        Mockito.when(storageResolver.resolve(criteria)).thenReturn(Arrays.asList(clientInformation));
+        Mockito.when(storageResolver.resolve(unknownCriteria))
+                .thenReturn(Collections.<OIDCClientInformation>emptyList());
+        resolver = new ChainingClientInformationResolver();
+        resolver.setId("chain");
+        resolver.setResolvers(Arrays.asList(fileResolver, storageResolver));
+    }
+
+    @Test
+    public void testCountClients() throws Exception {
+        final FilesystemClientInformationResolver filesystemResolver = new FilesystemClientInformationResolver(
+                new ClassPathResource("/org/geant/idpextension/oidc/metadata/impl/oidc-clients.json"));
+        filesystemResolver.setId("file");
+        filesystemResolver.initialize();
+        resolver.initialize();
+        Assert.assertEquals(resolver.countClients(filesystemResolver), 2);
+        Assert.assertEquals(resolver.countClients(storageResolver), -1);
+        Mockito.verify(storageResolver, Mockito.never()).resolve(Mockito.any(CriteriaSet.class));
+    }
+
+    @Test
+    public void testRouting() throws Exception {
+        resolver.initialize();
+        Assert.assertSame(resolver.resolveSingle(criteria), clientInformation);
+        Assert.assertSame(resolver.resolveSingle(criteria), clientInformation);
+        Mockito.verify(fileResolver, Mockito.times(1)).resolve(criteria);
+        Mockito.verify(storageResolver, Mockito.times(2)).resolve(criteria);
+    }
+
+    @Test
+    public void testRoutingForgottenOnUpdate() throws Exception {
+        resolver.initialize();
+        resolver.resolveSingle(criteria);
+        Mockito.when(((RefreshableClientInformationResolver) fileResolver).getLastUpdate())
+                .thenReturn(new DateTime());
+        Assert.assertSame(resolver.resolveSingle(criteria), clientInformation);
+        Mockito.verify(fileResolver, Mockito.times(2)).resolve(criteria);
+    }
+
+    @Test
+    public void testRoutedClientRemoved() throws Exception {
+        resolver.initialize();
+        resolver.resolveSingle(criteria);
+        Mockito.when(storageResolver.resolve(criteria)).thenReturn(Collections.<OIDCClientInformation>emptyList());
+        Assert.assertNull(resolver.resolveSingle(criteria));
+        Mockito.verify(fileResolver, Mockito.times(2)).resolve(criteria);
+        Mockito.verify(storageResolver, Mockito.times(2)).resolve(criteria);
+    }
+
+    @Test
+    public void testRouteFailureNotRemembered() throws Exception {
+        resolver.setUnknownClientExpiration(60000);
+        resolver.initialize();
+        resolver.resolveSingle(criteria);
+        Mockito.when(storageResolver.resolve(criteria)).thenThrow(new ResolverException());
+        Assert.assertNull(resolver.resolveSingle(criteria));
+        Mockito.when(storageResolver.resolve(criteria)).thenReturn(Arrays.asList(clientInformation));
+        Assert.assertSame(resolver.resolveSingle(criteria), clientInformation);
+        Mockito.verify(storageResolver, Mockito.times(3)).resolve(criteria);
+    }
+
+    @Test
+    public void testUnknownClientNotRemembered() throws Exception {
+        resolver.initialize();
+        Assert.assertNull(resolver.resolveSingle(unknownCriteria));
+        Assert.assertNull(resolver.resolveSingle(unknownCriteria));
+        Mockito.verify(storageResolver, Mockito.times(2)).resolve(unknownCriteria);
+    }
+
+    @Test
+    public void testUnknownClientRemembered() throws Exception {
+        resolver.setUnknownClientExpiration(60000);
+        resolver.initialize();
+        Assert.assertNull(resolver.resolveSingle(unknownCriteria));
+        Assert.assertNull(resolver.resolveSingle(unknownCriteria));
+        Mockito.verify(fileResolver, Mockito.times(1)).resolve(unknownCriteria);
+        Mockito.verify(storageResolver, Mockito.times(1)).resolve(unknownCriteria);
+        Assert.assertSame(resolver.resolveSingle(criteria), clientInformation);
+    }
+
+    @Test
+    public void testUnknownClientExpired() throws Exception {
+        resolver.setUnknownClientExpiration(50);
+        resolver.initialize();
+        Assert.assertNull(resolver.resolveSingle(unknownCriteria));
+        Thread.sleep(100);
+        Assert.assertNull(resolver.resolveSingle(unknownCriteria));
+        Mockito.verify(storageResolver, Mockito.times(2)).resolve(unknownCriteria);
+    }
+
+    @Test
+    public void testUnknownClientForgottenOnUpdate() throws Exception {
+        resolver.setUnknownClientExpiration(60000);
+        resolver.initialize();
+        Assert.assertNull(resolver.resolveSingle(unknownCriteria));
+        Mockito.when(((RefreshableClientInformationResolver) fileResolver).getLastUpdate())
+                .thenReturn(new DateTime());
+        Assert.assertNull(resolver.resolveSingle(unknownCriteria));
+        Mockito.verify(storageResolver, Mockito.times(2)).resolve(unknownCriteria);
+    }
+
+    @Test
+    public void testUnknownClientInvalidated() throws Exception {
+        final LocalInvalidationBus bus = new LocalInvalidationBus();
+        bus.setId("bus");
+        bus.initialize();
+        resolver.setUnknownClientExpiration(60000);
+        resolver.setInvalidationBus(bus);
+        resolver.initialize();
+        Assert.assertNull(resolver.resolveSingle(unknownCriteria));
+        Mockito.when(storageResolver.resolve(unknownCriteria)).thenReturn(Arrays.asList(clientInformation));
+        bus.publish(InvalidationTopics.CLIENT_INFORMATION, "unknown");
+        Assert.assertSame(resolver.resolveSingle(unknownCriteria), clientInformation);
+        resolver.destroy();
+        bus.destroy();
+    }
+
+    @Test
+    public void testFailureNotRemembered() throws Exception {
+        resolver.setUnknownClientExpiration(60000);
+        Mockito.when(storageResolver.resolve(unknownCriteria)).thenThrow(new ResolverException());
+        resolver.initialize();
+        Assert.assertNull(resolver.resolveSingle(unknownCriteria));
+        Assert.assertNull(resolver.resolveSingle(unknownCriteria));
+        Mockito.verify(storageResolver, Mockito.times(2)).resolve(unknownCriteria);
+    }
+}
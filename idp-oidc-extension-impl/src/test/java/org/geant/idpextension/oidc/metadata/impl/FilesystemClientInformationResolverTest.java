@@ -18,10 +18,14 @@ package org.geant.idpextension.oidc.metadata.impl;
 
 import java.io.File;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Executor;
 
 import org.geant.idpextension.oidc.criterion.ClientIDCriterion;
 import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.Resource;
 import org.testng.Assert;
 import org.testng.annotations.Test;
@@ -99,6 +103,65 @@ public class FilesystemClientInformationResolverTest {
         Assert.assertTrue(responseTypes.contains(new ResponseType(OIDCResponseTypeValue.ID_TOKEN)));
     }
 
+    @Test
+    public void testBackgroundInitialization() throws Exception {
+        final List<Runnable> tasks = new ArrayList<>();
+        initTest("/org/geant/idpextension/oidc/metadata/impl/oidc-clients.json", tasks, false);
+        Assert.assertTrue(resolver.isInitialRefreshPending());
+        Assert.assertEquals(tasks.size(), 1);
+        final Thread thread = new Thread(tasks.get(0));
+        thread.start();
+        final ClientIDCriterion criterion = new ClientIDCriterion(new ClientID(clientId2));
+        Assert.assertNotNull(resolver.resolveSingle(new CriteriaSet(criterion)));
+        Assert.assertFalse(resolver.isInitialRefreshPending());
+        thread.join();
+    }
+
+    @Test
+    public void testLazyInitialization() throws Exception {
+        final List<Runnable> tasks = new ArrayList<>();
+        initTest("/org/geant/idpextension/oidc/metadata/impl/oidc-clients.json", tasks, true);
+        final ClientIDCriterion criterion = new ClientIDCriterion(new ClientID(clientId2));
+        Assert.assertNull(resolver.resolveSingle(new CriteriaSet(criterion)));
+        tasks.get(0).run();
+        Assert.assertFalse(resolver.isInitialRefreshPending());
+        Assert.assertNotNull(resolver.resolveSingle(new CriteriaSet(criterion)));
+    }
+
+    @Test
+    public void testBackgroundInitializationFailure() throws Exception {
+        final File file = File.createTempFile("oidc-clients", ".json");
+        final List<Runnable> tasks = new ArrayList<>();
+        initTest(new FileSystemResource(file), tasks, false);
+        Assert.assertTrue(file.delete());
+        Assert.assertNull(resolver.getInitialRefreshFailure());
+        final Thread thread = new Thread(tasks.get(0));
+        thread.start();
+        final ClientIDCriterion criterion = new ClientIDCriterion(new ClientID(clientId2));
+        Assert.assertNull(resolver.resolveSingle(new CriteriaSet(criterion)));
+        Assert.assertFalse(resolver.isInitialRefreshPending());
+        Assert.assertNotNull(resolver.getInitialRefreshFailure());
+        thread.join();
+    }
+
+    protected void initTest(final String filename, final List<Runnable> tasks, final boolean lazy) throws Exception {
+        initTest(new ClassPathResource(filename), tasks, lazy);
+    }
+
+    protected void initTest(final Resource resource, final List<Runnable> tasks, final boolean lazy)
+            throws Exception {
+        clientId2 = "demo_rp2";
+        resolver = new FilesystemClientInformationResolver(resource);
+        resolver.setId("mockId");
+        resolver.setInitializationExecutor(new Executor() {
+            public void execute(final Runnable command) {
+                tasks.add(command);
+            }
+        });
+        resolver.setLazyInitialization(lazy);
+        resolver.initialize();
+    }
+
     protected static void testScope(final Scope scope) {
         Assert.assertEquals(scope.size(), 6);
         Assert.assertTrue(scope.contains(OIDCScopeValue.OPENID));
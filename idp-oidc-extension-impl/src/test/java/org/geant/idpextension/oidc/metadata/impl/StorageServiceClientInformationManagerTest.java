@@ -16,9 +16,14 @@
 
 package org.geant.idpextension.oidc.metadata.impl;
 
+import java.net.URI;
 import java.util.Date;
 
 import org.geant.idpextension.oidc.criterion.ClientIDCriterion;
+import org.geant.idpextension.oidc.metadata.resolver.RemoteJwkSetCache;
+import org.geant.idpextension.oidc.storage.RevocationCacheContexts;
+import org.geant.idpextension.oidc.storage.RevocationEpochCache;
+import org.mockito.Mockito;
 import org.opensaml.storage.impl.MemoryStorageService;
 import org.testng.Assert;
 import org.testng.annotations.BeforeMethod;
@@ -92,6 +97,41 @@ public class StorageServiceClientInformationManagerTest {
         Assert.assertNull(result);
     }
 
+    @Test
+    public void testDestroyRevokesTokens() throws Exception {
+        final RevocationEpochCache epochCache = new RevocationEpochCache();
+        epochCache.setId("mockId");
+        epochCache.setStorage(storageService);
+        epochCache.initialize();
+        manager = new StorageServiceClientInformationManager();
+        manager.setStorageService(storageService);
+        manager.setRevocationEpochCache(epochCache);
+        manager.setId("mockId");
+        manager.initialize();
+        manager.storeClientInformation(initializeInformation(), null);
+        Assert.assertEquals(epochCache.getEpoch(RevocationCacheContexts.CLIENT, clientIdValue), 0);
+        manager.destroyClientInformation(new ClientID(clientIdValue));
+        Assert.assertTrue(epochCache.getEpoch(RevocationCacheContexts.CLIENT, clientIdValue) > 0);
+        epochCache.destroy();
+    }
+
+    @Test
+    public void testRemoteJwkSetInvalidated() throws Exception {
+        final RemoteJwkSetCache jwkSetCache = Mockito.mock(RemoteJwkSetCache.class);
+        manager = new StorageServiceClientInformationManager();
+        manager.setStorageService(storageService);
+        manager.setRemoteJwkSetCache(jwkSetCache);
+        manager.setId("mockId");
+        manager.initialize();
+        final URI jwkSetUri = new URI("https://client.example.org/jwks.json");
+        final OIDCClientInformation clientInformation = initializeInformation();
+        clientInformation.getOIDCMetadata().setJWKSetURI(jwkSetUri);
+        manager.storeClientInformation(clientInformation, null);
+        Mockito.verify(jwkSetCache).invalidate(RemoteJwkSetCache.CONTEXT_NAME, jwkSetUri);
+        manager.destroyClientInformation(new ClientID(clientIdValue));
+        Mockito.verify(jwkSetCache, Mockito.times(2)).invalidate(RemoteJwkSetCache.CONTEXT_NAME, jwkSetUri);
+    }
+
     @Test
     public void testExpiration() throws Exception {
         final OIDCClientInformation clientInformation = initializeInformation();
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2017 - 2020, GÉANT
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an “AS IS” BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.geant.idpextension.oidc.profile.flow;
+
+import java.io.IOException;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.geant.idpextension.oidc.profile.pipeline.ProfileActionPipelineRequestHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.support.GenericXmlApplicationContext;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.webflow.executor.FlowExecutionResult;
+import org.springframework.webflow.test.MockExternalContext;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import net.shibboleth.utilities.java.support.net.HttpServletRequestResponseContext;
+
+/**
+ * Benchmark comparing the oidc/keyset flow, extending oidc/abstract-api-info and oidc/abstract-api, launched through
+ * the {@link org.springframework.webflow.executor.FlowExecutor} to the same actions executed by the pipeline defined
+ * in keyset-pipeline-beans.xml. Both paths build and encode the response and write the audit log. Only the
+ * correctness of the responses is asserted, the timings are logged.
+ */
+public class KeySetFlowBenchmarkTest extends AbstractOidcFlowTest {
+
+    /** Class logger. */
+    private final Logger log = LoggerFactory.getLogger(KeySetFlowBenchmarkTest.class);
+
+    /** Number of requests per measurement. */
+    private static final int ITERATIONS = 5000;
+
+    public KeySetFlowBenchmarkTest() {
+        super(KeySetFlowTest.FLOW_ID);
+    }
+
+    /**
+     * Measures the flow executor against the pipeline request handler.
+     */
+    @Test(groups = "benchmark")
+    public void testFlowExecutorVersusPipeline() throws ServletException, IOException {
+        final GenericXmlApplicationContext pipelineContext = new GenericXmlApplicationContext();
+        pipelineContext.setParent(applicationContext);
+        pipelineContext.load(KeySetPipelineTest.PIPELINE_RESOURCE);
+        pipelineContext.refresh();
+        try {
+            final ProfileActionPipelineRequestHandler handler = pipelineContext.getBean(
+                    "shibboleth.oidc.keyset.PipelineRequestHandler", ProfileActionPipelineRequestHandler.class);
+
+            // warm up both paths
+            runFlowExecutor(ITERATIONS / 10);
+            runPipeline(handler, ITERATIONS / 10);
+
+            long start = System.nanoTime();
+            runFlowExecutor(ITERATIONS);
+            final long flow = System.nanoTime() - start;
+            start = System.nanoTime();
+            runPipeline(handler, ITERATIONS);
+            final long pipeline = System.nanoTime() - start;
+
+            log.info("Keyset endpoint: flow executor {} ns/request, pipeline {} ns/request", flow / ITERATIONS,
+                    pipeline / ITERATIONS);
+        } finally {
+            pipelineContext.close();
+        }
+    }
+
+    private void runFlowExecutor(final int iterations) {
+        for (int i = 0; i < iterations; i++) {
+            final MockHttpServletRequest flowRequest = new MockHttpServletRequest();
+            final MockHttpServletResponse flowResponse = new MockHttpServletResponse();
+            final MockExternalContext flowContext = new MockExternalContext();
+            flowContext.setNativeRequest(flowRequest);
+            flowContext.setNativeResponse(flowResponse);
+            HttpServletRequestResponseContext.loadCurrent((HttpServletRequest) flowRequest,
+                    (HttpServletResponse) flowResponse);
+            final FlowExecutionResult result = flowExecutor.launchExecution(KeySetFlowTest.FLOW_ID, null, flowContext);
+            Assert.assertTrue(parseResponse(result).indicatesSuccess());
+        }
+    }
+
+    private void runPipeline(final ProfileActionPipelineRequestHandler handler, final int iterations)
+            throws ServletException, IOException {
+        for (int i = 0; i < iterations; i++) {
+            final MockHttpServletRequest pipelineRequest = new MockHttpServletRequest();
+            final MockHttpServletResponse pipelineResponse = new MockHttpServletResponse();
+            HttpServletRequestResponseContext.loadCurrent((HttpServletRequest) pipelineRequest,
+                    (HttpServletResponse) pipelineResponse);
+            handler.handleRequest(pipelineRequest, pipelineResponse);
+            Assert.assertEquals(pipelineResponse.getStatus(), 200);
+        }
+    }
+}
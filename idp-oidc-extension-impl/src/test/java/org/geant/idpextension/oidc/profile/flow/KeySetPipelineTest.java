@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2017 - 2020, GÉANT
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an “AS IS” BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.geant.idpextension.oidc.profile.flow;
+
+import java.io.IOException;
+import java.util.List;
+
+import javax.servlet.ServletException;
+
+import org.geant.idpextension.oidc.profile.pipeline.ProfileActionPipelineRequestHandler;
+import org.springframework.context.support.GenericXmlApplicationContext;
+import org.springframework.web.servlet.handler.SimpleUrlHandlerMapping;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSet;
+
+/**
+ * Unit tests for the keyset endpoint served by the pipeline defined in keyset-pipeline-beans.xml.
+ */
+public class KeySetPipelineTest extends AbstractOidcFlowTest {
+
+    public static final String PIPELINE_RESOURCE = "classpath:/flows/oidc/keyset/keyset-pipeline-beans.xml";
+
+    private GenericXmlApplicationContext pipelineContext;
+
+    public KeySetPipelineTest() {
+        super(KeySetFlowTest.FLOW_ID);
+    }
+
+    @BeforeMethod
+    public void initializePipeline() {
+        pipelineContext = new GenericXmlApplicationContext();
+        pipelineContext.setParent(applicationContext);
+        pipelineContext.load(PIPELINE_RESOURCE);
+        pipelineContext.refresh();
+    }
+
+    @AfterMethod
+    public void destroyPipeline() {
+        pipelineContext.close();
+    }
+
+    @Test
+    public void testMapping() {
+        final SimpleUrlHandlerMapping mapping =
+                pipelineContext.getBean("shibboleth.oidc.keyset.PipelineHandlerMapping", SimpleUrlHandlerMapping.class);
+        Assert.assertEquals(mapping.getUrlMap().size(), 1);
+        Assert.assertTrue(mapping.getUrlMap().containsKey("/oidc/keyset-pipeline"));
+    }
+
+    @Test
+    public void test() throws ServletException, IOException, java.text.ParseException {
+        final ProfileActionPipelineRequestHandler handler = pipelineContext
+                .getBean("shibboleth.oidc.keyset.PipelineRequestHandler", ProfileActionPipelineRequestHandler.class);
+        handler.handleRequest(request, response);
+        Assert.assertEquals(response.getStatus(), 200);
+        final JWKSet jwkSet = JWKSet.parse(response.getContentAsString());
+        final List<JWK> keys = jwkSet.getKeys();
+        Assert.assertEquals(keys.size(), 3);
+        for (final JWK key : keys) {
+            Assert.assertFalse(key.isPrivate());
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2017 - 2020, GÉANT
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an “AS IS” BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.geant.idpextension.oidc.profile.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.geant.idpextension.oidc.attribute.encoding.impl.OIDCStringAttributeEncoder;
+import org.geant.idpextension.oidc.messaging.context.OIDCAuthenticationResponseConsentContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import net.shibboleth.idp.attribute.AttributeEncoder;
+import net.shibboleth.idp.attribute.IdPAttribute;
+import net.shibboleth.idp.attribute.StringAttributeValue;
+import net.shibboleth.idp.attribute.context.AttributeContext;
+import net.shibboleth.idp.profile.ActionTestingSupport;
+import net.shibboleth.idp.profile.context.RelyingPartyContext;
+
+/**
+ * Benchmark of {@link AddAttributesToClaimsSet} with a large number of attributes, comparing the plans taken from
+ * {@link AttributeClaimsEncodingPlanCache} to plans compiled for each request. Only the correctness of the results is
+ * asserted, the timings are logged.
+ */
+public class AddAttributesToClaimsSetBenchmarkTest extends BaseOIDCResponseActionTest {
+
+    /** Class logger. */
+    private final Logger log = LoggerFactory.getLogger(AddAttributesToClaimsSetBenchmarkTest.class);
+
+    /** Number of requests per measurement. */
+    private static final int ITERATIONS = 5000;
+
+    /** Number of attributes. */
+    private static final int ATTRIBUTES = 150;
+
+    /** Number of reserved claim names, the first attributes use them. */
+    private static final int RESERVED = 10;
+
+    /** Number of consentable claims, half of them consented. */
+    private static final int CONSENTABLE = 60;
+
+    /**
+     * Measures the cached plans against plans compiled for each request.
+     */
+    @Test(groups = "benchmark")
+    public void testCachedVersusCompiledPlans() throws Exception {
+        final List<String> reserved = new ArrayList<>();
+        for (int i = 0; i < RESERVED; i++) {
+            reserved.add("claim" + i);
+        }
+        final List<IdPAttribute> attributes = new ArrayList<>();
+        for (int i = 0; i < ATTRIBUTES; i++) {
+            final OIDCStringAttributeEncoder encoder = new OIDCStringAttributeEncoder();
+            encoder.setName("claim" + i);
+            encoder.setPlaceToIDToken(true);
+            final IdPAttribute attribute = new IdPAttribute("attribute" + i);
+            attribute.setValues(Collections.singletonList(new StringAttributeValue("value" + i)));
+            attribute.setEncoders(Collections.<AttributeEncoder<?>> singletonList(encoder));
+            attributes.add(attribute);
+        }
+        final AttributeContext attributeCtx = new AttributeContext();
+        attributeCtx.setIdPAttributes(attributes);
+        profileRequestCtx.getSubcontext(RelyingPartyContext.class).addSubcontext(attributeCtx);
+        final OIDCAuthenticationResponseConsentContext consentCtx = (OIDCAuthenticationResponseConsentContext) respCtx
+                .addSubcontext(new OIDCAuthenticationResponseConsentContext());
+        for (int i = ATTRIBUTES - CONSENTABLE; i < ATTRIBUTES; i++) {
+            consentCtx.getConsentableAttributes().add("claim" + i);
+            if (i % 2 == 0) {
+                consentCtx.getConsentedAttributes().add("claim" + i);
+            }
+        }
+
+        final AddAttributesToClaimsSet compiling = new AddAttributesToClaimsSet();
+        compiling.setTargetIDToken(true);
+        compiling.setReservedClaimNames(reserved);
+        compiling.initialize();
+        final AttributeClaimsEncodingPlanCache cache = new AttributeClaimsEncodingPlanCache();
+        cache.initialize();
+        final AddAttributesToClaimsSet cached = new AddAttributesToClaimsSet();
+        cached.setTargetIDToken(true);
+        cached.setReservedClaimNames(reserved);
+        cached.setEncodingPlanCache(cache);
+        cached.initialize();
+
+        // warm up both paths
+        run(compiling, ITERATIONS / 10);
+        run(cached, ITERATIONS / 10);
+
+        long start = System.nanoTime();
+        run(compiling, ITERATIONS);
+        final long compiled = System.nanoTime() - start;
+        start = System.nanoTime();
+        run(cached, ITERATIONS);
+        final long fromCache = System.nanoTime() - start;
+
+        log.info("{} attributes per request: plan compiled per request {} ns/request, cached plan {} ns/request",
+                ATTRIBUTES, compiled / ITERATIONS, fromCache / ITERATIONS);
+        Assert.assertEquals(cache.size(), 1);
+    }
+
+    private void run(final AddAttributesToClaimsSet action, final int iterations) {
+        for (int i = 0; i < iterations; i++) {
+            setIdTokenToResponseContext("iss", "sub", "aud", new Date(), new Date());
+            ActionTestingSupport.assertProceedEvent(action.execute(requestCtx));
+            Assert.assertNull(respCtx.getIDToken().getClaim("claim0"));
+            Assert.assertEquals(respCtx.getIDToken().getClaim("claim" + RESERVED), "value" + RESERVED);
+            Assert.assertEquals(respCtx.getIDToken().getClaim("claim" + (ATTRIBUTES - 2)), "value" + (ATTRIBUTES - 2));
+            Assert.assertNull(respCtx.getIDToken().getClaim("claim" + (ATTRIBUTES - 1)));
+        }
+    }
+}
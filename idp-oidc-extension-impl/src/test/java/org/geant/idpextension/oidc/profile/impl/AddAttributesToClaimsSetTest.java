@@ -18,6 +18,7 @@ package org.geant.idpextension.oidc.profile.impl;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 
@@ -193,4 +194,52 @@ public class AddAttributesToClaimsSetTest extends BaseOIDCResponseActionTest {
         Assert.assertTrue(respCtx.getIDToken().getClaim("test5").equals("value5"));
     }
 
-}
\ No newline at end of file
+    /**
+     * Success case with a reserved claim name.
+     * 
+     * @throws ComponentInitializationException
+     * @throws ParseException
+     */
+    @Test
+    public void testReservedClaimName() throws ComponentInitializationException, ParseException {
+        action = new AddAttributesToClaimsSet();
+        action.setTargetIDToken(true);
+        action.setReservedClaimNames(Collections.singletonList("test4"));
+        action.initialize();
+        setIdTokenToResponseContext("iss", "sub", "aud", new Date(), new Date());
+        setAttributeContext();
+        final Event event = action.execute(requestCtx);
+        ActionTestingSupport.assertProceedEvent(event);
+        Assert.assertTrue(respCtx.getIDToken().getClaim("test1").equals("value1 value2"));
+        Assert.assertNull(respCtx.getIDToken().getClaim("test4"));
+        Assert.assertTrue(respCtx.getIDToken().getClaim("test5").equals("value5"));
+    }
+
+    /**
+     * Success case with the encoding plan taken from the cache on the second request.
+     * 
+     * @throws ComponentInitializationException
+     * @throws ParseException
+     */
+    @Test
+    public void testEncodingPlanCache() throws ComponentInitializationException, ParseException {
+        final AttributeClaimsEncodingPlanCache cache = new AttributeClaimsEncodingPlanCache();
+        cache.initialize();
+        action = new AddAttributesToClaimsSet();
+        action.setTargetIDToken(true);
+        action.setEncodingPlanCache(cache);
+        action.initialize();
+        for (int i = 0; i < 2; i++) {
+            setIdTokenToResponseContext("iss", "sub", "aud", new Date(), new Date());
+            setAttributeContext();
+            final Event event = action.execute(requestCtx);
+            ActionTestingSupport.assertProceedEvent(event);
+            Assert.assertTrue(respCtx.getIDToken().getClaim("test1").equals("value1 value2"));
+            Assert.assertNull(respCtx.getIDToken().getClaim("test2"));
+            Assert.assertTrue(respCtx.getIDToken().getClaim("test5").equals("value5"));
+        }
+        Assert.assertEquals(cache.size(), 1);
+        Assert.assertEquals(cache.getPlan(clientId, true, false, Collections.<String> emptySet()).size(), 5);
+    }
+
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2017 - 2020, GÉANT
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an “AS IS” BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.geant.idpextension.oidc.profile.impl;
+
+import java.lang.management.ManagementFactory;
+
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.SkipException;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+
+/**
+ * Test harness measuring the bytes allocated by the current thread per invocation of a task, with the
+ * {@link com.sun.management.ThreadMXBean}. The tasks are run with the extension loggers at a given level, so that
+ * work done only for debug logging can be told apart from the work of the task itself. Tests using the harness are
+ * skipped on JVMs not supporting the measurement.
+ */
+public final class AllocationBudget {
+
+    /** Name of the logger whose level is set while measuring. */
+    private static final String LOGGER_NAME = "org.geant";
+
+    /** Constructor. */
+    private AllocationBudget() {
+    }
+
+    /**
+     * Assert that the task allocates on average at most the budget per invocation, with the extension loggers at INFO
+     * level.
+     * 
+     * @param name name of the task, for the failure message
+     * @param budget the budget in bytes per invocation
+     * @param iterations number of measured invocations
+     * @param task the task
+     * @return the measured bytes per invocation
+     */
+    public static long assertWithinBudget(final String name, final long budget, final int iterations,
+            final Task task) {
+        final long allocated = measure(Level.INFO, iterations, task);
+        Assert.assertTrue(allocated <= budget,
+                name + " allocated " + allocated + " bytes per invocation, the budget is " + budget);
+        return allocated;
+    }
+
+    /**
+     * Measure the bytes the task allocates on average per invocation, with the extension loggers at the given level.
+     * The loggers are detached from the appenders while measuring, so that only the cost of producing the log
+     * arguments is measured at debug level. The task is run for a tenth of the iterations before measuring.
+     * 
+     * @param level the level of the extension loggers
+     * @param iterations number of measured invocations
+     * @param task the task
+     * @return the measured bytes per invocation
+     */
+    public static long measure(final Level level, final int iterations, final Task task) {
+        final com.sun.management.ThreadMXBean threadBean = getThreadBean();
+        final Logger logger = (Logger) LoggerFactory.getLogger(LOGGER_NAME);
+        final Level originalLevel = logger.getLevel();
+        final boolean originalAdditive = logger.isAdditive();
+        logger.setLevel(level);
+        logger.setAdditive(false);
+        try {
+            for (int i = 0; i < iterations / 10 + 1; i++) {
+                task.run();
+            }
+            final long threadId = Thread.currentThread().getId();
+            final long before = threadBean.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < iterations; i++) {
+                task.run();
+            }
+            return (threadBean.getThreadAllocatedBytes(threadId) - before) / iterations;
+        } catch (Exception e) {
+            throw new AssertionError("Measured task failed", e);
+        } finally {
+            logger.setLevel(originalLevel);
+            logger.setAdditive(originalAdditive);
+        }
+    }
+
+    /**
+     * Get the thread bean measuring the allocations.
+     * 
+     * @return the thread bean
+     * @throws SkipException if the allocations cannot be measured
+     */
+    private static com.sun.management.ThreadMXBean getThreadBean() {
+        final java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()
+                && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemoryEnabled()) {
+            return (com.sun.management.ThreadMXBean) bean;
+        }
+        throw new SkipException("Thread allocation measurement is not supported by the JVM");
+    }
+
+    /** A measured task. */
+    public interface Task {
+
+        /**
+         * Run the task once.
+         * 
+         * @throws Exception if the task fails
+         */
+        void run() throws Exception;
+    }
+}
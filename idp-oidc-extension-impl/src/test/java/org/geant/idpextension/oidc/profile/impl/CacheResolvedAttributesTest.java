@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2017 - 2020, GÉANT
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an “AS IS” BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.geant.idpextension.oidc.profile.impl;
+
+import java.util.Collections;
+
+import org.geant.idpextension.oidc.storage.AttributeResolutionCache;
+import org.opensaml.storage.impl.MemoryStorageService;
+import org.springframework.webflow.execution.Event;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import net.shibboleth.idp.attribute.IdPAttribute;
+import net.shibboleth.idp.attribute.StringAttributeValue;
+import net.shibboleth.idp.attribute.context.AttributeContext;
+import net.shibboleth.idp.attribute.resolver.context.AttributeResolutionContext;
+import net.shibboleth.idp.authn.context.SubjectContext;
+import net.shibboleth.idp.profile.ActionTestingSupport;
+import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
+
+/** {@link CacheResolvedAttributes} unit test. */
+public class CacheResolvedAttributesTest extends BaseOIDCResponseActionTest {
+
+    private CacheResolvedAttributes action;
+
+    private MemoryStorageService storageService;
+
+    private AttributeResolutionCache cache;
+
+    @BeforeMethod
+    protected void setUp() throws Exception {
+        super.setUp();
+        storageService = new MemoryStorageService();
+        storageService.setId("test");
+        storageService.initialize();
+        cache = new AttributeResolutionCache();
+        cache.setId("test");
+        cache.setStorage(storageService);
+        cache.initialize();
+        profileRequestCtx.getSubcontext(SubjectContext.class, true).setPrincipalName("userPrin");
+        profileRequestCtx.getSubcontext(AttributeResolutionContext.class, true).setAttributeRecipientGroupID("sector");
+        action = new CacheResolvedAttributes();
+        action.setAttributeResolutionCache(cache);
+        action.initialize();
+    }
+
+    @AfterMethod
+    protected void tearDown() {
+        cache.destroy();
+        storageService.destroy();
+    }
+
+    /**
+     * Test that action copes with no resolved attributes.
+     */
+    @Test
+    public void testNoAttributes() throws ComponentInitializationException {
+        final Event event = action.execute(requestCtx);
+        ActionTestingSupport.assertProceedEvent(event);
+        Assert.assertNull(cache.get("userPrin", clientId, "sector"));
+    }
+
+    /**
+     * Test that the unfiltered attributes are cached.
+     */
+    @Test
+    public void testSuccess() throws ComponentInitializationException {
+        final IdPAttribute unfiltered = new IdPAttribute("mail");
+        unfiltered.setValues(Collections.singletonList(new StringAttributeValue("user@example.org")));
+        final AttributeContext attributeCtx = rpCtx.getSubcontext(AttributeContext.class, true);
+        attributeCtx.setUnfilteredIdPAttributes(Collections.singletonList(unfiltered));
+        attributeCtx.setIdPAttributes(Collections.<IdPAttribute> emptyList());
+        final Event event = action.execute(requestCtx);
+        ActionTestingSupport.assertProceedEvent(event);
+        Assert.assertEquals(cache.get("userPrin", clientId, "sector").get(0).getValues(), unfiltered.getValues());
+        Assert.assertNull(cache.get("userPrin", clientId, "other"));
+    }
+
+    /**
+     * Test that the filtered attributes are never cached.
+     */
+    @Test
+    public void testFilteredNotCached() throws ComponentInitializationException {
+        final IdPAttribute filtered = new IdPAttribute("mail");
+        filtered.setValues(Collections.singletonList(new StringAttributeValue("user@example.org")));
+        final AttributeContext attributeCtx = rpCtx.getSubcontext(AttributeContext.class, true);
+        attributeCtx.setIdPAttributes(Collections.singletonList(filtered));
+        final Event event = action.execute(requestCtx);
+        ActionTestingSupport.assertProceedEvent(event);
+        Assert.assertTrue(cache.get("userPrin", clientId, "sector").isEmpty());
+    }
+}
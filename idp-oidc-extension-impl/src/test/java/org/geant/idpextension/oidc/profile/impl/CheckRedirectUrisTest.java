@@ -30,6 +30,7 @@ import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.protocol.HttpContext;
+import org.geant.idpextension.oidc.metadata.resolver.SectorIdentifierCache;
 import org.geant.idpextension.oidc.profile.OidcEventIds;
 import org.mockito.Mockito;
 import org.opensaml.profile.action.EventIds;
@@ -130,6 +131,24 @@ public class CheckRedirectUrisTest extends BaseOIDCRegistrationRequestTest {
         initializeActionWithClient(buildMockHttpClient("[ \"" + redirectUri1 + "\", \"" + redirectUri2 + "\" ]"));
         assertEvent(null, metadata, redirectUri1);
     }
+
+    @Test
+    public void testSectorIdUriContentsViaCache() throws Exception {
+        OIDCClientMetadata metadata = new OIDCClientMetadata();
+        metadata.setSectorIDURI(new URI("https://invalid.scheme.org/cb"));
+        HttpClient httpClient = buildMockHttpClient("[ \"" + redirectUri1 + "\" ]");
+        SectorIdentifierCache cache = new SectorIdentifierCache();
+        cache.setHttpClient(httpClient);
+        cache.initialize();
+        action = new CheckRedirectURIs();
+        action.setHttpClient(buildMockHttpClient(null));
+        action.setSectorIdentifierCache(cache);
+        action.initialize();
+        assertEvent(null, metadata, redirectUri1);
+        assertEvent(OidcEventIds.INVALID_REDIRECT_URIS, metadata, redirectUri1, redirectUri2);
+        Mockito.verify(httpClient, Mockito.times(1)).execute((HttpUriRequest) Mockito.any(),
+                (HttpContext) Mockito.any());
+    }
     
     @SuppressWarnings({"rawtypes", "unchecked"})
     @Test
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2017 - 2020, GÉANT
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an “AS IS” BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.geant.idpextension.oidc.profile.impl;
+
+import net.minidev.json.JSONArray;
+import net.shibboleth.idp.profile.ActionTestingSupport;
+import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
+
+import org.geant.idpextension.oidc.config.OIDCUserInfoConfiguration;
+import org.geant.idpextension.oidc.messaging.context.OIDCAuthenticationResponseTokenClaimsContext;
+import org.geant.idpextension.oidc.profile.OidcEventIds;
+import org.geant.idpextension.oidc.token.support.TokenClaimsSet;
+import org.springframework.webflow.execution.Event;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/** {@link CheckUserInfoClaimsSnapshot} unit test. */
+public class CheckUserInfoClaimsSnapshotTest extends BaseOIDCResponseActionTest {
+
+    private CheckUserInfoClaimsSnapshot action;
+
+    private OIDCUserInfoConfiguration config;
+
+    @BeforeMethod
+    protected void setUp() throws Exception {
+        super.setUp();
+        action = new CheckUserInfoClaimsSnapshot();
+        action.initialize();
+        config = new OIDCUserInfoConfiguration();
+        config.setClaimsSnapshot(true);
+        rpCtx.setProfileConfig(config);
+    }
+
+    private OIDCAuthenticationResponseTokenClaimsContext setSnapshot(long snapshotTime) {
+        OIDCAuthenticationResponseTokenClaimsContext tokenClaimsCtx =
+                respCtx.getSubcontext(OIDCAuthenticationResponseTokenClaimsContext.class, true);
+        tokenClaimsCtx.getUserinfoClaims().setClaim("email", "user@example.org");
+        // token delivery claim, not part of the snapshot only
+        tokenClaimsCtx.getUserinfoClaims().setClaim("acr_claim", "value");
+        tokenClaimsCtx.getUserinfoClaims().setClaim(TokenClaimsSet.KEY_DELIVERY_CLAIMS_SNAPSHOT_TIME, snapshotTime);
+        final JSONArray names = new JSONArray();
+        names.add("email");
+        tokenClaimsCtx.getUserinfoClaims().setClaim(TokenClaimsSet.KEY_DELIVERY_CLAIMS_SNAPSHOT_NAMES, names);
+        return tokenClaimsCtx;
+    }
+
+    /**
+     * Test that action proceeds if there are no token delivery claims.
+     */
+    @Test
+    public void testNoTokenClaims() {
+        final Event event = action.execute(requestCtx);
+        ActionTestingSupport.assertProceedEvent(event);
+    }
+
+    /**
+     * Test that action proceeds if the token delivery claims are not a snapshot.
+     */
+    @Test
+    public void testNoSnapshot() {
+        respCtx.getSubcontext(OIDCAuthenticationResponseTokenClaimsContext.class, true).getUserinfoClaims()
+                .setClaim("email", "user@example.org");
+        final Event event = action.execute(requestCtx);
+        ActionTestingSupport.assertProceedEvent(event);
+    }
+
+    /**
+     * Test that the snapshot is not used if not enabled for the relying party.
+     */
+    @Test
+    public void testNotEnabled() {
+        config.setClaimsSnapshot(false);
+        final OIDCAuthenticationResponseTokenClaimsContext tokenClaimsCtx =
+                setSnapshot(System.currentTimeMillis() / 1000);
+        final Event event = action.execute(requestCtx);
+        ActionTestingSupport.assertProceedEvent(event);
+        Assert.assertNull(
+                tokenClaimsCtx.getUserinfoClaims().getClaim(TokenClaimsSet.KEY_DELIVERY_CLAIMS_SNAPSHOT_TIME));
+        Assert.assertNull(tokenClaimsCtx.getUserinfoClaims().getClaim("email"));
+        Assert.assertEquals(tokenClaimsCtx.getUserinfoClaims().getClaim("acr_claim"), "value");
+    }
+
+    /**
+     * Test that a stale snapshot is not used.
+     */
+    @Test
+    public void testStaleSnapshot() {
+        config.setClaimsSnapshotMaxAge(60000);
+        final OIDCAuthenticationResponseTokenClaimsContext tokenClaimsCtx =
+                setSnapshot(System.currentTimeMillis() / 1000 - 120);
+        final Event event = action.execute(requestCtx);
+        ActionTestingSupport.assertProceedEvent(event);
+        // the stale snapshot claims must not overwrite the claims of the resolved attributes
+        Assert.assertNull(tokenClaimsCtx.getUserinfoClaims().getClaim("email"));
+        Assert.assertNull(
+                tokenClaimsCtx.getUserinfoClaims().getClaim(TokenClaimsSet.KEY_DELIVERY_CLAIMS_SNAPSHOT_NAMES));
+        Assert.assertEquals(tokenClaimsCtx.getUserinfoClaims().getClaim("acr_claim"), "value");
+    }
+
+    /**
+     * Test that a valid snapshot is used.
+     */
+    @Test
+    public void testSnapshot() throws ComponentInitializationException {
+        config.setClaimsSnapshotMaxAge(60000);
+        final OIDCAuthenticationResponseTokenClaimsContext tokenClaimsCtx =
+                setSnapshot(System.currentTimeMillis() / 1000);
+        final Event event = action.execute(requestCtx);
+        ActionTestingSupport.assertEvent(event, OidcEventIds.USE_CLAIMS_SNAPSHOT);
+        Assert.assertNull(
+                tokenClaimsCtx.getUserinfoClaims().getClaim(TokenClaimsSet.KEY_DELIVERY_CLAIMS_SNAPSHOT_TIME));
+        Assert.assertNull(
+                tokenClaimsCtx.getUserinfoClaims().getClaim(TokenClaimsSet.KEY_DELIVERY_CLAIMS_SNAPSHOT_NAMES));
+        Assert.assertEquals(tokenClaimsCtx.getUserinfoClaims().getClaim("email"), "user@example.org");
+    }
+}
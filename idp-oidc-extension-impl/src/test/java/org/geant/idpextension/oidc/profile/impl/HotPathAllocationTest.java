@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2017 - 2020, GÉANT
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an “AS IS” BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.geant.idpextension.oidc.profile.impl;
+
+import java.net.URI;
+import java.net.URL;
+import java.util.Date;
+
+import org.geant.idpextension.oidc.decoding.impl.RequestUtil;
+import org.geant.idpextension.oidc.messaging.context.OIDCAuthenticationResponseConsentContext;
+import org.geant.idpextension.oidc.token.support.AccessTokenClaimsSet;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.nimbusds.oauth2.sdk.Scope;
+import com.nimbusds.oauth2.sdk.http.HTTPRequest;
+import com.nimbusds.oauth2.sdk.http.HTTPRequest.Method;
+import com.nimbusds.oauth2.sdk.id.ClientID;
+import com.nimbusds.oauth2.sdk.token.BearerAccessToken;
+import com.nimbusds.openid.connect.sdk.UserInfoRequest;
+
+import ch.qos.logback.classic.Level;
+import net.minidev.json.JSONArray;
+import net.shibboleth.idp.authn.context.SubjectContext;
+import net.shibboleth.idp.profile.ActionTestingSupport;
+import net.shibboleth.utilities.java.support.security.DataSealer;
+
+/**
+ * Allocation budgets of the hot path actions, measured with {@link AllocationBudget}. The claims sets carry a large
+ * number of consentable claims, so that serializing them only for a debug log would clearly show in the allocations.
+ * The budget of an action at INFO level is what it allocates at DEBUG level less the size of the debug serialization.
+ */
+public class HotPathAllocationTest extends BaseOIDCResponseActionTest {
+
+    /** Number of measured invocations. */
+    private static final int ITERATIONS = 200;
+
+    /** Number of consentable claims in the claims sets. */
+    private static final int CLAIMS = 1000;
+
+    /** Number of copies of the formatted output allowed when formatting a request. */
+    private static final int OUTPUT_COPIES = 8;
+
+    /** Size in bytes of a char of a string, without compact strings. */
+    private static final int BYTES_PER_CHAR = 2;
+
+    private DataSealer dataSealer;
+
+    private JSONArray consentable;
+
+    @BeforeMethod
+    protected void setUp() throws Exception {
+        super.setUp();
+        dataSealer = getDataSealer();
+        consentable = new JSONArray();
+        for (int i = 0; i < CLAIMS; i++) {
+            consentable.add("consentable_claim_" + i);
+        }
+    }
+
+    /**
+     * Token issuance must not serialize the access token claims when debug is off.
+     */
+    @Test
+    public void testSetAccessTokenToResponseContext() throws Exception {
+        respCtx.setScope(new Scope());
+        respCtx.setAuthTime(System.currentTimeMillis());
+        respCtx.setRedirectURI(new URI("http://example.com"));
+        final OIDCAuthenticationResponseConsentContext consentCtx = (OIDCAuthenticationResponseConsentContext) respCtx
+                .addSubcontext(new OIDCAuthenticationResponseConsentContext());
+        consentCtx.getConsentableAttributes().addAll(consentable);
+        profileRequestCtx.getSubcontext(SubjectContext.class, true).setPrincipalName("userPrin");
+        final SetAccessTokenToResponseContext action = new SetAccessTokenToResponseContext(dataSealer);
+        action.initialize();
+        final AllocationBudget.Task task = new AllocationBudget.Task() {
+            public void run() {
+                ActionTestingSupport.assertProceedEvent(action.execute(requestCtx));
+            }
+        };
+        final long debugSize = serializedSize(task);
+        AllocationBudget.assertWithinBudget("SetAccessTokenToResponseContext",
+                AllocationBudget.measure(Level.DEBUG, ITERATIONS, task) - debugSize, ITERATIONS, task);
+    }
+
+    /**
+     * Access token validation must not serialize the unwrapped claims when debug is off.
+     */
+    @Test
+    public void testValidateAccessToken() throws Exception {
+        final AccessTokenClaimsSet claims = new AccessTokenClaimsSet.Builder(idGenerator, new ClientID(), "issuer",
+                "userPrin", "subject", new Date(), new Date(System.currentTimeMillis() + 600000), new Date(),
+                new URI("http://example.com"), new Scope()).setConsentableClaims(consentable).build();
+        setUserInfoRequest(new UserInfoRequest(new URI("http://example.com"),
+                new BearerAccessToken(claims.serialize(dataSealer))));
+        final ValidateAccessToken action = new ValidateAccessToken(dataSealer);
+        action.setRevocationCache(new MockRevocationCache(false, true));
+        action.initialize();
+        final AllocationBudget.Task task = new AllocationBudget.Task() {
+            public void run() {
+                ActionTestingSupport.assertProceedEvent(action.execute(requestCtx));
+            }
+        };
+        AllocationBudget.assertWithinBudget("ValidateAccessToken",
+                AllocationBudget.measure(Level.DEBUG, ITERATIONS, task) - claims.serialize().length(), ITERATIONS,
+                task);
+    }
+
+    /**
+     * Formatting a request for the debug log must be linear in the size of the request.
+     */
+    @Test
+    public void testRequestUtilToString() throws Exception {
+        final HTTPRequest httpReq = new HTTPRequest(Method.POST, new URL("https://op.example.org/token"));
+        final StringBuilder query = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            query.append(i == 0 ? "" : "&").append("parameter_").append(i).append("=value_").append(i);
+        }
+        httpReq.setQuery(query.toString());
+        final AllocationBudget.Task parse = new AllocationBudget.Task() {
+            public void run() {
+                Assert.assertNotNull(httpReq.getQueryParameters());
+            }
+        };
+        final AllocationBudget.Task task = new AllocationBudget.Task() {
+            public void run() {
+                Assert.assertNotNull(RequestUtil.toString(httpReq));
+            }
+        };
+        // The parameters are parsed on each call, the formatting may copy the chars of the output a few times while
+        // the builder grows. Concatenating the 500 lines one by one would copy them hundreds of times.
+        final long outputSize = RequestUtil.toString(httpReq).length() * BYTES_PER_CHAR;
+        AllocationBudget.assertWithinBudget("RequestUtil.toString",
+                AllocationBudget.measure(Level.INFO, ITERATIONS, parse) + OUTPUT_COPIES * outputSize, ITERATIONS,
+                task);
+    }
+
+    /**
+     * Run the task once and get the size of the serialized access token claims it produced.
+     * 
+     * @param task the task
+     * @return the size of the serialized claims
+     * @throws Exception if the task fails
+     */
+    private int serializedSize(final AllocationBudget.Task task) throws Exception {
+        task.run();
+        return respCtx.getAccessTokenClaimsSet().serialize().length();
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2017 - 2020, GÉANT
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an “AS IS” BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.geant.idpextension.oidc.profile.impl;
+
+import java.util.Collections;
+
+import org.geant.idpextension.oidc.profile.OidcEventIds;
+import org.geant.idpextension.oidc.storage.AttributeResolutionCache;
+import org.opensaml.storage.impl.MemoryStorageService;
+import org.springframework.webflow.execution.Event;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import net.shibboleth.idp.attribute.IdPAttribute;
+import net.shibboleth.idp.attribute.StringAttributeValue;
+import net.shibboleth.idp.attribute.context.AttributeContext;
+import net.shibboleth.idp.attribute.resolver.context.AttributeResolutionContext;
+import net.shibboleth.idp.authn.context.SubjectContext;
+import net.shibboleth.idp.profile.ActionTestingSupport;
+import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
+
+/** {@link LookupCachedAttributes} unit test. */
+public class LookupCachedAttributesTest extends BaseOIDCResponseActionTest {
+
+    private LookupCachedAttributes action;
+
+    private MemoryStorageService storageService;
+
+    private AttributeResolutionCache cache;
+
+    @BeforeMethod
+    protected void setUp() throws Exception {
+        super.setUp();
+        storageService = new MemoryStorageService();
+        storageService.setId("test");
+        storageService.initialize();
+        cache = new AttributeResolutionCache();
+        cache.setId("test");
+        cache.setStorage(storageService);
+        cache.initialize();
+        profileRequestCtx.getSubcontext(SubjectContext.class, true).setPrincipalName("userPrin");
+        profileRequestCtx.getSubcontext(AttributeResolutionContext.class, true).setAttributeRecipientGroupID("sector");
+        action = new LookupCachedAttributes();
+    }
+
+    @AfterMethod
+    protected void tearDown() {
+        cache.destroy();
+        storageService.destroy();
+    }
+
+    /**
+     * Test that action does nothing without a cache.
+     */
+    @Test
+    public void testNoCache() throws ComponentInitializationException {
+        action.initialize();
+        final Event event = action.execute(requestCtx);
+        ActionTestingSupport.assertProceedEvent(event);
+        Assert.assertNull(rpCtx.getSubcontext(AttributeContext.class));
+    }
+
+    /**
+     * Test that action proceeds to attribute resolution if there are no cached attributes.
+     */
+    @Test
+    public void testMiss() throws ComponentInitializationException {
+        action.setAttributeResolutionCache(cache);
+        action.initialize();
+        cache.put("userPrin", clientId, "other", Collections.singletonList(new IdPAttribute("mail")));
+        final Event event = action.execute(requestCtx);
+        ActionTestingSupport.assertProceedEvent(event);
+        Assert.assertNull(rpCtx.getSubcontext(AttributeContext.class));
+    }
+
+    /**
+     * Test that the cached attributes are set to attribute context.
+     */
+    @Test
+    public void testHit() throws ComponentInitializationException {
+        action.setAttributeResolutionCache(cache);
+        action.initialize();
+        final IdPAttribute attribute = new IdPAttribute("mail");
+        attribute.setValues(Collections.singletonList(new StringAttributeValue("user@example.org")));
+        cache.put("userPrin", clientId, "sector", Collections.singletonList(attribute));
+        final Event event = action.execute(requestCtx);
+        ActionTestingSupport.assertEvent(event, OidcEventIds.USE_CACHED_ATTRIBUTES);
+        final AttributeContext attributeCtx = rpCtx.getSubcontext(AttributeContext.class);
+        Assert.assertEquals(attributeCtx.getIdPAttributes().get("mail").getValues(), attribute.getValues());
+        Assert.assertEquals(attributeCtx.getUnfilteredIdPAttributes().get("mail").getValues(),
+                attribute.getValues());
+        Assert.assertNotSame(attributeCtx.getIdPAttributes().get("mail"),
+                attributeCtx.getUnfilteredIdPAttributes().get("mail"));
+    }
+
+    /**
+     * Test that the attributes are not looked up without a principal.
+     */
+    @Test
+    public void testNoPrincipal() throws ComponentInitializationException {
+        action.setAttributeResolutionCache(cache);
+        action.initialize();
+        profileRequestCtx.removeSubcontext(SubjectContext.class);
+        cache.put("userPrin", clientId, "sector", Collections.singletonList(new IdPAttribute("mail")));
+        final Event event = action.execute(requestCtx);
+        ActionTestingSupport.assertProceedEvent(event);
+    }
+}
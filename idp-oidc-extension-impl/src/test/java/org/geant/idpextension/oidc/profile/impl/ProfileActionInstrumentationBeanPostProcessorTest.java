@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2017 - 2020, GÉANT
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an “AS IS” BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.geant.idpextension.oidc.profile.impl;
+
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+
+import org.opensaml.profile.action.ActionSupport;
+import org.opensaml.profile.action.EventIds;
+import org.opensaml.profile.action.ProfileAction;
+import org.opensaml.profile.context.ProfileRequestContext;
+import org.springframework.webflow.execution.Action;
+import org.springframework.webflow.execution.Event;
+import org.springframework.webflow.execution.RequestContext;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+import net.shibboleth.idp.profile.AbstractProfileAction;
+import net.shibboleth.idp.profile.ActionTestingSupport;
+import net.shibboleth.idp.profile.RequestContextBuilder;
+import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
+
+/** {@link ProfileActionInstrumentationBeanPostProcessor} unit test. */
+public class ProfileActionInstrumentationBeanPostProcessorTest {
+
+    private ProfileActionInstrumentationBeanPostProcessor postProcessor;
+
+    private MetricRegistry metricRegistry;
+
+    private TestAction action;
+
+    @BeforeMethod
+    protected void setUp() throws ComponentInitializationException {
+        metricRegistry = new MetricRegistry();
+        postProcessor = new ProfileActionInstrumentationBeanPostProcessor();
+        postProcessor.setMetricRegistry(metricRegistry);
+        action = new TestAction();
+        action.initialize();
+    }
+
+    /**
+     * Test that the actions are not wrapped if the instrumentation is disabled.
+     */
+    @Test
+    public void testDisabled() {
+        Assert.assertSame(postProcessor.postProcessAfterInitialization(action, "TestAction"), action);
+        Assert.assertTrue(metricRegistry.getMetrics().isEmpty());
+    }
+
+    /**
+     * Test that other beans are not wrapped.
+     */
+    @Test
+    public void testNotAction() {
+        postProcessor.setEnabled(true);
+        final Object bean = new Object();
+        Assert.assertSame(postProcessor.postProcessAfterInitialization(bean, "Bean"), bean);
+    }
+
+    /**
+     * Test that the latency and allocations of the action are recorded.
+     */
+    @Test
+    public void testInstrumented() throws Exception {
+        postProcessor.setEnabled(true);
+        postProcessor.setAllocations(true);
+        postProcessor.setSlowThreshold(1);
+        final Object bean = postProcessor.postProcessAfterInitialization(action, "TestAction");
+        Assert.assertNotSame(bean, action);
+        Assert.assertTrue(bean instanceof ProfileAction);
+        Assert.assertSame(InstrumentedProfileAction.unwrap(bean), action);
+        Assert.assertSame(postProcessor.postProcessAfterInitialization(bean, "TestAction"), bean);
+        final RequestContext requestCtx = new RequestContextBuilder().buildRequestContext();
+        ActionTestingSupport.assertProceedEvent(((Action) bean).execute(requestCtx));
+        action.setEvent(EventIds.INVALID_MSG_CTX);
+        final Event event = ((Action) bean).execute(requestCtx);
+        ActionTestingSupport.assertEvent(event, EventIds.INVALID_MSG_CTX);
+
+        final Timer timer = getTimer();
+        Assert.assertNotNull(timer);
+        Assert.assertEquals(timer.getCount(), 2);
+        for (final Map.Entry<String, Histogram> entry : metricRegistry.getHistograms().entrySet()) {
+            Assert.assertTrue(entry.getKey().endsWith("TestAction.allocatedBytes"));
+            Assert.assertEquals(entry.getValue().getCount(), 2);
+        }
+    }
+
+    /**
+     * Test that the prototype instances of an action share the metrics, and that the profile action interface is
+     * measured too.
+     */
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testPrototypesShareMetrics() throws Exception {
+        postProcessor.setEnabled(true);
+        final RequestContext requestCtx = new RequestContextBuilder().buildRequestContext();
+        for (int i = 0; i < 3; i++) {
+            final TestAction prototype = new TestAction();
+            prototype.initialize();
+            final Object bean = postProcessor.postProcessAfterInitialization(prototype, "TestAction");
+            ActionTestingSupport.assertProceedEvent(((Action) bean).execute(requestCtx));
+        }
+        Assert.assertEquals(getTimer().getCount(), 3);
+        Assert.assertEquals(metricRegistry.getTimers().size(), 1);
+
+        final Object bean = postProcessor.postProcessAfterInitialization(action, "TestAction");
+        final ProfileRequestContext profileRequestCtx = new ProfileRequestContext();
+        profileRequestCtx.setProfileId("testProfile");
+        ((ProfileAction) bean).execute(profileRequestCtx);
+        Assert.assertEquals(metricRegistry.timer(
+                MetricRegistry.name(InstrumentedProfileAction.METRIC_PREFIX, "testProfile", "TestAction", "latency"))
+                .getCount(), 1);
+    }
+
+    /**
+     * Get the latency timer of the test action.
+     * 
+     * @return the timer, null if not found
+     */
+    private Timer getTimer() {
+        for (final Map.Entry<String, Timer> entry : metricRegistry.getTimers().entrySet()) {
+            if (entry.getKey().startsWith(InstrumentedProfileAction.METRIC_PREFIX)
+                    && entry.getKey().endsWith("TestAction.latency")) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Action optionally raising an event.
+     */
+    @SuppressWarnings("rawtypes")
+    static class TestAction extends AbstractProfileAction {
+
+        private String event;
+
+        void setEvent(final String eventId) {
+            event = eventId;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        protected void doExecute(@Nonnull final ProfileRequestContext profileRequestContext) {
+            if (event != null) {
+                ActionSupport.buildEvent(profileRequestContext, event);
+            }
+        }
+    }
+}
@@ -21,6 +21,7 @@ import net.shibboleth.utilities.java.support.component.ComponentInitializationEx
 import java.net.URI;
 import java.net.URISyntaxException;
 
+import org.geant.idpextension.oidc.messaging.ScopeRegistry;
 import org.geant.idpextension.oidc.messaging.context.OIDCAuthenticationResponseTokenClaimsContext;
 import org.springframework.webflow.execution.Event;
 import org.testng.Assert;
@@ -75,6 +76,29 @@ public class ReduceValidatedScopeTest extends BaseOIDCResponseActionTest {
         Assert.assertNull(respCtx.getSubcontext(OIDCAuthenticationResponseTokenClaimsContext.class, false));
     }
 
+    /**
+     * Test that scope reducing works as expected with the scope registry.
+     * 
+     * @throws ComponentInitializationException
+     * @throws URISyntaxException
+     */
+    @Test
+    public void testSuccessReducedScopeRegistry() throws ComponentInitializationException, URISyntaxException {
+        ScopeRegistry registry = new ScopeRegistry();
+        registry.initialize();
+        action = new ReduceValidatedScope();
+        action.setScopeRegistry(registry);
+        action.initialize();
+        respCtx.setScope(registry.intern(Scope.parse("1 2 3")));
+        TokenRequest req = new TokenRequest(new URI("http://example.com"),
+                new RefreshTokenGrant(new RefreshToken()), Scope.parse("2 4"));
+        setTokenRequest(req);
+        final Event event = action.execute(requestCtx);
+        ActionTestingSupport.assertProceedEvent(event);
+        Assert.assertEquals(respCtx.getScope().toString(), "2");
+        Assert.assertSame(respCtx.getScope(), registry.intern(Scope.parse("2")));
+    }
+
     /**
      * Test that scope reducing works as expected allowing only predefined new scopes and not removing token delivery
      * attributes if scope is not reduced.
@@ -18,13 +18,17 @@ package org.geant.idpextension.oidc.profile.impl;
 
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.Collections;
 
 import net.shibboleth.idp.attribute.resolver.context.AttributeResolutionContext;
 import net.shibboleth.idp.profile.ActionTestingSupport;
 import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
 import net.shibboleth.utilities.java.support.logic.ConstraintViolationException;
 
+import org.geant.idpextension.oidc.metadata.resolver.SectorIdentifierCache;
+import org.geant.idpextension.oidc.metadata.resolver.SectorIdentifierCache.CachedSectorIdentifier;
 import org.geant.idpextension.oidc.profile.OidcEventIds;
+import org.mockito.Mockito;
 import org.springframework.webflow.execution.Event;
 import org.testng.Assert;
 import org.testng.annotations.BeforeMethod;
@@ -37,6 +41,8 @@ public class SetSectorIdentifierForAttributeResolutionTest extends BaseOIDCRespo
 
     private SetSectorIdentifierForAttributeResolution action;
 
+    private SectorIdentifierCache sectorIdentifierCache;
+
     @BeforeMethod
     private void init() throws ComponentInitializationException, URISyntaxException {
         action = new SetSectorIdentifierForAttributeResolution();
@@ -79,6 +85,60 @@ public class SetSectorIdentifierForAttributeResolutionTest extends BaseOIDCRespo
         ActionTestingSupport.assertEvent(event, OidcEventIds.MISSING_REDIRECT_URIS);
     }
 
+    /**
+     * Test that the redirect uri hosts listed in the sector identifier uri contents are accepted.
+     */
+    @Test
+    public void testSuccessPairwiseSectorIdentifierHosts() throws ComponentInitializationException,
+            URISyntaxException {
+        initSectorIdentifierCache(new CachedSectorIdentifier(
+                Collections.singleton(new URI("https://example.com/cb")), Collections.singleton("example.com"), null,
+                System.currentTimeMillis() + 60000));
+        final Event event = action.execute(requestCtx);
+        ActionTestingSupport.assertProceedEvent(event);
+        AttributeResolutionContext attribCtx = profileRequestCtx.getSubcontext(AttributeResolutionContext.class, true);
+        Assert.assertEquals(attribCtx.getAttributeRecipientGroupID(), "sector.example.org");
+    }
+
+    /**
+     * Test that a redirect uri host not listed in the sector identifier uri contents fails the action.
+     */
+    @Test
+    public void testFailPairwiseSectorIdentifierHosts() throws ComponentInitializationException,
+            URISyntaxException {
+        initSectorIdentifierCache(new CachedSectorIdentifier(
+                Collections.singleton(new URI("https://other.example.com/cb")),
+                Collections.singleton("other.example.com"), null, System.currentTimeMillis() + 60000));
+        final Event event = action.execute(requestCtx);
+        ActionTestingSupport.assertEvent(event, OidcEventIds.INVALID_SECTOR_IDENTIFIER_URI);
+    }
+
+    /**
+     * Test that sector identifier uri contents not in the cache are not fetched and do not fail the action.
+     */
+    @Test
+    public void testSuccessPairwiseSectorIdentifierNotCached() throws ComponentInitializationException,
+            URISyntaxException {
+        initSectorIdentifierCache(null);
+        final Event event = action.execute(requestCtx);
+        ActionTestingSupport.assertProceedEvent(event);
+        Mockito.verify(sectorIdentifierCache, Mockito.never()).fetch(Mockito.<URI> any());
+        AttributeResolutionContext attribCtx = profileRequestCtx.getSubcontext(AttributeResolutionContext.class, true);
+        Assert.assertEquals(attribCtx.getAttributeRecipientGroupID(), "sector.example.org");
+    }
+
+    private void initSectorIdentifierCache(final CachedSectorIdentifier contents)
+            throws ComponentInitializationException, URISyntaxException {
+        final URI sectorIdUri = new URI("https://sector.example.org/uris.json");
+        metadataCtx.getClientInformation().getOIDCMetadata().setSubjectType(SubjectType.PAIRWISE);
+        metadataCtx.getClientInformation().getOIDCMetadata().setSectorIDURI(sectorIdUri);
+        sectorIdentifierCache = Mockito.mock(SectorIdentifierCache.class);
+        Mockito.when(sectorIdentifierCache.peek(sectorIdUri)).thenReturn(contents);
+        action = new SetSectorIdentifierForAttributeResolution();
+        action.setSectorIdentifierCache(sectorIdentifierCache);
+        action.initialize();
+    }
+
     /**
      * Test setting null strategy for sector identifier.
      */
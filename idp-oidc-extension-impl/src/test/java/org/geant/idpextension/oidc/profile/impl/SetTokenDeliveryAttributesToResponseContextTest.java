@@ -28,10 +28,13 @@ import net.shibboleth.idp.profile.context.RelyingPartyContext;
 import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
 import org.geant.idpextension.oidc.attribute.encoding.impl.OIDCStringAttributeEncoder;
 import org.geant.idpextension.oidc.messaging.context.OIDCAuthenticationResponseTokenClaimsContext;
+import org.geant.idpextension.oidc.token.support.TokenClaimsSet;
+import org.opensaml.profile.context.ProfileRequestContext;
 import org.springframework.webflow.execution.Event;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
+import com.google.common.base.Predicates;
 import com.nimbusds.oauth2.sdk.ParseException;
 
 /** {@link SetTokenDeliveryAttributesToResponseContext} unit test. */
@@ -129,5 +132,47 @@ public class SetTokenDeliveryAttributesToResponseContextTest extends BaseOIDCRes
         Assert.assertEquals(respTokenClaims.getUserinfoClaims().getClaim("test1"), "value1 value2");
         Assert.assertEquals(respTokenClaims.getIdtokenClaims().getClaim("test2"), "value");
         Assert.assertEquals(respTokenClaims.getClaims().getClaim("test4"), "value4");
+        Assert.assertNull(respTokenClaims.getUserinfoClaims()
+                .getClaim(TokenClaimsSet.KEY_DELIVERY_CLAIMS_SNAPSHOT_TIME));
+    }
+
+    /**
+     * Test that all the attributes allowed for userinfo are placed to the userinfo claims snapshot.
+     */
+    @Test
+    public void testClaimsSnapshot() throws ComponentInitializationException, ParseException {
+        action = new SetTokenDeliveryAttributesToResponseContext();
+        action.setClaimsSnapshotCondition(Predicates.<ProfileRequestContext> alwaysTrue());
+        action.initialize();
+        setAttributeContext();
+        Collection<AttributeEncoder<?>> encoders = new ArrayList<AttributeEncoder<?>>();
+        OIDCStringAttributeEncoder encoder = new OIDCStringAttributeEncoder();
+        encoder.setName("test5");
+        encoders.add(encoder);
+        IdPAttribute attribute = new IdPAttribute("test5");
+        List<StringAttributeValue> values = new ArrayList<StringAttributeValue>();
+        values.add(new StringAttributeValue("value5"));
+        attribute.setValues(values);
+        attribute.setEncoders(encoders);
+        AttributeContext attributeCtx =
+                profileRequestCtx.getSubcontext(RelyingPartyContext.class).getSubcontext(AttributeContext.class);
+        List<IdPAttribute> attributes = new ArrayList<IdPAttribute>(attributeCtx.getIdPAttributes().values());
+        attributes.add(attribute);
+        attributeCtx.setIdPAttributes(attributes);
+        final long now = System.currentTimeMillis() / 1000;
+        final Event event = action.execute(requestCtx);
+        ActionTestingSupport.assertProceedEvent(event);
+        OIDCAuthenticationResponseTokenClaimsContext respTokenClaims =
+                respCtx.getSubcontext(OIDCAuthenticationResponseTokenClaimsContext.class);
+        Assert.assertEquals(respTokenClaims.getUserinfoClaims().getClaim("test5"), "value5");
+        Assert.assertEquals(respTokenClaims.getUserinfoClaims().getClaim("test1"), "value1 value2");
+        Assert.assertNull(respTokenClaims.getUserinfoClaims().getClaim("test2"));
+        Assert.assertNull(respTokenClaims.getClaims().getClaim("test5"));
+        Assert.assertTrue(((Number) respTokenClaims.getUserinfoClaims()
+                .getClaim(TokenClaimsSet.KEY_DELIVERY_CLAIMS_SNAPSHOT_TIME)).longValue() >= now);
+        List<?> names = (List<?>) respTokenClaims.getUserinfoClaims()
+                .getClaim(TokenClaimsSet.KEY_DELIVERY_CLAIMS_SNAPSHOT_NAMES);
+        Assert.assertTrue(names.contains("test5"));
+        Assert.assertFalse(names.contains("test1"));
     }
 }
\ No newline at end of file
@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2017 - 2020, GÉANT
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an “AS IS” BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.geant.idpextension.oidc.profile.impl;
+
+import java.net.URI;
+import java.security.NoSuchAlgorithmException;
+import java.security.interfaces.RSAPublicKey;
+import java.security.SecureRandom;
+import java.text.ParseException;
+import java.util.Collections;
+import java.util.Date;
+
+import net.shibboleth.ext.spring.resource.ResourceHelper;
+import net.shibboleth.idp.profile.ActionTestingSupport;
+import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
+import net.shibboleth.utilities.java.support.security.BasicKeystoreKeyStrategy;
+import net.shibboleth.utilities.java.support.security.DataSealerException;
+
+import org.geant.idpextension.oidc.config.OIDCCoreProtocolConfiguration;
+import org.geant.idpextension.oidc.storage.ReferenceTokenDataSealer;
+import org.geant.idpextension.oidc.token.support.AccessTokenClaimsSet;
+import org.opensaml.profile.action.EventIds;
+import org.opensaml.storage.impl.MemoryStorageService;
+import org.opensaml.xmlsec.SignatureSigningParameters;
+import org.opensaml.xmlsec.context.SecurityParametersContext;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.webflow.execution.Event;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.crypto.RSASSAVerifier;
+import com.nimbusds.jwt.SignedJWT;
+import com.nimbusds.oauth2.sdk.Scope;
+import com.nimbusds.oauth2.sdk.id.ClientID;
+
+/** {@link SignAccessToken} unit test. */
+public class SignAccessTokenTest extends BaseOIDCResponseActionTest {
+
+    private SignAccessToken action;
+
+    private String sealedToken;
+
+    private ReferenceTokenDataSealer tokenSealer;
+
+    @BeforeMethod
+    protected void setUp() throws Exception {
+        super.setUp();
+        final MemoryStorageService storageService = new MemoryStorageService();
+        storageService.setId("test");
+        storageService.initialize();
+        final BasicKeystoreKeyStrategy strategy = new BasicKeystoreKeyStrategy();
+        strategy.setKeystoreResource(ResourceHelper.of(new ClassPathResource("credentials/sealer.jks")));
+        strategy.setKeyVersionResource(ResourceHelper.of(new ClassPathResource("credentials/sealer.kver")));
+        strategy.setKeystorePassword("password");
+        strategy.setKeyAlias("secret");
+        strategy.setKeyPassword("password");
+        strategy.initialize();
+        tokenSealer = new ReferenceTokenDataSealer();
+        tokenSealer.setKeyStrategy(strategy);
+        tokenSealer.setRandom(SecureRandom.getInstance("SHA1PRNG"));
+        tokenSealer.setReferenceTokens(false);
+        tokenSealer.setStorage(storageService);
+        tokenSealer.initialize();
+        action = new SignAccessToken();
+        action.setTokenSealer(tokenSealer);
+        action.initialize();
+        AccessTokenClaimsSet claims = new AccessTokenClaimsSet.Builder(idGenerator, new ClientID(clientId), "issuer",
+                "userPrin", "subject", new Date(), new Date(System.currentTimeMillis() + 60000), new Date(),
+                new URI("http://example.com"), new Scope("openid")).build();
+        sealedToken = claims.serialize(tokenSealer);
+        respCtx.setAccessToken(sealedToken, 60);
+        respCtx.setAccessTokenClaimsSet(claims);
+        SecurityParametersContext spCtx = new SecurityParametersContext();
+        SignatureSigningParameters params = new SignatureSigningParameters();
+        params.setSigningCredential(credentialRSA);
+        params.setSignatureAlgorithm("RS256");
+        spCtx.setSignatureSigningParameters(params);
+        profileRequestCtx.addSubcontext(spCtx);
+    }
+
+    /**
+     * Test that action requires the token sealer.
+     */
+    @Test(expectedExceptions = ComponentInitializationException.class)
+    public void testNoTokenSealer() throws ComponentInitializationException {
+        action = new SignAccessToken();
+        action.initialize();
+    }
+
+    /**
+     * Test that action leaves the sealed token in place if JWT access tokens are not enabled.
+     */
+    @Test
+    public void testNotEnabled() {
+        final Event event = action.execute(requestCtx);
+        ActionTestingSupport.assertProceedEvent(event);
+        Assert.assertEquals(respCtx.getAccessToken().getValue(), sealedToken);
+    }
+
+    /**
+     * Test that action leaves the sealed token in place if there are no signing parameters.
+     */
+    @Test
+    public void testNoSigningParameters() {
+        ((OIDCCoreProtocolConfiguration) rpCtx.getProfileConfig()).setJwtAccessTokens(true);
+        profileRequestCtx.getSubcontext(SecurityParametersContext.class).setSignatureSigningParameters(null);
+        final Event event = action.execute(requestCtx);
+        ActionTestingSupport.assertProceedEvent(event);
+        Assert.assertEquals(respCtx.getAccessToken().getValue(), sealedToken);
+    }
+
+    /**
+     * Test that action fails if there is no access token.
+     */
+    @Test
+    public void testNoAccessToken() {
+        ((OIDCCoreProtocolConfiguration) rpCtx.getProfileConfig()).setJwtAccessTokens(true);
+        respCtx.setAccessTokenClaimsSet(null);
+        final Event event = action.execute(requestCtx);
+        ActionTestingSupport.assertEvent(event, EventIds.INVALID_MSG_CTX);
+    }
+
+    /**
+     * Test that the access token is replaced with a signed JWT that can still be unwrapped by the OP.
+     */
+    @Test
+    public void testSuccess() throws ParseException, JOSEException, DataSealerException,
+            ComponentInitializationException, NoSuchAlgorithmException {
+        ((OIDCCoreProtocolConfiguration) rpCtx.getProfileConfig()).setJwtAccessTokens(true);
+        final Event event = action.execute(requestCtx);
+        ActionTestingSupport.assertProceedEvent(event);
+        SignedJWT jwt = SignedJWT.parse(respCtx.getAccessToken().getValue());
+        Assert.assertTrue(jwt.verify(new RSASSAVerifier((RSAPublicKey) credentialRSA.getPublicKey())));
+        Assert.assertEquals(jwt.getHeader().getType(), AccessTokenClaimsSet.JWT_TYPE_AT);
+        Assert.assertEquals(jwt.getJWTClaimsSet().getAudience(), Collections.singletonList("issuer"));
+        Assert.assertEquals(jwt.getJWTClaimsSet().getSubject(), "subject");
+        Assert.assertTrue(jwt.getJWTClaimsSet().getJWTID().startsWith(ReferenceTokenDataSealer.HANDLE_PREFIX));
+        Assert.assertFalse(jwt.serialize().contains(sealedToken));
+        Assert.assertEquals(respCtx.getAccessToken().getLifetime(), 60);
+        AccessTokenClaimsSet parsed = AccessTokenClaimsSet.parse(respCtx.getAccessToken().getValue(), tokenSealer);
+        Assert.assertEquals(parsed.getID(), respCtx.getAccessTokenClaimsSet().getID());
+    }
+
+    /**
+     * Test that the configured audiences are used.
+     */
+    @Test
+    public void testConfiguredAudiences() throws ParseException {
+        ((OIDCCoreProtocolConfiguration) rpCtx.getProfileConfig()).setJwtAccessTokens(true);
+        ((OIDCCoreProtocolConfiguration) rpCtx.getProfileConfig())
+                .setJwtAccessTokenAudiences(Collections.singleton("https://rs.example.org"));
+        final Event event = action.execute(requestCtx);
+        ActionTestingSupport.assertProceedEvent(event);
+        Assert.assertEquals(SignedJWT.parse(respCtx.getAccessToken().getValue()).getJWTClaimsSet().getAudience(),
+                Collections.singletonList("https://rs.example.org"));
+    }
+
+    /**
+     * Test that the handle of a reference access token is used as the reference as such.
+     */
+    @Test
+    public void testReferenceAccessToken() throws ParseException, DataSealerException {
+        ((OIDCCoreProtocolConfiguration) rpCtx.getProfileConfig()).setJwtAccessTokens(true);
+        final String handle = tokenSealer.reference(respCtx.getAccessTokenClaimsSet().serialize(),
+                System.currentTimeMillis() + 60000);
+        respCtx.setAccessToken(handle, 60);
+        final Event event = action.execute(requestCtx);
+        ActionTestingSupport.assertProceedEvent(event);
+        Assert.assertEquals(SignedJWT.parse(respCtx.getAccessToken().getValue()).getJWTClaimsSet().getJWTID(),
+                handle);
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2017 - 2020, GÉANT
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an “AS IS” BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.geant.idpextension.oidc.profile.impl;
+
+import java.security.interfaces.RSAPublicKey;
+import java.util.Date;
+
+import net.shibboleth.idp.profile.ActionTestingSupport;
+
+import org.opensaml.xmlsec.SignatureSigningParameters;
+import org.opensaml.xmlsec.context.SecurityParametersContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.webflow.execution.Action;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import com.nimbusds.jose.crypto.RSASSAVerifier;
+import com.nimbusds.jwt.SignedJWT;
+
+import ch.qos.logback.classic.Level;
+
+/**
+ * Benchmark comparing the actions extending {@link AbstractStatelessOIDCResponseAction} as prototype beans, built and
+ * initialized for every request, to the same actions as shared singleton beans. Only the correctness of the results is
+ * asserted, the timings are logged.
+ */
+public class StatelessResponseActionBenchmarkTest extends BaseOIDCResponseActionTest {
+
+    /** Class logger. */
+    private final Logger log = LoggerFactory.getLogger(StatelessResponseActionBenchmarkTest.class);
+
+    /** Number of executions per measurement. */
+    private static final int ITERATIONS = 2000;
+
+    @DataProvider(name = "actions")
+    public Object[][] actions() {
+        return new Object[][] {{SignIDToken.class}, {AddAuthTimeToIDToken.class}};
+    }
+
+    /**
+     * Adds signing parameters and an id token to the current request context.
+     */
+    private void prepareRequest() {
+        final SecurityParametersContext spCtx = new SecurityParametersContext();
+        final SignatureSigningParameters params = new SignatureSigningParameters();
+        params.setSigningCredential(credentialRSA);
+        params.setSignatureAlgorithm("RS256");
+        spCtx.setSignatureSigningParameters(params);
+        profileRequestCtx.addSubcontext(spCtx);
+        setIdTokenToResponseContext("iss", "sub", "aud", new Date(), new Date());
+        respCtx.setAuthTime(1000000L);
+    }
+
+    /**
+     * Builds an application context defining the action as a bean of the given scope, initialized by the container
+     * as in the flow definitions.
+     * 
+     * @param actionClass the class of the action
+     * @param scope the scope of the bean
+     * @return the application context
+     */
+    private GenericApplicationContext buildContext(final Class<?> actionClass, final String scope) {
+        final RootBeanDefinition definition = new RootBeanDefinition(actionClass);
+        definition.setScope(scope);
+        definition.setInitMethodName("initialize");
+        final GenericApplicationContext context = new GenericApplicationContext();
+        context.registerBeanDefinition("action", definition);
+        context.refresh();
+        return context;
+    }
+
+    /**
+     * Measures the execution of the action looked up from the prototype and the singleton bean definitions.
+     */
+    @Test(dataProvider = "actions", groups = "benchmark")
+    public void testPrototypeVersusSingleton(final Class<?> actionClass) throws Exception {
+        prepareRequest();
+        final GenericApplicationContext prototypeContext = buildContext(actionClass, BeanDefinition.SCOPE_PROTOTYPE);
+        final GenericApplicationContext singletonContext = buildContext(actionClass, BeanDefinition.SCOPE_SINGLETON);
+        try {
+            final long prototype = measure(prototypeContext);
+            final long singleton = measure(singletonContext);
+            if (respCtx.getProcessedToken() != null) {
+                Assert.assertTrue(((SignedJWT) respCtx.getProcessedToken())
+                        .verify(new RSASSAVerifier((RSAPublicKey) credentialRSA.getPublicKey())));
+            }
+            log.info("{} prototype {} ns/request, singleton {} ns/request", actionClass.getSimpleName(), prototype,
+                    singleton);
+        } finally {
+            prototypeContext.close();
+            singletonContext.close();
+        }
+    }
+
+    /**
+     * Measures the average time of looking up the action from the context and executing it, the logging of the
+     * actions is disabled while measuring.
+     * 
+     * @param context the application context defining the action
+     * @return nanoseconds per request
+     */
+    private long measure(final GenericApplicationContext context) throws Exception {
+        final ch.qos.logback.classic.Logger logger =
+                (ch.qos.logback.classic.Logger) LoggerFactory.getLogger("org.geant.idpextension.oidc.profile");
+        final Level originalLevel = logger.getLevel();
+        logger.setLevel(Level.OFF);
+        try {
+            // warm up
+            for (int i = 0; i < ITERATIONS / 10; i++) {
+                ActionTestingSupport.assertProceedEvent(context.getBean("action", Action.class).execute(requestCtx));
+            }
+            final long start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                context.getBean("action", Action.class).execute(requestCtx);
+            }
+            return (System.nanoTime() - start) / ITERATIONS;
+        } finally {
+            logger.setLevel(originalLevel);
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2017 - 2020, GÉANT
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an “AS IS” BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.geant.idpextension.oidc.profile.impl;
+
+import java.security.interfaces.RSAPublicKey;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import net.shibboleth.idp.profile.ActionTestingSupport;
+
+import org.geant.idpextension.oidc.messaging.context.OIDCAuthenticationResponseContext;
+import org.opensaml.xmlsec.SignatureSigningParameters;
+import org.opensaml.xmlsec.context.SecurityParametersContext;
+import org.springframework.webflow.execution.RequestContext;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.nimbusds.jose.crypto.RSASSAVerifier;
+import com.nimbusds.jwt.SignedJWT;
+import com.nimbusds.openid.connect.sdk.claims.IDTokenClaimsSet;
+
+/**
+ * Tests that a single instance of the actions extending {@link AbstractStatelessOIDCResponseAction} may serve
+ * consecutive and concurrent requests, as when they are defined as singleton beans.
+ */
+public class StatelessResponseActionTest extends BaseOIDCResponseActionTest {
+
+    /** Number of executions per request thread. */
+    private static final int ITERATIONS = 50;
+
+    /** Number of concurrent request threads. */
+    private static final int THREADS = 8;
+
+    /**
+     * Adds signing parameters and an id token for the given subject to the current request context.
+     * 
+     * @param sub subject of the id token
+     */
+    private void prepareRequest(final String sub) {
+        final SecurityParametersContext spCtx = new SecurityParametersContext();
+        final SignatureSigningParameters params = new SignatureSigningParameters();
+        params.setSigningCredential(credentialRSA);
+        params.setSignatureAlgorithm("RS256");
+        spCtx.setSignatureSigningParameters(params);
+        profileRequestCtx.addSubcontext(spCtx);
+        setIdTokenToResponseContext("iss", sub, "aud", new Date(), new Date());
+    }
+
+    /**
+     * Test that the id token of each request is signed by the shared instance, and a request without signing
+     * parameters is not signed with the parameters of the previous request.
+     */
+    @Test
+    public void testSignIDTokenConsecutively() throws Exception {
+        final SignIDToken action = new SignIDToken();
+        action.initialize();
+        final RSASSAVerifier verifier = new RSASSAVerifier((RSAPublicKey) credentialRSA.getPublicKey());
+
+        prepareRequest("sub1");
+        ActionTestingSupport.assertProceedEvent(action.execute(requestCtx));
+        final SignedJWT first = (SignedJWT) respCtx.getProcessedToken();
+        Assert.assertTrue(first.verify(verifier));
+        Assert.assertEquals(first.getJWTClaimsSet().getSubject(), "sub1");
+
+        setUp();
+        prepareRequest("sub2");
+        ActionTestingSupport.assertProceedEvent(action.execute(requestCtx));
+        final SignedJWT second = (SignedJWT) respCtx.getProcessedToken();
+        Assert.assertTrue(second.verify(verifier));
+        Assert.assertEquals(second.getJWTClaimsSet().getSubject(), "sub2");
+
+        setUp();
+        setIdTokenToResponseContext("iss", "sub3", "aud", new Date(), new Date());
+        ActionTestingSupport.assertProceedEvent(action.execute(requestCtx));
+        Assert.assertNull(respCtx.getProcessedToken());
+    }
+
+    /**
+     * Test that the auth_time of each request is added to its own id token by the shared instance.
+     */
+    @Test
+    public void testAddAuthTimeConsecutively() throws Exception {
+        final AddAuthTimeToIDToken action = new AddAuthTimeToIDToken();
+        action.initialize();
+
+        setIdTokenToResponseContext("iss", "sub1", "aud", new Date(), new Date());
+        respCtx.setAuthTime(1000000L);
+        ActionTestingSupport.assertProceedEvent(action.execute(requestCtx));
+        final IDTokenClaimsSet first = respCtx.getIDToken();
+
+        setUp();
+        setIdTokenToResponseContext("iss", "sub2", "aud", new Date(), new Date());
+        respCtx.setAuthTime(2000000L);
+        ActionTestingSupport.assertProceedEvent(action.execute(requestCtx));
+        final IDTokenClaimsSet second = respCtx.getIDToken();
+
+        Assert.assertEquals(first.getAuthenticationTime().getTime(), 1000000L);
+        Assert.assertEquals(second.getAuthenticationTime().getTime(), 2000000L);
+    }
+
+    /**
+     * Test that a shared instance serves concurrent requests without leaking state between them.
+     */
+    @Test
+    public void testSignIDTokenConcurrently() throws Exception {
+        final SignIDToken action = new SignIDToken();
+        action.initialize();
+        final List<Callable<Boolean>> requests = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            setUp();
+            final String sub = "sub" + i;
+            prepareRequest(sub);
+            final RequestContext threadRequestCtx = requestCtx;
+            final OIDCAuthenticationResponseContext threadRespCtx = respCtx;
+            requests.add(new Callable<Boolean>() {
+                public Boolean call() throws Exception {
+                    for (int j = 0; j < ITERATIONS; j++) {
+                        threadRespCtx.setProcessedToken(null);
+                        ActionTestingSupport.assertProceedEvent(action.execute(threadRequestCtx));
+                        if (!sub.equals(((SignedJWT) threadRespCtx.getProcessedToken()).getJWTClaimsSet()
+                                .getSubject())) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }
+            });
+        }
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            for (final Future<Boolean> result : executor.invokeAll(requests)) {
+                Assert.assertTrue(result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
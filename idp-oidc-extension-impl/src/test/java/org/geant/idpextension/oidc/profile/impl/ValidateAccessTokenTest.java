@@ -25,9 +25,12 @@ import java.net.URISyntaxException;
 import java.security.NoSuchAlgorithmException;
 import java.util.Date;
 import org.geant.idpextension.oidc.profile.OidcEventIds;
+import org.geant.idpextension.oidc.storage.RevocationCacheContexts;
+import org.geant.idpextension.oidc.storage.RevocationEpochCache;
 import org.geant.idpextension.oidc.token.support.AccessTokenClaimsSet;
 import org.geant.idpextension.oidc.token.support.AuthorizeCodeClaimsSet;
 import org.geant.idpextension.oidc.token.support.TokenClaimsSet;
+import org.opensaml.storage.impl.MemoryStorageService;
 import org.springframework.webflow.execution.Event;
 import org.testng.annotations.Test;
 import com.nimbusds.oauth2.sdk.Scope;
@@ -126,4 +129,34 @@ public class ValidateAccessTokenTest extends BaseOIDCResponseActionTest {
         ActionTestingSupport.assertEvent(event, OidcEventIds.INVALID_GRANT);
     }
 
-}
\ No newline at end of file
+    /**
+     * Fails due to the revocation epoch of the user principal being advanced after the token was issued.
+     */
+    @Test
+    public void testFailsRevokedEpoch() throws Exception {
+        final MemoryStorageService storageService = new MemoryStorageService();
+        storageService.setId("test");
+        storageService.initialize();
+        final RevocationEpochCache epochCache = new RevocationEpochCache();
+        epochCache.setId("test");
+        epochCache.setStorage(storageService);
+        epochCache.initialize();
+        action = new ValidateAccessToken(getDataSealer());
+        action.setRevocationCache(new MockRevocationCache(false, true));
+        action.setRevocationEpochCache(epochCache);
+        action.initialize();
+        TokenClaimsSet.Builder<AccessTokenClaimsSet> builder = new AccessTokenClaimsSet.Builder(idGenerator,
+                new ClientID(clientId), "issuer", "userPrin", "subject", new Date(),
+                new Date(System.currentTimeMillis() + 1000), new Date(), new URI("http://example.com"), new Scope());
+        epochCache.stampRevocationEpochs(builder, "userPrin", clientId);
+        BearerAccessToken token = new BearerAccessToken(builder.build().serialize(getDataSealer()));
+        setUserInfoRequest(new UserInfoRequest(new URI("http://example.com"), token));
+        ActionTestingSupport.assertProceedEvent(action.execute(requestCtx));
+        epochCache.revoke(RevocationCacheContexts.PRINCIPAL, "userPrin");
+        final Event event = action.execute(requestCtx);
+        ActionTestingSupport.assertEvent(event, OidcEventIds.INVALID_GRANT);
+        epochCache.destroy();
+        storageService.destroy();
+    }
+
+}
@@ -58,9 +58,12 @@ import com.nimbusds.oauth2.sdk.auth.ClientAuthenticationMethod;
 import com.nimbusds.oauth2.sdk.auth.ClientSecretBasic;
 import com.nimbusds.oauth2.sdk.auth.ClientSecretJWT;
 import com.nimbusds.oauth2.sdk.auth.ClientSecretPost;
+import com.nimbusds.oauth2.sdk.auth.JWTAuthenticationClaimsSet;
 import com.nimbusds.oauth2.sdk.auth.PrivateKeyJWT;
 import com.nimbusds.oauth2.sdk.auth.Secret;
+import com.nimbusds.oauth2.sdk.id.Audience;
 import com.nimbusds.oauth2.sdk.id.ClientID;
+import com.nimbusds.oauth2.sdk.id.JWTID;
 import com.nimbusds.openid.connect.sdk.rp.OIDCClientInformation;
 import com.nimbusds.openid.connect.sdk.rp.OIDCClientMetadata;
 
@@ -165,6 +168,15 @@ public class ValidateEndpointAuthenticationTest {
         return new TokenRequest(null, clientAuth, authzGrant);        
     }
     
+    protected TokenRequest initializePrivateKeyJwtRequest(final JWTID jwtId) throws JOSEException {
+        final JWTAuthenticationClaimsSet claimsSet = new JWTAuthenticationClaimsSet(clientId,
+                new Audience(endpointUri.toString()), new Date(System.currentTimeMillis() + 60000), null, new Date(),
+                jwtId);
+        final ClientAuthentication clientAuth = new PrivateKeyJWT(claimsSet, JWSAlgorithm.RS256, rsaPrivateKey, null,
+                null);
+        return new TokenRequest(null, clientAuth, new AuthorizationCodeGrant(new AuthorizationCode(), null));
+    }
+    
     protected ValidateEndpointAuthentication constructAction(final Function<ProfileRequestContext, 
             List<ClientAuthenticationMethod>> newFunction) throws ComponentInitializationException {
         ValidateEndpointAuthentication action = new ValidateEndpointAuthentication();
@@ -251,6 +263,31 @@ public class ValidateEndpointAuthenticationTest {
         testFailingClientAuth(ClientAuthenticationMethod.PRIVATE_KEY_JWT);
     }
 
+    @Test
+    public void testReplayedPrivateKeyJwt() throws Exception {
+        final ClientAuthenticationMethod clientAuth = ClientAuthenticationMethod.PRIVATE_KEY_JWT;
+        ValidateEndpointAuthentication action = constructAction(new ListMethodsFunction(clientAuth));
+        final TokenRequest request = initializeTokenRequest(clientAuth);
+        Assert.assertNull(action.execute(initializeRequestCtx(request, clientAuth, true)));
+        final Event event = action.execute(initializeRequestCtx(request, clientAuth, true));
+        ActionTestingSupport.assertEvent(event, EventIds.ACCESS_DENIED);
+    }
+
+    @Test
+    public void testSameJwtIdFromDifferentClients() throws Exception {
+        final ClientAuthenticationMethod clientAuth = ClientAuthenticationMethod.PRIVATE_KEY_JWT;
+        ValidateEndpointAuthentication action = constructAction(new ListMethodsFunction(clientAuth));
+        final JWTID jwtId = new JWTID();
+        Assert.assertNull(
+                action.execute(initializeRequestCtx(initializePrivateKeyJwtRequest(jwtId), clientAuth, true)));
+        clientId = new ClientID("anotherMockId");
+        Assert.assertNull(
+                action.execute(initializeRequestCtx(initializePrivateKeyJwtRequest(jwtId), clientAuth, true)));
+        final Event event =
+                action.execute(initializeRequestCtx(initializePrivateKeyJwtRequest(jwtId), clientAuth, true));
+        ActionTestingSupport.assertEvent(event, EventIds.ACCESS_DENIED);
+    }
+
     class ListMethodsFunction extends AbstractRelyingPartyLookupFunction<List<ClientAuthenticationMethod>> {
 
         private List<ClientAuthenticationMethod> list;
@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2017 - 2020, GÉANT
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an “AS IS” BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.geant.idpextension.oidc.profile.impl;
+
+import java.net.URI;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.geant.idpextension.oidc.messaging.context.OIDCMetadataContext;
+import org.geant.idpextension.oidc.profile.OidcEventIds;
+import org.opensaml.profile.context.ProfileRequestContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Function;
+import com.nimbusds.oauth2.sdk.id.ClientID;
+import com.nimbusds.oauth2.sdk.util.JSONObjectUtils;
+import com.nimbusds.openid.connect.sdk.rp.OIDCClientInformation;
+import com.nimbusds.openid.connect.sdk.rp.OIDCClientMetadata;
+
+import ch.qos.logback.classic.Level;
+import net.shibboleth.idp.profile.ActionTestingSupport;
+
+/**
+ * Benchmark of {@link ValidateRedirectURI} for clients registering many redirect URIs. Only the correctness of the
+ * results is asserted, the timings are logged.
+ * 
+ * <p>
+ * The action looks up the requested URI from the hash set of the registered URIs, so its cost does not depend on the
+ * number of registered URIs. The cost that grows with them is the parsing of the client information, which the
+ * storage-backed resolver does on every request, and it is measured separately.
+ * </p>
+ */
+public class ValidateRedirectURIBenchmarkTest extends BaseOIDCResponseActionTest {
+
+    /** Class logger. */
+    private final Logger log = LoggerFactory.getLogger(ValidateRedirectURIBenchmarkTest.class);
+
+    /** Number of validations per measurement. */
+    private static final int ITERATIONS = 20000;
+
+    @DataProvider(name = "uriCounts")
+    public Object[][] uriCounts() {
+        return new Object[][] {{1}, {100}, {10000}};
+    }
+
+    /**
+     * Measures the validation of a registered and of a non-registered redirect URI.
+     */
+    @SuppressWarnings("rawtypes")
+    @Test(dataProvider = "uriCounts", groups = "benchmark")
+    public void testRedirectURIs(final int count) throws Exception {
+        final Set<URI> redirectURIs = new LinkedHashSet<>();
+        for (int i = 1; i < count; i++) {
+            redirectURIs.add(new URI("https://tenant" + i + ".client.example.org/cb?tenant=" + i));
+        }
+        redirectURIs.add(new URI("https://client.example.org/cb"));
+        final OIDCClientMetadata metaData = new OIDCClientMetadata();
+        metaData.setRedirectionURIs(redirectURIs);
+        profileRequestCtx.getInboundMessageContext().getSubcontext(OIDCMetadataContext.class, true)
+                .setClientInformation(new OIDCClientInformation(new ClientID(clientId), null, metaData, null, null,
+                        null));
+        final ValidateRedirectURI action = new ValidateRedirectURI();
+        action.initialize();
+        final URI notRegisteredURI = new URI("https://tenant0.client.example.org/cb");
+        final Function<ProfileRequestContext, URI> notRegistered = new Function<ProfileRequestContext, URI>() {
+            public URI apply(ProfileRequestContext input) {
+                return notRegisteredURI;
+            }
+        };
+        final ValidateRedirectURI failingAction = new ValidateRedirectURI();
+        failingAction.setRedirectURILookupStrategy(notRegistered);
+        failingAction.initialize();
+
+        ActionTestingSupport.assertProceedEvent(action.execute(requestCtx));
+        Assert.assertEquals(respCtx.getRedirectURI(), new URI("https://client.example.org/cb"));
+        ActionTestingSupport.assertEvent(failingAction.execute(requestCtx), OidcEventIds.INVALID_REDIRECT_URI);
+        log.info("{} redirect URIs: registered {} ns/validation, not registered {} ns/validation", count,
+                measure(action), measure(failingAction));
+    }
+
+    /**
+     * Measures the parsing of the client information and the lookup of a registered redirect URI from it, as done
+     * for the clients resolved from the storage.
+     */
+    @Test(dataProvider = "uriCounts", groups = "benchmark")
+    public void testParsedRedirectURIs(final int count) throws Exception {
+        final Set<URI> redirectURIs = new LinkedHashSet<>();
+        for (int i = 1; i < count; i++) {
+            redirectURIs.add(new URI("https://tenant" + i + ".client.example.org/cb?tenant=" + i));
+        }
+        redirectURIs.add(new URI("https://client.example.org/cb"));
+        final OIDCClientMetadata metaData = new OIDCClientMetadata();
+        metaData.setRedirectionURIs(redirectURIs);
+        final String json = new OIDCClientInformation(new ClientID(clientId), null, metaData, null, null, null)
+                .toJSONObject().toJSONString();
+        final URI registeredURI = new URI("https://client.example.org/cb");
+        final int iterations = Math.max(10, ITERATIONS / count);
+        for (int i = 0; i < iterations / 10 + 1; i++) {
+            Assert.assertTrue(OIDCClientInformation.parse(JSONObjectUtils.parse(json)).getOIDCMetadata()
+                    .getRedirectionURIs().contains(registeredURI));
+        }
+        final long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            OIDCClientInformation.parse(JSONObjectUtils.parse(json)).getOIDCMetadata().getRedirectionURIs()
+                    .contains(registeredURI);
+        }
+        log.info("{} redirect URIs: parsed and looked up in {} ns", count, (System.nanoTime() - start) / iterations);
+    }
+
+    /**
+     * Measures the average execution time of the action, the logging of the actions is disabled while measuring.
+     * 
+     * @return nanoseconds per validation
+     */
+    private long measure(final ValidateRedirectURI action) {
+        final ch.qos.logback.classic.Logger logger =
+                (ch.qos.logback.classic.Logger) LoggerFactory.getLogger("org.geant.idpextension.oidc.profile");
+        final Level originalLevel = logger.getLevel();
+        logger.setLevel(Level.OFF);
+        try {
+            // warm up
+            for (int i = 0; i < ITERATIONS / 10; i++) {
+                action.execute(requestCtx);
+            }
+            final long start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                action.execute(requestCtx);
+            }
+            return (System.nanoTime() - start) / ITERATIONS;
+        } finally {
+            logger.setLevel(originalLevel);
+        }
+    }
+}
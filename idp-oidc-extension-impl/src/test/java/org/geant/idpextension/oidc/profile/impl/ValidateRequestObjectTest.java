@@ -29,9 +29,11 @@ import java.security.NoSuchAlgorithmException;
 import java.security.interfaces.ECPrivateKey;
 import org.geant.idpextension.oidc.messaging.context.OIDCAuthenticationResponseContext;
 import org.geant.idpextension.oidc.messaging.context.OIDCMetadataContext;
+import org.geant.idpextension.oidc.metadata.resolver.RemoteJwkSetCache;
 import org.geant.idpextension.oidc.profile.OidcEventIds;
 import org.geant.idpextension.oidc.security.impl.OIDCSignatureValidationParameters;
 import org.geant.security.jwk.BasicJWKCredential;
+import org.mockito.Mockito;
 import org.opensaml.profile.action.EventIds;
 import org.opensaml.profile.context.ProfileRequestContext;
 import org.opensaml.xmlsec.context.SecurityParametersContext;
@@ -273,6 +275,36 @@ public class ValidateRequestObjectTest {
         ActionTestingSupport.assertEvent(event, OidcEventIds.INVALID_REQUEST_OBJECT);
     }
 
+    /**
+     * Test that the cached key set of the client is invalidated if the request object is signed with an unknown key.
+     */
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testRequestObjectSignedWithUnknownKey() throws NoSuchAlgorithmException,
+            ComponentInitializationException, URISyntaxException, JOSEException {
+        final RemoteJwkSetCache jwkSetCache = Mockito.mock(RemoteJwkSetCache.class);
+        action = new ValidateRequestObject();
+        action.setRemoteJwkSetCache(jwkSetCache);
+        action.initialize();
+        final URI jwkSetUri = new URI("https://client.example.org/jwks.json");
+        oidcCtx.getClientInformation().getOIDCMetadata().setJWKSetURI(jwkSetUri);
+        KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA");
+        kpg.initialize(2048);
+        kp = kpg.generateKeyPair();
+        JWSSigner signer = new RSASSASigner(kp.getPrivate());
+        JWTClaimsSet ro = new JWTClaimsSet.Builder().subject("alice").build();
+        SignedJWT signed = new SignedJWT(new JWSHeader.Builder(JWSAlgorithm.RS256).keyID("rotated").build(), ro);
+        signed.sign(signer);
+        AuthenticationRequest req =
+                new AuthenticationRequest.Builder(new ResponseType("code"), new Scope("openid"), new ClientID("000123"),
+                        URI.create("https://example.com/callback")).requestObject(signed).state(new State()).build();
+        prc.getInboundMessageContext().setMessage(req);
+        oidcRespCtx.setRequestObject(req.getRequestObject());
+        final Event event = action.execute(requestCtx);
+        ActionTestingSupport.assertEvent(event, OidcEventIds.INVALID_REQUEST_OBJECT);
+        Mockito.verify(jwkSetCache).invalidate(RemoteJwkSetCache.CONTEXT_NAME, jwkSetUri);
+    }
+
     /**
      * Test case of request object signed with wrong type of algorithm.
      */
@@ -20,6 +20,7 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import net.shibboleth.idp.profile.ActionTestingSupport;
 import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
+import org.geant.idpextension.oidc.messaging.ScopeRegistry;
 import org.geant.idpextension.oidc.messaging.context.OIDCMetadataContext;
 import org.springframework.webflow.execution.Event;
 import org.testng.Assert;
@@ -71,6 +72,24 @@ public class ValidateScopeTest extends BaseOIDCResponseActionTest {
         Assert.assertTrue(!respCtx.getScope().contains(OIDCScopeValue.PROFILE));
     }
 
+    /**
+     * Test that action filters out non valid scopes with the scope registry, sharing the validated scope.
+     */
+    @Test
+    public void testSuccessScopeRegistry() throws ComponentInitializationException {
+        ScopeRegistry registry = new ScopeRegistry();
+        registry.initialize();
+        action = new ValidateScope();
+        action.setScopeRegistry(registry);
+        action.initialize();
+        final Event event = action.execute(requestCtx);
+        ActionTestingSupport.assertProceedEvent(event);
+        Assert.assertEquals(respCtx.getScope().toString(), "openid email");
+        Scope validated = respCtx.getScope();
+        action.execute(requestCtx);
+        Assert.assertSame(respCtx.getScope(), validated);
+    }
+
     /**
      * Test that action copes if there are no registered scopes.
      */
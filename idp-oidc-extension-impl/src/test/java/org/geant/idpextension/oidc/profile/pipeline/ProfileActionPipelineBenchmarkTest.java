@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2017 - 2020, GÉANT
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an “AS IS” BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.geant.idpextension.oidc.profile.pipeline;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+import org.geant.idpextension.oidc.messaging.context.OIDCAuthenticationResponseContext;
+import org.opensaml.messaging.context.MessageContext;
+import org.opensaml.profile.action.EventIds;
+import org.opensaml.profile.context.ProfileRequestContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.webflow.execution.Event;
+import org.springframework.webflow.execution.RequestContext;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import net.shibboleth.idp.profile.AbstractProfileAction;
+import net.shibboleth.idp.profile.RequestContextBuilder;
+import net.shibboleth.idp.profile.context.RelyingPartyContext;
+import net.shibboleth.idp.profile.context.navigate.WebflowRequestContextProfileRequestContextLookup;
+import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
+
+/**
+ * Benchmark comparing the direct execution of a {@link ProfileActionPipeline} to executing the same actions through
+ * their Web Flow action adaptor, as the evaluate expressions of an action-state do. The actions are prototype beans
+ * instantiated for each request on both paths. The flow engine overhead of state
+ * transitions and expression evaluation is not included in the latter, the measured difference is a lower bound. Only
+ * the correctness of the results is asserted, the timings are logged.
+ */
+public class ProfileActionPipelineBenchmarkTest {
+
+    /** Class logger. */
+    private final Logger log = LoggerFactory.getLogger(ProfileActionPipelineBenchmarkTest.class);
+
+    /** Number of requests per measurement. */
+    private static final int ITERATIONS = 20000;
+
+    /** Number of actions per request, roughly the number of actions in the token endpoint flow. */
+    private static final int ACTIONS = 30;
+
+    /**
+     * Measures the pipeline against the Web Flow action adaptor path.
+     */
+    @Test(groups = "benchmark")
+    public void testPipelineVersusWebFlowAdaptor() throws ComponentInitializationException {
+        final DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        final List<String> actions = new ArrayList<>();
+        for (int i = 0; i < ACTIONS; i++) {
+            final RootBeanDefinition definition = new RootBeanDefinition(ContextTouchingAction.class);
+            definition.setScope(BeanDefinition.SCOPE_PROTOTYPE);
+            beanFactory.registerBeanDefinition("action" + i, definition);
+            actions.add("action" + i);
+        }
+        final ProfileActionPipeline pipeline = new ProfileActionPipeline();
+        pipeline.setId("benchmark");
+        pipeline.setBeanFactory(beanFactory);
+        pipeline.setStages(Collections.singletonList(new PipelineStage("Stage", actions)));
+        pipeline.initialize();
+
+        // warm up both paths
+        runWebFlow(beanFactory, actions, ITERATIONS / 10);
+        runPipeline(pipeline, ITERATIONS / 10);
+
+        long start = System.nanoTime();
+        runWebFlow(beanFactory, actions, ITERATIONS);
+        final long webFlow = System.nanoTime() - start;
+        start = System.nanoTime();
+        runPipeline(pipeline, ITERATIONS);
+        final long direct = System.nanoTime() - start;
+
+        log.info("{} actions per request: Web Flow adaptor {} ns/request, pipeline {} ns/request", ACTIONS,
+                webFlow / ITERATIONS, direct / ITERATIONS);
+    }
+
+    private void runWebFlow(final DefaultListableBeanFactory beanFactory, final List<String> actions,
+            final int iterations) throws ComponentInitializationException {
+        for (int i = 0; i < iterations; i++) {
+            final RequestContext requestCtx = new RequestContextBuilder().buildRequestContext();
+            final ProfileRequestContext prc = new WebflowRequestContextProfileRequestContextLookup().apply(requestCtx);
+            prepare(prc);
+            for (final String name : actions) {
+                final AbstractProfileAction action = beanFactory.getBean(name, AbstractProfileAction.class);
+                action.initialize();
+                final Event event = action.execute(requestCtx);
+                Assert.assertTrue(event == null || EventIds.PROCEED_EVENT_ID.equals(event.getId()));
+            }
+            Assert.assertEquals(prc.getSubcontext(RelyingPartyContext.class).getRelyingPartyId(), "rp");
+        }
+    }
+
+    private void runPipeline(final ProfileActionPipeline pipeline, final int iterations) {
+        for (int i = 0; i < iterations; i++) {
+            final ProfileRequestContext prc = new ProfileRequestContext();
+            prepare(prc);
+            Assert.assertEquals(pipeline.execute(prc), EventIds.PROCEED_EVENT_ID);
+            Assert.assertEquals(prc.getSubcontext(RelyingPartyContext.class).getRelyingPartyId(), "rp");
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void prepare(final ProfileRequestContext prc) {
+        prc.setOutboundMessageContext(new MessageContext());
+        prc.getOutboundMessageContext().addSubcontext(new OIDCAuthenticationResponseContext());
+    }
+
+    /**
+     * Action doing the typical context lookups of the oidc actions.
+     */
+    @SuppressWarnings("rawtypes")
+    public static class ContextTouchingAction extends AbstractProfileAction {
+
+        /** {@inheritDoc} */
+        @Override
+        protected void doExecute(@Nonnull final ProfileRequestContext profileRequestContext) {
+            profileRequestContext.getOutboundMessageContext().getSubcontext(OIDCAuthenticationResponseContext.class);
+            profileRequestContext.getSubcontext(RelyingPartyContext.class, true).setRelyingPartyId("rp");
+        }
+    }
+}
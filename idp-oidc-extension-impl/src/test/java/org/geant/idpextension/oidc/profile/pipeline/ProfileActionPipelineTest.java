@@ -0,0 +1,304 @@
+/*
+ * Copyright (c) 2017 - 2020, GÉANT
+ *
+ * Licensed under the Apache License, Version 2.0 (the “License”); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an “AS IS” BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.geant.idpextension.oidc.profile.pipeline;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+import org.geant.idpextension.oidc.messaging.context.OIDCAuthenticationResponseContext;
+import org.geant.idpextension.oidc.messaging.context.OIDCMetadataContext;
+import org.geant.idpextension.oidc.profile.impl.AbstractStatelessOIDCResponseAction;
+import org.opensaml.messaging.context.MessageContext;
+import org.opensaml.profile.action.ActionSupport;
+import org.opensaml.profile.action.EventIds;
+import org.opensaml.profile.context.EventContext;
+import org.opensaml.profile.context.ProfileRequestContext;
+import org.springframework.beans.MutablePropertyValues;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import net.shibboleth.idp.profile.AbstractProfileAction;
+import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
+
+/** {@link ProfileActionPipeline} unit test. */
+public class ProfileActionPipelineTest {
+
+    private List<String> executed;
+
+    private List<RecordingAction> instances;
+
+    private DefaultListableBeanFactory beanFactory;
+
+    private ProfileActionPipeline pipeline;
+
+    private ProfileRequestContext prc;
+
+    @BeforeMethod
+    protected void setUp() {
+        executed = new ArrayList<>();
+        instances = new ArrayList<>();
+        beanFactory = new DefaultListableBeanFactory();
+        for (final String name : Arrays.asList("a", "c", "d", "LogEvent", "BuildErrorResponseFromEvent",
+                "EncodeMessage", "WriteAuditLog")) {
+            register(RecordingAction.class, name, null);
+        }
+        register(RecordingAction.class, "b", EventIds.PROCEED_EVENT_ID);
+        register(RecordingAction.class, "invalid", EventIds.INVALID_MSG_CTX);
+        register(RecordingAction.class, "skip", "Skip");
+        register(ThrowingAction.class, "throwing", null);
+        pipeline = new ProfileActionPipeline();
+        pipeline.setId("test");
+        pipeline.setBeanFactory(beanFactory);
+        pipeline.setErrorActions(Arrays.asList("LogEvent", "BuildErrorResponseFromEvent"));
+        pipeline.setCompletionActions(Arrays.asList("EncodeMessage", "WriteAuditLog"));
+        prc = new ProfileRequestContext();
+    }
+
+    private void register(final Class<? extends RecordingAction> type, final String name, final String event) {
+        final RootBeanDefinition definition = new RootBeanDefinition(type);
+        definition.setScope(BeanDefinition.SCOPE_PROTOTYPE);
+        definition.setPropertyValues(new MutablePropertyValues().add("name", name).add("event", event)
+                .add("executed", executed).add("instances", instances));
+        beanFactory.registerBeanDefinition(name, definition);
+    }
+
+    private PipelineStage stage(final String name, final String... actions) {
+        return new PipelineStage(name, Arrays.asList(actions));
+    }
+
+    /**
+     * Test that a pipeline without stages is rejected.
+     */
+    @Test(expectedExceptions = ComponentInitializationException.class)
+    public void testNoStages() throws ComponentInitializationException {
+        pipeline.initialize();
+    }
+
+    /**
+     * Test that a pipeline without a bean factory is rejected.
+     */
+    @Test(expectedExceptions = ComponentInitializationException.class)
+    public void testNoBeanFactory() throws ComponentInitializationException {
+        pipeline = new ProfileActionPipeline();
+        pipeline.setId("test");
+        pipeline.setStages(Collections.singletonList(stage("First", "a")));
+        pipeline.initialize();
+    }
+
+    /**
+     * Test that a transition to an unknown stage is rejected.
+     */
+    @Test(expectedExceptions = ComponentInitializationException.class)
+    public void testUnknownTransitionTarget() throws ComponentInitializationException {
+        final PipelineStage first = stage("First", "a");
+        first.setTransitions(Collections.singletonMap("Skip", "Unknown"));
+        pipeline.setStages(Collections.singletonList(first));
+        pipeline.initialize();
+    }
+
+    /**
+     * Test that an unknown action is rejected.
+     */
+    @Test(expectedExceptions = ComponentInitializationException.class)
+    public void testUnknownAction() throws ComponentInitializationException {
+        pipeline.setStages(Collections.singletonList(stage("First", "a", "unknown")));
+        pipeline.initialize();
+    }
+
+    /**
+     * Test that a stateful action defined as a singleton is rejected.
+     */
+    @Test(expectedExceptions = ComponentInitializationException.class)
+    public void testStatefulSingleton() throws ComponentInitializationException {
+        final RecordingAction action = new RecordingAction();
+        action.setName("singleton");
+        action.setExecuted(executed);
+        action.setInstances(instances);
+        beanFactory.registerSingleton("singleton", action);
+        pipeline.setStages(Collections.singletonList(stage("First", "a", "singleton")));
+        pipeline.initialize();
+    }
+
+    /**
+     * Test that a stateless action defined as a singleton is shared by the executions.
+     */
+    @Test
+    public void testStatelessSingleton() throws ComponentInitializationException {
+        final CountingStatelessAction action = new CountingStatelessAction();
+        action.initialize();
+        beanFactory.registerSingleton("stateless", action);
+        pipeline.setStages(Collections.singletonList(stage("First", "stateless", "a")));
+        pipeline.initialize();
+        for (int i = 0; i < 2; i++) {
+            final ProfileRequestContext ctx = new ProfileRequestContext();
+            ctx.setInboundMessageContext(new MessageContext());
+            ctx.getInboundMessageContext().addSubcontext(new OIDCMetadataContext());
+            ctx.setOutboundMessageContext(new MessageContext());
+            ctx.getOutboundMessageContext().addSubcontext(new OIDCAuthenticationResponseContext());
+            Assert.assertEquals(pipeline.execute(ctx), EventIds.PROCEED_EVENT_ID);
+        }
+        Assert.assertEquals(action.count, 2);
+    }
+
+    /**
+     * Test that the prototype actions are instantiated and initialized for each execution.
+     */
+    @Test
+    public void testPrototypesPerExecution() throws ComponentInitializationException {
+        pipeline.setStages(Collections.singletonList(stage("First", "a")));
+        pipeline.initialize();
+        Assert.assertEquals(pipeline.execute(prc), EventIds.PROCEED_EVENT_ID);
+        Assert.assertEquals(pipeline.execute(new ProfileRequestContext()), EventIds.PROCEED_EVENT_ID);
+        // a, EncodeMessage and WriteAuditLog for each of the two executions
+        Assert.assertEquals(instances.size(), 6);
+        Assert.assertEquals(instances.get(0).getName(), "a");
+        Assert.assertEquals(instances.get(3).getName(), "a");
+        Assert.assertNotSame(instances.get(0), instances.get(3));
+        for (final RecordingAction instance : instances) {
+            Assert.assertTrue(instance.isInitialized());
+        }
+    }
+
+    /**
+     * Test that all the actions are executed in order on success.
+     */
+    @Test
+    public void testSuccess() throws ComponentInitializationException {
+        pipeline.setStages(Arrays.asList(stage("First", "a", "b"), stage("Second", "c")));
+        pipeline.initialize();
+        Assert.assertEquals(pipeline.execute(prc), EventIds.PROCEED_EVENT_ID);
+        Assert.assertEquals(executed, Arrays.asList("a", "b", "c", "EncodeMessage", "WriteAuditLog"));
+    }
+
+    /**
+     * Test that an error event stops the stages and builds the error response.
+     */
+    @Test
+    public void testError() throws ComponentInitializationException {
+        pipeline.setStages(Arrays.asList(stage("First", "invalid", "a"), stage("Second", "c")));
+        pipeline.initialize();
+        Assert.assertEquals(pipeline.execute(prc), EventIds.INVALID_MSG_CTX);
+        Assert.assertEquals(executed,
+                Arrays.asList("invalid", "LogEvent", "BuildErrorResponseFromEvent", "EncodeMessage", "WriteAuditLog"));
+        Assert.assertEquals(prc.getSubcontext(EventContext.class).getEvent(), EventIds.INVALID_MSG_CTX);
+    }
+
+    /**
+     * Test that an event matching a transition continues from the target stage.
+     */
+    @Test
+    public void testTransition() throws ComponentInitializationException {
+        final PipelineStage first = stage("First", "skip", "a");
+        first.setTransitions(Collections.singletonMap("Skip", "Third"));
+        pipeline.setStages(Arrays.asList(first, stage("Second", "c"), stage("Third", "d")));
+        pipeline.initialize();
+        Assert.assertEquals(pipeline.execute(prc), EventIds.PROCEED_EVENT_ID);
+        Assert.assertEquals(executed, Arrays.asList("skip", "d", "EncodeMessage", "WriteAuditLog"));
+        Assert.assertNull(prc.getSubcontext(EventContext.class));
+    }
+
+    /**
+     * Test that an uncaught runtime exception is turned into an error.
+     */
+    @Test
+    public void testRuntimeException() throws ComponentInitializationException {
+        pipeline.setStages(Collections.singletonList(stage("First", "throwing", "a")));
+        pipeline.initialize();
+        Assert.assertEquals(pipeline.execute(prc), ProfileActionPipeline.RUNTIME_EXCEPTION);
+        Assert.assertEquals(executed,
+                Arrays.asList("LogEvent", "BuildErrorResponseFromEvent", "EncodeMessage", "WriteAuditLog"));
+    }
+
+    /**
+     * Action recording its execution and optionally setting an event.
+     */
+    @SuppressWarnings("rawtypes")
+    public static class RecordingAction extends AbstractProfileAction {
+
+        private String name;
+
+        private String event;
+
+        private List<String> executed;
+
+        private List<RecordingAction> instances;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(final String actionName) {
+            name = actionName;
+        }
+
+        public void setEvent(final String actionEvent) {
+            event = actionEvent;
+        }
+
+        public void setExecuted(final List<String> executedActions) {
+            executed = executedActions;
+        }
+
+        public void setInstances(final List<RecordingAction> actionInstances) {
+            instances = actionInstances;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        protected void doExecute(@Nonnull final ProfileRequestContext profileRequestContext) {
+            executed.add(name);
+            instances.add(this);
+            if (event != null) {
+                ActionSupport.buildEvent(profileRequestContext, event);
+            }
+        }
+    }
+
+    /**
+     * Action throwing a runtime exception.
+     */
+    public static class ThrowingAction extends RecordingAction {
+
+        /** {@inheritDoc} */
+        @Override
+        protected void doExecute(@Nonnull final ProfileRequestContext profileRequestContext) {
+            throw new IllegalStateException("test");
+        }
+    }
+
+    /**
+     * Stateless action counting its executions.
+     */
+    public static class CountingStatelessAction extends AbstractStatelessOIDCResponseAction {
+
+        private int count;
+
+        /** {@inheritDoc} */
+        @Override
+        protected void doExecute(@Nonnull final ProfileRequestContext profileRequestContext) {
+            count++;
+        }
+    }
+}